@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2016 Nationale-Nederlanden
+   Copyright 2013, 2016, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,26 +15,51 @@
 */
 package nl.nn.adapterframework.cache;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.io.StringReader;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
+import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.doc.IbisDoc;
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeper;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+import nl.nn.adapterframework.util.CounterStatistic;
 import nl.nn.adapterframework.util.LogUtil;
+import nl.nn.adapterframework.util.StreamingXPathFilter;
 import nl.nn.adapterframework.util.TransformerPool;
+import nl.nn.adapterframework.util.XmlExternalEntityResolver;
+import nl.nn.adapterframework.util.XmlUtils;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 /**
  * Baseclass for caching.
  * Provides key transformation functionality.
- * 
+ * <p>
+ * Caching processors use {@link #startLoading(String, String)} and {@link #finishLoading(Load)} to make sure
+ * that a value that is not in the cache is computed only once, when it is requested by multiple threads at the same time.
+ * Threads that request a value that is being computed wait for that computation to finish, and then read the value from the cache.
+ * When <code>refreshAfterSeconds</code> is set, entries older than that are refreshed by the first thread that reads them,
+ * while other threads keep being served the existing value until the refreshed value is available.
+ * </p>
  * 
  * @author  Gerrit van Brakel
  * @since   4.11
  */
-public abstract class CacheAdapterBase implements ICacheAdapter {
+public abstract class CacheAdapterBase implements ICacheAdapter, HasStatistics {
 	protected Logger log = LogUtil.getLogger(this);
 	private ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
 
@@ -54,9 +79,50 @@ public abstract class CacheAdapterBase implements ICacheAdapter {
 	private String valueInputSessionKey;
 	private boolean cacheEmptyValues=false;
 
+	private int refreshAfterSeconds=0;
+	private int loadTimeoutSeconds=60;
+
 	private TransformerPool keyTp=null;
+	private StreamingXPathFilter.Expression keyExpression=null;
+	private ThreadLocal<XMLReader> keyReaders=new ThreadLocal<XMLReader>();
 	private TransformerPool valueTp=null;
 
+	private ConcurrentMap<String,Load> loads=new ConcurrentHashMap<String,Load>();
+
+	private CounterStatistic numHits = new CounterStatistic(0);
+	private CounterStatistic numMisses = new CounterStatistic(0);
+	private CounterStatistic numStaleHits = new CounterStatistic(0);
+	private CounterStatistic numCoalescedWaits = new CounterStatistic(0);
+	private StatisticsKeeper loadStatistics = new StatisticsKeeper("load duration");
+
+	/**
+	 * Computation of the value for a key, as registered by {@link CacheAdapterBase#startLoading(String, String)}.
+	 */
+	public static class Load {
+		private final String key;
+		private final CountDownLatch done=new CountDownLatch(1);
+		private final long startTime=System.currentTimeMillis();
+		private boolean registered;
+
+		private Load(String key) {
+			this.key=key;
+		}
+	}
+
+	/**
+	 * Wrapper to keep track of the creation time of entries, used when <code>refreshAfterSeconds</code> is set.
+	 */
+	private static class TimestampedValue implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final Serializable value;
+		private final long created=System.currentTimeMillis();
+
+		TimestampedValue(Serializable value) {
+			this.value=value;
+		}
+	}
+
 	public void configure(String ownerName) throws ConfigurationException {
 		if (StringUtils.isEmpty(getName())) {
 			setName(ownerName+"Cache");
@@ -67,7 +133,12 @@ public abstract class CacheAdapterBase implements ICacheAdapter {
 		if (!("xml".equals(getValueXPathOutputType()) || "text".equals(getValueXPathOutputType()))) {
 			throw new ConfigurationException(getLogPrefix()+"valueXPathOutputType ["+getValueXPathOutputType()+"] must be either 'xml' or 'text'");
 		}
-		if (StringUtils.isNotEmpty(getKeyXPath()) || StringUtils.isNotEmpty(getKeyStyleSheet())) {
+		if ("text".equals(getKeyXPathOutputType()) && StringUtils.isNotEmpty(getKeyXPath()) && StringUtils.isEmpty(getKeyStyleSheet())) {
+			keyExpression=StreamingXPathFilter.compile(getKeyXPath(), getKeyNamespaceDefs(), true);
+		}
+		if (keyExpression!=null) {
+			if (log.isDebugEnabled()) log.debug(getLogPrefix()+"evaluating keyXPath ["+getKeyXPath()+"] while parsing");
+		} else if (StringUtils.isNotEmpty(getKeyXPath()) || StringUtils.isNotEmpty(getKeyStyleSheet())) {
 			keyTp=TransformerPool.configureTransformer(getLogPrefix(), classLoader, getKeyNamespaceDefs(), getKeyXPath(), getKeyStyleSheet(),getKeyXPathOutputType(),false,null);
 		}
 		if (StringUtils.isNotEmpty(getValueXPath()) || StringUtils.isNotEmpty(getValueStyleSheet())) {
@@ -85,7 +156,13 @@ public abstract class CacheAdapterBase implements ICacheAdapter {
 		if (StringUtils.isNotEmpty(getKeyInputSessionKey()) && sessionContext!=null) {
 			input=(String)sessionContext.get(getKeyInputSessionKey());
 		}
-		if (keyTp!=null) {
+		if (keyExpression!=null) {
+			try {
+				input=evaluateKeyXPath(input);
+			} catch (Exception e) {
+			   log.error(getLogPrefix()+"cannot determine cache key",e);
+			}
+		} else if (keyTp!=null) {
 			try {
 				input=keyTp.transform(input, null);
 			} catch (Exception e) {
@@ -102,6 +179,22 @@ public abstract class CacheAdapterBase implements ICacheAdapter {
 		return input;
 	}
 
+	/**
+	 * Evaluates the keyXPath while parsing the input, without building a document or running a transformation.
+	 */
+	private String evaluateKeyXPath(String input) throws IOException, SAXException, ParserConfigurationException {
+		XMLReader reader=keyReaders.get();
+		if (reader==null) {
+			reader=XmlUtils.getSAXParserFactory(true).newSAXParser().getXMLReader();
+			reader.setEntityResolver(new XmlExternalEntityResolver());
+			keyReaders.set(reader);
+		}
+		StreamingXPathFilter.TextCollector textCollector=new StreamingXPathFilter.TextCollector();
+		reader.setContentHandler(keyExpression.createFilter(textCollector));
+		reader.parse(new InputSource(new StringReader(input)));
+		return textCollector.getResult();
+	}
+
 	public String transformValue(String value, Map sessionContext) {
 		if (StringUtils.isNotEmpty(getValueInputSessionKey()) && sessionContext!=null) {
 			value=(String)sessionContext.get(getValueInputSessionKey());
@@ -124,18 +217,98 @@ public abstract class CacheAdapterBase implements ICacheAdapter {
 		return value;
 	}
 
+	/**
+	 * Determines whether the value stored under <code>valueKey</code> can be served from the cache.
+	 * Returns <code>null</code> when it can, otherwise returns a {@link Load} that registers the caller as the
+	 * thread that computes the value for <code>key</code>. The caller must store the computed value
+	 * and then call {@link #finishLoading(Load)}, also when the computation fails.
+	 * <p>
+	 * When another thread is already computing the value, this method waits until that thread is finished,
+	 * at most <code>loadTimeoutSeconds</code>, and then checks the cache again.
+	 * </p>
+	 */
+	public Load startLoading(String key, String valueKey) {
+		Load load=new Load(key);
+		Serializable entry=getElement(valueKey);
+		if (entry!=null) {
+			if (!isStale(entry)) {
+				numHits.increase();
+				return null;
+			}
+			if (loads.putIfAbsent(key, load)!=null) {
+				if (log.isDebugEnabled()) log.debug(getLogPrefix()+"serving stale value for key ["+key+"] while it is being refreshed");
+				numStaleHits.increase();
+				return null;
+			}
+			if (log.isDebugEnabled()) log.debug(getLogPrefix()+"refreshing stale value for key ["+key+"]");
+			load.registered=true;
+			numMisses.increase();
+			return load;
+		}
+		Load current=loads.putIfAbsent(key, load);
+		if (current==null) {
+			load.registered=true;
+			numMisses.increase();
+			return load;
+		}
+		numCoalescedWaits.increase();
+		if (log.isDebugEnabled()) log.debug(getLogPrefix()+"waiting for value for key ["+key+"] being computed by another thread");
+		try {
+			if (!current.done.await(getLoadTimeoutSeconds(), TimeUnit.SECONDS)) {
+				log.warn(getLogPrefix()+"value for key ["+key+"] not computed within ["+getLoadTimeoutSeconds()+"] seconds, will compute it independently");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (getElement(valueKey)!=null) {
+			numHits.increase();
+			return null;
+		}
+		numMisses.increase();
+		return load;
+	}
+
+	/**
+	 * Signals that the computation registered by {@link #startLoading(String, String)} is finished, releasing any threads waiting for it.
+	 */
+	public void finishLoading(Load load) {
+		loadStatistics.addValue(System.currentTimeMillis()-load.startTime);
+		if (load.registered) {
+			loads.remove(load.key, load);
+			load.done.countDown();
+		}
+	}
+
+	private boolean isStale(Serializable entry) {
+		return getRefreshAfterSeconds()>0 && entry instanceof TimestampedValue && System.currentTimeMillis()-((TimestampedValue)entry).created>getRefreshAfterSeconds()*1000L;
+	}
+
+	private Serializable unwrap(Serializable entry) {
+		if (entry instanceof TimestampedValue) {
+			return ((TimestampedValue)entry).value;
+		}
+		return entry;
+	}
+
+	private Serializable wrap(Serializable value) {
+		if (getRefreshAfterSeconds()>0 && value!=null) {
+			return new TimestampedValue(value);
+		}
+		return value;
+	}
+
 	public String getString(String key) {
-		return (String)getElement(key);
+		return (String)unwrap(getElement(key));
 	}
 	public void putString(String key, String value) {
-		putElement(key, value);
+		putElement(key, wrap(value));
 	}
 
 	public Serializable get(String key){
-		return getElement(key);
+		return unwrap(getElement(key));
 	}
 	public void put(String key, Serializable value) {
-		putElement(key, value);
+		putElement(key, wrap(value));
 	}
 
 	public Object getObject(String key){
@@ -149,6 +322,38 @@ public abstract class CacheAdapterBase implements ICacheAdapter {
 		return removeElement(key);
 	}
 
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		Object cacheData=hski.openGroup(data,getName(),"cache");
+		hski.handleScalar(cacheData,"hits", numHits.getValue());
+		hski.handleScalar(cacheData,"misses", numMisses.getValue());
+		hski.handleScalar(cacheData,"staleHits", numStaleHits.getValue());
+		hski.handleScalar(cacheData,"coalescedWaits", numCoalescedWaits.getValue());
+		hski.handleScalar(cacheData,"hitsThisInterval", numHits.getIntervalValue());
+		hski.handleScalar(cacheData,"missesThisInterval", numMisses.getIntervalValue());
+		hski.handleScalar(cacheData,"staleHitsThisInterval", numStaleHits.getIntervalValue());
+		hski.handleScalar(cacheData,"coalescedWaitsThisInterval", numCoalescedWaits.getIntervalValue());
+		hski.handleStatisticsKeeper(cacheData, loadStatistics);
+		numHits.performAction(action);
+		numMisses.performAction(action);
+		numStaleHits.performAction(action);
+		numCoalescedWaits.performAction(action);
+		loadStatistics.performAction(action);
+		hski.closeGroup(cacheData);
+	}
+
+	public long getHits() {
+		return numHits.getValue();
+	}
+	public long getMisses() {
+		return numMisses.getValue();
+	}
+	public long getStaleHits() {
+		return numStaleHits.getValue();
+	}
+	public long getCoalescedWaits() {
+		return numCoalescedWaits.getValue();
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -262,4 +467,22 @@ public abstract class CacheAdapterBase implements ICacheAdapter {
 		this.cacheEmptyValues = cacheEmptyValues;
 	}
 
+	public int getRefreshAfterSeconds() {
+		return refreshAfterSeconds;
+	}
+
+	@IbisDoc({"when set to a positive value, entries older than this number of seconds are recomputed by the first request that reads them, while concurrent requests are served the existing value until the recomputed value is available", "0"})
+	public void setRefreshAfterSeconds(int refreshAfterSeconds) {
+		this.refreshAfterSeconds = refreshAfterSeconds;
+	}
+
+	public int getLoadTimeoutSeconds() {
+		return loadTimeoutSeconds;
+	}
+
+	@IbisDoc({"maximum time a request waits for another request that is computing the value for the same key. When exceeded, the request computes the value itself", "60"})
+	public void setLoadTimeoutSeconds(int loadTimeoutSeconds) {
+		this.loadTimeoutSeconds = loadTimeoutSeconds;
+	}
+
 }
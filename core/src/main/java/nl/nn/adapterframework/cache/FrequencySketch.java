@@ -0,0 +1,98 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.cache;
+
+/**
+ * Count-min sketch with 4-bit counters, that estimates how often keys have been used recently.
+ * All counters are halved when the number of increments reaches ten times the maximum size of the cache,
+ * so that the estimates reflect recent use. Used by {@link LocalCache} to decide on admission (TinyLFU).
+ * Not thread safe.
+ *
+ * @since   7.3
+ */
+class FrequencySketch {
+
+	private static final long[] SEED = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final long ONE_MASK = 0x1111111111111111L;
+
+	private final long[] table;
+	private final int tableMask;
+	private final int sampleSize;
+	private int size;
+
+	FrequencySketch(int maximumSize) {
+		int maximum = Math.min(Math.max(maximumSize, 1), 1<<30);
+		table = new long[maximum==1 ? 1 : Integer.highestOneBit(maximum-1)<<1];
+		tableMask = table.length-1;
+		sampleSize = 10*Math.min(maximum, Integer.MAX_VALUE/10);
+	}
+
+	int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int start = (hash & 3) << 2;
+		int frequency = Integer.MAX_VALUE;
+		for (int i=0; i<4; i++) {
+			int index = indexOf(hash, i);
+			int count = (int)((table[index] >>> ((start+i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	void increment(Object key) {
+		int hash = spread(key.hashCode());
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i=0; i<4; i++) {
+			added |= incrementAt(indexOf(hash, i), start+i);
+		}
+		if (added && ++size==sampleSize) {
+			reset();
+		}
+	}
+
+	private boolean incrementAt(int index, int counter) {
+		int offset = counter << 2;
+		long mask = 0xfL << offset;
+		if ((table[index] & mask) != mask) {
+			table[index] += 1L << offset;
+			return true;
+		}
+		return false;
+	}
+
+	private void reset() {
+		int count = 0;
+		for (int i=0; i<table.length; i++) {
+			count += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size = (size >>> 1) - (count >>> 2);
+	}
+
+	private int indexOf(int hash, int i) {
+		long h = (hash + SEED[i]) * SEED[i];
+		h += h >>> 32;
+		return ((int)h) & tableMask;
+	}
+
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+}
@@ -0,0 +1,430 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.cache;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import nl.nn.adapterframework.configuration.ConfigurationException;
+import nl.nn.adapterframework.doc.IbisDoc;
+import nl.nn.adapterframework.util.AppConstants;
+
+/**
+ * In-memory cache, that keeps values on the heap without copying or serializing them.
+ * <p>
+ * The cache is bounded by the number of elements and optionally by the total weight of the elements, where the weight
+ * of a String is its length, the weight of a byte array is its length, and the weight of any other object is 1.
+ * Eviction follows the W-TinyLFU policy: new elements enter a small LRU window; elements leaving the window only replace an element
+ * of the main area when they have been used more frequently recently. This keeps frequently used elements in the cache when a burst
+ * of one-off requests passes by.
+ * </p>
+ * <p>
+ * Reads do not block: when another thread is updating the eviction order, the access is not recorded for eviction.
+ * Elements expire after <code>timeToLiveSeconds</code> since they were stored, or after <code>timeToIdleSeconds</code> since they were last used.
+ * </p>
+ * <p>
+ * N.B. the default values shown can be overridden using properties in appConstants. The property names are found by prefixing the attribute name with <code>cache.default.</code>.
+ * </p>
+ *
+ * @since   7.3
+ */
+public class LocalCache extends CacheAdapterBase {
+
+	private final String KEY_PREFIX="cache.default.";
+	private final String KEY_MAX_ELEMENTS_IN_MEMORY=KEY_PREFIX+"maxElementsInMemory";
+	private final String KEY_MAX_WEIGHT=KEY_PREFIX+"maxWeight";
+	private final String KEY_ETERNAL=KEY_PREFIX+"eternal";
+	private final String KEY_TIME_TO_LIVE_SECONDS=KEY_PREFIX+"timeToLiveSeconds";
+	private final String KEY_TIME_TO_IDLE_SECONDS=KEY_PREFIX+"timeToIdleSeconds";
+
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+	private static final int REMOVED = 3;
+
+	private int maxElementsInMemory=100;
+	private long maxWeight=0;
+	private boolean eternal=false;
+	private int timeToLiveSeconds=36000;
+	private int timeToIdleSeconds=36000;
+
+	private ConcurrentMap<Object,Node> data;
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	private FrequencySketch sketch;
+	private AccessOrder window;
+	private AccessOrder probation;
+	private AccessOrder protectedArea;
+	private int maxWindowSize;
+	private int maxProtectedSize;
+	private long weightedSize;
+
+	private static class Node {
+		final Object key;
+		final Object value;
+		final int weight;
+		final long created;
+		volatile long lastAccessed;
+		int segment=WINDOW;
+		Node previous;
+		Node next;
+
+		Node(Object key, Object value, int weight, long created) {
+			this.key=key;
+			this.value=value;
+			this.weight=weight;
+			this.created=created;
+			this.lastAccessed=created;
+		}
+	}
+
+	/**
+	 * Doubly linked list of nodes, least recently used first.
+	 */
+	private static class AccessOrder {
+		private Node first;
+		private Node last;
+		private int size;
+
+		void addLast(Node node) {
+			node.previous=last;
+			node.next=null;
+			if (last==null) {
+				first=node;
+			} else {
+				last.next=node;
+			}
+			last=node;
+			size++;
+		}
+
+		void remove(Node node) {
+			if (node.previous==null) {
+				first=node.next;
+			} else {
+				node.previous.next=node.next;
+			}
+			if (node.next==null) {
+				last=node.previous;
+			} else {
+				node.next.previous=node.previous;
+			}
+			node.previous=null;
+			node.next=null;
+			size--;
+		}
+
+		void moveToLast(Node node) {
+			if (node!=last) {
+				remove(node);
+				addLast(node);
+			}
+		}
+
+		void clear() {
+			first=null;
+			last=null;
+			size=0;
+		}
+	}
+
+	public LocalCache() {
+		super();
+		AppConstants ac = AppConstants.getInstance();
+		maxElementsInMemory=ac.getInt(KEY_MAX_ELEMENTS_IN_MEMORY, maxElementsInMemory);
+		maxWeight=ac.getLong(KEY_MAX_WEIGHT, maxWeight);
+		eternal=ac.getBoolean(KEY_ETERNAL, eternal);
+		timeToLiveSeconds=ac.getInt(KEY_TIME_TO_LIVE_SECONDS, timeToLiveSeconds);
+		timeToIdleSeconds=ac.getInt(KEY_TIME_TO_IDLE_SECONDS, timeToIdleSeconds);
+	}
+
+	@Override
+	public void configure(String ownerName) throws ConfigurationException {
+		super.configure(ownerName);
+		if (getMaxElementsInMemory()<1) {
+			throw new ConfigurationException(getLogPrefix()+"maxElementsInMemory ["+getMaxElementsInMemory()+"] must be positive");
+		}
+		maxWindowSize=Math.max(1, getMaxElementsInMemory()/100);
+		maxProtectedSize=(getMaxElementsInMemory()-maxWindowSize)*80/100;
+	}
+
+	public void open() {
+		data=new ConcurrentHashMap<Object,Node>();
+		sketch=new FrequencySketch(getMaxElementsInMemory());
+		window=new AccessOrder();
+		probation=new AccessOrder();
+		protectedArea=new AccessOrder();
+		weightedSize=0;
+	}
+
+	public void close() {
+		if (data==null) {
+			return;
+		}
+		evictionLock.lock();
+		try {
+			log.debug(getLogPrefix()+"clearing data");
+			data.clear();
+			window.clear();
+			probation.clear();
+			protectedArea.clear();
+			weightedSize=0;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	protected Serializable getElement(String key) {
+		return (Serializable)getElementObject(key);
+	}
+
+	protected void putElement(String key, Serializable value) {
+		putElementObject(key, value);
+	}
+
+	protected Object getElementObject(Object key) {
+		Node node=data.get(key);
+		if (node==null) {
+			if (evictionLock.tryLock()) {
+				try {
+					sketch.increment(key);
+				} finally {
+					evictionLock.unlock();
+				}
+			}
+			return null;
+		}
+		long now=System.currentTimeMillis();
+		if (isExpired(node, now)) {
+			evictionLock.lock();
+			try {
+				if (data.remove(key, node)) {
+					unlink(node);
+				}
+			} finally {
+				evictionLock.unlock();
+			}
+			return null;
+		}
+		node.lastAccessed=now;
+		if (evictionLock.tryLock()) {
+			try {
+				onAccess(node);
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+		return node.value;
+	}
+
+	protected void putElementObject(Object key, Object value) {
+		if (value==null) {
+			removeElement(key);
+			return;
+		}
+		Node node=new Node(key, value, weigh(value), System.currentTimeMillis());
+		evictionLock.lock();
+		try {
+			Node previous=data.put(key, node);
+			if (previous!=null) {
+				unlink(previous);
+			}
+			sketch.increment(key);
+			window.addLast(node);
+			weightedSize+=node.weight;
+			evict();
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	protected boolean removeElement(Object key) {
+		evictionLock.lock();
+		try {
+			Node node=data.remove(key);
+			if (node==null) {
+				return false;
+			}
+			unlink(node);
+			return true;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private int weigh(Object value) {
+		if (value instanceof String) {
+			return ((String)value).length();
+		}
+		if (value instanceof byte[]) {
+			return ((byte[])value).length;
+		}
+		return 1;
+	}
+
+	private boolean isExpired(Node node, long now) {
+		if (isEternal()) {
+			return false;
+		}
+		return getTimeToLiveSeconds()>0 && now-node.created>getTimeToLiveSeconds()*1000L
+			|| getTimeToIdleSeconds()>0 && now-node.lastAccessed>getTimeToIdleSeconds()*1000L;
+	}
+
+	private AccessOrder getSegment(Node node) {
+		switch (node.segment) {
+			case WINDOW: return window;
+			case PROBATION: return probation;
+			case PROTECTED: return protectedArea;
+			default: return null;
+		}
+	}
+
+	private void unlink(Node node) {
+		AccessOrder segment=getSegment(node);
+		if (segment!=null) {
+			segment.remove(node);
+			weightedSize-=node.weight;
+			node.segment=REMOVED;
+		}
+	}
+
+	private void onAccess(Node node) {
+		sketch.increment(node.key);
+		switch (node.segment) {
+			case WINDOW:
+				window.moveToLast(node);
+				break;
+			case PROBATION:
+				probation.remove(node);
+				node.segment=PROTECTED;
+				protectedArea.addLast(node);
+				while (protectedArea.size>maxProtectedSize) {
+					Node demoted=protectedArea.first;
+					protectedArea.remove(demoted);
+					demoted.segment=PROBATION;
+					probation.addLast(demoted);
+				}
+				break;
+			case PROTECTED:
+				protectedArea.moveToLast(node);
+				break;
+			default:
+				// removed by another thread
+		}
+	}
+
+	private boolean isOverCapacity() {
+		return data.size()>getMaxElementsInMemory() || getMaxWeight()>0 && weightedSize>getMaxWeight();
+	}
+
+	/**
+	 * Moves elements that overflow the window to the probation area, where they compete for admission
+	 * with the least recently used element of the probation area, based on their estimated frequency of use.
+	 */
+	private void evict() {
+		int candidates=0;
+		while (window.size>maxWindowSize) {
+			Node node=window.first;
+			window.remove(node);
+			node.segment=PROBATION;
+			probation.addLast(node);
+			candidates++;
+		}
+		while (isOverCapacity()) {
+			Node victim=probation.first;
+			if (victim==null) {
+				victim=protectedArea.first!=null ? protectedArea.first : window.first;
+				if (victim==null) {
+					return;
+				}
+				evictNode(victim);
+				continue;
+			}
+			Node candidate=candidates>0 ? probation.last : null;
+			boolean victimIsCandidate=probation.size<=candidates;
+			if (candidate==null || candidate==victim) {
+				evictNode(victim);
+			} else if (sketch.frequency(candidate.key)>sketch.frequency(victim.key)) {
+				evictNode(victim);
+			} else {
+				evictNode(candidate);
+				victimIsCandidate=true;
+			}
+			if (victimIsCandidate) {
+				candidates--;
+			}
+		}
+	}
+
+	private void evictNode(Node node) {
+		if (log.isDebugEnabled()) log.debug(getLogPrefix()+"evicting element with key ["+node.key+"]");
+		data.remove(node.key, node);
+		unlink(node);
+	}
+
+	/**
+	 * Returns the number of elements currently held, including expired elements that have not been removed yet.
+	 */
+	public int size() {
+		return data.size();
+	}
+
+	public int getMaxElementsInMemory() {
+		return maxElementsInMemory;
+	}
+
+	@IbisDoc({"the maximum number of elements in memory, before they are evicted", "100"})
+	public void setMaxElementsInMemory(int maxElementsInMemory) {
+		this.maxElementsInMemory = maxElementsInMemory;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	@IbisDoc({"the maximum total weight of the elements in memory, before they are evicted. The weight of a string is its length. When 0, only maxElementsInMemory applies", "0"})
+	public void setMaxWeight(long maxWeight) {
+		this.maxWeight = maxWeight;
+	}
+
+	public boolean isEternal() {
+		return eternal;
+	}
+
+	@IbisDoc({"if <code>true</code>, the elements in the cache are eternal, i.e. never expire", "<code>false</code>"})
+	public void setEternal(boolean eternal) {
+		this.eternal = eternal;
+	}
+
+	public int getTimeToLiveSeconds() {
+		return timeToLiveSeconds;
+	}
+
+	@IbisDoc({"the amount of time to live for an element from its creation date", "36000 (=10 hours)"})
+	public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+		this.timeToLiveSeconds = timeToLiveSeconds;
+	}
+
+	public int getTimeToIdleSeconds() {
+		return timeToIdleSeconds;
+	}
+
+	@IbisDoc({"the amount of time to live for an element from its last accessed or modified date", "36000 (=10 hours)"})
+	public void setTimeToIdleSeconds(int timeToIdleSeconds) {
+		this.timeToIdleSeconds = timeToIdleSeconds;
+	}
+}
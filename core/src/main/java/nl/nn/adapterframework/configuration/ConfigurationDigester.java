@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2016, 2018 Nationale-Nederlanden
+   Copyright 2013, 2016, 2018, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -26,14 +26,13 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 
-import javax.xml.transform.Transformer;
-
 import nl.nn.adapterframework.monitoring.MonitorManager;
 import nl.nn.adapterframework.util.AppConstants;
 import nl.nn.adapterframework.util.ClassUtils;
 import nl.nn.adapterframework.util.LogUtil;
 import nl.nn.adapterframework.util.Misc;
 import nl.nn.adapterframework.util.StringResolver;
+import nl.nn.adapterframework.util.TransformerPool;
 import nl.nn.adapterframework.util.XmlUtils;
 
 import org.apache.commons.digester.Digester;
@@ -173,12 +172,22 @@ public class ConfigurationDigester {
 		return digester;
 	}
 
+	/**
+	 * Digests the configuration and saves it to the instance config file. The
+	 * first configuration digested by this ConfigurationDigester overwrites the
+	 * file, the others are appended to it. Can be called by multiple threads
+	 * at the same time.
+	 */
 	public void digestConfiguration(ClassLoader classLoader, Configuration configuration, String configurationFile) throws ConfigurationException {
-		digestConfiguration(classLoader, configuration, configurationFile, configLogAppend);
-		configLogAppend = true;
+		digestConfiguration(classLoader, configuration, configurationFile, null);
 	}
 
 	public void digestConfiguration(ClassLoader classLoader, Configuration configuration, String configurationFile, boolean configLogAppend) throws ConfigurationException {
+		digestConfiguration(classLoader, configuration, configurationFile, Boolean.valueOf(configLogAppend));
+	}
+
+	private void digestConfiguration(ClassLoader classLoader, Configuration configuration, String configurationFile, Boolean configLogAppend) throws ConfigurationException {
+		long start = System.currentTimeMillis();
 		Digester digester = null;
 		try {
 			digester = getDigester(configuration);
@@ -192,30 +201,46 @@ public class ConfigurationDigester {
 			}
 			configuration.setDigesterRulesURL(digesterRulesURL);
 			configuration.setConfigurationURL(configurationFileURL);
-			fillConfigWarnDefaultValueExceptions(configuration);
 			String lineSeparator = SystemUtils.LINE_SEPARATOR;
 			if (null == lineSeparator) lineSeparator = "\n";
 			String original = Misc.resourceToString(configurationFileURL, lineSeparator, false);
 			original = XmlUtils.identityTransform(classLoader, original);
+			long readDuration = System.currentTimeMillis() - start;
+			fillConfigWarnDefaultValueExceptions(original);
 			configuration.setOriginalConfiguration(original);
 			List<String> propsToHide = new ArrayList<String>();
 			String propertiesHideString = AppConstants.getInstance(Thread.currentThread().getContextClassLoader()).getString("properties.hide", null);
 			if (propertiesHideString != null) {
 				propsToHide.addAll(Arrays.asList(propertiesHideString.split("[,\\s]+")));
 			}
+			long tweakStart = System.currentTimeMillis();
 			String loaded = StringResolver.substVars(original, AppConstants.getInstance(Thread.currentThread().getContextClassLoader()));
-			String loadedHide = StringResolver.substVars(original, AppConstants.getInstance(Thread.currentThread().getContextClassLoader()), null, propsToHide);
 			loaded = ConfigurationUtils.getUglifiedConfiguration(configuration, loaded);
-			loadedHide = ConfigurationUtils.getUglifiedConfiguration(configuration, loadedHide);
 			loaded = ConfigurationUtils.getActivatedConfiguration(configuration, loaded);
-			loadedHide = ConfigurationUtils.getActivatedConfiguration(configuration, loadedHide);
 			if (ConfigurationUtils.stubConfiguration()) {
 				loaded = ConfigurationUtils.getStubbedConfiguration(configuration, loaded);
-				loadedHide = ConfigurationUtils.getStubbedConfiguration(configuration, loadedHide);
+			}
+			String loadedHide;
+			if (propsToHide.isEmpty()) {
+				// nothing to hide, no need to tweak the configuration a second time
+				loadedHide = loaded;
+			} else {
+				loadedHide = StringResolver.substVars(original, AppConstants.getInstance(Thread.currentThread().getContextClassLoader()), null, propsToHide);
+				loadedHide = ConfigurationUtils.getUglifiedConfiguration(configuration, loadedHide);
+				loadedHide = ConfigurationUtils.getActivatedConfiguration(configuration, loadedHide);
+				if (ConfigurationUtils.stubConfiguration()) {
+					loadedHide = ConfigurationUtils.getStubbedConfiguration(configuration, loadedHide);
+				}
 			}
 			configuration.setLoadedConfiguration(loadedHide);
 			saveConfig(loadedHide, configLogAppend);
+			long parseStart = System.currentTimeMillis();
 			digester.parse(new StringReader(loaded));
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("digested configuration [" + configuration.getName() + "] in " + (System.currentTimeMillis() - start)
+						+ " ms (read " + readDuration + " ms, resolve and tweak " + (parseStart - tweakStart)
+						+ " ms, parse " + (System.currentTimeMillis() - parseStart) + " ms)");
+			}
 		} catch (Throwable t) {
 			// wrap exception to be sure it gets rendered via the IbisException-renderer
 			String currentElementName = null;
@@ -231,13 +256,21 @@ public class ConfigurationDigester {
 		}
 	}
 
-	private void saveConfig(String config, boolean append) {
+	/**
+	 * @param append when <code>null</code> the config is appended to the file
+	 * unless it is the first configuration saved by this ConfigurationDigester
+	 */
+	private synchronized void saveConfig(String config, Boolean append) {
+		if (append == null) {
+			append = Boolean.valueOf(configLogAppend);
+			configLogAppend = true;
+		}
 		String directoryName = AppConstants.getInstance().getResolvedProperty("log.dir");
 		String fileName = AppConstants.getInstance().getResolvedProperty("instance.name.lc")+"-config.xml";
 		File file = new File(directoryName, fileName);
 		FileWriter fileWriter = null;
 		try {
-			fileWriter = new FileWriter(file, append);
+			fileWriter = new FileWriter(file, append.booleanValue());
 			fileWriter.write(config);
 		} catch (IOException e) {
 			LOG.warn("Could not write configuration to file ["+file.getPath()+"]",e);
@@ -252,17 +285,13 @@ public class ConfigurationDigester {
 		}
 	}
 	
-	private  void fillConfigWarnDefaultValueExceptions(Configuration configuration) throws Exception {
+	private  void fillConfigWarnDefaultValueExceptions(String configString) throws Exception {
 		URL xsltSource = ClassUtils.getResourceURL(this, attributesGetter_xslt);
 		if (xsltSource == null) {
 			throw new ConfigurationException("cannot find resource ["+attributesGetter_xslt+"]");
 		}
-		Transformer transformer = XmlUtils.createTransformer(xsltSource);
-		String lineSeparator=SystemUtils.LINE_SEPARATOR;
-		if (null==lineSeparator) lineSeparator="\n";
-		String configString=Misc.resourceToString(configuration.getConfigurationURL(), lineSeparator, false);
-		configString=XmlUtils.identityTransform(configuration.getClassLoader(), configString);
-		String attributes = XmlUtils.transformXml(transformer, configString);
+		TransformerPool transformerPool = TransformerPool.getInstance(xsltSource, 0, true);
+		String attributes = transformerPool.transform(configString, null);
 		Element attributesElement = XmlUtils.buildElement(attributes);
 		Collection attributeElements =	XmlUtils.getChildTags(attributesElement, "attribute");
 		Iterator iter = attributeElements.iterator();
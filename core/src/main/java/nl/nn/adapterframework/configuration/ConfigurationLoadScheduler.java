@@ -0,0 +1,157 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.configuration;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.log4j.Logger;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import nl.nn.adapterframework.util.LogUtil;
+
+/**
+ * Runs the loaders of a number of configurations on a pool of threads, taking
+ * the dependencies between the configurations into account.
+ * <p>
+ * A loader is started as soon as all of its dependencies that are part of the
+ * same load have been loaded. Dependencies on configurations that are not part
+ * of the load are ignored. When none of the remaining loaders can be started
+ * while none is running, the dependencies are circular. In that case
+ * {@link #circularDependency(Loader, List)} is called and the first remaining
+ * loader is started anyway.
+ * </p>
+ * <p>
+ * A loader that fails does not stop the others. The first failure is thrown
+ * after all loaders have finished.
+ * </p>
+ *
+ * @since   7.3
+ */
+public class ConfigurationLoadScheduler {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private final int threads;
+
+	/**
+	 * Loads a single configuration.
+	 */
+	public interface Loader {
+		String getName();
+		/**
+		 * Returns the names of the configurations that must be loaded before this one.
+		 */
+		List<String> getDependencies();
+		void run();
+	}
+
+	private static class LoaderTask implements Callable<LoaderTask> {
+		private final Loader loader;
+		private RuntimeException failure;
+
+		LoaderTask(Loader loader) {
+			this.loader = loader;
+		}
+
+		@Override
+		public LoaderTask call() {
+			try {
+				loader.run();
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+			return this;
+		}
+	}
+
+	public ConfigurationLoadScheduler(int threads) {
+		this.threads = threads;
+	}
+
+	public void load(List<? extends Loader> loaders) {
+		Set<String> names = new HashSet<String>();
+		for (Loader loader : loaders) {
+			names.add(loader.getName());
+		}
+		Set<String> loaded = new HashSet<String>();
+		List<Loader> pending = new ArrayList<Loader>(loaders);
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("ConfigurationLoader-"));
+		CompletionService<LoaderTask> completionService = new ExecutorCompletionService<LoaderTask>(executor);
+		RuntimeException failure = null;
+		int running = 0;
+		try {
+			while (!pending.isEmpty() || running > 0) {
+				for (Iterator<Loader> it = pending.iterator(); it.hasNext();) {
+					Loader loader = it.next();
+					Set<String> dependencies = new HashSet<String>(loader.getDependencies());
+					dependencies.retainAll(names);
+					if (loaded.containsAll(dependencies)) {
+						completionService.submit(new LoaderTask(loader));
+						running++;
+						it.remove();
+					}
+				}
+				if (running == 0) {
+					Loader loader = pending.remove(0);
+					circularDependency(loader, getNames(pending));
+					completionService.submit(new LoaderTask(loader));
+					running++;
+				}
+				LoaderTask task = completionService.take().get();
+				running--;
+				loaded.add(task.loader.getName());
+				if (failure == null) {
+					failure = task.failure;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while loading configurations", e);
+		} catch (ExecutionException e) {
+			// LoaderTask.call() doesn't throw exceptions
+			throw new IllegalStateException("unexpected exception while loading configurations", e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Called when the remaining loaders depend on each other, before <code>loader</code> is started anyway.
+	 */
+	protected void circularDependency(Loader loader, List<String> others) {
+		log.warn("circular dependency between configurations " + others + " and [" + loader.getName() + "], loading it anyway");
+	}
+
+	private List<String> getNames(List<Loader> loaders) {
+		List<String> names = new ArrayList<String>();
+		for (Loader loader : loaders) {
+			names.add(loader.getName());
+		}
+		return names;
+	}
+}
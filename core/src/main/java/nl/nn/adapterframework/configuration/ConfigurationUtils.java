@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2016-2018 Nationale-Nederlanden
+   Copyright 2013, 2016-2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -26,7 +26,6 @@ import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
 
-import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 
@@ -38,7 +37,7 @@ import nl.nn.adapterframework.util.AppConstants;
 import nl.nn.adapterframework.util.ClassUtils;
 import nl.nn.adapterframework.util.DomBuilderException;
 import nl.nn.adapterframework.util.LogUtil;
-import nl.nn.adapterframework.util.XmlUtils;
+import nl.nn.adapterframework.util.TransformerPool;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 
@@ -85,13 +84,13 @@ public class ConfigurationUtils {
 			throw new ConfigurationException("cannot find resource [" + tweakXslt + "]");
 		}
 		try {
-			Transformer tweak_transformer = XmlUtils.createTransformer(tweak_xsltSource);
-			XmlUtils.setTransformerParameters(tweak_transformer, parameters);
+			// Use a cached pool, as every configuration is tweaked with the same stylesheets
+			TransformerPool tweak_transformerPool = TransformerPool.getInstance(tweak_xsltSource, 0, true);
 			// Use namespaceAware=true, otherwise for some reason the
 			// transformation isn't working with a SAXSource, in system out it
 			// generates:
 			// jar:file: ... .jar!/xml/xsl/active.xsl; Line #34; Column #13; java.lang.NullPointerException
-			return XmlUtils.transformXml(tweak_transformer, originalConfig, true);
+			return tweak_transformerPool.transform(originalConfig, parameters, true);
 		} catch (IOException e) {
 			throw new ConfigurationException("cannot retrieve [" + tweakXslt + "]", e);
 		} catch (TransformerConfigurationException tce) {
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2016 Nationale-Nederlanden
+   Copyright 2013, 2016, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -24,7 +24,8 @@ import org.apache.log4j.Logger;
  */
 public final class ConfigurationWarnings extends BaseConfigurationWarnings {
 	private static ConfigurationWarnings self = null;
-	private Configuration activeConfiguration = null;
+	// configurations can be digested in parallel, each in its own thread
+	private ThreadLocal<Configuration> activeConfiguration = new ThreadLocal<Configuration>();
 	
 	public static synchronized ConfigurationWarnings getInstance() {
 		if (self == null) {
@@ -46,30 +47,37 @@ public final class ConfigurationWarnings extends BaseConfigurationWarnings {
 	}
 
 	public boolean add(Logger log, String msg, Throwable t, boolean onlyOnce) {
-		if (activeConfiguration!=null) {
-			return activeConfiguration.getConfigurationWarnings().add(log, msg, t, onlyOnce);
+		Configuration configuration = activeConfiguration.get();
+		if (configuration!=null) {
+			return configuration.getConfigurationWarnings().add(log, msg, t, onlyOnce);
 		} else {
 			return super.add(log, msg, t, onlyOnce);
 		}
 	}
 
 	public boolean containsDefaultValueExceptions(String key) {
-		if (activeConfiguration!=null) {
-			return activeConfiguration.getConfigurationWarnings().containsDefaultValueExceptions(key);
+		Configuration configuration = activeConfiguration.get();
+		if (configuration!=null) {
+			return configuration.getConfigurationWarnings().containsDefaultValueExceptions(key);
 		} else {
 			return super.containsDefaultValueExceptions(key);
 		}
 	}
 
 	public boolean addDefaultValueExceptions(String key) {
-		if (activeConfiguration!=null) {
-			return activeConfiguration.getConfigurationWarnings().addDefaultValueExceptions(key);
+		Configuration configuration = activeConfiguration.get();
+		if (configuration!=null) {
+			return configuration.getConfigurationWarnings().addDefaultValueExceptions(key);
 		} else {
 			return super.addDefaultValueExceptions(key);
 		}
 	}
 	
 	public void setActiveConfiguration (Configuration configuration) {
-		activeConfiguration = configuration;
+		if (configuration==null) {
+			activeConfiguration.remove();
+		} else {
+			activeConfiguration.set(configuration);
+		}
 	}
 }
\ No newline at end of file
@@ -20,13 +20,16 @@ import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -38,6 +41,7 @@ import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.core.env.MutablePropertySources;
 import org.springframework.core.env.PropertiesPropertySource;
 import org.springframework.core.env.StandardEnvironment;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 import nl.nn.adapterframework.configuration.classloaders.BasePathClassLoader;
 import nl.nn.adapterframework.core.Adapter;
@@ -72,6 +76,7 @@ public class IbisContext {
 	private static final AppConstants APP_CONSTANTS = AppConstants.getInstance();
 	private static final String INSTANCE_NAME = APP_CONSTANTS.getResolvedProperty("instance.name");
 	private static final String CONFIGURATIONS = APP_CONSTANTS.getResolvedProperty("configurations.names.application");
+	private static final int CONFIGURATIONS_LOAD_THREADS = APP_CONSTANTS.getInt("configurations.load.threads", 1);
 	private static final String APPLICATION_SERVER_TYPE_PROPERTY = "application.server.type";
 	private static final long UPTIME = System.currentTimeMillis();
 
@@ -108,9 +113,10 @@ public class IbisContext {
 
 	private ApplicationContext applicationContext;
 	private IbisManager ibisManager;
-	private Map<String, MessageKeeper> messageKeepers = new HashMap<String, MessageKeeper>();
+	private ConcurrentMap<String, MessageKeeper> messageKeepers = new ConcurrentHashMap<String, MessageKeeper>();
 	private int messageKeeperSize = 10;
 	private FlowDiagram flowDiagram;
+	private volatile ExecutorService flowDiagramExecutor;
 	private ClassLoaderManager classLoaderManager = null;
 
 	public void setDefaultApplicationServerType(String defaultApplicationServerType) {
@@ -185,16 +191,19 @@ public class IbisContext {
 
 			AbstractSpringPoweredDigesterFactory.setIbisContext(this);
 			registerApplicationModules();
-			LOG.debug("found configurations to load ["+CONFIGURATIONS+"]");
-			load();
-			getMessageKeeper().setMaxSize(Math.max(messageKeeperSize, getMessageKeeper().size()));
 
 			//TODO consider moving this to #FlowDiagram
 			String graphvizJsVersion = APP_CONSTANTS.getProperty("graphviz.js.version", null);
 			String graphvizJsFormat = APP_CONSTANTS.getProperty("graphviz.js.format", null);
 			flowDiagram = new FlowDiagram(graphvizJsFormat, graphvizJsVersion);
+			flowDiagramExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("FlowDiagram-"));
+
+			LOG.debug("found configurations to load ["+CONFIGURATIONS+"]");
+			long loadStart = System.currentTimeMillis();
+			load();
+			getMessageKeeper().setMaxSize(Math.max(messageKeeperSize, getMessageKeeper().size()));
 
-			log("startup in " + (System.currentTimeMillis() - start) + " ms");
+			log("startup in " + (System.currentTimeMillis() - start) + " ms (configurations " + (System.currentTimeMillis() - loadStart) + " ms)");
 		}
 		catch (Exception e) {
 			//Catch all exceptions, the IBIS failed to startup...
@@ -286,6 +295,10 @@ public class IbisContext {
 			ibisManager.shutdown();
 		if(ibisContextReconnectThread != null)
 			ibisContextReconnectThread.interrupt();
+		if (flowDiagramExecutor != null) {
+			flowDiagramExecutor.shutdownNow();
+			flowDiagramExecutor = null;
+		}
 		destroyApplicationContext();
 		log("shutdown in " + (System.currentTimeMillis() - start) + " ms");
 	}
@@ -384,18 +397,24 @@ public class IbisContext {
 	}
 
 	/**
-	 * Loads, digests and starts a specified configuration
+	 * Loads, digests and starts a specified configuration. When more than one
+	 * configuration is loaded and <code>configurations.load.threads</code> is
+	 * larger than 1, the configurations are digested and started in parallel.
+	 * A configuration is only digested after the configurations it depends on
+	 * (see {@link #getConfigurationDependencies(String)}) have been loaded.
 	 * 
 	 * @param configurationName name of the configuration to load or null when you want to load all configurations
 	 * 
 	 * @see ClassLoaderManager#get(String)
-	 * @see #digestClassLoaderConfiguration(ClassLoader, ConfigurationDigester, String, ConfigurationException)
+	 * @see ConfigurationLoader
 	 */
 	public void load(String configurationName) {
 		boolean configFound = false;
+		long start = System.currentTimeMillis();
 
 		//We have an ordered list with all configurations, lets loop through!
 		ConfigurationDigester configurationDigester = new ConfigurationDigester();
+		List<ConfigurationLoader> configurationLoaders = new ArrayList<ConfigurationLoader>();
 		StringTokenizer tokenizer = new StringTokenizer(CONFIGURATIONS, ",");
 		while (tokenizer.hasMoreTokens()) {
 			String currentConfigurationName = tokenizer.nextToken();
@@ -417,10 +436,25 @@ public class IbisContext {
 					customClassLoaderConfigurationException = e;
 				}
 
-				digestClassLoaderConfiguration(classLoader, configurationDigester, currentConfigurationName, customClassLoaderConfigurationException);
+				// Create and register the configurations in the order in which they are specified
+				ConfigurationLoader configurationLoader = new ConfigurationLoader(classLoader, configurationDigester, currentConfigurationName, customClassLoaderConfigurationException);
+				configurationLoader.prepare();
+				configurationLoaders.add(configurationLoader);
 			}
 		}
 
+		int threads = Math.min(CONFIGURATIONS_LOAD_THREADS, configurationLoaders.size());
+		if (threads > 1) {
+			loadInParallel(configurationLoaders, threads);
+		} else {
+			for (ConfigurationLoader configurationLoader : configurationLoaders) {
+				configurationLoader.run();
+			}
+		}
+		if (configurationLoaders.size() > 1) {
+			log("loaded " + configurationLoaders.size() + " configurations in " + (System.currentTimeMillis() - start) + " ms using " + Math.max(threads, 1) + " thread(s)");
+		}
+
 		generateFlow();
 		//Check if the configuration we try to reload actually exists
 		if (!configFound) {
@@ -429,6 +463,43 @@ public class IbisContext {
 		}
 	}
 
+	/**
+	 * Digests and starts the configurations on a pool of <code>threads</code>
+	 * threads, see {@link ConfigurationLoadScheduler}.
+	 */
+	private void loadInParallel(List<ConfigurationLoader> configurationLoaders, int threads) {
+		ConfigurationLoadScheduler scheduler = new ConfigurationLoadScheduler(threads) {
+			@Override
+			protected void circularDependency(Loader loader, List<String> others) {
+				log(loader.getName(), null, "circular dependency between configurations " + others + " and [" + loader.getName() + "], loading it anyway", MessageKeeperMessage.WARN_LEVEL);
+			}
+		};
+		scheduler.load(configurationLoaders);
+	}
+
+	/**
+	 * Returns the names of the configurations that need to be loaded before
+	 * the specified configuration, i.e. its <code>configurations.&lt;name&gt;.parentConfig</code>
+	 * and the comma separated list in <code>configurations.&lt;name&gt;.dependsOn</code>.
+	 * The latter should contain the configurations of the JavaListeners called
+	 * by IbisLocalSenders of the configuration.
+	 */
+	public List<String> getConfigurationDependencies(String currentConfigurationName) {
+		List<String> dependencies = new ArrayList<String>();
+		String parentConfig = APP_CONSTANTS.getResolvedProperty("configurations." + currentConfigurationName + ".parentConfig");
+		if (StringUtils.isNotEmpty(parentConfig)) {
+			dependencies.add(parentConfig);
+		}
+		String dependsOn = APP_CONSTANTS.getResolvedProperty("configurations." + currentConfigurationName + ".dependsOn");
+		if (StringUtils.isNotEmpty(dependsOn)) {
+			StringTokenizer tokenizer = new StringTokenizer(dependsOn, ", ");
+			while (tokenizer.hasMoreTokens()) {
+				dependencies.add(tokenizer.nextToken());
+			}
+		}
+		return dependencies;
+	}
+
 	public String getConfigurationFile(String currentConfigurationName) {
 		String configurationFile = APP_CONSTANTS.getResolvedProperty(
 				"configurations." + currentConfigurationName + ".configurationFile");
@@ -441,126 +512,209 @@ public class IbisContext {
 		return configurationFile;
 	}
 
-	private void digestClassLoaderConfiguration(ClassLoader classLoader, 
-			ConfigurationDigester configurationDigester, 
-			String currentConfigurationName, 
-			ConfigurationException customClassLoaderConfigurationException) {
+	/**
+	 * Loads a single configuration. {@link #prepare()} creates the
+	 * Configuration and registers it at the IbisManager, and is called for
+	 * all configurations in the order in which they are specified.
+	 * {@link #call()} migrates the database, digests and starts the
+	 * Configuration, and might be called from a thread of the pool used by
+	 * {@link IbisContext#loadInParallel(List, int)}.
+	 */
+	private class ConfigurationLoader implements ConfigurationLoadScheduler.Loader {
+		private ClassLoader classLoader;
+		private ConfigurationDigester configurationDigester;
+		private String currentConfigurationName;
+		private ConfigurationException customClassLoaderConfigurationException;
+		private String currentConfigurationVersion;
+		private Configuration configuration;
+		private long prepareDuration;
+
+		ConfigurationLoader(ClassLoader classLoader, ConfigurationDigester configurationDigester,
+				String currentConfigurationName, ConfigurationException customClassLoaderConfigurationException) {
+			this.classLoader = classLoader;
+			this.configurationDigester = configurationDigester;
+			this.currentConfigurationName = currentConfigurationName;
+			this.customClassLoaderConfigurationException = customClassLoaderConfigurationException;
+		}
 
-		long start = System.currentTimeMillis();
-		try {
-			if(classLoader != null)
-				classLoaderManager.reload(classLoader);
-		} catch (ConfigurationException e) {
-			customClassLoaderConfigurationException = e;
+		@Override
+		public String getName() {
+			return currentConfigurationName;
 		}
 
-		String configurationFile = getConfigurationFile(currentConfigurationName);
-		String currentConfigurationVersion =
-				getConfigurationVersion(AppConstants.getInstance(classLoader));
-		Configuration configuration = null;
-		ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
-		if (classLoader != null) {
-			Thread.currentThread().setContextClassLoader(classLoader);
+		@Override
+		public List<String> getDependencies() {
+			return getConfigurationDependencies(currentConfigurationName);
 		}
-		try {
-			configuration = new Configuration(new BasicAdapterServiceImpl());
-			configuration.setName(currentConfigurationName);
-			configuration.setVersion(currentConfigurationVersion);
-			configuration.setIbisManager(ibisManager);
-			ibisManager.addConfiguration(configuration);
-			ConfigurationWarnings.getInstance().setActiveConfiguration(configuration);
-			if (customClassLoaderConfigurationException == null) {
-
-				if(AppConstants.getInstance(classLoader).getBoolean("jdbc.migrator.active", false)) {
-					try {
-						Migrator databaseMigrator = (Migrator) getBean("jdbcMigrator");
-						databaseMigrator.setIbisContext(this);
-						databaseMigrator.configure(currentConfigurationName, classLoader);
-						databaseMigrator.update();
-						databaseMigrator.close();
+
+		public void prepare() {
+			long start = System.currentTimeMillis();
+			try {
+				if(classLoader != null)
+					classLoaderManager.reload(classLoader);
+			} catch (ConfigurationException e) {
+				customClassLoaderConfigurationException = e;
+			}
+
+			currentConfigurationVersion =
+					getConfigurationVersion(AppConstants.getInstance(classLoader));
+			ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+			if (classLoader != null) {
+				Thread.currentThread().setContextClassLoader(classLoader);
+			}
+			try {
+				configuration = new Configuration(new BasicAdapterServiceImpl());
+				configuration.setName(currentConfigurationName);
+				configuration.setVersion(currentConfigurationVersion);
+				configuration.setIbisManager(ibisManager);
+				ibisManager.addConfiguration(configuration);
+			} finally {
+				Thread.currentThread().setContextClassLoader(originalClassLoader);
+			}
+			prepareDuration = System.currentTimeMillis() - start;
+		}
+
+		@Override
+		public void run() {
+			long start = System.currentTimeMillis();
+			long migrationDuration = 0;
+			long digestDuration = 0;
+			String configurationFile = getConfigurationFile(currentConfigurationName);
+			ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+			if (classLoader != null) {
+				Thread.currentThread().setContextClassLoader(classLoader);
+			}
+			try {
+				ConfigurationWarnings.getInstance().setActiveConfiguration(configuration);
+				if (customClassLoaderConfigurationException == null) {
+
+					if(AppConstants.getInstance(classLoader).getBoolean("jdbc.migrator.active", false)) {
+						long migrationStart = System.currentTimeMillis();
+						try {
+							Migrator databaseMigrator = (Migrator) getBean("jdbcMigrator");
+							databaseMigrator.setIbisContext(IbisContext.this);
+							databaseMigrator.configure(currentConfigurationName, classLoader);
+							databaseMigrator.update();
+							databaseMigrator.close();
+						}
+						catch (Exception e) {
+							log(currentConfigurationName, currentConfigurationVersion, e.getMessage(), MessageKeeperMessage.ERROR_LEVEL);
+						}
+						migrationDuration = System.currentTimeMillis() - migrationStart;
 					}
-					catch (Exception e) {
-						log(currentConfigurationName, currentConfigurationVersion, e.getMessage(), MessageKeeperMessage.ERROR_LEVEL);
+
+					long digestStart = System.currentTimeMillis();
+					configurationDigester.digestConfiguration(classLoader, configuration, configurationFile);
+					digestDuration = System.currentTimeMillis() - digestStart;
+					if (currentConfigurationVersion == null) {
+						currentConfigurationVersion = configuration.getVersion();
+					} else if (!currentConfigurationVersion.equals(configuration.getVersion())) {
+						log(currentConfigurationName, currentConfigurationVersion,
+								"configuration version doesn't match Configuration version attribute: "
+								+ configuration.getVersion(),
+								MessageKeeperMessage.WARN_LEVEL);
+					}
+					if (!currentConfigurationName.equals(configuration.getName())) {
+						log(currentConfigurationName, currentConfigurationVersion,
+								"configuration name doesn't match Configuration name attribute: "
+								+ configuration.getName(),
+								MessageKeeperMessage.WARN_LEVEL);
+						MessageKeeper messageKeeper = messageKeepers.remove(currentConfigurationName);
+						if (messageKeeper != null) {
+							messageKeepers.put(configuration.getName(), messageKeeper);
+						}
 					}
-				}
 
-				configurationDigester.digestConfiguration(classLoader, configuration, configurationFile);
-				if (currentConfigurationVersion == null) {
-					currentConfigurationVersion = configuration.getVersion();
-				} else if (!currentConfigurationVersion.equals(configuration.getVersion())) {
-					log(currentConfigurationName, currentConfigurationVersion,
-							"configuration version doesn't match Configuration version attribute: "
-							+ configuration.getVersion(),
-							MessageKeeperMessage.WARN_LEVEL);
-				}
-				if (!currentConfigurationName.equals(configuration.getName())) {
-					log(currentConfigurationName, currentConfigurationVersion,
-							"configuration name doesn't match Configuration name attribute: "
-							+ configuration.getName(),
-							MessageKeeperMessage.WARN_LEVEL);
-					messageKeepers.put(configuration.getName(),
-							messageKeepers.remove(currentConfigurationName));
+					long startDuration = 0;
+					if (configuration.isAutoStart()) {
+						long startStart = System.currentTimeMillis();
+						ibisManager.startConfiguration(configuration);
+						startDuration = System.currentTimeMillis() - startStart;
+					}
+					String durations = " ms (classloader " + prepareDuration + " ms, migration " + migrationDuration
+							+ " ms, digestion " + digestDuration + " ms, start " + startDuration + " ms)";
+					if (configuration.isAutoStart()) {
+						log(currentConfigurationName, currentConfigurationVersion,
+								"startup in " + (System.currentTimeMillis() - start + prepareDuration) + durations);
+					}
+					else {
+						log(currentConfigurationName, currentConfigurationVersion,
+								"configured in " + (System.currentTimeMillis() - start + prepareDuration) + durations);
+					}
+					generateFlows(configuration, currentConfigurationName, currentConfigurationVersion);
+				} else {
+					throw customClassLoaderConfigurationException;
 				}
+			} catch (ConfigurationException e) {
+				configuration.setConfigurationException(e);
+				log(currentConfigurationName, currentConfigurationVersion, " exception",
+						MessageKeeperMessage.ERROR_LEVEL, e);
+			} finally {
+				Thread.currentThread().setContextClassLoader(originalClassLoader);
+				ConfigurationWarnings.getInstance().setActiveConfiguration(null);
+			}
+		}
+	}
 
-				if (configuration.isAutoStart()) {
-					ibisManager.startConfiguration(configuration);
-					log(currentConfigurationName, currentConfigurationVersion,
-							"startup in " + (System.currentTimeMillis() - start) + " ms");
-				}
-				else {
-					log(currentConfigurationName, currentConfigurationVersion,
-							"configured in " + (System.currentTimeMillis() - start) + " ms");
+	/**
+	 * Generates the flow diagrams of the adapters and of the configuration in
+	 * the background, to prevent it from delaying the startup.
+	 */
+	private void generateFlows(final Configuration configuration,
+			final String currentConfigurationName, final String currentConfigurationVersion) {
+		submitFlowDiagramTask(new Runnable() {
+			@Override
+			public void run() {
+				long start = System.currentTimeMillis();
+				List<IAdapter> registeredAdapters = configuration
+						.getRegisteredAdapters();
+				for (Iterator adapterIt = registeredAdapters.iterator(); adapterIt
+						.hasNext();) {
+					Adapter adapter = (Adapter) adapterIt.next();
+					try {
+						flowDiagram.generate(adapter);
+					} catch (Exception e) {
+						log(currentConfigurationName, currentConfigurationVersion,
+								"error generating flowDiagram for adapter ["
+										+ adapter.getName() + "]",
+								MessageKeeperMessage.WARN_LEVEL, e);
+					}
 				}
-				generateFlows(configuration, currentConfigurationName, currentConfigurationVersion);
-			} else {
-				throw customClassLoaderConfigurationException;
-			}
-		} catch (ConfigurationException e) {
-			configuration.setConfigurationException(e);
-			log(currentConfigurationName, currentConfigurationVersion, " exception",
-					MessageKeeperMessage.ERROR_LEVEL, e);
-		} finally {
-			Thread.currentThread().setContextClassLoader(originalClassLoader);
-			ConfigurationWarnings.getInstance().setActiveConfiguration(null);
-		}
-	}
-
-	private void generateFlows(Configuration configuration,
-			String currentConfigurationName, String currentConfigurationVersion) {
-		if (flowDiagram != null) {
-			List<IAdapter> registeredAdapters = configuration
-					.getRegisteredAdapters();
-			for (Iterator adapterIt = registeredAdapters.iterator(); adapterIt
-					.hasNext();) {
-				Adapter adapter = (Adapter) adapterIt.next();
+
 				try {
-					flowDiagram.generate(adapter);
+					flowDiagram.generate(configuration);
 				} catch (Exception e) {
 					log(currentConfigurationName, currentConfigurationVersion,
-							"error generating flowDiagram for adapter ["
-									+ adapter.getName() + "]",
+							"error generating flowDiagram for configuration ["
+									+ configuration.getName() + "]",
 							MessageKeeperMessage.WARN_LEVEL, e);
 				}
+				LOG.info("generated flow diagrams of configuration [" + currentConfigurationName + "] in " + (System.currentTimeMillis() - start) + " ms");
 			}
+		});
+	}
 
-			try {
-				flowDiagram.generate(configuration);
-			} catch (Exception e) {
-				log(currentConfigurationName, currentConfigurationVersion,
-						"error generating flowDiagram for configuration ["
-								+ configuration.getName() + "]",
-						MessageKeeperMessage.WARN_LEVEL, e);
+	private void generateFlow() {
+		final List<Configuration> configurations = new ArrayList<Configuration>(ibisManager.getConfigurations());
+		submitFlowDiagramTask(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flowDiagram.generate(configurations);
+				} catch (Exception e) {
+					log("*ALL*", null, "error generating flowDiagram", MessageKeeperMessage.WARN_LEVEL, e);
+				}
 			}
-		}
+		});
 	}
 
-	private void generateFlow() {
-		if (flowDiagram != null) {
-			List<Configuration> configurations = ibisManager.getConfigurations();
+	private void submitFlowDiagramTask(Runnable task) {
+		ExecutorService executor = flowDiagramExecutor;
+		if (flowDiagram != null && executor != null) {
 			try {
-				flowDiagram.generate(configurations);
-			} catch (Exception e) {
-				log("*ALL*", null, "error generating flowDiagram", MessageKeeperMessage.WARN_LEVEL, e);
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				LOG.debug("not generating flow diagram, IbisContext is shutting down");
 			}
 		}
 	}
@@ -595,7 +749,10 @@ public class IbisContext {
 		MessageKeeper messageKeeper = messageKeepers.get(key);
 		if (messageKeeper == null) {
 			messageKeeper = new MessageKeeper(messageKeeperSize < 1 ? 1 : messageKeeperSize);
-			messageKeepers.put(key, messageKeeper);
+			MessageKeeper existing = messageKeepers.putIfAbsent(key, messageKeeper);
+			if (existing != null) {
+				messageKeeper = existing;
+			}
 		}
 		String m;
 		String version;
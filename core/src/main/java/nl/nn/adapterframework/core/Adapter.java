@@ -1,5 +1,5 @@
 /*
-   Copyright 2013-2018 Nationale-Nederlanden
+   Copyright 2013-2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -23,6 +23,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import nl.nn.adapterframework.cache.ICacheAdapter;
 import nl.nn.adapterframework.configuration.Configuration;
@@ -35,6 +37,7 @@ import nl.nn.adapterframework.receivers.ReceiverBase;
 import nl.nn.adapterframework.statistics.HasStatistics;
 import nl.nn.adapterframework.statistics.StatisticsKeeper;
 import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.AppConstants;
 import nl.nn.adapterframework.util.CounterStatistic;
 import nl.nn.adapterframework.util.DateUtils;
@@ -92,7 +95,7 @@ public class Adapter implements IAdapter, NamedBean {
 	private boolean active=true;
 
 	private ArrayList<IReceiver> receivers = new ArrayList<IReceiver>();
-	private long lastMessageDate = 0;
+	private volatile long lastMessageDate = 0;
 	private PipeLine pipeline;
 
 	private Map<String, SenderLastExitState> sendersLastExitState = new HashMap<String, SenderLastExitState>();
@@ -107,12 +110,13 @@ public class Adapter implements IAdapter, NamedBean {
 		}
 	}
 	
-	private int numOfMessagesInProcess = 0;
+	private AtomicInteger numOfMessagesInProcess = new AtomicInteger();
+	private Object messagesInProcessLock = new Object();
    
 	private CounterStatistic numOfMessagesProcessed = new CounterStatistic(0);
 	private CounterStatistic numOfMessagesInError = new CounterStatistic(0);
 	
-	private long[] numOfMessagesStartProcessingByHour = new long[24];
+	private AtomicLongArray numOfMessagesStartProcessingByHour = new AtomicLongArray(24);
 	
 	private StatisticsKeeper statsMessageProcessingDuration = null;
 
@@ -236,33 +240,30 @@ public class Adapter implements IAdapter, NamedBean {
 	 * Increase the number of messages in process
 	 */
 	private void incNumOfMessagesInProcess(long startTime) {
-		synchronized (statsMessageProcessingDuration) {
-			numOfMessagesInProcess++;
-			lastMessageDate = startTime;
-			Calendar cal = Calendar.getInstance();
-			cal.setTimeInMillis(startTime);
-			int hour = cal.get(Calendar.HOUR_OF_DAY);
-			numOfMessagesStartProcessingByHour[hour]++;
-		}
+		numOfMessagesInProcess.incrementAndGet();
+		lastMessageDate = startTime;
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(startTime);
+		int hour = cal.get(Calendar.HOUR_OF_DAY);
+		numOfMessagesStartProcessingByHour.incrementAndGet(hour);
 	}
 	/**
 	 * Decrease the number of messages in process
 	 */
-	private synchronized void decNumOfMessagesInProcess(long duration) {
-		synchronized (statsMessageProcessingDuration) {
-			numOfMessagesInProcess--;
-			numOfMessagesProcessed.increase();
-			statsMessageProcessingDuration.addValue(duration);
-			notifyAll();
+	private void decNumOfMessagesInProcess(long duration) {
+		numOfMessagesProcessed.increase();
+		statsMessageProcessingDuration.addValue(duration);
+		if (numOfMessagesInProcess.decrementAndGet()==0) {
+			synchronized (messagesInProcessLock) {
+				messagesInProcessLock.notifyAll();
+			}
 		}
 	}
 	/**
 	 * The number of messages for which processing ended unsuccessfully.
 	 */
 	private void incNumOfMessagesInError() {
-		synchronized (statsMessageProcessingDuration) {
-			numOfMessagesInError.increase();
-		}
+		numOfMessagesInError.increase();
 	}
 
 	public void setLastExitState(String pipeName, long lastExitStateDate, String lastExitState) {
@@ -375,14 +376,15 @@ public class Adapter implements IAdapter, NamedBean {
 		numOfMessagesInError.performAction(action);
 
 		Object hourData=hski.openGroup(adapterData,getName(),"processing by hour");
-		for (int i=0; i<getNumOfMessagesStartProcessingByHour().length; i++) {
+		long[] numOfMessagesStartProcessingByHour = getNumOfMessagesStartProcessingByHour();
+		for (int i=0; i<numOfMessagesStartProcessingByHour.length; i++) {
 			String startTime;
 			if (i<10) {
 				startTime = "0" + i + ":00";
 			} else {
 				startTime = i + ":00";
 			}
-			hski.handleScalar(hourData, startTime, getNumOfMessagesStartProcessingByHour()[i]);
+			hski.handleScalar(hourData, startTime, numOfMessagesStartProcessingByHour[i]);
 		}
 		hski.closeGroup(hourData);
 
@@ -440,29 +442,25 @@ public class Adapter implements IAdapter, NamedBean {
 	 * The number of messages for which processing ended unsuccessfully.
 	 */
 	public long getNumOfMessagesInError() {
-		synchronized (statsMessageProcessingDuration) {
-			return numOfMessagesInError.getValue();
-		}
+		return numOfMessagesInError.getValue();
 	}
 	public int getNumOfMessagesInProcess() {
-		synchronized (statsMessageProcessingDuration) {
-			return numOfMessagesInProcess;
-		}
+		return numOfMessagesInProcess.get();
 	}
 
 	public long[] getNumOfMessagesStartProcessingByHour() {
-		synchronized (statsMessageProcessingDuration) {
-			return numOfMessagesStartProcessingByHour;
+		long[] result = new long[numOfMessagesStartProcessingByHour.length()];
+		for (int i=0; i<result.length; i++) {
+			result[i] = numOfMessagesStartProcessingByHour.get(i);
 		}
+		return result;
 	}
 	/**
 	 * Total of messages processed
 	 * @return long total messages processed
 	 */
 	public long getNumOfMessagesProcessed() {
-		synchronized (statsMessageProcessingDuration) {
-			return numOfMessagesProcessed.getValue();
-		}
+		return numOfMessagesProcessed.getValue();
 	}
 
 	public IReceiver getReceiverByName(String receiverName) {
@@ -537,6 +535,10 @@ public class Adapter implements IAdapter, NamedBean {
 	}
 
 	public PipeLineResult processMessage(String messageId, String message, IPipeLineSession pipeLineSession) {
+		return processMessage(messageId, new Message(message), pipeLineSession);
+	}
+
+	public PipeLineResult processMessage(String messageId, Message message, IPipeLineSession pipeLineSession) {
 		long startTime = System.currentTimeMillis();
 		try {
 			return processMessageWithExceptions(messageId, message, pipeLineSession);
@@ -556,7 +558,7 @@ public class Adapter implements IAdapter, NamedBean {
 					objectInError = this;
 				}
 			}
-			result.setResult(formatErrorMessage(msg, t, message, messageId, objectInError, startTime));
+			result.setResult(formatErrorMessage(msg, t, message==null ? null : message.toString(), messageId, objectInError, startTime));
 			//if (isRequestReplyLogging()) {
 			String logMsg = "Adapter [" + getName() + "] messageId [" + messageId + "] got exit-state [" + result.getState() + "] and result [" + result.getResult() + "] from PipeLine";
 			if (isMsgLogTerseEnabled()) {
@@ -574,6 +576,10 @@ public class Adapter implements IAdapter, NamedBean {
 	}
 	
 	public PipeLineResult processMessageWithExceptions(String messageId, String message, IPipeLineSession pipeLineSession) throws ListenerException {
+		return processMessageWithExceptions(messageId, new Message(message), pipeLineSession);
+	}
+
+	public PipeLineResult processMessageWithExceptions(String messageId, Message message, IPipeLineSession pipeLineSession) throws ListenerException {
 
 		PipeLineResult result = new PipeLineResult();
 
@@ -633,9 +639,9 @@ public class Adapter implements IAdapter, NamedBean {
 
 
 		try {
-			if (message == null && isReplaceNullMessage()) {
+			if ((message == null || message.isNull()) && isReplaceNullMessage()) {
 				log.debug("Adapter [" + getName() + "] replaces null message with messageId [" + messageId + "] by empty message");
-				message = "";
+				message = new Message("");
 			}
 			result = pipeline.process(messageId, message,pipeLineSession);
 			String durationString = Misc.getAge(startTime);
@@ -667,6 +673,7 @@ public class Adapter implements IAdapter, NamedBean {
 			long duration = endTime - startTime;
 			//reset the InProcess fields, and increase processedMessagesCount
 			decNumOfMessagesInProcess(duration);
+			pipeLineSession.closeScheduledResources();
 	
 			if (log.isDebugEnabled()) { // for performance reasons
 				log.debug("Adapter: [" + getName()
@@ -959,6 +966,14 @@ public class Adapter implements IAdapter, NamedBean {
 	private String getFileSizeAsBytes(String string) {
 		return Misc.toFileSize(string.getBytes().length, false, true);
 	}
+
+	private String getFileSizeAsBytes(Message message) {
+		if (!message.isRepeatable()) {
+			// the size of a streaming message is not known without reading it
+			return "unknown";
+		}
+		return getFileSizeAsBytes(message.toString());
+	}
 	
 	public String getAdapterConfigurationAsString()
 			throws ConfigurationException {
@@ -973,9 +988,9 @@ public class Adapter implements IAdapter, NamedBean {
 	}
 	
 	public void waitForNoMessagesInProcess() throws InterruptedException {
-		synchronized (statsMessageProcessingDuration) {
+		synchronized (messagesInProcessLock) {
 			while (getNumOfMessagesInProcess() > 0) {
-				wait();
+				messagesInProcessLock.wait();
 			}
 		}
 	}
@@ -0,0 +1,33 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.core;
+
+/**
+ * PipeLineSession created by a sender for a single call to another adapter in the same JVM.
+ * <p>
+ * The receiver of the called adapter uses it as its PipeLineSession as is, instead of copying it into a new session
+ * and copying the result back when the pipeline has finished. After the call the caller reads the returned session
+ * keys from it. A ChildPipeLineSession must therefore not be reused for another call.
+ * </p>
+ *
+ * @since   7.3
+ */
+public class ChildPipeLineSession extends PipeLineSessionBase {
+
+	public ChildPipeLineSession() {
+		super();
+	}
+}
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2016 Nationale-Nederlanden
+   Copyright 2013, 2016, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -20,6 +20,7 @@ import java.util.Iterator;
 import nl.nn.adapterframework.configuration.Configuration;
 import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.MessageKeeper;
 
 /**
@@ -49,6 +50,11 @@ public interface IAdapter extends IManagable {
 	Iterator<IReceiver> getReceiverIterator();
 	PipeLineResult processMessage(String messageId, String message, IPipeLineSession pipeLineSession);
 	PipeLineResult processMessageWithExceptions(String messageId, String message, IPipeLineSession pipeLineSession) throws ListenerException;
+	/**
+	 * Processes a {@link Message}, that is passed to the pipeline without being read into memory.
+	 */
+	PipeLineResult processMessage(String messageId, Message message, IPipeLineSession pipeLineSession);
+	PipeLineResult processMessageWithExceptions(String messageId, Message message, IPipeLineSession pipeLineSession) throws ListenerException;
 
 	void registerPipeLine (PipeLine pipeline) throws ConfigurationException;
 	void setConfiguration(Configuration configuration);
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -29,6 +29,13 @@ public interface IMessageBrowser extends IXAEnabled {
 	 */
 	IMessageBrowsingIterator getIterator() throws ListenerException;
 	IMessageBrowsingIterator getIterator(Date startTime, Date endTime, boolean forceDescending) throws ListenerException;
+	/**
+	 * Gets an enumeration of messages, that starts after the message with key <code>startKey</code>, or at the first message when 
+	 * <code>startKey</code> is <code>null</code>. Messages are retrieved in pages of at most <code>pageSize</code> messages, 
+	 * so browsing a large store does not require a single long-running query. The key of the last message returned 
+	 * can be used as startKey to continue browsing.
+	 */
+	IMessageBrowsingIterator getIterator(String startKey, Date startTime, Date endTime, boolean forceDescending, int pageSize) throws ListenerException;
 	
 	/**
 	 * Retrieves the message context as an iteratorItem.
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,6 +15,7 @@
 */
 package nl.nn.adapterframework.core;
 
+import java.io.Closeable;
 import java.security.Principal;
 import java.util.Map;
 
@@ -26,7 +27,9 @@ import java.util.Map;
  * one another.
  * <p>The object is cleared each time a new message is processed,
  * and the original message (as it arrived on the <code>PipeLine</code>
- * is stored in the key identified by <code>originalMessageKey</code>.
+ * is stored in the key identified by <code>originalMessageKey</code>,
+ * as a String. A message that arrives as a stream is not stored there, as the
+ * first pipe consumes it.
  * The messageId is stored under the key identified by <code>messageId</code>.
  * </p>
  * 
@@ -56,7 +59,8 @@ public interface IPipeLineSession extends Map<String,Object> {
 
 	/**
 	 * @return the message that was passed to the <code>PipeLine</code> which
-	 *         should be stored under <code>originalMessageKey</code>
+	 *         should be stored under <code>originalMessageKey</code>, or <code>null</code>
+	 *         when the message arrived as a stream
 	 */
 	public String getOriginalMessage();
 
@@ -72,4 +76,15 @@ public interface IPipeLineSession extends Map<String,Object> {
 
 	public Principal getPrincipal();
 
+	/**
+	 * Registers a resource, e.g. a temporary file, that must be closed when the processing of the message by the adapter
+	 * that uses this session has finished.
+	 */
+	public void scheduleCloseOnSessionExit(Closeable resource);
+
+	/**
+	 * Closes the resources registered with {@link #scheduleCloseOnSessionExit(Closeable)}.
+	 */
+	public void closeScheduledResources();
+
 }
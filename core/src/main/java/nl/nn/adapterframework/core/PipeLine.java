@@ -37,6 +37,7 @@ import nl.nn.adapterframework.statistics.HasStatistics;
 import nl.nn.adapterframework.statistics.SizeStatisticsKeeper;
 import nl.nn.adapterframework.statistics.StatisticsKeeper;
 import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.JtaUtil;
 import nl.nn.adapterframework.util.Locker;
 import nl.nn.adapterframework.util.LogUtil;
@@ -529,8 +530,17 @@ public class PipeLine implements ICacheEnabled, HasStatistics {
 	 * @throws PipeRunException when something went wrong in the pipes.
 	 */
 	public PipeLineResult process(String messageId, String message, IPipeLineSession pipeLineSession) throws PipeRunException {
-		if (transformNullMessage != null && message == null) {
-			message = transformNullMessage;
+		return process(messageId, new Message(message), pipeLineSession);
+	}
+
+	/**
+	 * Processes a {@link Message}, that can be passed through to pipes that implement
+	 * {@link nl.nn.adapterframework.stream.IStreamingPipe IStreamingPipe} without being read into memory.
+	 * @see #process(String, String, IPipeLineSession)
+	 */
+	public PipeLineResult process(String messageId, Message message, IPipeLineSession pipeLineSession) throws PipeRunException {
+		if (transformNullMessage != null && (message == null || message.isNull())) {
+			message = new Message(transformNullMessage);
 		}
 		return pipeLineProcessor.processPipeLine(this, messageId, message, pipeLineSession, firstPipe);
 	}
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,28 +15,46 @@
 */
 package nl.nn.adapterframework.core;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.DateUtils;
+import nl.nn.adapterframework.util.LogUtil;
 
 import org.apache.commons.lang.NotImplementedException;
+import org.apache.commons.lang.time.FastDateFormat;
+import org.apache.log4j.Logger;
 
 
 /**
  * Basic implementation of <code>IPipeLineSession</code>.
+ * <p>
+ * The timestamps set by {@link #setListenerParameters(Map, String, String, Date, Date)} are formatted with a shared,
+ * thread safe formatter, instead of creating a new formatter for every message.
+ * </p>
  * 
  * @author  Johan Verrips IOS
  * @since   version 3.2.2
  */
 public class PipeLineSessionBase extends HashMap<String,Object> implements IPipeLineSession {
 
+	private static final int DEFAULT_INITIAL_CAPACITY = 32;
+	private static final FastDateFormat TIMESTAMP_FORMAT = FastDateFormat.getInstance(DateUtils.FORMAT_FULL_GENERIC);
+
+	private static final Logger LOG = LogUtil.getLogger(PipeLineSessionBase.class);
+
 	private ISecurityHandler securityHandler = null;
+	private transient List<Closeable> closeables;
 
 	public PipeLineSessionBase() {
-		super();
+		super(DEFAULT_INITIAL_CAPACITY);
 	}
 
 	public PipeLineSessionBase(int initialCapacity) {
@@ -48,7 +66,31 @@ public class PipeLineSessionBase extends HashMap<String,Object> implements IPipe
 	}
 
 	public PipeLineSessionBase(Map<String, Object> t) {
-		super(t);
+		super(Math.max(DEFAULT_INITIAL_CAPACITY, (int)(t.size()/0.75f)+1));
+		putAll(t);
+	}
+
+	@Override
+	public void scheduleCloseOnSessionExit(Closeable resource) {
+		if (closeables==null) {
+			closeables = new ArrayList<Closeable>();
+		}
+		closeables.add(resource);
+	}
+
+	@Override
+	public void closeScheduledResources() {
+		if (closeables==null) {
+			return;
+		}
+		for (Closeable resource:closeables) {
+			try {
+				resource.close();
+			} catch (Exception e) {
+				LOG.warn("cannot close resource ["+resource+"] at end of session", e);
+			}
+		}
+		closeables=null;
 	}
 
 	@Override
@@ -58,7 +100,11 @@ public class PipeLineSessionBase extends HashMap<String,Object> implements IPipe
 
 	@Override
 	public String getOriginalMessage() {
-		return (String) get(originalMessageKey);
+		try {
+			return Message.asString(get(originalMessageKey));
+		} catch (IOException e) {
+			throw new IllegalStateException("cannot read "+originalMessageKey, e);
+		}
 	}
 
 	/**
@@ -72,9 +118,9 @@ public class PipeLineSessionBase extends HashMap<String,Object> implements IPipe
 		if (tsReceived==null) {
 			tsReceived=new Date();
 		}
-		map.put(tsReceivedKey,DateUtils.format(tsReceived, DateUtils.FORMAT_FULL_GENERIC));
+		map.put(tsReceivedKey,TIMESTAMP_FORMAT.format(tsReceived));
 		if (tsSent!=null) {
-			map.put(tsSentKey,DateUtils.format(tsSent, DateUtils.FORMAT_FULL_GENERIC));
+			map.put(tsSentKey,TIMESTAMP_FORMAT.format(tsSent));
 		}
 	}
 
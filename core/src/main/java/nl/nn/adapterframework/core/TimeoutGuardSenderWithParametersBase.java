@@ -15,6 +15,7 @@
  */
 package nl.nn.adapterframework.core;
 
+import java.io.IOException;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -27,6 +28,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.NDC;
 
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
+import nl.nn.adapterframework.stream.Message;
 
 /**
  * Extension to SenderWithParametersBase for interrupting processing when
@@ -45,6 +47,7 @@ public class TimeoutGuardSenderWithParametersBase extends
 	public class SendMessage implements Callable<String> {
 		private String correlationID;
 		private String message;
+		private Message streamingMessage;
 		private ParameterResolutionContext prc;
 		private String threadName;
 		private String threadNDC;
@@ -59,12 +62,22 @@ public class TimeoutGuardSenderWithParametersBase extends
 			this.threadNDC = threadNDC;
 		}
 
+		public SendMessage(String correlationID, Message streamingMessage,
+				ParameterResolutionContext prc, String threadName,
+				String threadNDC) {
+			this(correlationID, (String)null, prc, threadName, threadNDC);
+			this.streamingMessage = streamingMessage;
+		}
+
 		@Override
 		public String call() throws Exception {
 			String ctName = Thread.currentThread().getName();
 			try {
 				Thread.currentThread().setName(threadName + "[" + ctName + "]");
 				NDC.push(threadNDC);
+				if (streamingMessage!=null) {
+					return streamMessageWithTimeoutGuarded(correlationID, streamingMessage, prc);
+				}
 				return sendMessageWithTimeoutGuarded(correlationID, message, prc);
 			} finally {
 				Thread.currentThread().setName(ctName);
@@ -76,6 +89,21 @@ public class TimeoutGuardSenderWithParametersBase extends
 	public String sendMessage(String correlationID, String message, ParameterResolutionContext prc) throws SenderException, TimeOutException {
 		SendMessage sendMessage = new SendMessage(correlationID, message, prc,
 				Thread.currentThread().getName(), NDC.peek());
+		return sendMessageGuarded(sendMessage);
+	}
+
+	/**
+	 * Sends a {@link Message} under the same timeout guard as {@link #sendMessage(String, String, ParameterResolutionContext) sendMessage()},
+	 * without reading it into memory if the subclass supports it.
+	 * @see #streamMessageWithTimeoutGuarded(String, Message, ParameterResolutionContext)
+	 */
+	protected String sendStreamingMessage(String correlationID, Message message, ParameterResolutionContext prc) throws SenderException, TimeOutException {
+		SendMessage sendMessage = new SendMessage(correlationID, message, prc,
+				Thread.currentThread().getName(), NDC.peek());
+		return sendMessageGuarded(sendMessage);
+	}
+
+	private String sendMessageGuarded(SendMessage sendMessage) throws SenderException, TimeOutException {
 		ExecutorService service = Executors.newSingleThreadExecutor();
 		Future<String> future = service.submit(sendMessage);
 		String result = null;
@@ -128,6 +156,18 @@ public class TimeoutGuardSenderWithParametersBase extends
 		return null;
 	}
 
+	/**
+	 * Sends a {@link Message}. Subclasses that can consume a stream should override this method;
+	 * by default the message is read into a String and sent by {@link #sendMessageWithTimeoutGuarded(String, String, ParameterResolutionContext)}.
+	 */
+	protected String streamMessageWithTimeoutGuarded(String correlationID, Message message, ParameterResolutionContext prc) throws SenderException, TimeOutException {
+		try {
+			return sendMessageWithTimeoutGuarded(correlationID, message.asString(), prc);
+		} catch (IOException e) {
+			throw new SenderException(getLogPrefix() + "cannot read message", e);
+		}
+	}
+
 	@IbisDoc({"when <code>true</code>, a senderexception (or timeoutexception) is thrown. otherwise the output is only logged as an error (and returned in a xml string with 'error' tags)", "true"})
 	public void setThrowException(boolean b) {
 		throwException = b;
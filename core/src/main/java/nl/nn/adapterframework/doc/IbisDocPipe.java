@@ -173,6 +173,7 @@ public class IbisDocPipe extends FixedForwardPipe {
 			otherIbisBeans.add(new IbisBean("Job", getClass("nl.nn.adapterframework.scheduler.JobDef")));
 			otherIbisBeans.add(new IbisBean("Locker", getClass("nl.nn.adapterframework.util.Locker")));
 			otherIbisBeans.add(new IbisBean("Cache", getClass("nl.nn.adapterframework.cache.EhCache")));
+			otherIbisBeans.add(new IbisBean("LocalCache", getClass("nl.nn.adapterframework.cache.LocalCache")));
 			otherIbisBeans.add(new IbisBean("DirectoryCleaner", getClass("nl.nn.adapterframework.util.DirectoryCleaner")));
 			groups.put("Other", otherIbisBeans);
 			cachedGroups = groups;
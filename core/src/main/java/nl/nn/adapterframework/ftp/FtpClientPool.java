@@ -0,0 +1,135 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.ftp;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import nl.nn.adapterframework.util.AppConstants;
+import nl.nn.adapterframework.util.KeyedConnectionPool;
+
+/**
+ * Pool of connected and authenticated FTP, FTPS and SFTP clients, shared by the {@link FtpSession}s of this JVM that
+ * have <code>usePooling=true</code>.
+ * <p>
+ * Connections are pooled per server, user and connection settings, so that the connect, TLS or SSH handshake and
+ * login are reused by subsequent transfers, and concurrent transfers each borrow their own connection. A connection
+ * is checked with a NOOP (or a stat of the working directory for SFTP) before it is handed out, and connections that
+ * have been idle too long are closed. The pool is configured with the following properties:
+ * <table border="1">
+ * <tr><th>property</th><th>description</th><th>default</th></tr>
+ * <tr><td>ftp.pool.maxActive</td><td>maximum number of connections in use per server and user</td><td>8</td></tr>
+ * <tr><td>ftp.pool.maxTotal</td><td>maximum number of connections for all servers and users together</td><td>32</td></tr>
+ * <tr><td>ftp.pool.maxIdle</td><td>maximum number of idle connections per server and user</td><td>4</td></tr>
+ * <tr><td>ftp.pool.maxWait</td><td>time in ms to wait for a connection when maxActive is reached</td><td>30000</td></tr>
+ * <tr><td>ftp.pool.testOnBorrow</td><td>check a connection before it is used</td><td>true</td></tr>
+ * <tr><td>ftp.pool.idleTimeout</td><td>time in ms after which an idle connection is closed</td><td>120000</td></tr>
+ * <tr><td>ftp.pool.evictionInterval</td><td>time in ms between checks for idle connections</td><td>30000</td></tr>
+ * </table>
+ * </p>
+ *
+ * @since   7.3
+ */
+public class FtpClientPool extends KeyedConnectionPool<FtpClientPool.Key,FtpConnection> {
+
+	private static FtpClientPool self = null;
+
+	/**
+	 * Identifies the connections that can be shared. Connections are created by the session that first asks for them,
+	 * the session itself is not part of the identity.
+	 */
+	public static class Key {
+		private final FtpSession session;
+		private final List<Object> settings;
+		private final String description;
+
+		Key(FtpSession session, List<Object> settings, String description) {
+			this.session = session;
+			this.settings = settings;
+			this.description = description;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && settings.equals(((Key)obj).settings);
+		}
+
+		@Override
+		public int hashCode() {
+			return settings.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return description;
+		}
+	}
+
+	FtpClientPool(int maxActive, int maxTotal, int maxIdle, long maxWait, boolean testOnBorrow, long idleTimeout, long evictionInterval) {
+		super(maxActive, maxTotal, maxIdle, maxWait, testOnBorrow, idleTimeout, evictionInterval);
+	}
+
+	public static synchronized FtpClientPool getInstance() {
+		if (self == null) {
+			AppConstants appConstants = AppConstants.getInstance();
+			self = new FtpClientPool(appConstants.getInt("ftp.pool.maxActive", 8),
+					appConstants.getInt("ftp.pool.maxTotal", 32),
+					appConstants.getInt("ftp.pool.maxIdle", 4),
+					appConstants.getLong("ftp.pool.maxWait", 30000),
+					appConstants.getBoolean("ftp.pool.testOnBorrow", true),
+					appConstants.getLong("ftp.pool.idleTimeout", 120000),
+					appConstants.getLong("ftp.pool.evictionInterval", 30000));
+		}
+		return self;
+	}
+
+	@Override
+	protected FtpConnection createConnection(Key key) throws FtpConnectException {
+		return key.session.createConnection();
+	}
+
+	@Override
+	protected boolean validateConnection(Key key, FtpConnection connection) {
+		if (connection.isAlive()) {
+			return true;
+		}
+		log.info("closing invalid ftp connection to [" + describeKey(key) + "]");
+		return false;
+	}
+
+	@Override
+	protected void closeConnection(Key key, FtpConnection connection) {
+		connection.close();
+	}
+
+	/**
+	 * Returns a connection for <code>key</code>, that must be given back with
+	 * {@link #returnConnection(Object, Object)} or {@link #invalidateConnection(Object, Object)} after use.
+	 * The working directory of the connection is the one it was last used with.
+	 */
+	@Override
+	public FtpConnection borrowConnection(Key key) throws FtpConnectException {
+		try {
+			return super.borrowConnection(key);
+		} catch (FtpConnectException e) {
+			throw e;
+		} catch (NoSuchElementException e) {
+			throw new FtpConnectException("no ftp connection available for [" + describeKey(key) + "]", e);
+		} catch (Exception e) {
+			throw new FtpConnectException("cannot obtain ftp connection for [" + describeKey(key) + "]", e);
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.ftp;
+
+import java.io.IOException;
+
+import nl.nn.adapterframework.util.LogUtil;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+import org.apache.log4j.Logger;
+
+import com.sshtools.j2ssh.SftpClient;
+import com.sshtools.j2ssh.SshClient;
+
+/**
+ * Connected and authenticated client of an {@link FtpSession}, either an SFTP client with its underlying SSH client,
+ * or an FTP(S) client.
+ * <p>
+ * A connection keeps track of its working directory, so that a connection taken from the {@link FtpClientPool} only
+ * changes directory when it is used for another remote directory than before.
+ * </p>
+ *
+ * @since   7.3
+ */
+public class FtpConnection {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private final SshClient sshClient;
+	private final SftpClient sftpClient;
+	private final FTPClient ftpClient;
+
+	// directory after login, to which relative remote directories are resolved
+	private final String homeDirectory;
+	// remote directory the connection was last used for, null when unknown
+	private String workingDirectory = "";
+
+	public FtpConnection(SshClient sshClient, SftpClient sftpClient) {
+		this.sshClient = sshClient;
+		this.sftpClient = sftpClient;
+		this.ftpClient = null;
+		this.homeDirectory = sftpClient.pwd();
+	}
+
+	public FtpConnection(FTPClient ftpClient) throws IOException {
+		this.sshClient = null;
+		this.sftpClient = null;
+		this.ftpClient = ftpClient;
+		this.homeDirectory = ftpClient.printWorkingDirectory();
+	}
+
+	public SshClient getSshClient() {
+		return sshClient;
+	}
+
+	public SftpClient getSftpClient() {
+		return sftpClient;
+	}
+
+	public FTPClient getFtpClient() {
+		return ftpClient;
+	}
+
+	public boolean isSftp() {
+		return sftpClient != null;
+	}
+
+	public boolean isConnected() {
+		if (isSftp()) {
+			return !sftpClient.isClosed() && sshClient.isConnected();
+		}
+		return ftpClient.isConnected();
+	}
+
+	/**
+	 * Checks that the server still responds, by sending a NOOP for FTP, or by requesting the attributes of the
+	 * working directory for SFTP.
+	 */
+	public boolean isAlive() {
+		if (!isConnected()) {
+			return false;
+		}
+		try {
+			if (isSftp()) {
+				sftpClient.stat(sftpClient.pwd());
+				return true;
+			}
+			return ftpClient.sendNoOp();
+		} catch (IOException e) {
+			log.info("ftp connection is no longer alive: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Makes <code>remoteDirectory</code> the working directory. Relative directories are resolved against the
+	 * directory after login, regardless of the directory the connection was used for before.
+	 */
+	public void changeDirectory(String remoteDirectory) throws IOException {
+		String directory = remoteDirectory == null ? "" : remoteDirectory;
+		if (directory.equals(workingDirectory)) {
+			return;
+		}
+		workingDirectory = null;
+		if (!directory.startsWith("/") && StringUtils.isNotEmpty(homeDirectory)) {
+			cd(homeDirectory);
+		}
+		if (!"".equals(directory)) {
+			cd(directory);
+		}
+		workingDirectory = directory;
+	}
+
+	/**
+	 * Marks the working directory as unknown, e.g. after the client has been used directly, so that the next call to
+	 * {@link #changeDirectory(String)} always changes directory.
+	 */
+	public void resetWorkingDirectory() {
+		workingDirectory = null;
+	}
+
+	private void cd(String directory) throws IOException {
+		if (isSftp()) {
+			sftpClient.cd(directory);
+		} else {
+			ftpClient.changeWorkingDirectory(directory);
+			checkReply("changeWorkingDirectory " + directory);
+		}
+	}
+
+	public void checkReply(String cmd) throws IOException {
+		if (!FTPReply.isPositiveCompletion(ftpClient.getReplyCode())) {
+			throw new IOException("Command [" + cmd + "] returned error [" + ftpClient.getReplyCode() + "]: " + ftpClient.getReplyString());
+		}
+		if (log.isDebugEnabled()) log.debug("Command [" + cmd + "] returned " + ftpClient.getReplyString());
+	}
+
+	public void close() {
+		if (isSftp()) {
+			if (sshClient.isConnected()) {
+				sshClient.disconnect();
+			}
+		} else {
+			if (ftpClient.isConnected()) {
+				try {
+					ftpClient.quit();
+					log.debug(ftpClient.getReplyString());
+					ftpClient.disconnect();
+				}
+				catch(Exception e) {
+					log.error("Error while closeing FtpClient", e);
+				}
+			}
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -22,6 +22,8 @@ import nl.nn.adapterframework.core.SenderWithParametersBase;
 import nl.nn.adapterframework.core.TimeOutException;
 import nl.nn.adapterframework.doc.IbisDoc;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
 
 /**
  * FTP client voor het versturen van files via FTP.
@@ -29,7 +31,7 @@ import nl.nn.adapterframework.parameters.ParameterResolutionContext;
  *  
  * @author John Dekker
  */
-public class FtpSender extends SenderWithParametersBase {
+public class FtpSender extends SenderWithParametersBase implements HasStatistics {
 
 	private FtpSession ftpSession;
 	
@@ -63,6 +65,13 @@ public class FtpSender extends SenderWithParametersBase {
 		}
 		return message;
 	}
+
+	@Override
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		if (ftpSession.isUsePooling() && ftpSession.getPoolKey() != null) {
+			FtpClientPool.getInstance().iterateOverStatistics(hski, data, getName(), ftpSession.getPoolKey());
+		}
+	}
 	
 
 
@@ -285,4 +294,9 @@ public class FtpSender extends SenderWithParametersBase {
 	public void setKeyboardInteractive(boolean keyboardInteractive) {
 		ftpSession.setKeyboardInteractive(keyboardInteractive);
 	}
+
+	@IbisDoc({"when true, connections are taken from a pool and kept open after use, so that subsequent and concurrent messages do not have to connect and log in for every file (see ftp.pool.* properties)", "false"})
+	public void setUsePooling(boolean usePooling) {
+		ftpSession.setUsePooling(usePooling);
+	}
 }
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -26,6 +26,7 @@ import java.io.OutputStream;
 import java.security.GeneralSecurityException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -95,6 +96,7 @@ public class FtpSession {
 	private boolean messageIsContent=false;
 	private boolean passive=true;
 	private boolean keyboardInteractive=false;
+	private boolean usePooling=false;
 	
 	// configuration property for sftp
 	private int proxyTransportType = SshConnectionProperties.USE_SOCKS5_PROXY;
@@ -125,6 +127,10 @@ public class FtpSession {
 	private SshClient sshClient;
 	private SftpClient sftpClient;
 	public FTPClient ftpClient;
+
+	// connection of openClient(), that provides the clients above
+	private FtpConnection connection;
+	private FtpClientPool.Key poolKey;
 	
 	public void configure() throws ConfigurationException {
 		if (StringUtils.isEmpty(ftpTypeDescription)) {
@@ -171,24 +177,103 @@ public class FtpSession {
 		catch(IOException e) {
 			throw new ConfigurationException(e);
 		}
-		
+
+		if (isUsePooling()) {
+			poolKey = createPoolKey();
+		}
+	}
+
+	FtpClientPool.Key getPoolKey() {
+		return poolKey;
+	}
+
+	/**
+	 * Pooled connections are shared by sessions that have the same settings for connecting and logging in.
+	 */
+	private FtpClientPool.Key createPoolKey() {
+		CredentialFactory usercf = new CredentialFactory(getAuthAlias(), getUsername(), getPassword());
+		CredentialFactory pcf = new CredentialFactory(getProxyAuthAlias(), proxyUsername, proxyPassword);
+		CredentialFactory pkcf = new CredentialFactory(getPrivateKeyAuthAlias(), getUsername(), getPrivateKeyPassword());
+		CredentialFactory ccf = new CredentialFactory(getCertificateAuthAlias(), null, getCertificatePassword());
+		CredentialFactory tcf = new CredentialFactory(getTruststoreAuthAlias(), null, getTruststorePassword());
+		String description = ftpTypeDescription + "://" + usercf.getUsername() + "@" + host + ":" + port;
+		return new FtpClientPool.Key(this, Arrays.<Object>asList(ftpType, host, port,
+				usercf.getUsername(), usercf.getPassword(), keyboardInteractive, passive, fileType,
+				proxyHost, proxyPort, pcf.getUsername(), pcf.getPassword(), proxyTransportType,
+				prefCSEncryption, prefSCEncryption, privateKeyFilePath, pkcf.getUsername(), pkcf.getPassword(),
+				knownHostsPath, consoleKnownHostsVerifier,
+				certificate, certificateType, ccf.getPassword(), keyManagerAlgorithm,
+				truststore, truststoreType, tcf.getPassword(), trustManagerAlgorithm,
+				jdk13Compatibility, verifyHostname, allowSelfSignedCertificates, protP), description);
 	}
 
 	public void openClient(String remoteDirectory) throws FtpConnectException {
 		log.debug("Open ftp client");
-		if (ftpType == SFTP) {
-			if (sftpClient == null || sftpClient.isClosed()) {
-				openSftpClient(remoteDirectory);
+		if (connection == null || !connection.isConnected()) {
+			if (connection != null) {
+				releaseConnection(connection, false);
 			}
+			setConnection(openConnection(remoteDirectory));
 		}
-		else {
-			if (ftpClient == null || ! ftpClient.isConnected()) {
-				openFtpClient(remoteDirectory);
+	}
+
+	private void setConnection(FtpConnection newConnection) {
+		connection = newConnection;
+		if (connection != null) {
+			sshClient = connection.getSshClient();
+			sftpClient = connection.getSftpClient();
+			ftpClient = connection.getFtpClient();
+		} else {
+			sshClient = null;
+			sftpClient = null;
+			ftpClient = null;
+		}
+	}
+
+	/**
+	 * Returns a connection with <code>remoteDirectory</code> as working directory, that must be released with
+	 * {@link #releaseConnection(FtpConnection, boolean)}. When usePooling is set the connection is taken from the
+	 * {@link FtpClientPool}, otherwise a new connection is made.
+	 */
+	private FtpConnection openConnection(String remoteDirectory) throws FtpConnectException {
+		FtpConnection newConnection = isUsePooling() ? FtpClientPool.getInstance().borrowConnection(poolKey) : createConnection();
+		try {
+			newConnection.changeDirectory(remoteDirectory);
+		} catch (IOException e) {
+			releaseConnection(newConnection, true);
+			throw new FtpConnectException(e);
+		}
+		return newConnection;
+	}
+
+	/**
+	 * Gives a connection back to the pool when usePooling is set, or closes it otherwise. Pooled connections that
+	 * are not <code>reusable</code> are closed as well.
+	 */
+	private void releaseConnection(FtpConnection releasedConnection, boolean reusable) {
+		if (isUsePooling()) {
+			if (reusable) {
+				FtpClientPool.getInstance().returnConnection(poolKey, releasedConnection);
+			} else {
+				FtpClientPool.getInstance().invalidateConnection(poolKey, releasedConnection);
 			}
+		} else {
+			releasedConnection.close();
+		}
+	}
+
+	/**
+	 * Connects and logs in to the remote host.
+	 */
+	FtpConnection createConnection() throws FtpConnectException {
+		if (ftpType == SFTP) {
+			return createSftpConnection();
 		}
+		return createFtpConnection();
 	}
 
-	private void openSftpClient(String remoteDirectory) throws FtpConnectException {
+	private FtpConnection createSftpConnection() throws FtpConnectException {
+		SshClient client = null;
 		try {
 			// Set the connection properties and if necessary the proxy properties
 			SshConnectionProperties sshProp = new SshConnectionProperties();
@@ -211,22 +296,22 @@ public class FtpSession {
 				}
 			}
 
-			// make a secure connection with the remote host 
-			sshClient = new SshClient();
+			// make a secure connection with the remote host
+			client = new SshClient();
 			if (StringUtils.isNotEmpty(knownHostsPath)) {
 				AbstractKnownHostsKeyVerification hv = null;
-				if (consoleKnownHostsVerifier) { 
-					hv = new ConsoleKnownHostsKeyVerification(knownHostsPath); 
+				if (consoleKnownHostsVerifier) {
+					hv = new ConsoleKnownHostsKeyVerification(knownHostsPath);
 				}
 				else {
 					hv = new SftpHostVerification(knownHostsPath);
 				}
-				sshClient.connect(sshProp, hv);
+				client.connect(sshProp, hv);
 			}
 			else {
-				sshClient.connect(sshProp, new IgnoreHostKeyVerification());
+				client.connect(sshProp, new IgnoreHostKeyVerification());
 			}
-			
+
 			SshAuthenticationClient sac;
 			if (!isKeyboardInteractive()) {
 				// pass the authentication information
@@ -253,22 +338,19 @@ public class FtpSession {
 				);
 				sac=kbiAuthenticationClient;
 			}
-			int result = sshClient.authenticate(sac);
-			
+			int result = client.authenticate(sac);
+
 			if (result != AuthenticationProtocolState.COMPLETE) {
-				closeSftpClient();
 				throw new IOException("Could not authenticate to sftp server " + result);
 			}
-			
+
 			// use the connection for sftp
-			sftpClient = sshClient.openSftpClient();
-			
-			if (! StringUtils.isEmpty(remoteDirectory)) {
-				sftpClient.cd(remoteDirectory);
-			}
+			return new FtpConnection(client, client.openSftpClient());
 		}
 		catch(Exception e) {
-			closeSftpClient();
+			if (client != null && client.isConnected()) {
+				client.disconnect();
+			}
 			throw new FtpConnectException(e);
 		}
 	}
@@ -302,7 +384,8 @@ public class FtpSession {
 	}
 	
 
-	private void openFtpClient(String remoteDirectory) throws FtpConnectException {
+	private FtpConnection createFtpConnection() throws FtpConnectException {
+		FTPClient client = null;
 		try {
 			// set proxy properties
 			if (! StringUtils.isEmpty(proxyHost)) {
@@ -312,26 +395,32 @@ public class FtpSession {
 			}
 			
 			// connect and logic using normal, non-secure ftp 
-			ftpClient = createFTPClient();
-			ftpClient.connect(host, port);
+			client = createFTPClient();
+			client.connect(host, port);
 			if (isPassive()) {
-				ftpClient.enterLocalPassiveMode();
+				client.enterLocalPassiveMode();
 			}
 			CredentialFactory usercf = new CredentialFactory(getAuthAlias(), getUsername(), getPassword());
-			ftpClient.login(usercf.getUsername(), usercf.getPassword());
-	
-			if (! StringUtils.isEmpty(remoteDirectory)) {
-				ftpClient.changeWorkingDirectory(remoteDirectory);
-				checkReply("changeWorkingDirectory "+remoteDirectory);
+			if (!client.login(usercf.getUsername(), usercf.getPassword())) {
+				throw new IOException("Could not login to ftp server: " + client.getReplyString());
 			}
-			
+
+			FtpConnection ftpConnection = new FtpConnection(client);
 			if (StringUtils.isNotEmpty(fileType)) {
-				ftpClient.setFileType(getFileTypeIntValue());
-				checkReply("setFileType "+remoteDirectory);
+				client.setFileType(getFileTypeIntValue());
+				ftpConnection.checkReply("setFileType "+fileType);
 			}
+			return ftpConnection;
 		}
 		catch(Exception e) {
-			closeFtpClient();
+			if (client != null && client.isConnected()) {
+				try {
+					client.disconnect();
+				}
+				catch(IOException ce) {
+					log.warn("Error while disconnecting FtpClient", ce);
+				}
+			}
 			throw new FtpConnectException(e);
 		}
 	}
@@ -355,39 +444,41 @@ public class FtpSession {
 		return new FTPsClient(this);
 	}
 
+
 	public void closeClient() {
 		log.debug("Close ftp client");
-		if (ftpType == SFTP) {
-			closeSftpClient();
-		}
-		else {
-			closeFtpClient();
+		if (connection != null) {
+			// the clients may have been used directly, e.g. by FtpFileSystem
+			connection.resetWorkingDirectory();
+			releaseConnection(connection, connection.isConnected());
+			setConnection(null);
 		}
 	}
-	
-	private void closeSftpClient() {
-		if (sshClient != null) {
-			if (sshClient.isConnected()) {
-				sshClient.disconnect();
-			}
-			sshClient = null;
-			sftpClient = null;
+
+	/**
+	 * Returns the connection for a single operation. When usePooling is set, the connection is taken from the pool,
+	 * so that concurrent operations each use their own connection; otherwise it is the connection of
+	 * {@link #openClient(String)}.
+	 */
+	private FtpConnection getConnection(String remoteDirectory) throws FtpConnectException {
+		if (isUsePooling()) {
+			return openConnection(remoteDirectory);
 		}
+		openClient(remoteDirectory);
+		return connection;
 	}
-	
-	private void closeFtpClient() {
-		if (ftpClient != null) {
-			if (ftpClient.isConnected()) {
-				try {
-					ftpClient.quit();
-					log.debug(ftpClient.getReplyString());
-					ftpClient.disconnect();
-				}
-				catch(Exception e) {
-					log.error("Error while closeing FtpClient", e);
-				}
-			}
-			ftpClient = null;
+
+	/**
+	 * Ends an operation on a connection obtained from {@link #getConnection(String)}. A pooled connection is returned
+	 * to the pool, unless the operation did not complete; otherwise the connection is closed when <code>close</code>
+	 * is set.
+	 */
+	private void endOperation(FtpConnection operationConnection, boolean close, boolean completed) {
+		if (isUsePooling()) {
+			releaseConnection(operationConnection, completed);
+		}
+		else if (close) {
+			closeClient();
 		}
 	}
 	
@@ -404,37 +495,41 @@ public class FtpSession {
 	 * @return name of the create remote file
 	 */
 	private String _put(ParameterList params, IPipeLineSession session, String contents, String remoteDirectory, String remoteFilenamePattern, boolean closeAfterSend) throws Exception {
-		openClient(remoteDirectory);
-		
-		// get remote name
-		String remoteFilename = FileUtils.getFilename(params, session, (File)null, remoteFilenamePattern);
+		FtpConnection ftpConnection = getConnection(remoteDirectory);
+		boolean completed = false;
 		
 		// open local file
-		InputStream is = new ByteArrayInputStream(contents.getBytes());
+		InputStream is = null;
 		try {  
+			// get remote name
+			String remoteFilename = FileUtils.getFilename(params, session, (File)null, remoteFilenamePattern);
+			
+			is = new ByteArrayInputStream(contents.getBytes());
 			if (ftpType == SFTP) {
-				sftpClient.put(is, remoteFilename);
+				ftpConnection.getSftpClient().put(is, remoteFilename);
 			}
 			else {
-				ftpClient.storeFile(remoteFilename, is);
-				checkReply("storeFile "+remoteFilename);
+				ftpConnection.getFtpClient().storeFile(remoteFilename, is);
+				ftpConnection.checkReply("storeFile "+remoteFilename);
 			}
+			completed = true;
+			return remoteFilename;
 		}
 		finally {
-			is.close();
-
-			if (closeAfterSend) {
-				closeClient();
+			if (is != null) {
+				is.close();
 			}
+
+			endOperation(ftpConnection, closeAfterSend, completed);
 		}
-		return remoteFilename;
 	}
 	
 	/**
 	 * @return list of remotely created files
 	 */
 	private List<String> _put(ParameterList params, IPipeLineSession session, List<String> filenames, String remoteDirectory, String remoteFilenamePattern, boolean closeAfterSend) throws Exception {
-		openClient(remoteDirectory);
+		FtpConnection ftpConnection = getConnection(remoteDirectory);
+		boolean completed = false;
 		
 		try {
 			LinkedList<String> remoteFilenames = new LinkedList<String>();
@@ -455,11 +550,11 @@ public class FtpSession {
 				FileInputStream fis = new FileInputStream(localFile);
 				try {  
 					if (ftpType == SFTP) {
-						sftpClient.put(fis, remoteFilename);
+						ftpConnection.getSftpClient().put(fis, remoteFilename);
 					}
 					else {
-						ftpClient.storeFile(remoteFilename, fis);
-						checkReply("storeFile "+remoteFilename);
+						ftpConnection.getFtpClient().storeFile(remoteFilename, fis);
+						ftpConnection.checkReply("storeFile "+remoteFilename);
 					}
 				}
 				finally {
@@ -467,22 +562,23 @@ public class FtpSession {
 				}
 				remoteFilenames.add(remoteFilename);
 			}
+			completed = true;
 			return remoteFilenames;
 		}
 		finally {
-			if (closeAfterSend) {
-				closeClient();
-			}
+			endOperation(ftpConnection, closeAfterSend, completed);
 		}
 	}
 
 	public List<String> ls(String remoteDirectory, boolean filesOnly, boolean closeAfterSend) throws Exception {
-		openClient(remoteDirectory);
+		FtpConnection ftpConnection = getConnection(remoteDirectory);
+		boolean completed = false;
 
 		try {
+			List<String> result;
 			if (ftpType == SFTP) {
-				List<String> result = new LinkedList<String>();
-				List<?> listOfSftpFiles = sftpClient.ls();
+				result = new LinkedList<String>();
+				List<?> listOfSftpFiles = ftpConnection.getSftpClient().ls();
 				for (Iterator<?> sftpFileIt = listOfSftpFiles.iterator(); sftpFileIt.hasNext();) {
 					SftpFile file = (SftpFile)sftpFileIt.next();
 					String filename = file.getFilename();
@@ -492,14 +588,15 @@ public class FtpSession {
 						}
 					}
 				}
-				return result;
 			}
-			return FileUtils.getListFromNames(ftpClient.listNames());
+			else {
+				result = FileUtils.getListFromNames(ftpConnection.getFtpClient().listNames());
+			}
+			completed = true;
+			return result;
 		}
 		finally {
-			if (closeAfterSend) {
-				closeClient();
-			}
+			endOperation(ftpConnection, closeAfterSend, completed);
 		}
 	}
 	
@@ -517,20 +614,20 @@ public class FtpSession {
 	}
 	
 	public void deleteRemote(String remoteDirectory, String filename, boolean closeAfterDelete) throws Exception {
-		openClient(remoteDirectory);
+		FtpConnection ftpConnection = getConnection(remoteDirectory);
+		boolean completed = false;
 
 		try {
 			if (ftpType == SFTP) {
-				sftpClient.rm(filename);
+				ftpConnection.getSftpClient().rm(filename);
 			}
 			else {
-				ftpClient.deleteFile(filename);
+				ftpConnection.getFtpClient().deleteFile(filename);
 			}
+			completed = true;
 		}
 		finally {
-			if (closeAfterDelete) {
-				closeClient();
-			}
+			endOperation(ftpConnection, closeAfterDelete, completed);
 		}
 	}
 
@@ -538,7 +635,8 @@ public class FtpSession {
 	 * @return concatenation of the contents of all received files
 	 */
 	private String _get(String remoteDirectory, List<String> filenames, boolean closeAfterGet) throws Exception {
-		openClient(remoteDirectory);
+		FtpConnection ftpConnection = getConnection(remoteDirectory);
+		boolean completed = false;
 		
 		try {
 			StringBuffer result = new StringBuffer();
@@ -550,11 +648,11 @@ public class FtpSession {
 
 				try {
 					if (ftpType == SFTP) {
-						sftpClient.get(remoteFilename, os);
+						ftpConnection.getSftpClient().get(remoteFilename, os);
 					}
 					else {
-						ftpClient.retrieveFile(remoteFilename, os);
-						checkReply("retrieve "+remoteFilename);
+						ftpConnection.getFtpClient().retrieveFile(remoteFilename, os);
+						ftpConnection.checkReply("retrieve "+remoteFilename);
 					}
 				}
 				finally {
@@ -563,12 +661,11 @@ public class FtpSession {
 				
 				result.append(((ByteArrayOutputStream)os).toString());
 			}
+			completed = true;
 			return result.toString();
 		}
 		finally {
-			if (closeAfterGet) {
-				closeClient();
-			}
+			endOperation(ftpConnection, closeAfterGet, completed);
 		}
 	}
 	
@@ -576,7 +673,8 @@ public class FtpSession {
 	 * Returns a list as seperated string of filenames of locally created files 
 	 */
 	private List<String> _get(ParameterList params, IPipeLineSession session, String localDirectory, String remoteDirectory, List<String> filenames, String localFilenamePattern, boolean closeAfterGet) throws Exception {
-		openClient(remoteDirectory);
+		FtpConnection ftpConnection = getConnection(remoteDirectory);
+		boolean completed = false;
 		
 		try {
 			LinkedList<String> remoteFilenames = new LinkedList<String>();
@@ -592,11 +690,11 @@ public class FtpSession {
 				OutputStream os = new FileOutputStream(localFile,false);
 				try {
 					if (ftpType == SFTP) {
-						sftpClient.get(remoteFilename, os);
+						ftpConnection.getSftpClient().get(remoteFilename, os);
 					}
 					else {
-						ftpClient.retrieveFile(remoteFilename, os);
-						checkReply("retrieve "+remoteFilename);
+						ftpConnection.getFtpClient().retrieveFile(remoteFilename, os);
+						ftpConnection.checkReply("retrieve "+remoteFilename);
 					}
 				}
 				catch(IOException e) {
@@ -612,12 +710,11 @@ public class FtpSession {
 				
 				remoteFilenames.add(localFile.getAbsolutePath());
 			}
+			completed = true;
 			return remoteFilenames;
 		}
 		finally {
-			if (closeAfterGet) {
-				closeClient();
-			}
+			endOperation(ftpConnection, closeAfterGet, completed);
 		}
 	}
 
@@ -952,4 +1049,12 @@ public class FtpSession {
 	public void setKeyboardInteractive(boolean keyboardInteractive) {
 		this.keyboardInteractive = keyboardInteractive;
 	}
+
+	@IbisDoc({"when true, connections are taken from a pool shared by all ftp sessions with the same settings and are kept open after use, instead of connecting and logging in for every transfer; closeafter settings are then ignored (see ftp.pool.* properties)", "false"})
+	public void setUsePooling(boolean usePooling) {
+		this.usePooling = usePooling;
+	}
+	public boolean isUsePooling() {
+		return usePooling;
+	}
 }
@@ -0,0 +1,68 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.http;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import nl.nn.adapterframework.statistics.StatisticsKeeper;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * {@link HttpEntity} that records the number of bytes written to the connection in a {@link StatisticsKeeper},
+ * without buffering the wrapped entity.
+ *
+ * @since   7.3
+ */
+public class CountingHttpEntity extends HttpEntityWrapper {
+
+	private final StatisticsKeeper sizeStatistics;
+
+	public CountingHttpEntity(HttpEntity wrappedEntity, StatisticsKeeper sizeStatistics) {
+		super(wrappedEntity);
+		this.sizeStatistics = sizeStatistics;
+	}
+
+	@Override
+	public void writeTo(OutputStream outstream) throws IOException {
+		CountingOutputStream countingStream = new CountingOutputStream(outstream);
+		super.writeTo(countingStream);
+		sizeStatistics.addValue(countingStream.count);
+	}
+
+	private static class CountingOutputStream extends FilterOutputStream {
+		private long count;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*
-   Copyright 2017-2018 Integration Partners
+   Copyright 2017-2019 Integration Partners
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,6 +15,7 @@
 */
 package nl.nn.adapterframework.http;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -22,6 +23,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import nl.nn.adapterframework.statistics.StatisticsKeeper;
 import nl.nn.adapterframework.util.Misc;
 
 import org.apache.http.Header;
@@ -30,6 +32,7 @@ import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.util.EntityUtils;
 
 public class HttpResponseHandler {
@@ -38,12 +41,34 @@ public class HttpResponseHandler {
 	private InputStream content;
 	private String contentAsString = null;
 	private int statusCode = -1;
+	private CountingInputStream countingContent;
+	private StatisticsKeeper sizeStatistics;
 
 	public HttpResponseHandler(HttpResponse resp) throws IllegalStateException, IOException {
+		this(resp, null);
+	}
+
+	/**
+	 * @param sizeStatistics when not <code>null</code>, the number of bytes read from the response body is recorded
+	 * in it when the response is {@link #close() closed}.
+	 */
+	public HttpResponseHandler(HttpResponse resp, StatisticsKeeper sizeStatistics) throws IllegalStateException, IOException {
 		httpResponse = resp;
 		if(httpResponse.getEntity() != null) {
 			httpEntity = httpResponse.getEntity();
 			content = httpEntity.getContent();
+			if (content != null && sizeStatistics != null) {
+				countingContent = new CountingInputStream(content);
+				content = countingContent;
+				// EntityUtils.consume() closes the content of the entity, which then reads the rest through the counting stream
+				httpEntity = new HttpEntityWrapper(httpEntity) {
+					@Override
+					public InputStream getContent() {
+						return countingContent;
+					}
+				};
+				this.sizeStatistics = sizeStatistics;
+			}
 		}
 	}
 
@@ -106,7 +131,13 @@ public class HttpResponseHandler {
 	 */
 	public void close() throws IOException {
 		EntityUtils.consume(httpEntity);
-		content.close();
+		if (content != null) {
+			content.close();
+		}
+		if (sizeStatistics != null) {
+			sizeStatistics.addValue(countingContent.count);
+			sizeStatistics = null;
+		}
 	}
 
 	public Header getFirstHeader(String string) {
@@ -131,4 +162,63 @@ public class HttpResponseHandler {
 		}
 		return headerMap;
 	}
+
+	private static class CountingInputStream extends FilterInputStream {
+		private long count;
+		private boolean closed;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = in.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		/**
+		 * Reads the rest of the content before closing, like the stream of the connection does to be able to reuse it,
+		 * so that these bytes are counted too.
+		 */
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				byte[] buffer = new byte[4096];
+				while (read(buffer, 0, buffer.length) >= 0) {
+					// read until the end of the content
+				}
+			} finally {
+				in.close();
+			}
+		}
+	}
 }
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2016-2018 Nationale-Nederlanden
+   Copyright 2013, 2016-2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -37,24 +37,28 @@ import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.core.HasPhysicalDestination;
 import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.SenderException;
+import nl.nn.adapterframework.core.TimeOutException;
 import nl.nn.adapterframework.doc.IbisDoc;
 import nl.nn.adapterframework.http.mime.MultipartEntityBuilder;
 import nl.nn.adapterframework.parameters.Parameter;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 import nl.nn.adapterframework.parameters.ParameterValue;
 import nl.nn.adapterframework.parameters.ParameterValueList;
+import nl.nn.adapterframework.stream.IStreamingSender;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.DomBuilderException;
 import nl.nn.adapterframework.util.Misc;
 import nl.nn.adapterframework.util.XmlBuilder;
 import nl.nn.adapterframework.util.XmlUtils;
 
-import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64InputStream;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
@@ -63,6 +67,7 @@ import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.FileEntity;
 import org.apache.http.entity.mime.FormBodyPart;
 import org.apache.http.entity.mime.FormBodyPartBuilder;
 import org.apache.http.entity.mime.MIME;
@@ -150,13 +155,15 @@ import org.w3c.dom.Node;
  * @version 2.0
  */
 
-public class HttpSender extends HttpSenderBase implements HasPhysicalDestination {
+public class HttpSender extends HttpSenderBase implements HasPhysicalDestination, IStreamingSender {
 
 	private String streamResultToFileNameSessionKey = null;
 	private String storeResultAsStreamInSessionKey;
 	private String storeResultAsByteArrayInSessionKey;
 	private boolean base64=false;
 	private boolean streamResultToServlet=false;
+	private String streamRequestFromSessionKey = null;
+	private String streamRequestFromFileNameSessionKey = null;
 
 	private boolean multipart=false;
 	private boolean multipartResponse=false;
@@ -169,15 +176,103 @@ public class HttpSender extends HttpSenderBase implements HasPhysicalDestination
 
 		if(StringUtils.isEmpty(getContentType()) && !getMethodType().equalsIgnoreCase("POST"))
 			setContentType("text/html; charset="+getCharSet());
+
+		if (isStreamRequest()) {
+			if (!"POST".equals(getMethodType()) && !"PUT".equals(getMethodType())) {
+				throw new ConfigurationException(getLogPrefix()+"a request can only be streamed using methodType POST or PUT");
+			}
+			if (!isParamsInUrl() || isMultipart() || StringUtils.isNotEmpty(getMultipartXmlSessionKey()) || isMtomEnabled()) {
+				throw new ConfigurationException(getLogPrefix()+"a request cannot be streamed when paramsInUrl=false, multipart, multipartXmlSessionKey or mtomEnabled is set");
+			}
+		}
+	}
+
+	protected boolean isStreamRequest() {
+		return StringUtils.isNotEmpty(getStreamRequestFromSessionKey()) || StringUtils.isNotEmpty(getStreamRequestFromFileNameSessionKey());
+	}
+
+	/**
+	 * Sends a {@link Message}. Binary messages are used as the request body without reading them into memory,
+	 * when the request body consists of the message only. In all other cases the message is read into a String.
+	 */
+	@Override
+	public Message sendMessage(String correlationID, Message message, ParameterResolutionContext prc) throws SenderException, TimeOutException {
+		if (canStreamRequest(message)) {
+			return new Message(sendStreamingMessage(correlationID, message, prc));
+		}
+		try {
+			return new Message(sendMessage(correlationID, message.asString(), prc));
+		} catch (IOException e) {
+			throw new SenderException(getLogPrefix()+"cannot read message", e);
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> when the message can be used as request body as is, i.e. when it is binary,
+	 * it is sent using POST or PUT, and no parameters, multipart, MTOM or encoding are involved.
+	 */
+	protected boolean canStreamRequest(Message message) {
+		return message.isBinary()
+				&& ("POST".equals(getMethodType()) || "PUT".equals(getMethodType()))
+				&& paramList==null
+				&& isParamsInUrl()
+				&& !isEncodeMessages()
+				&& !isMultipart() && StringUtils.isEmpty(getMultipartXmlSessionKey())
+				&& !isMtomEnabled();
+	}
+
+	@Override
+	protected String streamMessageWithTimeoutGuarded(String correlationID, Message message, ParameterResolutionContext prc) throws SenderException, TimeOutException {
+		return sendRequest(correlationID, "", message, prc);
 	}
 
 	protected HttpRequestBase getMethod(URIBuilder uri, String message, ParameterValueList parameters, Map<String, String> headersParamsMap, IPipeLineSession session) throws SenderException {
+		if (isStreamRequest()) {
+			HttpRequestBase method = getMethod(uri, "", parameters, headersParamsMap);
+			((HttpEntityEnclosingRequestBase)method).setEntity(getStreamingRequestEntity(session));
+			return method;
+		}
 		if(isParamsInUrl())
 			return getMethod(uri, message, parameters, headersParamsMap);
 		else
 			return getPostMethodWithParamsInBody(uri, message, parameters, headersParamsMap, session);
 	}
 
+	/**
+	 * Creates the request body from the session variable specified by <code>streamRequestFromFileNameSessionKey</code>
+	 * or <code>streamRequestFromSessionKey</code>. Files are sent with their length; streams are sent as they are read.
+	 */
+	protected HttpEntity getStreamingRequestEntity(IPipeLineSession session) throws SenderException {
+		if (session == null) {
+			throw new SenderException(getLogPrefix()+"no session available to stream the request from");
+		}
+		Object input;
+		if (StringUtils.isNotEmpty(getStreamRequestFromFileNameSessionKey())) {
+			String fileName = (String) session.get(getStreamRequestFromFileNameSessionKey());
+			if (StringUtils.isEmpty(fileName)) {
+				throw new SenderException(getLogPrefix()+"no filename found in sessionKey ["+getStreamRequestFromFileNameSessionKey()+"]");
+			}
+			input = new File(fileName);
+		} else {
+			input = session.get(getStreamRequestFromSessionKey());
+			if (input == null) {
+				throw new SenderException(getLogPrefix()+"no request body found in sessionKey ["+getStreamRequestFromSessionKey()+"]");
+			}
+		}
+		if (input instanceof File) {
+			File file = (File) input;
+			if (!file.isFile()) {
+				throw new SenderException(getLogPrefix()+"file ["+file.getPath()+"] to stream the request from does not exist");
+			}
+			return new FileEntity(file);
+		}
+		try {
+			return createEntity(Message.asMessage(input));
+		} catch (IOException e) {
+			throw new SenderException(getLogPrefix()+"cannot read request body from sessionKey ["+getStreamRequestFromSessionKey()+"]", e);
+		}
+	}
+
 	protected HttpRequestBase getMethod(URIBuilder uri, String message, ParameterValueList parameters, Map<String, String> headersParamsMap) throws SenderException {
 		try { 
 			boolean queryParametersAppended = false;
@@ -446,14 +541,14 @@ public class HttpSender extends HttpSenderBase implements HasPhysicalDestination
 
 		if (response==null) {
 			if (StringUtils.isEmpty(getStreamResultToFileNameSessionKey())) {
-				if (isBase64()) {
-					return getResponseBodyAsBase64(responseHandler.getResponse());
-				} else if (StringUtils.isNotEmpty(getStoreResultAsStreamInSessionKey())) {
-					prc.getSession().put(getStoreResultAsStreamInSessionKey(), responseHandler.getResponse());
+				if (StringUtils.isNotEmpty(getStoreResultAsStreamInSessionKey())) {
+					prc.getSession().put(getStoreResultAsStreamInSessionKey(), getResponseBody(responseHandler));
 					return "";
 				} else if (StringUtils.isNotEmpty(getStoreResultAsByteArrayInSessionKey())) {
-					prc.getSession().put(getStoreResultAsByteArrayInSessionKey(), Misc.streamToBytes(responseHandler.getResponse()));
+					prc.getSession().put(getStoreResultAsByteArrayInSessionKey(), Misc.streamToBytes(getResponseBody(responseHandler)));
 					return "";
+				} else if (isBase64()) {
+					return getResponseBodyAsBase64(responseHandler.getResponse());
 				} else if (isMultipartResponse()) {
 					return handleMultipartResponse(responseHandler, prc);
 				} else {
@@ -462,7 +557,7 @@ public class HttpSender extends HttpSenderBase implements HasPhysicalDestination
 			} else {
 				String fileName = (String) prc.getSession().get(getStreamResultToFileNameSessionKey());
 				File file = new File(fileName);
-				Misc.streamToFile(responseHandler.getResponse(), file);
+				Misc.streamToFile(getResponseBody(responseHandler), file);
 				return fileName;
 			}
 		} else {
@@ -494,14 +589,25 @@ public class HttpSender extends HttpSenderBase implements HasPhysicalDestination
 		return responseBody;
 	}
 
+	/**
+	 * Returns the response body as a stream, that is base64 encoded while it is read when <code>base64=true</code>.
+	 */
+	protected InputStream getResponseBody(HttpResponseHandler responseHandler) throws IOException {
+		InputStream is = responseHandler.getResponse();
+		if (isBase64()) {
+			if (log.isDebugEnabled()) log.debug(getLogPrefix()+"base64 encodes response body");
+			return new Base64InputStream(is, true, 0, null);
+		}
+		return is;
+	}
+
 	public String getResponseBodyAsBase64(InputStream is) throws IOException {
-		byte[] bytes = Misc.streamToBytes(is);
-		if (bytes == null) {
+		if (is == null) {
 			return null;
 		}
 
 		if (log.isDebugEnabled()) log.debug(getLogPrefix()+"base64 encodes response body");
-		return Base64.encodeBase64String(bytes);
+		return Misc.streamToString(new Base64InputStream(is, true, 0, null), "US-ASCII");
 	}
 
 	public static String handleMultipartResponse(HttpResponseHandler httpHandler, ParameterResolutionContext prc) throws IOException, SenderException {
@@ -582,6 +688,24 @@ public class HttpSender extends HttpSenderBase implements HasPhysicalDestination
 		streamResultToFileNameSessionKey = string;
 	}
 
+	public String getStreamRequestFromSessionKey() {
+		return streamRequestFromSessionKey;
+	}
+
+	@IbisDoc({"if set, the request body is streamed from the inputstream, byte array, file or message in the specified sessionkey, for instance a stream stored by another sender using <code>storeresultasstreaminsessionkey</code>, instead of the input message. only for <code>methodtype=post</code> or <code>put</code>. parameters other than headers are not sent", ""})
+	public void setStreamRequestFromSessionKey(String string) {
+		streamRequestFromSessionKey = string;
+	}
+
+	public String getStreamRequestFromFileNameSessionKey() {
+		return streamRequestFromFileNameSessionKey;
+	}
+
+	@IbisDoc({"if set, the request body is streamed from the file with the name in the specified sessionkey, instead of the input message. only for <code>methodtype=post</code> or <code>put</code>. parameters other than headers are not sent", ""})
+	public void setStreamRequestFromFileNameSessionKey(String string) {
+		streamRequestFromFileNameSessionKey = string;
+	}
+
 	public String getStoreResultAsStreamInSessionKey() {
 		return storeResultAsStreamInSessionKey;
 	}
@@ -598,7 +722,7 @@ public class HttpSender extends HttpSenderBase implements HasPhysicalDestination
 		this.storeResultAsByteArrayInSessionKey = storeResultAsByteArrayInSessionKey;
 	}
 
-	@IbisDoc({"when true, the result is base64 encoded", "false"})
+	@IbisDoc({"when true, the result is base64 encoded. the encoding is done while the result is streamed when it is stored in a sessionkey or a file", "false"})
 	public void setBase64(boolean b) {
 		base64 = b;
 	}
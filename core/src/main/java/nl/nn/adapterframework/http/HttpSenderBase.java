@@ -1,5 +1,5 @@
 /*
-   Copyright 2017-2018 Integration Partners
+   Copyright 2017-2019 Integration Partners
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -27,6 +27,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
@@ -44,6 +45,10 @@ import nl.nn.adapterframework.parameters.Parameter;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 import nl.nn.adapterframework.parameters.ParameterValue;
 import nl.nn.adapterframework.parameters.ParameterValueList;
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.SizeStatisticsKeeper;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.ClassUtils;
 import nl.nn.adapterframework.util.CredentialFactory;
 import nl.nn.adapterframework.util.Misc;
@@ -51,6 +56,7 @@ import nl.nn.adapterframework.util.TransformerPool;
 import nl.nn.adapterframework.util.XmlUtils;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.MethodNotSupportedException;
@@ -64,6 +70,7 @@ import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.config.AuthSchemes;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.config.RequestConfig.Builder;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.utils.URIBuilder;
@@ -74,13 +81,15 @@ import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.DefaultHostnameVerifier;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.DefaultRedirectStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.htmlcleaner.CleanerProperties;
 import org.htmlcleaner.HtmlCleaner;
 import org.htmlcleaner.SimpleXmlSerializer;
@@ -157,7 +166,7 @@ import org.htmlcleaner.TagNode;
  */
 //TODO: Fix javadoc!
 
-public abstract class HttpSenderBase extends TimeoutGuardSenderWithParametersBase implements HasPhysicalDestination {
+public abstract class HttpSenderBase extends TimeoutGuardSenderWithParametersBase implements HasPhysicalDestination, HasStatistics {
 
 	private String url;
 	private String urlParam = "url";
@@ -168,12 +177,16 @@ public abstract class HttpSenderBase extends TimeoutGuardSenderWithParametersBas
 	/** CONNECTION POOL **/
 	private int timeout = 10000;
 	private int maxConnections = 10;
+	private int maxConnectionsPerRoute = 0;
+	private int idleConnectionTimeout = 0;
 	private int maxExecuteRetries = 1;
-	private PoolingHttpClientConnectionManager connectionManager;
+	private MeteredHttpClientConnectionManager connectionManager;
 	private SSLConnectionSocketFactory sslSocketFactory = null;
 	private HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();
 	private HttpClientContext httpClientContext = HttpClientContext.create();
 	private CloseableHttpClient httpClient;
+	private final SizeStatisticsKeeper requestSizeStatistics = new SizeStatisticsKeeper("request body");
+	private final SizeStatisticsKeeper responseSizeStatistics = new SizeStatisticsKeeper("response body");
 
 	/** SECURITY */
 	private String authAlias;
@@ -275,6 +288,10 @@ public abstract class HttpSenderBase extends TimeoutGuardSenderWithParametersBas
 		 */
 //		httpClientBuilder.disableAuthCaching();
 		httpClientBuilder.disableAutomaticRetries();
+		if (getIdleConnectionTimeout()>0) {
+			httpClientBuilder.evictExpiredConnections();
+			httpClientBuilder.evictIdleConnections(getIdleConnectionTimeout(), TimeUnit.MILLISECONDS);
+		}
 
 		Builder requestConfig = RequestConfig.custom();
 		requestConfig.setConnectTimeout(getTimeout());
@@ -437,15 +454,16 @@ public abstract class HttpSenderBase extends TimeoutGuardSenderWithParametersBas
 				.register("http", PlainConnectionSocketFactory.getSocketFactory())
 				.register("https", sslSocketFactory)
 				.build();
-			connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+			connectionManager = new MeteredHttpClientConnectionManager(socketFactoryRegistry);
 			log.debug(getLogPrefix()+"created PoolingHttpClientConnectionManager with custom SSLConnectionSocketFactory");
 		}
 		else {
-			connectionManager = new PoolingHttpClientConnectionManager();
+			connectionManager = new MeteredHttpClientConnectionManager();
 			log.debug(getLogPrefix()+"created default PoolingHttpClientConnectionManager");
 		}
 
 		connectionManager.setMaxTotal(getMaxConnections());
+		connectionManager.setDefaultMaxPerRoute(getMaxConnectionsPerRoute()>0 ? Math.min(getMaxConnectionsPerRoute(), getMaxConnections()) : getMaxConnections());
 
 		log.debug(getLogPrefix()+"set up connectionManager, inactivity checking ["+connectionManager.getValidateAfterInactivity()+"]");
 		boolean staleChecking = (connectionManager.getValidateAfterInactivity() >= 0);
@@ -472,6 +490,15 @@ public abstract class HttpSenderBase extends TimeoutGuardSenderWithParametersBas
 	}
 
 	public void close() {
+		if (httpClient!=null) {
+			try {
+				// also stops the thread that evicts idle connections
+				httpClient.close();
+			} catch (IOException e) {
+				log.warn(getLogPrefix()+"exception closing httpClient", e);
+			}
+			httpClient = null;
+		}
 		connectionManager.shutdown();
 		connectionManager = null;
 
@@ -484,6 +511,30 @@ public abstract class HttpSenderBase extends TimeoutGuardSenderWithParametersBas
 		return true;
 	}
 
+	@Override
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		Object transferData = hski.openGroup(data, getName(), "transfer");
+		hski.handleStatisticsKeeper(transferData, requestSizeStatistics);
+		requestSizeStatistics.performAction(action);
+		hski.handleStatisticsKeeper(transferData, responseSizeStatistics);
+		responseSizeStatistics.performAction(action);
+		hski.closeGroup(transferData);
+
+		MeteredHttpClientConnectionManager manager = connectionManager;
+		if (manager==null) {
+			return;
+		}
+		PoolStats poolStats = manager.getTotalStats();
+		Object poolData = hski.openGroup(data, getName(), "connectionPool");
+		hski.handleScalar(poolData, "leased", poolStats.getLeased());
+		hski.handleScalar(poolData, "pending", poolStats.getPending());
+		hski.handleScalar(poolData, "available", poolStats.getAvailable());
+		hski.handleScalar(poolData, "leaseTimeouts", manager.getLeaseTimeouts());
+		hski.handleStatisticsKeeper(poolData, manager.getLeaseStatistics());
+		manager.getLeaseStatistics().performAction(action);
+		hski.closeGroup(poolData);
+	}
+
 	protected boolean appendParameters(boolean parametersAppended, StringBuffer path, ParameterValueList parameters, Map<String, String> headersParamsMap) throws SenderException {
 		if (parameters != null) {
 			if (log.isDebugEnabled()) log.debug(getLogPrefix()+"appending ["+parameters.size()+"] parameters");
@@ -538,8 +589,28 @@ public abstract class HttpSenderBase extends TimeoutGuardSenderWithParametersBas
 	 */
 	protected abstract String extractResult(HttpResponseHandler responseHandler, ParameterResolutionContext prc) throws SenderException, IOException;
 
+	/**
+	 * Creates a request body from a {@link Message}. Messages that can be read only once, like an InputStream or a
+	 * {@link ReleaseConnectionAfterReadInputStream} of another sender, are sent as they are read, without buffering.
+	 */
+	protected HttpEntity createEntity(Message message) throws IOException {
+		if (message.isRepeatable()) {
+			return new ByteArrayEntity(message.asByteArray());
+		}
+		return new InputStreamEntity(message.asInputStream());
+	}
+
 	@Override
 	public String sendMessageWithTimeoutGuarded(String correlationID, String message, ParameterResolutionContext prc) throws SenderException, TimeOutException {
+		return sendRequest(correlationID, message, null, prc);
+	}
+
+	/**
+	 * Sends the request and extracts the result.
+	 * @param message the message as a String, used to construct the request
+	 * @param streamingMessage when not <code>null</code>, used as the body of the request instead of <code>message</code>, without reading it into memory
+	 */
+	protected String sendRequest(String correlationID, String message, Message streamingMessage, ParameterResolutionContext prc) throws SenderException, TimeOutException {
 		ParameterValueList pvl = null;
 		try {
 			if (prc !=null && paramList !=null) {
@@ -578,6 +649,19 @@ public abstract class HttpSenderBase extends TimeoutGuardSenderWithParametersBas
 			if(httpRequestBase == null)
 				throw new MethodNotSupportedException("could not find implementation for method ["+getMethodType()+"]");
 
+			if (streamingMessage != null) {
+				if (!(httpRequestBase instanceof HttpEntityEnclosingRequestBase)) {
+					throw new MethodNotSupportedException("method ["+getMethodType()+"] does not support a streaming request body");
+				}
+				((HttpEntityEnclosingRequestBase)httpRequestBase).setEntity(createEntity(streamingMessage));
+			}
+			if (httpRequestBase instanceof HttpEntityEnclosingRequestBase) {
+				HttpEntityEnclosingRequestBase entityEnclosingRequest = (HttpEntityEnclosingRequestBase)httpRequestBase;
+				if (entityEnclosingRequest.getEntity() != null) {
+					entityEnclosingRequest.setEntity(new CountingHttpEntity(entityEnclosingRequest.getEntity(), requestSizeStatistics));
+				}
+			}
+
 			if (StringUtils.isNotEmpty(getContentType())) {
 				httpRequestBase.setHeader("Content-Type", getContentType());
 			}
@@ -609,7 +693,7 @@ public abstract class HttpSenderBase extends TimeoutGuardSenderWithParametersBas
 				HttpResponse httpResponse = getHttpClient().execute(httpTarget, httpRequestBase, httpClientContext);
 				log.debug(getLogPrefix()+"executed method");
 
-				HttpResponseHandler responseHandler = new HttpResponseHandler(httpResponse);
+				HttpResponseHandler responseHandler = new HttpResponseHandler(httpResponse, responseSizeStatistics);
 				StatusLine statusline = httpResponse.getStatusLine();
 				statusCode = statusline.getStatusCode();
 
@@ -787,6 +871,22 @@ public abstract class HttpSenderBase extends TimeoutGuardSenderWithParametersBas
 		return maxConnections;
 	}
 
+	@IbisDoc({"the maximum number of concurrent connections to a single host. 0 means equal to <code>maxconnections</code>", "0"})
+	public void setMaxConnectionsPerRoute(int i) {
+		maxConnectionsPerRoute = i;
+	}
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	@IbisDoc({"when larger than 0, connections that have been idle for this number of ms, or that have expired, are closed by a background thread", "0"})
+	public void setIdleConnectionTimeout(int i) {
+		idleConnectionTimeout = i;
+	}
+	public int getIdleConnectionTimeout() {
+		return idleConnectionTimeout;
+	}
+
 	/**
 	 * The maximum number of times the execution is retried
 	 * @IbisDoc.default 1
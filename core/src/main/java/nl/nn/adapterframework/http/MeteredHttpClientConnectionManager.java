@@ -0,0 +1,83 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.http;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.nn.adapterframework.statistics.StatisticsKeeper;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.Registry;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * {@link PoolingHttpClientConnectionManager} that keeps statistics of the time callers wait for a connection from
+ * the pool, and counts the requests that could not get a connection in time.
+ *
+ * @since   7.3
+ */
+public class MeteredHttpClientConnectionManager extends PoolingHttpClientConnectionManager {
+
+	private final StatisticsKeeper leaseStatistics = new StatisticsKeeper("connection lease");
+	private final AtomicLong leaseTimeouts = new AtomicLong();
+
+	public MeteredHttpClientConnectionManager() {
+		super();
+	}
+
+	public MeteredHttpClientConnectionManager(Registry<ConnectionSocketFactory> socketFactoryRegistry) {
+		super(socketFactoryRegistry);
+	}
+
+	@Override
+	public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+		final ConnectionRequest request = super.requestConnection(route, state);
+		return new ConnectionRequest() {
+
+			@Override
+			public HttpClientConnection get(long timeout, TimeUnit tunit) throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+				long start = System.currentTimeMillis();
+				try {
+					HttpClientConnection connection = request.get(timeout, tunit);
+					leaseStatistics.addValue(System.currentTimeMillis()-start);
+					return connection;
+				} catch (ConnectionPoolTimeoutException e) {
+					leaseTimeouts.incrementAndGet();
+					throw e;
+				}
+			}
+
+			@Override
+			public boolean cancel() {
+				return request.cancel();
+			}
+		};
+	}
+
+	public StatisticsKeeper getLeaseStatistics() {
+		return leaseStatistics;
+	}
+
+	public long getLeaseTimeouts() {
+		return leaseTimeouts.get();
+	}
+}
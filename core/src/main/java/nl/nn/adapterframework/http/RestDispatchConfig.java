@@ -0,0 +1,174 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.http;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import nl.nn.adapterframework.configuration.ConfigurationException;
+import nl.nn.adapterframework.receivers.ServiceClient;
+
+/**
+ * Configuration of the {@link RestListener}s registered for a single uriPattern of the {@link RestServiceDispatcher}.
+ * <p>
+ * Segments of the uriPattern of the form <code>{name}</code> match any value; the position of these path variables
+ * is determined once, at registration.
+ * </p>
+ *
+ * @since   7.3
+ */
+public class RestDispatchConfig {
+	public static final String WILDCARD="*";
+
+	private final String uriPattern;
+	private final String[] segments;
+	private final int[] variablePositions;
+	private final String[] variableNames;
+
+	private final Map<String,MethodConfig> methods = new ConcurrentHashMap<String,MethodConfig>();
+	private volatile List<String> availableMethods = Collections.emptyList();
+
+	/**
+	 * Precomputed settings of a single method of a uriPattern.
+	 */
+	public static class MethodConfig {
+		private final ServiceClient listener;
+		private final String etagSessionKey;
+		private final String contentTypeSessionKey;
+		private final boolean validateEtag;
+
+		public MethodConfig(ServiceClient listener, String etagSessionKey, String contentTypeSessionKey, boolean validateEtag) {
+			this.listener = listener;
+			this.etagSessionKey = etagSessionKey;
+			this.contentTypeSessionKey = contentTypeSessionKey;
+			this.validateEtag = validateEtag;
+		}
+
+		public ServiceClient getListener() {
+			return listener;
+		}
+		public String getEtagSessionKey() {
+			return etagSessionKey;
+		}
+		public String getContentTypeSessionKey() {
+			return contentTypeSessionKey;
+		}
+		public boolean isValidateEtag() {
+			return validateEtag;
+		}
+	}
+
+	public RestDispatchConfig(String uriPattern) {
+		this.uriPattern = uriPattern;
+		segments = splitPath(uriPattern);
+		List<Integer> positions = new ArrayList<Integer>();
+		List<String> names = new ArrayList<String>();
+		for (int i=0; i<segments.length; i++) {
+			String variableName = getVariableName(segments[i]);
+			if (variableName!=null) {
+				positions.add(i);
+				names.add(variableName);
+			}
+		}
+		variablePositions = new int[positions.size()];
+		for (int i=0; i<variablePositions.length; i++) {
+			variablePositions[i] = positions.get(i);
+		}
+		variableNames = names.toArray(new String[names.size()]);
+	}
+
+	public synchronized void register(String method, MethodConfig methodConfig) throws ConfigurationException {
+		if (methods.containsKey(method)) {
+			throw new ConfigurationException("RestListener for uriPattern ["+uriPattern+"] method ["+method+"] already configured");
+		}
+		methods.put(method, methodConfig);
+		availableMethods = Collections.unmodifiableList(new ArrayList<String>(methods.keySet()));
+	}
+
+	/**
+	 * Returns the configuration for the method, or for {@link #WILDCARD} when the method itself is not registered.
+	 */
+	public MethodConfig getMethodConfig(String method) {
+		MethodConfig methodConfig = method==null ? null : methods.get(method);
+		if (methodConfig==null) {
+			methodConfig = methods.get(WILDCARD);
+		}
+		return methodConfig;
+	}
+
+	public List<String> getAvailableMethods() {
+		return availableMethods;
+	}
+
+	/**
+	 * Puts the values of the path variables of this uriPattern, taken from the segments of a matching uri, in the map.
+	 */
+	public void extractPathVariables(String[] uriSegments, Map<String,Object> pathVariables) {
+		for (int i=0; i<variablePositions.length; i++) {
+			pathVariables.put(variableNames[i], uriSegments[variablePositions[i]]);
+		}
+	}
+
+	public boolean hasPathVariables() {
+		return variablePositions.length>0;
+	}
+
+	public String getUriPattern() {
+		return uriPattern;
+	}
+
+	String[] getSegments() {
+		return segments;
+	}
+
+	/**
+	 * Returns the name of the path variable if the segment has the form <code>{name}</code>, otherwise <code>null</code>.
+	 */
+	static String getVariableName(String segment) {
+		if (segment.length()>2 && segment.charAt(0)=='{' && segment.charAt(segment.length()-1)=='}') {
+			return segment.substring(1, segment.length()-1);
+		}
+		return null;
+	}
+
+	/**
+	 * Splits a path on '/', skipping empty segments.
+	 */
+	static String[] splitPath(String path) {
+		List<String> result = new ArrayList<String>();
+		int length = path.length();
+		int start = 0;
+		while (start<length) {
+			int end = path.indexOf('/', start);
+			if (end<0) {
+				end = length;
+			}
+			if (end>start) {
+				result.add(path.substring(start, end));
+			}
+			start = end+1;
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName()+" uriPattern ["+uriPattern+"] methods "+availableMethods;
+	}
+}
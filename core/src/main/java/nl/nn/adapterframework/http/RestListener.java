@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2015 Nationale-Nederlanden
+   Copyright 2013, 2015, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -176,7 +176,7 @@ public class RestListener extends PushingListenerAdapter implements HasPhysicalD
 		return uriPattern;
 	}
 
-	@IbisDoc({"uri pattern to match. ", ""})
+	@IbisDoc({"uri pattern to match. segments of the form {name} match any value, which is put in the session under key name", ""})
 	public void setUriPattern(String uriPattern) {
 		this.uriPattern = uriPattern;
 	}
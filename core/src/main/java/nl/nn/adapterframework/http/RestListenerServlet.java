@@ -1,5 +1,5 @@
 /*
-   Copyright 2013-2015 Nationale-Nederlanden
+   Copyright 2013-2015, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -19,7 +19,6 @@ import java.io.IOException;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -72,7 +71,7 @@ public class RestListenerServlet extends HttpServlet {
 
 			String pattern = sd.findMatchingPattern(path);
 			if(pattern!=null) {
-				Map methodConfig = sd.getMethodConfig(pattern, "OPTIONS");
+				RestDispatchConfig.MethodConfig methodConfig = sd.getMethodConfig(pattern, "OPTIONS");
 				if (methodConfig == null) { //If set, it means the adapter handles the OPTIONS request
 					Iterator iter = sd.getAvailableMethods(pattern).iterator();
 					StringBuilder sb = new StringBuilder();
@@ -0,0 +1,118 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.http;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tree of the segments of the uriPatterns of the {@link RestServiceDispatcher}, to find the pattern matching a uri
+ * in time proportional to the number of segments of the uri instead of the number of registered patterns.
+ * <p>
+ * Matching rules:
+ * <ul>
+ * <li>literal segments take precedence over path variables (<code>{name}</code>);</li>
+ * <li>the longest matching pattern is used; a pattern also matches uris that have additional segments, so that
+ * e.g. <code>/customers</code> matches <code>/customers/123</code>;</li>
+ * <li>the pattern <code>/</code> only matches the uri <code>/</code>.</li>
+ * </ul>
+ * A tree is not modified after it has been built, so it can be used by multiple threads without locking.
+ * </p>
+ *
+ * @since   7.3
+ */
+public class RestRoutingTree {
+
+	private final Node root = new Node();
+
+	private static class Node {
+		private Map<String,Node> literalChildren;
+		private Node variableChild;
+		private RestDispatchConfig config;
+	}
+
+	public RestRoutingTree(Collection<RestDispatchConfig> configs) {
+		for (RestDispatchConfig config:configs) {
+			add(config);
+		}
+	}
+
+	private void add(RestDispatchConfig config) {
+		Node node = root;
+		for (String segment:config.getSegments()) {
+			Node child;
+			if (RestDispatchConfig.getVariableName(segment)!=null) {
+				if (node.variableChild==null) {
+					node.variableChild = new Node();
+				}
+				child = node.variableChild;
+			} else {
+				if (node.literalChildren==null) {
+					node.literalChildren = new HashMap<String,Node>();
+				}
+				child = node.literalChildren.get(segment);
+				if (child==null) {
+					child = new Node();
+					node.literalChildren.put(segment, child);
+				}
+			}
+			node = child;
+		}
+		node.config = config;
+	}
+
+	/**
+	 * Returns the configuration of the pattern that matches the uri, or <code>null</code> if no pattern matches.
+	 * @param pathVariables when not null, receives the values of the path variables of the matching pattern.
+	 */
+	public RestDispatchConfig match(String uri, Map<String,Object> pathVariables) {
+		if (uri==null) {
+			return null;
+		}
+		String[] segments = RestDispatchConfig.splitPath(uri);
+		RestDispatchConfig config;
+		if (segments.length==0) {
+			config = root.config;
+		} else {
+			config = match(root, segments, 0);
+		}
+		if (config!=null && pathVariables!=null && config.hasPathVariables()) {
+			config.extractPathVariables(segments, pathVariables);
+		}
+		return config;
+	}
+
+	private RestDispatchConfig match(Node node, String[] segments, int position) {
+		if (position==segments.length) {
+			return node.config;
+		}
+		RestDispatchConfig result = null;
+		if (node.literalChildren!=null) {
+			Node child = node.literalChildren.get(segments[position]);
+			if (child!=null) {
+				result = match(child, segments, position+1);
+			}
+		}
+		if (result==null && node.variableChild!=null) {
+			result = match(node.variableChild, segments, position+1);
+		}
+		if (result==null && node!=root) {
+			result = node.config;
+		}
+		return result;
+	}
+}
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013-2018 Nationale-Nederlanden
+   Copyright 2013-2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -19,9 +19,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.security.Principal;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -66,16 +64,13 @@ public class RestServiceDispatcher  {
 	protected Logger log = LogUtil.getLogger(this);
 	protected Logger secLog = LogUtil.getLogger("SEC");
 	
-	private final String WILDCARD="*";
-	private final String KEY_LISTENER="listener";
-	private final String KEY_ETAG_KEY="etagKey";
-	private final String KEY_CONTENT_TYPE_KEY="contentTypekey";
 	private final String SVG_FILE_NO_IMAGE_AVAILABLE = "/IAF_WebControl/GenerateFlowDiagram/svg/no_image_available.svg";
 
 	private static AppConstants appConstants = AppConstants.getInstance();
 	private static String etagCacheType = appConstants.getProperty("etag.cache.type", "ehcache");
 
-	private SortedMap patternClients=new TreeMap(new RestUriComparator());
+	private SortedMap<String,RestDispatchConfig> patternClients=new TreeMap<String,RestDispatchConfig>(new RestUriComparator());
+	private volatile RestRoutingTree routingTree = new RestRoutingTree(patternClients.values());
 
 	private static RestServiceDispatcher self = null;
 	private static IApiCache cache = ApiCacheManager.getInstance();
@@ -88,50 +83,18 @@ public class RestServiceDispatcher  {
 	}
 
 	public String findMatchingPattern(String uri) {
-		if (uri==null) {
-			return null;
-		}
-
-		String lookupUriPattern;
-		int index = uri.indexOf('/', 1);
-		if (index >= 1) {
-			lookupUriPattern = uri.substring(0, index);
-		} else {
-			lookupUriPattern = uri;
-		}
-
-		String matchingPattern=null;
-		for (Iterator it=patternClients.keySet().iterator();it.hasNext();) {
-			String uriPattern=(String)it.next();
-			if (log.isTraceEnabled()) log.trace("comparing uri to pattern ["+uriPattern+"] ");
-			if (lookupUriPattern.equals(uriPattern)) {
-				matchingPattern=uriPattern;
-				break;
-			}
-		}
-		return matchingPattern;
+		RestDispatchConfig config = routingTree.match(uri, null);
+		if (log.isTraceEnabled()) log.trace("uri ["+uri+"] matches pattern ["+(config==null?null:config.getUriPattern())+"]");
+		return config==null ? null : config.getUriPattern();
 	}
-	
-	public Map getMethodConfig(String matchingPattern, String method) {
-		Map methodConfig;
-		Map patternEntry=(Map)patternClients.get(matchingPattern);
-		
-		methodConfig = (Map)patternEntry.get(method);
-		if (methodConfig==null) {
-			methodConfig = (Map)patternEntry.get(WILDCARD);
-		}
-		return methodConfig;
+
+	public RestDispatchConfig.MethodConfig getMethodConfig(String matchingPattern, String method) {
+		RestDispatchConfig config = patternClients.get(matchingPattern);
+		return config==null ? null : config.getMethodConfig(method);
 	}
-	
-	public List getAvailableMethods(String matchingPattern) {
-		Map patternEntry=(Map)patternClients.get(matchingPattern);
-		Iterator it = patternEntry.entrySet().iterator();
-		List methods = new ArrayList<String>();
-		while (it.hasNext()) {
-			Map.Entry pair = (Map.Entry)it.next();
-			methods.add(pair.getKey());
-		}
-		return methods;
+
+	public List<String> getAvailableMethods(String matchingPattern) {
+		return patternClients.get(matchingPattern).getAvailableMethods();
 	}
 
 	/**
@@ -144,8 +107,9 @@ public class RestServiceDispatcher  {
 		String method = httpServletRequest.getMethod();
 		if (log.isTraceEnabled()) log.trace("searching listener for uri ["+uri+"] method ["+method+"]");
 		
-		String matchingPattern = findMatchingPattern(uri);
-		if (matchingPattern==null) {
+		Map<String,Object> pathVariables = new HashMap<String,Object>();
+		RestDispatchConfig config = routingTree.match(uri, pathVariables);
+		if (config==null) {
 			if (uri != null && (uri.equals("/showFlowDiagram")
 					|| uri.startsWith("/showFlowDiagram/"))) {
 				log.info("no REST listener configured for uri ["+uri+"], so using 'no image available'");
@@ -167,8 +131,8 @@ public class RestServiceDispatcher  {
 			throw new ListenerException("no REST listener configured for uri ["+uri+"]");
 		}
 		
-		Map methodConfig = getMethodConfig(matchingPattern, method);
-		
+		String matchingPattern = config.getUriPattern();
+		RestDispatchConfig.MethodConfig methodConfig = config.getMethodConfig(method);
 		if (methodConfig==null) {
 			throw new ListenerException("No REST listener specified for uri ["+uri+"] method ["+method+"]");
 		}
@@ -178,6 +142,7 @@ public class RestServiceDispatcher  {
 		context.put("restPath", restPath);
 		context.put("uri", uri);
 		context.put("method", method);
+		context.putAll(pathVariables);
 
 		String etag = null;
 		String ifNoneMatch = httpServletRequest.getHeader("If-None-Match");
@@ -193,9 +158,9 @@ public class RestServiceDispatcher  {
 
 		context.put("contentType", contentType);
 		context.put("userAgent", httpServletRequest.getHeader("User-Agent"));
-		ServiceClient listener=(ServiceClient)methodConfig.get(KEY_LISTENER);
-		String etagKey=(String)methodConfig.get(KEY_ETAG_KEY);
-		String contentTypeKey=(String)methodConfig.get(KEY_CONTENT_TYPE_KEY);
+		ServiceClient listener=methodConfig.getListener();
+		String etagKey=methodConfig.getEtagSessionKey();
+		String contentTypeKey=methodConfig.getContentTypeSessionKey();
 
 		Principal principal = null;
 		if (httpServletRequest != null) {
@@ -285,14 +250,14 @@ public class RestServiceDispatcher  {
 
 			//Caching: check for etags
 			if(uri.startsWith("/")) uri = uri.substring(1);
-			if(uri.indexOf("?") > -1) {
-				uri = uri.split("?")[0];
+			int queryStart = uri.indexOf('?');
+			if(queryStart > -1) {
+				uri = uri.substring(0, queryStart);
 			}
 			String etagCacheKey = restPath+"_"+uri;
 
-			if(cache != null && cache.containsKey(etagCacheKey)) {
-				String cachedEtag = (String) cache.get(etagCacheKey);
-
+			String cachedEtag = cache != null && (ifNoneMatch != null || ifMatch != null) ? (String) cache.get(etagCacheKey) : null;
+			if(cachedEtag != null) {
 				if(ifNoneMatch != null && ifNoneMatch.equalsIgnoreCase(cachedEtag) && method.equalsIgnoreCase("GET")) {
 					//Exit with 304
 					context.put("exitcode", 304);
@@ -373,32 +338,29 @@ public class RestServiceDispatcher  {
 		}
 	}
 	
-	public void registerServiceClient(ServiceClient listener, String uriPattern,
+	public synchronized void registerServiceClient(ServiceClient listener, String uriPattern,
 			String method, String etagSessionKey, String contentTypeSessionKey, boolean validateEtag) throws ConfigurationException {
 		uriPattern = unifyUriPattern(uriPattern);
 		if (StringUtils.isEmpty(method)) {
-			method=WILDCARD;
+			method=RestDispatchConfig.WILDCARD;
 		}
-		Map patternEntry=(Map)patternClients.get(uriPattern);
-		if (patternEntry==null) {
-			patternEntry=new HashMap();
-			patternClients.put(uriPattern, patternEntry);
+		RestDispatchConfig config=patternClients.get(uriPattern);
+		boolean newPattern = config==null;
+		if (newPattern) {
+			config=new RestDispatchConfig(uriPattern);
 		}
-		Map listenerConfig = (Map)patternEntry.get(method);
-		if (listenerConfig!=null) { 
-			throw new ConfigurationException("RestListener for uriPattern ["+uriPattern+"] method ["+method+"] already configured");
+		config.register(method, new RestDispatchConfig.MethodConfig(listener, StringUtils.isNotEmpty(etagSessionKey) ? etagSessionKey : null, StringUtils.isNotEmpty(contentTypeSessionKey) ? contentTypeSessionKey : null, validateEtag));
+		if (newPattern) {
+			patternClients.put(uriPattern, config);
+			routingTree = new RestRoutingTree(patternClients.values());
 		}
-		listenerConfig = new HashMap();
-		patternEntry.put(method,listenerConfig);
-		listenerConfig.put(KEY_LISTENER, listener);
-		listenerConfig.put("validateEtag", validateEtag);
-		if (StringUtils.isNotEmpty(etagSessionKey)) listenerConfig.put(KEY_ETAG_KEY, etagSessionKey);
-		if (StringUtils.isNotEmpty(contentTypeSessionKey)) listenerConfig.put(KEY_CONTENT_TYPE_KEY, contentTypeSessionKey);
 	}
 
-	public void unregisterServiceClient(String uriPattern) {
+	public synchronized void unregisterServiceClient(String uriPattern) {
 		uriPattern = unifyUriPattern(uriPattern);
-		patternClients.remove(uriPattern);
+		if (patternClients.remove(uriPattern)!=null) {
+			routingTree = new RestRoutingTree(patternClients.values());
+		}
 	}
 
 	public Set getUriPatterns() {
@@ -27,6 +27,7 @@ import nl.nn.adapterframework.parameters.Parameter;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 import nl.nn.adapterframework.parameters.ParameterValueList;
 import nl.nn.adapterframework.soap.SoapWrapper;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.CredentialFactory;
 import nl.nn.adapterframework.util.Misc;
 
@@ -138,6 +139,12 @@ public class WebServiceSender extends HttpSender {
 		return method;
 	}
 
+	@Override
+	protected boolean canStreamRequest(Message message) {
+		// the message is wrapped in a SOAP envelope, which requires it as a String
+		return false;
+	}
+
 	@Override
 	protected String extractResult(HttpResponseHandler responseHandler, ParameterResolutionContext prc) throws SenderException, IOException {
 		String httpResult = null;
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -184,4 +184,12 @@ public abstract class JdbcIteratingPipeBase extends IteratingPipe {
 	public int getLockWait() {
 		return lockWait;
 	}
+
+	@IbisDoc({"number of rows fetched from the database at a time, when more rows are needed. when 0, the default of the jdbc driver is used", "0"})
+	public void setFetchSize(int i) {
+		querySender.setFetchSize(i);
+	}
+	public int getFetchSize() {
+		return querySender.getFetchSize();
+	}
 }
\ No newline at end of file
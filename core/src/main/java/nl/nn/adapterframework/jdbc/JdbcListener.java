@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -20,10 +20,15 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashMap;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
+import nl.nn.adapterframework.configuration.ConfigurationWarnings;
 import nl.nn.adapterframework.core.IMessageWrapper;
 import nl.nn.adapterframework.core.IPullingListener;
 import nl.nn.adapterframework.core.ListenerException;
@@ -39,6 +44,20 @@ import org.apache.commons.lang.StringUtils;
 
 /**
  * JdbcListener base class.
+ * <p>
+ * When <code>claimBatchSize</code> is larger than 1, rows are claimed in batches: a single round-trip selects up to
+ * <code>claimBatchSize</code> available rows, using the locking clause of the {@link nl.nn.adapterframework.jdbc.dbms.IDbmsSupport}
+ * of the database (e.g. FOR UPDATE SKIP LOCKED or READPAST), and sets them to 'in process' in the same transaction. The claimed rows
+ * are handed out to the threads of the receiver from a local buffer. The status of each row is updated as soon as it has been processed.
+ * Claimed rows that are not yet handed out when the listener is closed are set back to 'available'.
+ * Claiming in batches is only used when the listener is not called within a transaction.
+ * </p>
+ * <p>
+ * When the instance stops unexpectedly, the rows it has claimed but not processed remain 'in process'. When a
+ * <code>resetStaleInProcessQuery</code> and <code>inProcessTimeout</code> are set, such rows are set back to 'available'
+ * when the listener is opened, and while it is running, once they have been 'in process' for longer than
+ * <code>inProcessTimeout</code> seconds. Otherwise they must be set back to 'available' manually.
+ * </p>
  *
  * @author  Gerrit van Brakel
  * @since   4.7
@@ -50,6 +69,9 @@ public class JdbcListener extends JdbcFacade implements IPullingListener {
 	private String selectQuery;
 	private String updateStatusToProcessedQuery;
 	private String updateStatusToErrorQuery;
+	private String updateStatusToInProcessQuery;
+	private String updateStatusToAvailableQuery;
+	private String resetStaleInProcessQuery;
 
 	private String keyField;
 	private String messageField;
@@ -63,6 +85,13 @@ public class JdbcListener extends JdbcFacade implements IPullingListener {
 
 	private String preparedSelectQuery;
 
+	private int claimBatchSize=0;
+	private String preparedClaimQuery;
+	private final Queue<Object> claimedMessages = new ConcurrentLinkedQueue<Object>();
+	private final Object claimLock = new Object();
+	private int inProcessTimeout=0;
+	private long nextStaleInProcessReset=0;
+
 	private  boolean trace=false;
 
 	public void configure() throws ConfigurationException {
@@ -75,6 +104,18 @@ public class JdbcListener extends JdbcFacade implements IPullingListener {
 		}
 		try {
 			preparedSelectQuery = getDbmsSupport().prepareQueryTextForWorkQueueReading(1, getSelectQuery());
+			if (getClaimBatchSize()>1) {
+				if (StringUtils.isEmpty(getUpdateStatusToInProcessQuery()) || StringUtils.isEmpty(getUpdateStatusToAvailableQuery())) {
+					throw new ConfigurationException(getLogPrefix()+"claimBatchSize requires queries to set the status of a row to 'in process' and back to 'available'");
+				}
+				preparedClaimQuery = getDbmsSupport().prepareQueryTextForWorkQueueReading(getClaimBatchSize(), getSelectQuery());
+				if (!getDbmsSupport().hasSkipLockedFunctionality()) {
+					ConfigurationWarnings.getInstance().add(log, getLogPrefix()+"database ["+getDbmsSupport().getDbmsName()+"] cannot skip locked rows, listeners on other instances will wait for each others claims");
+				}
+				if (!isResetStaleInProcess()) {
+					ConfigurationWarnings.getInstance().add(log, getLogPrefix()+"claimBatchSize is set without resetStaleInProcessQuery and inProcessTimeout, rows that remain 'in process' after a failure of the instance must be set back to 'available' manually");
+				}
+			}
 		} catch (JdbcException e) {
 			throw new ConfigurationException(e);
 		}
@@ -88,10 +129,64 @@ public class JdbcListener extends JdbcFacade implements IPullingListener {
 				throw new ListenerException(e);
 			}
 		}
+		if (getClaimBatchSize()>1 && isResetStaleInProcess()) {
+			nextStaleInProcessReset=0;
+			Connection c = null;
+			try {
+				c = isConnectionsArePooled() ? getConnection() : connection;
+				synchronized (c) {
+					resetStaleInProcessMessages(c);
+				}
+			} catch (JdbcException e) {
+				throw new ListenerException(e);
+			} finally {
+				if (isConnectionsArePooled()) {
+					closeConnection(c, "resetting stale messages");
+				}
+			}
+		}
+	}
+
+	private boolean isResetStaleInProcess() {
+		return StringUtils.isNotEmpty(getResetStaleInProcessQuery()) && getInProcessTimeout()>0;
+	}
+
+	/**
+	 * Sets rows that have been 'in process' for longer than <code>inProcessTimeout</code> back to 'available', at most
+	 * once per <code>inProcessTimeout</code>.
+	 */
+	protected void resetStaleInProcessMessages(Connection conn) throws ListenerException {
+		long now=System.currentTimeMillis();
+		if (now<nextStaleInProcessReset) {
+			return;
+		}
+		nextStaleInProcessReset=now+getInProcessTimeout()*1000L;
+		if (trace && log.isDebugEnabled()) log.debug("executing statement ["+getResetStaleInProcessQuery()+"]");
+		try {
+			PreparedStatement stmt = conn.prepareStatement(getResetStaleInProcessQuery());
+			try {
+				stmt.setTimestamp(1, new Timestamp(now-getInProcessTimeout()*1000L));
+				int count = stmt.executeUpdate();
+				if (count>0) {
+					log.warn(getLogPrefix()+"set ["+count+"] messages that were 'in process' for more than ["+getInProcessTimeout()+"] seconds back to 'available'");
+				}
+			} finally {
+				stmt.close();
+			}
+		} catch (SQLException e) {
+			throw new ListenerException(getLogPrefix()+"exception executing statement ["+getResetStaleInProcessQuery()+"]",e);
+		}
 	}
 
 	@Override
 	public void close() {
+		if (getClaimBatchSize()>1) {
+			try {
+				releaseClaimedMessages();
+			} catch (ListenerException e) {
+				log.warn(getLogPrefix() + "caught exception releasing claimed messages", e);
+			}
+		}
 		try {
 			if (connection != null) {
 				connection.close();
@@ -105,13 +200,16 @@ public class JdbcListener extends JdbcFacade implements IPullingListener {
 	}
 	
 	public Map openThread() throws ListenerException {
-		return new HashMap();
+		return new PipeLineSessionBase();
 	}
 
 	public void closeThread(Map threadContext) throws ListenerException {
 	}
 
 	public Object getRawMessage(Map threadContext) throws ListenerException {
+		if (getClaimBatchSize()>1 && !inTransaction()) {
+			return getClaimedRawMessage();
+		}
 		if (isConnectionsArePooled()) {
 			Connection c = null;
 			try {
@@ -135,15 +233,17 @@ public class JdbcListener extends JdbcFacade implements IPullingListener {
 		}
 	}
 
-	protected Object getRawMessage(Connection conn, Map threadContext) throws ListenerException {
-		boolean inTransaction=false;
-		
+	private boolean inTransaction() {
 		try {
-			inTransaction=JtaUtil.inTransaction();
+			return JtaUtil.inTransaction();
 		} catch (Exception e) {
 			log.warn(getLogPrefix()+"could not determing XA transaction status, assuming not in XA transaction: "+ e.getMessage());
-			inTransaction=false;
+			return false;
 		}
+	}
+
+	protected Object getRawMessage(Connection conn, Map threadContext) throws ListenerException {
+		boolean inTransaction=inTransaction();
 		try {
 			if (!inTransaction) {
 				execute(conn,getStartLocalTransactionQuery());
@@ -162,29 +262,7 @@ public class JdbcListener extends JdbcFacade implements IPullingListener {
 						if (!rs.next()) {
 							return null;
 						}
-						Object result;
-						String key=rs.getString(getKeyField());
-						
-						if (StringUtils.isNotEmpty(getMessageField())) {
-							String message;
-							if ("clob".equalsIgnoreCase(getMessageFieldType())) {
-								message=JdbcUtil.getClobAsString(rs,getMessageField(),false);
-							} else {
-								if ("blob".equalsIgnoreCase(getMessageFieldType())) {
-									message=JdbcUtil.getBlobAsString(rs,getMessageField(),getBlobCharset(),false,isBlobsCompressed(),isBlobSmartGet(),false);
-								} else {
-									message=rs.getString(getMessageField());
-								}
-							}
-							// log.debug("building wrapper for key ["+key+"], message ["+message+"]");
-							MessageWrapper mw = new MessageWrapper();
-							mw.setId(key);
-							mw.setText(message);
-							result=mw;
-						} else {
-							result = key;
-						}
-						return result;
+						return getRawMessage(rs);
 					} finally {
 						if (rs!=null) {
 							rs.close();
@@ -207,6 +285,181 @@ public class JdbcListener extends JdbcFacade implements IPullingListener {
 		
 	}
 
+	/**
+	 * Builds the raw message from the current row of the resultset.
+	 */
+	protected Object getRawMessage(ResultSet rs) throws Exception {
+		String key=rs.getString(getKeyField());
+		
+		if (StringUtils.isNotEmpty(getMessageField())) {
+			String message;
+			if ("clob".equalsIgnoreCase(getMessageFieldType())) {
+				message=JdbcUtil.getClobAsString(rs,getMessageField(),false);
+			} else {
+				if ("blob".equalsIgnoreCase(getMessageFieldType())) {
+					message=JdbcUtil.getBlobAsString(rs,getMessageField(),getBlobCharset(),false,isBlobsCompressed(),isBlobSmartGet(),false);
+				} else {
+					message=rs.getString(getMessageField());
+				}
+			}
+			// log.debug("building wrapper for key ["+key+"], message ["+message+"]");
+			MessageWrapper mw = new MessageWrapper();
+			mw.setId(key);
+			mw.setText(message);
+			return mw;
+		}
+		return key;
+	}
+
+	private String getKey(Object rawMessage) {
+		if (rawMessage instanceof IMessageWrapper) {
+			return ((IMessageWrapper)rawMessage).getId();
+		}
+		return (String)rawMessage;
+	}
+
+	private Object getClaimedRawMessage() throws ListenerException {
+		Object result = claimedMessages.poll();
+		if (result==null) {
+			synchronized (claimLock) {
+				result = claimedMessages.poll();
+				if (result==null) {
+					if (isConnectionsArePooled()) {
+						Connection c = null;
+						try {
+							c = getConnection();
+							claimMessages(c);
+						} catch (JdbcException e) {
+							throw new ListenerException(e);
+						} finally {
+							closeConnection(c, "claiming messages");
+						}
+					} else {
+						synchronized (connection) {
+							claimMessages(connection);
+						}
+					}
+					result = claimedMessages.poll();
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Claims the next batch of rows, and sets them to 'in process' in the same transaction.
+	 */
+	protected void claimMessages(Connection conn) throws ListenerException {
+		if (isResetStaleInProcess()) {
+			resetStaleInProcessMessages(conn);
+		}
+		try {
+			boolean autoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);
+			try {
+				List<Object> messages = new ArrayList<Object>();
+				List<String> keys = new ArrayList<String>();
+				if (trace && log.isDebugEnabled()) log.debug("executing query for ["+preparedClaimQuery+"]");
+				Statement stmt = conn.createStatement();
+				try {
+					stmt.setFetchSize(getClaimBatchSize());
+					stmt.setMaxRows(getClaimBatchSize());
+					ResultSet rs = stmt.executeQuery(preparedClaimQuery);
+					try {
+						while (rs.next()) {
+							Object rawMessage = getRawMessage(rs);
+							messages.add(rawMessage);
+							keys.add(getKey(rawMessage));
+						}
+					} finally {
+						rs.close();
+					}
+				} finally {
+					stmt.close();
+				}
+				executeBatch(conn, getUpdateStatusToInProcessQuery(), keys);
+				conn.commit();
+				if (log.isDebugEnabled()) log.debug(getLogPrefix()+"claimed ["+messages.size()+"] messages");
+				claimedMessages.addAll(messages);
+			} catch (Exception e) {
+				try {
+					conn.rollback();
+				} catch (SQLException e2) {
+					log.warn(getLogPrefix()+"exception rolling back claim of messages", e2);
+				}
+				throw new ListenerException(getLogPrefix() + "caught exception claiming messages using query ["+preparedClaimQuery+"]", e);
+			} finally {
+				conn.setAutoCommit(autoCommit);
+			}
+		} catch (SQLException e) {
+			throw new ListenerException(getLogPrefix() + "caught exception claiming messages", e);
+		}
+	}
+
+	/**
+	 * Sets the claimed rows that have not been handed out back to 'available'.
+	 */
+	protected void releaseClaimedMessages() throws ListenerException {
+		List<String> keys = new ArrayList<String>();
+		Object rawMessage;
+		while ((rawMessage=claimedMessages.poll())!=null) {
+			keys.add(getKey(rawMessage));
+		}
+		if (keys.isEmpty()) {
+			return;
+		}
+		Connection c = null;
+		try {
+			c = isConnectionsArePooled() ? getConnection() : connection;
+			synchronized (c) {
+				boolean autoCommit = c.getAutoCommit();
+				c.setAutoCommit(false);
+				try {
+					executeBatch(c, getUpdateStatusToAvailableQuery(), keys);
+					c.commit();
+				} catch (SQLException e) {
+					c.rollback();
+					throw e;
+				} finally {
+					c.setAutoCommit(autoCommit);
+				}
+			}
+		} catch (Exception e) {
+			throw new ListenerException(getLogPrefix() + "caught exception setting ["+keys.size()+"] claimed messages back to available", e);
+		} finally {
+			if (isConnectionsArePooled()) {
+				closeConnection(c, "releasing claimed messages");
+			}
+		}
+	}
+
+	private void executeBatch(Connection conn, String query, List<String> keys) throws SQLException {
+		if (keys.isEmpty() || StringUtils.isEmpty(query)) {
+			return;
+		}
+		if (trace && log.isDebugEnabled()) log.debug("executing statement ["+query+"] for ["+keys.size()+"] keys");
+		PreparedStatement stmt = conn.prepareStatement(query);
+		try {
+			for (String key:keys) {
+				stmt.setString(1, key);
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private void closeConnection(Connection c, String action) {
+		if (c!=null) {
+			try {
+				c.close();
+			} catch (SQLException e) {
+				log.warn(new ListenerException(getLogPrefix() + "caught exception closing connection after "+action, e));
+			}
+		}
+	}
+
 	public String getIdFromRawMessage(Object rawMessage, Map context) throws ListenerException {
 		String id;
 		if (rawMessage instanceof IMessageWrapper) {
@@ -229,11 +482,14 @@ public class JdbcListener extends JdbcFacade implements IPullingListener {
 	}
 
 	protected void afterMessageProcessed(Connection c, PipeLineResult processResult, String key, Map context) throws ListenerException {
+		execute(c,getStatusUpdateQuery(processResult),key);
+	}
+
+	private String getStatusUpdateQuery(PipeLineResult processResult) {
 		if (processResult==null || "success".equals(processResult.getState()) || StringUtils.isEmpty(getUpdateStatusToErrorQuery())) {
-			execute(c,getUpdateStatusToProcessedQuery(),key);
-		} else {
-			execute(c,getUpdateStatusToErrorQuery(),key);
+			return getUpdateStatusToProcessedQuery();
 		}
+		return getUpdateStatusToErrorQuery();
 	}
 
 	public void afterMessageProcessed(PipeLineResult processResult, Object rawMessage, Map context) throws ListenerException {
@@ -356,6 +612,43 @@ public class JdbcListener extends JdbcFacade implements IPullingListener {
 		return messageField;
 	}
 
+	protected void setUpdateStatusToInProcessQuery(String string) {
+		updateStatusToInProcessQuery = string;
+	}
+	public String getUpdateStatusToInProcessQuery() {
+		return updateStatusToInProcessQuery;
+	}
+
+	protected void setUpdateStatusToAvailableQuery(String string) {
+		updateStatusToAvailableQuery = string;
+	}
+	public String getUpdateStatusToAvailableQuery() {
+		return updateStatusToAvailableQuery;
+	}
+
+	@IbisDoc({"when larger than 1, up to this number of rows is claimed per round-trip to the database and set to 'in process'. only used when the listener is not called within a transaction. rows that remain 'in process' after a failure of the instance are only set back to 'available' automatically when resetstaleinprocessquery and inprocesstimeout are set", "0"})
+	public void setClaimBatchSize(int claimBatchSize) {
+		this.claimBatchSize = claimBatchSize;
+	}
+	public int getClaimBatchSize() {
+		return claimBatchSize;
+	}
+
+	protected void setResetStaleInProcessQuery(String string) {
+		resetStaleInProcessQuery = string;
+	}
+	public String getResetStaleInProcessQuery() {
+		return resetStaleInProcessQuery;
+	}
+
+	@IbisDoc({"when claimbatchsize is larger than 1, rows that have been 'in process' for more than this number of seconds are set back to 'available' by <code>resetstaleinprocessquery</code>, when the listener is opened and at most once per this period while it is running. must be longer than the time needed to process a claimed batch, otherwise rows may be processed twice. 0 disables this", "0"})
+	public void setInProcessTimeout(int inProcessTimeout) {
+		this.inProcessTimeout = inProcessTimeout;
+	}
+	public int getInProcessTimeout() {
+		return inProcessTimeout;
+	}
+
 	public void setStartLocalTransactionQuery(String string) {
 		startLocalTransactionQuery = string;
 	}
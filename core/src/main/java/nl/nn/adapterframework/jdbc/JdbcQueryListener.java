@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -73,5 +73,20 @@ public class JdbcQueryListener extends JdbcListener {
 		super.setUpdateStatusToProcessedQuery(string);
 	}
 
+	@IbisDoc({"sql statement to the status of a row to 'in process', when claimbatchsize is larger than 1. must contain one parameter, that is set to the value of the key. the selectquery must not return rows in this status", ""})
+	public void setUpdateStatusToInProcessQuery(String string) {
+		super.setUpdateStatusToInProcessQuery(string);
+	}
+
+	@IbisDoc({"sql statement to set the status of a claimed row back to 'available', when claimbatchsize is larger than 1. must contain one parameter, that is set to the value of the key", ""})
+	public void setUpdateStatusToAvailableQuery(String string) {
+		super.setUpdateStatusToAvailableQuery(string);
+	}
+
+	@IbisDoc({"sql statement to set the status of all rows that have been 'in process' since before a given time back to 'available', used when claimbatchsize is larger than 1 and inprocesstimeout is set. must contain one timestamp parameter, that is set to that time", ""})
+	public void setResetStaleInProcessQuery(String string) {
+		super.setResetStaleInProcessQuery(string);
+	}
+
 
 }
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -19,7 +19,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.sql.CallableStatement;
 import java.sql.Connection;
@@ -55,6 +57,7 @@ import nl.nn.adapterframework.parameters.ParameterValueList;
 import nl.nn.adapterframework.util.DB2XMLWriter;
 import nl.nn.adapterframework.util.JdbcUtil;
 import nl.nn.adapterframework.util.Misc;
+import nl.nn.adapterframework.util.StreamUtil;
 import nl.nn.adapterframework.util.XmlBuilder;
 import nl.nn.adapterframework.util.XmlUtils;
 
@@ -118,6 +121,9 @@ public abstract class JdbcQuerySenderBase extends JdbcSenderBase {
 	private String packageContent = "db2";
 	protected String[] columnsReturnedList=null;
 	private boolean streamResultToServlet=false;
+	private String streamResultToSessionKey=null;
+	private String outputFormat="xml";
+	private int fetchSize=0;
 
 	@Override
 	public void configure() throws ConfigurationException {
@@ -128,6 +134,9 @@ public abstract class JdbcQuerySenderBase extends JdbcSenderBase {
 				throw new ConfigurationException(getLogPrefix()+"illegal value for direction ["+dir+"], must be 'encode' or 'decode' or empty");
 			}
 		
+		if (!"xml".equalsIgnoreCase(getOutputFormat()) && !"json".equalsIgnoreCase(getOutputFormat())) {
+			throw new ConfigurationException(getLogPrefix()+"illegal value for outputFormat ["+getOutputFormat()+"], must be 'xml' or 'json'");
+		}
 		if (StringUtils.isNotEmpty(getColumnsReturned())) {
 			List<String> tempList = new ArrayList<String>();
 			StringTokenizer st = new StringTokenizer(getColumnsReturned(),",");
@@ -158,10 +167,16 @@ public abstract class JdbcQuerySenderBase extends JdbcSenderBase {
 			log.debug(getLogPrefix() +"preparing statement for query ["+query+"]");
 		}
 		String[] columnsReturned = getColumnsReturnedList();
+		PreparedStatement statement;
 		if (columnsReturned!=null) {
-			return prepareQueryWithColunmsReturned(con,query,columnsReturned);
+			statement = prepareQueryWithColunmsReturned(con,query,columnsReturned);
+		} else {
+			statement = con.prepareStatement(query,ResultSet.TYPE_FORWARD_ONLY,updateable?ResultSet.CONCUR_UPDATABLE:ResultSet.CONCUR_READ_ONLY);
+		}
+		if (getFetchSize()>0) {
+			statement.setFetchSize(getFetchSize());
 		}
-		return con.prepareStatement(query,ResultSet.TYPE_FORWARD_ONLY,updateable?ResultSet.CONCUR_UPDATABLE:ResultSet.CONCUR_READ_ONLY);
+		return statement;
 	}
 
 	protected CallableStatement getCallWithRowIdReturned(Connection con, String correlationID, String message) throws SQLException {
@@ -205,13 +220,20 @@ public abstract class JdbcQuerySenderBase extends JdbcSenderBase {
 				if (prc!=null && StringUtils.isNotEmpty(getClobSessionKey())) {
 					clobSessionVar=prc.getSession().get(getClobSessionKey());
 				}
+				Object resultTarget=null;
+				if (prc!=null && StringUtils.isNotEmpty(getStreamResultToSessionKey())) {
+					resultTarget=prc.getSession().get(getStreamResultToSessionKey());
+					if (resultTarget==null) {
+						throw new SenderException(getLogPrefix()+"no target to stream result to found in sessionKey ["+getStreamResultToSessionKey()+"]");
+					}
+				}
 				if (isStreamResultToServlet()) {
 					HttpServletResponse response = (HttpServletResponse) prc.getSession().get(IPipeLineSession.HTTP_RESPONSE_KEY);
 					String contentType = (String) prc.getSession().get("contentType");
 					String contentDisposition = (String) prc.getSession().get("contentDisposition");
-					return executeSelectQuery(statement,blobSessionVar,clobSessionVar, response, contentType, contentDisposition);
+					return executeSelectQuery(statement,blobSessionVar,clobSessionVar, response, contentType, contentDisposition, resultTarget);
 				} else {
-					return executeSelectQuery(statement,blobSessionVar,clobSessionVar);
+					return executeSelectQuery(statement,blobSessionVar,clobSessionVar, null, null, null, resultTarget);
 				}
 			} 
 			if (updateBlob) {
@@ -401,17 +423,67 @@ public abstract class JdbcQuerySenderBase extends JdbcSenderBase {
 				}
 			}
 		} else {
+			if ("json".equalsIgnoreCase(getOutputFormat())) {
+				StringWriter writer = new StringWriter();
+				writeResult(resultset, writer);
+				return writer.toString();
+			}
 			// Create XML and give the maxlength as a parameter
-			DB2XMLWriter db2xml = new DB2XMLWriter();
-			db2xml.setNullValue(getNullValue());
-			db2xml.setTrimSpaces(isTrimSpaces());
-			db2xml.setBlobCharset(getBlobCharset());
-			db2xml.setDecompressBlobs(isBlobsCompressed());
-			db2xml.setGetBlobSmart(isBlobSmartGet());
-			result = db2xml.getXML(resultset, getMaxRows(), isIncludeFieldDefinition());
+			result = createDB2XMLWriter().getXML(resultset, getMaxRows(), isIncludeFieldDefinition());
 		}
 		return result;
 	}
+
+	protected DB2XMLWriter createDB2XMLWriter() {
+		DB2XMLWriter db2xml = new DB2XMLWriter();
+		db2xml.setNullValue(getNullValue());
+		db2xml.setTrimSpaces(isTrimSpaces());
+		db2xml.setBlobCharset(getBlobCharset());
+		db2xml.setDecompressBlobs(isBlobsCompressed());
+		db2xml.setGetBlobSmart(isBlobSmartGet());
+		return db2xml;
+	}
+
+	/**
+	 * Writes the rows of the resultset to a Writer in the configured outputFormat, one row at a time.
+	 */
+	protected void writeResult(ResultSet resultset, Writer writer) throws JdbcException, SQLException, IOException {
+		DB2XMLWriter db2xml = createDB2XMLWriter();
+		try {
+			if ("json".equalsIgnoreCase(getOutputFormat())) {
+				db2xml.getJson(resultset, getMaxRows(), writer);
+			} else {
+				db2xml.getXML(resultset, getMaxRows(), isIncludeFieldDefinition(), writer);
+			}
+		} catch (SenderException e) {
+			throw new JdbcException(e);
+		}
+	}
+
+	/**
+	 * Streams the result of a non-scalar query to a Writer, OutputStream or HttpServletResponse, or to a file if
+	 * the target is a filename.
+	 */
+	protected void streamResult(ResultSet resultset, Object target) throws JdbcException, SQLException, IOException {
+		Writer writer = StreamUtil.getWriter(target);
+		boolean close = isCloseOutputstreamOnExit() && !(target instanceof HttpServletResponse);
+		if (writer==null) {
+			OutputStream outputStream = StreamUtil.getOutputStream(target);
+			if (outputStream==null) {
+				throw new IOException("cannot stream result to ["+target.getClass().getName()+"]");
+			}
+			writer = new OutputStreamWriter(outputStream, Misc.DEFAULT_INPUT_STREAM_ENCODING);
+			close = close || target instanceof String;
+		}
+		try {
+			writeResult(resultset, writer);
+			writer.flush();
+		} finally {
+			if (close) {
+				writer.close();
+			}
+		}
+	}
 	
 
 	protected String executeUpdateBlobQuery(PreparedStatement statement, Object message) throws SenderException{
@@ -525,6 +597,13 @@ public abstract class JdbcQuerySenderBase extends JdbcSenderBase {
 	}
 	
 	protected String executeSelectQuery(PreparedStatement statement, Object blobSessionVar, Object clobSessionVar, HttpServletResponse response, String contentType, String contentDisposition) throws SenderException{
+		return executeSelectQuery(statement, blobSessionVar, clobSessionVar, response, contentType, contentDisposition, null);
+	}
+
+	/**
+	 * @param resultTarget when not null, the result of a non-scalar query is streamed to it instead of returned
+	 */
+	protected String executeSelectQuery(PreparedStatement statement, Object blobSessionVar, Object clobSessionVar, HttpServletResponse response, String contentType, String contentDisposition, Object resultTarget) throws SenderException{
 		ResultSet resultset=null;
 		try {
 			if (getMaxRows()>0) {
@@ -538,6 +617,22 @@ public abstract class JdbcQuerySenderBase extends JdbcSenderBase {
 				resultset.absolute(getStartRow()-1);
 				log.debug(getLogPrefix() + "Index set at position: " +  resultset.getRow() );
 			}				
+			if (!isScalar()) {
+				if (resultTarget==null && response!=null) {
+					if (StringUtils.isEmpty(contentType)) {
+						contentType = ("json".equalsIgnoreCase(getOutputFormat()) ? "application/json" : "application/xml")+";charset="+Misc.DEFAULT_INPUT_STREAM_ENCODING;
+					}
+					response.setHeader("Content-Type", contentType); 
+					if (StringUtils.isNotEmpty(contentDisposition)) {
+						response.setHeader("Content-Disposition", contentDisposition); 
+					}
+					resultTarget=response;
+				}
+				if (resultTarget!=null) {
+					streamResult(resultset, resultTarget);
+					return "";
+				}
+			}
 			return getResult(resultset,blobSessionVar,clobSessionVar, response, contentType, contentDisposition);
 		} catch (SQLException sqle) {
 			throw new SenderException(getLogPrefix() + "got exception executing a SELECT SQL command",sqle );
@@ -1058,8 +1153,35 @@ public abstract class JdbcQuerySenderBase extends JdbcSenderBase {
 		return streamResultToServlet;
 	}
 
-	@IbisDoc({"if set, the result is streamed to the httpservletresponse object of the restservicedispatcher (instead of passed as a string)", "false"})
+	@IbisDoc({"if set, the result is streamed to the httpservletresponse object of the restservicedispatcher (instead of passed as a string). the content-type is taken from session key <code>contenttype</code>, or is <code>application/xml</code>, or <code>application/json</code> when <code>outputformat=json</code>, with charset utf-8", "false"})
 	public void setStreamResultToServlet(boolean b) {
 		streamResultToServlet = b;
 	}
+
+	public String getStreamResultToSessionKey() {
+		return streamResultToSessionKey;
+	}
+
+	@IbisDoc({"if set, the result of a <code>select</code> query that is not <code>scalar</code> is written one row at a time to the writer, outputstream or file (when the session variable contains a filename) in this session variable, and an empty string is returned. used with <code>closeoutputstreamonexit</code>", ""})
+	public void setStreamResultToSessionKey(String string) {
+		streamResultToSessionKey = string;
+	}
+
+	public String getOutputFormat() {
+		return outputFormat;
+	}
+
+	@IbisDoc({"format of the result of a <code>select</code> query that is not <code>scalar</code>: <code>xml</code> for a result/rowset/row document, or <code>json</code> for an array with an object for each row", "xml"})
+	public void setOutputFormat(String string) {
+		outputFormat = string;
+	}
+
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	@IbisDoc({"number of rows fetched from the database at a time, when more rows are needed. when 0, the default of the jdbc driver is used", "0"})
+	public void setFetchSize(int i) {
+		fetchSize = i;
+	}
 }
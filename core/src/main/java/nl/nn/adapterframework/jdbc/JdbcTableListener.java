@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -35,6 +35,7 @@ public class JdbcTableListener extends JdbcListener {
 	private String statusValueAvailable;
 	private String statusValueProcessed;
 	private String statusValueError;
+	private String statusValueInProcess;
 	
 	public void configure() throws ConfigurationException {
 		if (StringUtils.isEmpty(getTableName())) {
@@ -55,17 +56,32 @@ public class JdbcTableListener extends JdbcListener {
 		if (StringUtils.isEmpty(getStatusValueProcessed())) {
 			throw new ConfigurationException(getLogPrefix()+"must specifiy statusValueProcessed");
 		}
+		if (getClaimBatchSize()>1 && (StringUtils.isEmpty(getStatusValueInProcess()) || StringUtils.isEmpty(getStatusValueAvailable()))) {
+			throw new ConfigurationException(getLogPrefix()+"claimBatchSize requires statusValueInProcess and statusValueAvailable");
+		}
 		setSelectQuery("SELECT "+getKeyField()+
 						(StringUtils.isNotEmpty(getMessageField())?","+getMessageField():"")+
 						" FROM "+getTableName()+
 						" WHERE "+getStatusField()+
 						(StringUtils.isNotEmpty(getStatusValueAvailable())?
 						 "='"+getStatusValueAvailable()+"'":
-						 " NOT IN ('"+getStatusValueError()+"','"+getStatusValueProcessed()+"')")+
+						 " NOT IN ('"+getStatusValueError()+"','"+getStatusValueProcessed()+"'"+
+						 (StringUtils.isNotEmpty(getStatusValueInProcess())?",'"+getStatusValueInProcess()+"'":"")+")")+
 						 (StringUtils.isNotEmpty(getOrderField())?
 						 " ORDER BY "+getOrderField():""));
 		setUpdateStatusToProcessedQuery(getUpdateStatusQuery(getStatusValueProcessed()));				 
 		setUpdateStatusToErrorQuery(getUpdateStatusQuery(getStatusValueError())); 
+		if (StringUtils.isNotEmpty(getStatusValueInProcess())) {
+			setUpdateStatusToInProcessQuery(getUpdateStatusQuery(getStatusValueInProcess()));
+		}
+		if (StringUtils.isNotEmpty(getStatusValueAvailable())) {
+			setUpdateStatusToAvailableQuery(getUpdateStatusQuery(getStatusValueAvailable()));
+			if (StringUtils.isNotEmpty(getStatusValueInProcess()) && StringUtils.isNotEmpty(getTimestampField())) {
+				setResetStaleInProcessQuery("UPDATE "+getTableName()+
+						" SET "+getStatusField()+"='"+getStatusValueAvailable()+"',"+getTimestampField()+"="+getDbmsSupport().getSysDate()+
+						" WHERE "+getStatusField()+"='"+getStatusValueInProcess()+"' AND "+getTimestampField()+"<?");
+			}
+		}
 		super.configure();
 	}
 
@@ -116,7 +132,7 @@ public class JdbcTableListener extends JdbcListener {
 		return orderField;
 	}
 
-	@IbisDoc({"(optional) field used to store the date and time of the last change of the status field", ""})
+	@IbisDoc({"(optional) field used to store the date and time of the last change of the status field. required to set rows that remain 'in process' back to 'available' after inprocesstimeout", ""})
 	public void setTimestampField(String fieldname) {
 		timestampField = fieldname;
 	}
@@ -140,6 +156,14 @@ public class JdbcTableListener extends JdbcListener {
 		return statusValueError;
 	}
 
+	@IbisDoc({"(optional) value of status field indicating row is claimed for processing, when claimbatchsize is larger than 1. rows that remain in this status after a failure of the instance are set back to statusvalueavailable after inprocesstimeout seconds when timestampfield is set, otherwise they must be set back manually", ""})
+	public void setStatusValueInProcess(String string) {
+		statusValueInProcess = string;
+	}
+	public String getStatusValueInProcess() {
+		return statusValueInProcess;
+	}
+
 	@IbisDoc({"value of status field indicating row is processed ok", ""})
 	public void setStatusValueProcessed(String string) {
 		statusValueProcessed = string;
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013-2018 Nationale-Nederlanden
+   Copyright 2013-2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,6 +15,7 @@
 */
 package nl.nn.adapterframework.jdbc;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -31,8 +32,14 @@ import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 import java.util.zip.ZipException;
@@ -49,6 +56,7 @@ import nl.nn.adapterframework.jdbc.dbms.IDbmsSupport;
 import nl.nn.adapterframework.util.AppConstants;
 import nl.nn.adapterframework.util.ClassUtils;
 import nl.nn.adapterframework.util.JdbcUtil;
+import nl.nn.adapterframework.util.JtaUtil;
 import nl.nn.adapterframework.util.Misc;
 
 import org.apache.commons.lang.StringUtils;
@@ -182,6 +190,10 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 	private int retention = 30;
 	private String schemaOwner4Check=null;
 	private boolean onlyStoreWhenMessageIdUnique=false;
+	private boolean compactEncoding=false;
+	private int compressionLevel=Deflater.DEFAULT_COMPRESSION;
+	private int batchSize=0;
+	private long batchFlushInterval=100;
 	
 	private String order;
 	private String messagesOrder=AppConstants.getInstance().getString("browse.messages.order","");
@@ -199,6 +211,9 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 
 	private PlatformTransactionManager txManager;
 
+	private BlockingQueue<PendingMessage> pendingMessages;
+	private Thread batchWriter;
+
 	protected String insertQuery;
 	protected String deleteQuery;
 	protected String selectKeyQuery;
@@ -223,6 +238,7 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 	private static final String PROPERTY_ASSUME_PRIMARY_KEY_UNIQUE=CONTROL_PROPERTY_PREFIX+"assumePrimaryKeyUnique";
 	private static final String PROPERTY_CHECK_TABLE=CONTROL_PROPERTY_PREFIX+"checkTable";
 	private static final String PROPERTY_CHECK_INDICES=CONTROL_PROPERTY_PREFIX+"checkIndices";	
+	private static final String PROPERTY_MESSAGE_COUNT_CACHE_SECONDS=CONTROL_PROPERTY_PREFIX+"messageCountCacheSeconds";
 	
 	private static final boolean documentQueries=false;
 	private boolean useIndexHint;
@@ -231,6 +247,10 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 	private boolean assumePrimaryKeyUnique;
 	private boolean checkTable;
 	private boolean checkIndices;	
+	private long messageCountCacheMillis;
+
+	private final AtomicInteger cachedMessageCount = new AtomicInteger();
+	private volatile long messageCountExpiry=0;
 	
 	public JdbcTransactionalStorage() {
 		super();
@@ -249,6 +269,7 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 		assumePrimaryKeyUnique = ac.getBoolean(PROPERTY_ASSUME_PRIMARY_KEY_UNIQUE, true);
 		checkTable = ac.getBoolean(PROPERTY_CHECK_TABLE, false);
 		checkIndices = ac.getBoolean(PROPERTY_CHECK_INDICES, true);
+		messageCountCacheMillis = ac.getInt(PROPERTY_MESSAGE_COUNT_CACHE_SECONDS, 10)*1000L;
 	}
 
 	private void checkTableColumnPresent(Connection connection, IDbmsSupport dbms, String columnName)
@@ -399,6 +420,22 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 		}
 		createQueryTexts(getDbmsSupport());
 		checkDatabase();
+		if (getBatchSize()>0) {
+			String reason=null;
+			if (!isMessageLog()) {
+				reason="storage is not a messageLog";
+			} else if (type.equalsIgnoreCase(TYPE_MESSAGELOG_RECEIVER)) {
+				reason="the messageLog of a receiver is used to check for duplicates, that must be stored before the next message is received";
+			} else if (getDbmsSupport().mustInsertEmptyBlobBeforeData()) {
+				reason="database requires an empty blob to be inserted before the data";
+			} else if (isOnlyStoreWhenMessageIdUnique()) {
+				reason="onlyStoreWhenMessageIdUnique=true";
+			}
+			if (reason!=null) {
+				ConfigurationWarnings.getInstance().add(getLogPrefix()+"attribute [batchSize] is ignored, because "+reason);
+				setBatchSize(0);
+			}
+		}
 	}
 
 	public void open() throws SenderException {
@@ -409,6 +446,34 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 		} catch (SQLException e) {
 			throw new SenderException(getLogPrefix()+"exception creating table ["+getTableName()+"]",e);
 		} 
+		if (getBatchSize()>0 && batchWriter==null) {
+			pendingMessages = new LinkedBlockingQueue<PendingMessage>(getBatchSize()*10);
+			batchWriter = new Thread(new BatchWriter(), "BatchWriter-"+getName());
+			batchWriter.setDaemon(true);
+			batchWriter.start();
+		}
+	}
+
+	/**
+	 * Stops the batch writer, after it has written the messages that are still pending.
+	 */
+	@Override
+	public void close() {
+		if (batchWriter!=null) {
+			try {
+				pendingMessages.put(END_OF_QUEUE);
+				batchWriter.join();
+			} catch (InterruptedException e) {
+				log.warn(getLogPrefix()+"interrupted while waiting for batch writer to finish");
+				Thread.currentThread().interrupt();
+			}
+			batchWriter=null;
+		}
+		super.close();
+	}
+
+	private boolean isMessageLog() {
+		return type.equalsIgnoreCase(TYPE_MESSAGELOG_PIPE) || type.equalsIgnoreCase(TYPE_MESSAGELOG_RECEIVER);
 	}
 
 	/**
@@ -514,6 +579,21 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 	}
 	
 	
+	private String getKeysetListQuery(IDbmsSupport dbmsSupport, boolean startKeyPresent, Date startTime, Date endTime, boolean descending) {
+		String whereClause=null;
+		if (startKeyPresent) {
+			whereClause=getKeyField()+(descending?"<?":">?");
+		}
+		if (startTime!=null) {
+			whereClause=Misc.concatStrings(whereClause, " AND ", getDateField()+">=?");
+		}
+		if (endTime!=null) {
+			whereClause=Misc.concatStrings(whereClause, " AND ", getDateField()+"<?");
+		}
+		return "SELECT "+provideFirstRowsHintAfterFirstKeyword(dbmsSupport)+ getListClause()+ getWhereClause(whereClause,false)+
+		  " ORDER BY "+getKeyField()+(descending?" DESC":"")+provideTrailingFirstRowsHint(dbmsSupport);
+	}
+
 	private String documentQuery(String name, String query, String purpose) {
 		return "\n"+name+(purpose!=null?"\n"+purpose:"")+"\n"+query+"\n";
 	}
@@ -670,6 +750,73 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 		}
 	}
 
+	private int applyInsertParameters(PreparedStatement stmt, String messageId, String correlationId, Timestamp receivedDateTime, String comments, String label) throws SQLException {
+		int parPos=0;
+		
+		if (StringUtils.isNotEmpty(getTypeField())) {
+			stmt.setString(++parPos,type);
+		}
+		if (StringUtils.isNotEmpty(getSlotId())) {
+			stmt.setString(++parPos,getSlotId());
+		}			
+		if (StringUtils.isNotEmpty(getHostField())) {
+			stmt.setString(++parPos,host);
+		}
+		if (StringUtils.isNotEmpty(getLabelField())) {
+			stmt.setString(++parPos,label);
+		}
+		stmt.setString(++parPos,messageId);
+		stmt.setString(++parPos,correlationId);
+		stmt.setTimestamp(++parPos, receivedDateTime);
+		stmt.setString(++parPos, comments);
+		if (isMessageLog()) {
+			if (getRetention()<0) {
+				stmt.setTimestamp(++parPos, null);
+			} else {
+				Date date = new Date();
+				Calendar cal = Calendar.getInstance();
+				cal.setTime(date);
+				cal.add(Calendar.DAY_OF_MONTH, getRetention());
+				stmt.setTimestamp(++parPos, new Timestamp(cal.getTime().getTime()));
+			}
+		} else {
+			stmt.setTimestamp(++parPos, null);
+		}
+		return parPos;
+	}
+
+	/**
+	 * Writes the message to the stream, either in the compact encoding of {@link StoredMessageEncoder} or as a serialized Java object.
+	 */
+	protected void serializeMessage(Serializable message, OutputStream out) throws IOException {
+		if (isCompactEncoding()) {
+			StoredMessageEncoder.encode(message, out, isBlobsCompressed() ? getCompressionLevel() : 0);
+			return;
+		}
+		if (isBlobsCompressed()) {
+			Deflater deflater = new Deflater(getCompressionLevel());
+			try {
+				DeflaterOutputStream dos = new DeflaterOutputStream(out, deflater);
+				ObjectOutputStream oos = new ObjectOutputStream(dos);
+				oos.writeObject(message);
+				oos.flush();
+				dos.finish();
+			} finally {
+				deflater.end();
+			}
+		} else {
+			ObjectOutputStream oos = new ObjectOutputStream(out);
+			oos.writeObject(message);
+			oos.flush();
+		}
+	}
+
+	protected byte[] serializeMessage(Serializable message) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		serializeMessage(message, out);
+		return out.toByteArray();
+	}
+
 	protected String storeMessageInDatabase(Connection conn, String messageId, String correlationId, Timestamp receivedDateTime, String comments, String label, Serializable message) throws IOException, SQLException, JdbcException, SenderException {
 		PreparedStatement stmt = null;
 		try { 
@@ -683,37 +830,7 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 				stmt = conn.prepareStatement(insertQuery);
 			}
 			stmt.clearParameters();
-			int parPos=0;
-			
-			if (StringUtils.isNotEmpty(getTypeField())) {
-				stmt.setString(++parPos,type);
-			}
-			if (StringUtils.isNotEmpty(getSlotId())) {
-				stmt.setString(++parPos,getSlotId());
-			}			
-			if (StringUtils.isNotEmpty(getHostField())) {
-				stmt.setString(++parPos,host);
-			}
-			if (StringUtils.isNotEmpty(getLabelField())) {
-				stmt.setString(++parPos,label);
-			}
-			stmt.setString(++parPos,messageId);
-			stmt.setString(++parPos,correlationId);
-			stmt.setTimestamp(++parPos, receivedDateTime);
-			stmt.setString(++parPos, comments);
-			if (type.equalsIgnoreCase(TYPE_MESSAGELOG_PIPE) || type.equalsIgnoreCase(TYPE_MESSAGELOG_RECEIVER)) {
-				if (getRetention()<0) {
-					stmt.setTimestamp(++parPos, null);
-				} else {
-					Date date = new Date();
-					Calendar cal = Calendar.getInstance();
-					cal.setTime(date);
-					cal.add(Calendar.DAY_OF_MONTH, getRetention());
-					stmt.setTimestamp(++parPos, new Timestamp(cal.getTime().getTime()));
-				}
-			} else {
-				stmt.setTimestamp(++parPos, null);
-			}
+			int parPos=applyInsertParameters(stmt, messageId, correlationId, receivedDateTime, comments, label);
 	
 			if (!isStoreFullMessage()) {
 				if (isOnlyStoreWhenMessageIdUnique()) {
@@ -721,22 +838,23 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 					stmt.setString(++parPos, slotId);
 				}
 				stmt.execute();
+				if (!dbmsSupport.mustInsertEmptyBlobBeforeData()) {
+					// avoid a separate query to retrieve the key, when the driver returns it
+					ResultSet rs = stmt.getGeneratedKeys();
+					try {
+						if (rs!=null && rs.next()) {
+							return rs.getString(1);
+						}
+					} finally {
+						if (rs!=null) {
+							rs.close();
+						}
+					}
+				}
 				return null;
 			}
 			if (!dbmsSupport.mustInsertEmptyBlobBeforeData()) {
-				ByteArrayOutputStream out = new ByteArrayOutputStream();
-				
-				if (isBlobsCompressed()) {
-					DeflaterOutputStream dos = new DeflaterOutputStream(out);
-					ObjectOutputStream oos = new ObjectOutputStream(dos);
-					oos.writeObject(message);
-					dos.close();
-				} else {
-					ObjectOutputStream oos = new ObjectOutputStream(out);
-					oos.writeObject(message);
-				}
-				
-				stmt.setBytes(++parPos, out.toByteArray());
+				stmt.setBytes(++parPos, serializeMessage(message));
 				if (isOnlyStoreWhenMessageIdUnique()) {
 					stmt.setString(++parPos, messageId);
 					stmt.setString(++parPos, slotId);
@@ -798,17 +916,7 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 					}
 					Object blobHandle=dbmsSupport.getBlobUpdateHandle(rs, 1);
 					OutputStream out = dbmsSupport.getBlobOutputStream(rs, 1, blobHandle);
-					if (isBlobsCompressed()) {
-						DeflaterOutputStream dos = new DeflaterOutputStream(out);
-						ObjectOutputStream oos = new ObjectOutputStream(dos);
-						oos.writeObject(message);
-						oos.close();
-						dos.close();
-					} else {
-						ObjectOutputStream oos = new ObjectOutputStream(out);
-						oos.writeObject(message);
-						oos.close();
-					}
+					serializeMessage(message, out);
 					out.close();
 					dbmsSupport.updateBlob(rs, 1, blobHandle);
 					return newKey;
@@ -877,7 +985,15 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 		return resultString;
 	}
 	
+	/**
+	 * Stores the message. When batching is enabled and no transaction is active, the message is handed to the batch writer 
+	 * and <code>null</code> is returned instead of the key of the stored message. Such a message is lost when the JVM stops
+	 * before the batch writer has inserted it.
+	 */
 	public String storeMessage(String messageId, String correlationId, Date receivedDate, String comments, String label, Serializable message) throws SenderException {
+		if (batchWriter!=null && messageId!=null && correlationId!=null && !JtaUtil.inTransaction() && addToBatch(messageId, correlationId, receivedDate, comments, label, message)) {
+			return null;
+		}
 		TransactionStatus txStatus=null;
 		if (txManager!=null) {
 			txStatus = txManager.getTransaction(TXREQUIRED);
@@ -914,6 +1030,7 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 				if (result==null) {
 					result=retrieveKey(conn,messageId,correlationId,receivedDateTime);
 				}
+				adjustCachedMessageCount(1);
 				return result;
 			
 			} catch (Exception e) {
@@ -953,12 +1070,183 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 			if (result==null) {
 				result=retrieveKey(conn,messageId,correlationId,receivedDateTime);
 			}
+			adjustCachedMessageCount(1);
 			return result;
 		} catch (Exception e) {
 			throw new SenderException("cannot serialize message",e);
 		}
 	}
 
+	private static String truncate(String value, int maxLength) {
+		if (value!=null && value.length()>maxLength) {
+			return value.substring(0,maxLength);
+		}
+		return value;
+	}
+
+	/**
+	 * Queues the message for the batch writer. Returns <code>false</code> when the queue is full, to have the message stored directly.
+	 */
+	private boolean addToBatch(String messageId, String correlationId, Date receivedDate, String comments, String label, Serializable message) throws SenderException {
+		PendingMessage pendingMessage = new PendingMessage();
+		pendingMessage.messageId=truncate(messageId,MAXIDLEN);
+		pendingMessage.correlationId=truncate(correlationId,MAXCIDLEN);
+		pendingMessage.receivedDateTime=new Timestamp(receivedDate.getTime());
+		pendingMessage.comments=truncate(comments,MAXCOMMENTLEN);
+		pendingMessage.label=truncate(label,MAXLABELLEN);
+		if (isStoreFullMessage()) {
+			try {
+				pendingMessage.data=serializeMessage(message);
+			} catch (IOException e) {
+				throw new SenderException("cannot serialize message",e);
+			}
+		}
+		if (pendingMessages.offer(pendingMessage)) {
+			return true;
+		}
+		if (log.isDebugEnabled()) {
+			log.debug(getLogPrefix()+"batch queue is full, storing message ["+messageId+"] directly");
+		}
+		return false;
+	}
+
+	/**
+	 * Inserts the messages using a single batch statement, in a single transaction.
+	 */
+	private void insertBatch(List<PendingMessage> batch) throws JdbcException, SQLException {
+		TransactionStatus txStatus=null;
+		if (txManager!=null) {
+			txStatus = txManager.getTransaction(TXREQUIRED);
+		}
+		boolean success=false;
+		try {
+			Connection conn = getConnection();
+			try {
+				boolean autoCommit = txStatus==null && conn.getAutoCommit();
+				if (autoCommit) {
+					conn.setAutoCommit(false);
+				}
+				try {
+					PreparedStatement stmt = conn.prepareStatement(insertQuery);
+					try {
+						for (PendingMessage pendingMessage:batch) {
+							int parPos=applyInsertParameters(stmt, pendingMessage.messageId, pendingMessage.correlationId, pendingMessage.receivedDateTime, pendingMessage.comments, pendingMessage.label);
+							if (pendingMessage.data!=null) {
+								stmt.setBytes(++parPos, pendingMessage.data);
+							}
+							stmt.addBatch();
+						}
+						stmt.executeBatch();
+					} finally {
+						stmt.close();
+					}
+					if (txStatus==null) {
+						conn.commit();
+					}
+					success=true;
+					adjustCachedMessageCount(batch.size());
+				} finally {
+					if (txStatus==null && !success) {
+						conn.rollback();
+					}
+					if (autoCommit) {
+						conn.setAutoCommit(true);
+					}
+				}
+			} finally {
+				conn.close();
+			}
+		} finally {
+			if (txStatus!=null) {
+				if (success) {
+					txManager.commit(txStatus);
+				} else {
+					txManager.rollback(txStatus);
+				}
+			}
+		}
+	}
+
+	private void writeBatch(List<PendingMessage> batch) {
+		try {
+			insertBatch(batch);
+			if (log.isDebugEnabled()) {
+				log.debug(getLogPrefix()+"stored batch of ["+batch.size()+"] messages");
+			}
+		} catch (Exception e) {
+			log.warn(getLogPrefix()+"could not store batch of ["+batch.size()+"] messages, storing them one by one", e);
+			for (PendingMessage pendingMessage:batch) {
+				try {
+					insertBatch(Collections.singletonList(pendingMessage));
+				} catch (Exception e2) {
+					log.error(getLogPrefix()+"could not store message ["+pendingMessage.messageId+"] correlationId ["+pendingMessage.correlationId+"]", e2);
+				}
+			}
+		}
+	}
+
+	private static class PendingMessage {
+		String messageId;
+		String correlationId;
+		Timestamp receivedDateTime;
+		String comments;
+		String label;
+		byte[] data;
+	}
+
+	/**
+	 * Queued by {@link #close()} to have the batch writer stop after it has written the messages queued before it.
+	 */
+	private static final PendingMessage END_OF_QUEUE = new PendingMessage();
+
+	/**
+	 * Collects queued messages and writes them in batches of at most batchSize messages, 
+	 * at least every batchFlushInterval milliseconds while messages are pending.
+	 */
+	private class BatchWriter implements Runnable {
+
+		public void run() {
+			List<PendingMessage> batch = new ArrayList<PendingMessage>(getBatchSize()+1);
+			boolean stopped=false;
+			while (!stopped) {
+				try {
+					PendingMessage first = pendingMessages.poll(getBatchFlushInterval(), TimeUnit.MILLISECONDS);
+					if (first==null) {
+						continue;
+					}
+					batch.add(first);
+					long flushTime = System.currentTimeMillis()+getBatchFlushInterval();
+					while (batch.size()<getBatchSize() && batch.get(batch.size()-1)!=END_OF_QUEUE) {
+						if (pendingMessages.drainTo(batch, getBatchSize()-batch.size())==0) {
+							long wait = flushTime-System.currentTimeMillis();
+							if (wait<=0) {
+								break;
+							}
+							PendingMessage next = pendingMessages.poll(wait, TimeUnit.MILLISECONDS);
+							if (next==null) {
+								break;
+							}
+							batch.add(next);
+						}
+					}
+				} catch (InterruptedException e) {
+					log.warn(getLogPrefix()+"batch writer interrupted, writing the remaining queued messages");
+					pendingMessages.drainTo(batch);
+					batch.remove(END_OF_QUEUE);
+					stopped=true;
+				}
+				if (!batch.isEmpty() && batch.get(batch.size()-1)==END_OF_QUEUE) {
+					batch.remove(batch.size()-1);
+					stopped=true;
+				}
+				if (!batch.isEmpty()) {
+					writeBatch(batch);
+					batch.clear();
+				}
+			}
+		}
+	}
+
 	private class ResultSetIterator implements IMessageBrowsingIterator {
 		
 		Connection conn;
@@ -1010,9 +1298,143 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 		} 
 	}
 
+	/**
+	 * Iterates over the messages in order of their key, using a separate query for each page of messages, 
+	 * that continues after the key of the last message of the previous page.
+	 */
+	private class KeysetIterator implements IMessageBrowsingIterator {
+
+		private final String startKey;
+		private final Date startTime;
+		private final Date endTime;
+		private final boolean descending;
+		private final int pageSize;
+
+		private Object lastKey;
+		private Connection conn;
+		private PreparedStatement stmt;
+		private ResultSet rs;
+		private int rowsInPage;
+		private boolean current;
+		private boolean eof;
+
+		KeysetIterator(String startKey, Date startTime, Date endTime, boolean descending, int pageSize) throws ListenerException {
+			this.startKey=startKey;
+			this.startTime=startTime;
+			this.endTime=endTime;
+			this.descending=descending;
+			this.pageSize=pageSize;
+			openPage();
+		}
+
+		private void openPage() throws ListenerException {
+			closePage();
+			try {
+				conn = getConnection();
+			} catch (JdbcException e) {
+				throw new ListenerException(e);
+			}
+			try {
+				String query=getKeysetListQuery(getDbmsSupport(), lastKey!=null || StringUtils.isNotEmpty(startKey), startTime, endTime, descending);
+				if (log.isDebugEnabled()) {
+					log.debug("preparing keysetListQuery ["+query+"]");
+				}
+				stmt = conn.prepareStatement(query);
+				if (pageSize>0) {
+					stmt.setMaxRows(pageSize);
+					stmt.setFetchSize(pageSize);
+				}
+				int paramPos=applyStandardParameters(stmt, true, false);
+				if (lastKey!=null) {
+					stmt.setObject(paramPos++, lastKey);
+				} else if (StringUtils.isNotEmpty(startKey)) {
+					if (StringUtils.isNumeric(startKey)) {
+						stmt.setLong(paramPos++, Long.parseLong(startKey));
+					} else {
+						stmt.setString(paramPos++, startKey);
+					}
+				}
+				if (startTime!=null) {
+					stmt.setTimestamp(paramPos++, new Timestamp(startTime.getTime()));
+				}
+				if (endTime!=null) {
+					stmt.setTimestamp(paramPos++, new Timestamp(endTime.getTime()));
+				}
+				rs = stmt.executeQuery();
+				rowsInPage=0;
+			} catch (SQLException e) {
+				closePage();
+				throw new ListenerException(e);
+			}
+		}
+
+		private void closePage() throws ListenerException {
+			try {
+				if (rs!=null) {
+					rs.close();
+				}
+				if (stmt!=null) {
+					stmt.close();
+				}
+				if (conn!=null) {
+					conn.close();
+				}
+			} catch (SQLException e) {
+				throw new ListenerException("error closing browser session",e);
+			} finally {
+				rs=null;
+				stmt=null;
+				conn=null;
+			}
+		}
+
+		private void advance() throws ListenerException {
+			if (!current && !eof) {
+				try {
+					current = rs.next();
+					if (!current && pageSize>0 && rowsInPage==pageSize) {
+						openPage();
+						current = rs.next();
+					}
+					eof = !current;
+				} catch (SQLException e) {
+					throw new ListenerException(e);
+				}
+			}
+		}
+
+		public boolean hasNext() throws ListenerException {
+			advance();
+			return current;
+		}
+
+		public IMessageBrowsingIteratorItem next() throws ListenerException {
+			advance();
+			if (!current) {
+				throw new ListenerException("read beyond end of resultset");
+			}
+			current=false;
+			rowsInPage++;
+			try {
+				lastKey=rs.getObject(getKeyField());
+			} catch (SQLException e) {
+				throw new ListenerException(e);
+			}
+			return new JdbcTransactionalStorageIteratorItem(conn,rs,false);
+		}
+
+		public void close() throws ListenerException {
+			closePage();
+		}
+	}
+
 	public IMessageBrowsingIterator getIterator() throws ListenerException {
 		return getIterator(null,null,false);
 	}
+
+	public IMessageBrowsingIterator getIterator(String startKey, Date startTime, Date endTime, boolean forceDescending, int pageSize) throws ListenerException {
+		return new KeysetIterator(startKey, startTime, endTime, forceDescending, pageSize);
+	}
 	public IMessageBrowsingIterator getIterator(Date startTime, Date endTime, boolean forceDescending) throws ListenerException {
 		Connection conn;
 		try {
@@ -1094,6 +1516,7 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 			PreparedStatement stmt = conn.prepareStatement(deleteQuery);	
 			applyStandardParameters(stmt, messageId, true);
 			stmt.execute();
+			adjustCachedMessageCount(-1);
 			
 		} catch (SQLException e) {
 			throw new ListenerException(e);
@@ -1106,52 +1529,78 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 		}
 	}
 
-	private Object retrieveObject(ResultSet rs, int columnIndex, boolean compressed) throws ClassNotFoundException, JdbcException, IOException, SQLException {
-		InputStream blobStream=null;
+	private Object deserialize(byte[] data, boolean compressed) throws ClassNotFoundException, IOException {
+		InputStream in = new ByteArrayInputStream(data);
+		if (compressed) {
+			in = new InflaterInputStream(in);
+		}
+		ObjectInputStream ois = new ObjectInputStream(in);
 		try {
-			Blob blob = rs.getBlob(columnIndex);
-			if (blob==null) {
-				return null;
-			}
-			if (compressed) {
-				blobStream=new InflaterInputStream(JdbcUtil.getBlobInputStream(blob, Integer.toString(columnIndex)));
-			} else {
-				blobStream=JdbcUtil.getBlobInputStream(blob, Integer.toString(columnIndex));
-			}
-			ObjectInputStream ois = new ObjectInputStream(blobStream);
-			Object result = ois.readObject();
-			ois.close();
-			return result;
+			return ois.readObject();
 		} finally {
-			if (blobStream!=null) {
-				blobStream.close();
-			}
+			ois.close();
 		}
 	}
 
 	
 	protected Object retrieveObject(ResultSet rs, int columnIndex) throws ClassNotFoundException, JdbcException, IOException, SQLException {
 		try {
+			Blob blob = rs.getBlob(columnIndex);
+			if (blob==null) {
+				return null;
+			}
+			byte[] data;
+			InputStream blobStream=JdbcUtil.getBlobInputStream(blob, Integer.toString(columnIndex));
+			try {
+				data = Misc.streamToBytes(blobStream);
+			} finally {
+				blobStream.close();
+			}
+			if (StoredMessageEncoder.isEncoded(data)) {
+				return StoredMessageEncoder.decode(data);
+			}
 			if (isBlobsCompressed()) {
 				try {
-					return retrieveObject(rs,columnIndex,true);
+					return deserialize(data,true);
 				} catch (ZipException e1) {
 					log.warn(getLogPrefix()+"could not extract compressed blob, trying non-compressed: ("+ClassUtils.nameOf(e1)+") "+e1.getMessage());
-					return retrieveObject(rs,columnIndex,false);
+					return deserialize(data,false);
 				}
 			}
 			try {
-				return retrieveObject(rs,columnIndex,false);
+				return deserialize(data,false);
 			} catch (Exception e1) {
 				log.warn(getLogPrefix()+"could not extract non-compressed blob, trying compressed: ("+ClassUtils.nameOf(e1)+") "+e1.getMessage());
-				return retrieveObject(rs,columnIndex,true);
+				return deserialize(data,true);
 			}
 		} catch (Exception e2) {
 			throw new JdbcException("could not extract message", e2);
 		}
 	}
 
+	/**
+	 * Returns the number of messages in the storage. The count is cached for <code>jdbc.storage.messageCountCacheSeconds</code> seconds 
+	 * and adjusted for messages stored and deleted via this storage in the meantime, so it is an approximation.
+	 */
 	public int getMessageCount() throws ListenerException {
+		if (messageCountCacheMillis>0 && System.currentTimeMillis()<messageCountExpiry) {
+			return cachedMessageCount.get();
+		}
+		int count = countMessages();
+		if (messageCountCacheMillis>0) {
+			cachedMessageCount.set(count);
+			messageCountExpiry = System.currentTimeMillis()+messageCountCacheMillis;
+		}
+		return count;
+	}
+
+	private void adjustCachedMessageCount(int delta) {
+		if (messageCountExpiry>0) {
+			cachedMessageCount.addAndGet(delta);
+		}
+	}
+
+	private int countMessages() throws ListenerException {
 		Connection conn;
 		try {
 			conn = getConnection();
@@ -1667,6 +2116,38 @@ public class JdbcTransactionalStorage extends JdbcFacade implements ITransaction
 		this.storeFullMessage = storeFullMessage;
 	}
 
+	@IbisDoc({"when set to <code>true</code>, strings and byte arrays are stored with a compact, length prefixed encoding instead of as serialized java objects. messages stored either way can always be read", "<code>false</code>"})
+	public void setCompactEncoding(boolean compactEncoding) {
+		this.compactEncoding = compactEncoding;
+	}
+	public boolean isCompactEncoding() {
+		return compactEncoding;
+	}
+
+	@IbisDoc({"compression level used when blobsCompressed=<code>true</code>, from 1 (fastest) to 9 (smallest). -1 selects the default level of the deflate algorithm", "-1"})
+	public void setCompressionLevel(int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	@IbisDoc({"when set to a value greater than 0, messageLog records written outside a transaction are queued and inserted by a background thread, in batches of at most this size. the key of such records is not returned to the caller. queued records are lost when the jvm stops unexpectedly before they are inserted. ignored for the messageLog of a receiver, as that is used to check for duplicates", "0"})
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	@IbisDoc({"maximum time (in ms) a queued record waits for its batch to fill, when batchSize &gt; 0", "100"})
+	public void setBatchFlushInterval(long batchFlushInterval) {
+		this.batchFlushInterval = batchFlushInterval;
+	}
+	public long getBatchFlushInterval() {
+		return batchFlushInterval;
+	}
+
 	public boolean isOnlyStoreWhenMessageIdUnique() {
 		return onlyStoreWhenMessageIdUnique;
 	}
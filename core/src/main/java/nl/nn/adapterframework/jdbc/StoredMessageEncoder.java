@@ -0,0 +1,154 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.jdbc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes messages for storage in the message column of a {@link JdbcTransactionalStorage}.
+ * <p>
+ * Strings and byte arrays are stored as their bytes, prefixed with a header and their length, instead of as a serialized Java object.
+ * Other objects are stored using Java serialization, after the same header. The header starts with a byte that cannot start a serialized Java
+ * object or a deflated stream, so that {@link #isEncoded(byte[])} can distinguish encoded messages from messages stored by previous versions.
+ * </p>
+ * <pre>
+ *  magic (3 bytes) | flags (1 byte) | type (1 byte) | length of payload before compression (4 bytes) | payload, optionally deflated
+ * </pre>
+ *
+ * @since   7.3
+ */
+public class StoredMessageEncoder {
+
+	private static final byte[] MAGIC = { 0x1B, 'I', 'S' };
+	private static final int HEADER_LENGTH = MAGIC.length+2;
+
+	private static final int FLAG_DEFLATED = 1;
+
+	private static final int TYPE_STRING = 0;
+	private static final int TYPE_BYTES = 1;
+	private static final int TYPE_SERIALIZED = 2;
+
+	private static final String CHARSET = "UTF-8";
+
+	/**
+	 * Writes the message in the compact encoding.
+	 * @param compressionLevel level from 1 (fastest) to 9 (smallest) for {@link Deflater}, or 0 to store the message uncompressed.
+	 */
+	public static void encode(Serializable message, OutputStream out, int compressionLevel) throws IOException {
+		int type;
+		byte[] payload;
+		if (message instanceof String) {
+			type = TYPE_STRING;
+			payload = ((String)message).getBytes(CHARSET);
+		} else if (message instanceof byte[]) {
+			type = TYPE_BYTES;
+			payload = (byte[])message;
+		} else {
+			type = TYPE_SERIALIZED;
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(buffer);
+			oos.writeObject(message);
+			oos.close();
+			payload = buffer.toByteArray();
+		}
+		boolean deflated = compressionLevel!=0;
+		out.write(MAGIC);
+		out.write(deflated ? FLAG_DEFLATED : 0);
+		out.write(type);
+		new DataOutputStream(out).writeInt(payload.length);
+		if (deflated) {
+			Deflater deflater = new Deflater(compressionLevel);
+			try {
+				DeflaterOutputStream dos = new DeflaterOutputStream(out, deflater);
+				dos.write(payload);
+				dos.finish();
+			} finally {
+				deflater.end();
+			}
+		} else {
+			out.write(payload);
+		}
+	}
+
+	public static byte[] encode(Serializable message, int compressionLevel) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		encode(message, out, compressionLevel);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Returns <code>true</code> when the data starts with the header of the compact encoding.
+	 */
+	public static boolean isEncoded(byte[] data) {
+		if (data==null || data.length<HEADER_LENGTH+4) {
+			return false;
+		}
+		for (int i=0; i<MAGIC.length; i++) {
+			if (data[i]!=MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes a message that was written by {@link #encode(Serializable, OutputStream, int)}.
+	 * @return a String, a byte array or a deserialized object, depending on the type of the stored message.
+	 */
+	public static Object decode(byte[] data) throws IOException, ClassNotFoundException {
+		if (!isEncoded(data)) {
+			throw new IOException("data is not a message in compact encoding");
+		}
+		int flags = data[MAGIC.length];
+		int type = data[MAGIC.length+1];
+		DataInputStream header = new DataInputStream(new ByteArrayInputStream(data, HEADER_LENGTH, 4));
+		int length = header.readInt();
+		InputStream in = new ByteArrayInputStream(data, HEADER_LENGTH+4, data.length-HEADER_LENGTH-4);
+		if ((flags & FLAG_DEFLATED)!=0) {
+			in = new InflaterInputStream(in);
+		}
+		byte[] payload = new byte[length];
+		new DataInputStream(in).readFully(payload);
+		in.close();
+		switch (type) {
+			case TYPE_STRING:
+				return new String(payload, CHARSET);
+			case TYPE_BYTES:
+				return payload;
+			case TYPE_SERIALIZED:
+				ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(payload));
+				try {
+					return ois.readObject();
+				} finally {
+					ois.close();
+				}
+			default:
+				throw new IOException("unknown message type ["+type+"]");
+		}
+	}
+}
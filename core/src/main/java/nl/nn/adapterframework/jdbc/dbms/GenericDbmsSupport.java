@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2015, 2018 Nationale-Nederlanden
+   Copyright 2013, 2015, 2018, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -189,6 +189,10 @@ public class GenericDbmsSupport implements IDbmsSupport {
 	}
 	
 	
+	public boolean hasSkipLockedFunctionality() {
+		return false;
+	}
+
 	public String prepareQueryTextForWorkQueueReading(int batchSize, String selectQuery) throws JdbcException {
 		return prepareQueryTextForWorkQueueReading(batchSize, selectQuery, -1);
 	}
@@ -1,5 +1,5 @@
 /*
-   Copyright 2015 Nationale-Nederlanden
+   Copyright 2015, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -20,6 +20,8 @@ import java.sql.Connection;
 import nl.nn.adapterframework.jdbc.JdbcException;
 import nl.nn.adapterframework.util.JdbcUtil;
 
+import org.apache.commons.lang.StringUtils;
+
 /**
  * Support for H2.
  * 
@@ -35,6 +37,14 @@ public class H2DbmsSupport extends GenericDbmsSupport {
 		return "H2";
 	}
 
+	public String prepareQueryTextForWorkQueueReading(int batchSize, String selectQuery, int wait) throws JdbcException {
+		if (StringUtils.isEmpty(selectQuery) || !selectQuery.toLowerCase().startsWith(KEYWORD_SELECT)) {
+			throw new JdbcException("query ["+selectQuery+"] must start with keyword ["+KEYWORD_SELECT+"]");
+		}
+		// H2 cannot skip locked rows, FOR UPDATE makes concurrent readers wait until the lock is released
+		return selectQuery+" FOR UPDATE";
+	}
+
 	public String getSchema(Connection conn) throws JdbcException {
 		return JdbcUtil.executeStringQuery(conn, "SELECT SCHEMA()");
 	}
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2015, 2018 Nationale-Nederlanden
+   Copyright 2013, 2015, 2018, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -82,6 +82,11 @@ public interface IDbmsSupport {
 
 	String getTextFieldType();
 
+	/**
+	 * Returns <code>true</code> when the query returned by {@link #prepareQueryTextForWorkQueueReading(int, String)} skips rows
+	 * that are locked by other transactions, instead of waiting for them.
+	 */
+	boolean hasSkipLockedFunctionality();
 	String prepareQueryTextForWorkQueueReading(int batchSize, String selectQuery) throws JdbcException;
 	String prepareQueryTextForWorkQueueReading(int batchSize, String selectQuery, int wait) throws JdbcException;
 	String getFirstRecordQuery(String tableName) throws JdbcException;
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -67,6 +67,27 @@ public class JmsMessageBrowser extends JMSFacade implements IMessageBrowser {
 	}
 
 	public IMessageBrowsingIterator getIterator(Date startTime, Date endTime, boolean forceDescending) throws ListenerException {
+		try {
+			return new JmsQueueBrowserIterator(this,(Queue)getDestination(),getSelector(startTime, endTime));
+		} catch (Exception e) {
+			throw new ListenerException(e);
+		}
+	}
+
+	/**
+	 * Queues cannot be browsed from a given position, so the messages up to and including the message with JMSMessageID 
+	 * <code>startKey</code> are skipped. At most <code>pageSize</code> messages are returned. The order is always the order of the queue.
+	 * When the message with JMSMessageID <code>startKey</code> has been removed from the queue in the meantime, browsing restarts at the head of the queue.
+	 */
+	public IMessageBrowsingIterator getIterator(String startKey, Date startTime, Date endTime, boolean forceDescending, int pageSize) throws ListenerException {
+		try {
+			return new JmsQueueBrowserIterator(this,(Queue)getDestination(),getSelector(startTime, endTime), startKey, pageSize);
+		} catch (Exception e) {
+			throw new ListenerException(e);
+		}
+	}
+
+	private String getSelector(Date startTime, Date endTime) {
 		String selector=getSelector();
 		if (startTime!=null) {
 			selector=Misc.concatStrings(selector, " AND ", "JMSTimestamp >= "+DateUtils.format(startTime));
@@ -74,11 +95,7 @@ public class JmsMessageBrowser extends JMSFacade implements IMessageBrowser {
 		if (endTime!=null) {
 			selector=Misc.concatStrings(selector, " AND ", "JMSTimestamp < "+DateUtils.format(endTime));
 		}
-		try {
-			return new JmsQueueBrowserIterator(this,(Queue)getDestination(),selector);
-		} catch (Exception e) {
-			throw new ListenerException(e);
-		}
+		return selector;
 	}
 
 	public int getMessageCount() throws ListenerException {
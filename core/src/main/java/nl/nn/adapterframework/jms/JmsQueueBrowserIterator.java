@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -28,7 +28,10 @@ import nl.nn.adapterframework.core.IMessageBrowsingIterator;
 import nl.nn.adapterframework.core.IMessageBrowsingIteratorItem;
 import nl.nn.adapterframework.core.ListenerException;
 
+import nl.nn.adapterframework.util.LogUtil;
+
 import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
 
 /**
  * Helper class for browsing queues.
@@ -37,28 +40,66 @@ import org.apache.commons.lang.StringUtils;
  * @since   4.3
  */
 public class JmsQueueBrowserIterator implements IMessageBrowsingIterator {
+	protected Logger log = LogUtil.getLogger(this);
 
 	private final JMSFacade    facade;
 	private final Session session;
-	private final QueueBrowser queueBrowser;
-	private final Enumeration  enm;
+	private QueueBrowser queueBrowser;
+	private Enumeration  enm;
+	private final int maxMessages;
+	private int count=0;
 		
 	public JmsQueueBrowserIterator(JMSFacade facade, Queue destination, String selector) throws JMSException, NamingException, JmsException {
+		this(facade, destination, selector, null, 0);
+	}
+
+	/**
+	 * Creates an iterator that skips the messages up to and including the message with JMSMessageID <code>startKey</code>, 
+	 * and then returns at most <code>maxMessages</code> messages. 
+	 * When the message with JMSMessageID <code>startKey</code> is no longer on the queue, e.g. because it has been
+	 * consumed since the previous page was browsed, browsing restarts at the head of the queue, instead of returning
+	 * no messages at all, which would look like the end of the queue.
+	 */
+	public JmsQueueBrowserIterator(JMSFacade facade, Queue destination, String selector, String startKey, int maxMessages) throws JMSException, NamingException, JmsException {
 		this.facade=facade;
+		this.maxMessages=maxMessages;
 		this.session=facade.createSession();
+		openBrowser(destination, selector);
+		if (StringUtils.isNotEmpty(startKey) && !skipTo(startKey)) {
+			log.warn("message with JMSMessageID [" + startKey + "] not found on queue [" + destination + "], browsing from the head of the queue");
+			queueBrowser.close();
+			openBrowser(destination, selector);
+		}
+	}
+
+	private void openBrowser(Queue destination, String selector) throws JMSException {
 		if (StringUtils.isEmpty(selector)) {
-			this.queueBrowser=session.createBrowser(destination);
+			queueBrowser=session.createBrowser(destination);
 		} else {
-			this.queueBrowser=session.createBrowser(destination, selector);
+			queueBrowser=session.createBrowser(destination, selector);
+		}
+		enm=queueBrowser.getEnumeration();
+	}
+
+	/**
+	 * Skips the messages up to and including the message with JMSMessageID <code>startKey</code>.
+	 * Returns <code>false</code> when it is not found.
+	 */
+	private boolean skipTo(String startKey) throws JMSException {
+		while (enm.hasMoreElements()) {
+			if (startKey.equals(((Message)enm.nextElement()).getJMSMessageID())) {
+				return true;
+			}
 		}
-		this.enm=queueBrowser.getEnumeration(); 
+		return false;
 	}
 
 	public boolean hasNext() {
-		return enm.hasMoreElements();
+		return (maxMessages<=0 || count<maxMessages) && enm.hasMoreElements();
 	}
 
 	public IMessageBrowsingIteratorItem next() {
+		count++;
 		return new JmsMessageBrowserIteratorItem((Message)enm.nextElement());
 	}
 
@@ -0,0 +1,304 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.jms;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+import nl.nn.adapterframework.util.AppConstants;
+import nl.nn.adapterframework.util.LogUtil;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Receives the replies on a reply queue with a fixed number of long-lived consumers, and hands them to the threads
+ * that wait for them, based on their JMSCorrelationID.
+ * <p>
+ * This replaces a consumer with a JMSCorrelationID selector per request, which is expensive on most brokers when many
+ * requests are waiting at the same time. The consumers use sessions of the {@link MessagingSource} the dispatcher belongs to.
+ * As the consumers do not use a selector, they consume all messages on the reply queue. The reply queue must therefore
+ * only receive replies for this instance.
+ * </p>
+ * <p>
+ * A reply that arrives before the requesting thread has registered for it is kept until it is claimed. Replies that
+ * are not claimed within <code>jms.replyDispatcher.unclaimedReplyRetention</code> ms, like replies that arrive after
+ * the requesting thread has stopped waiting, are discarded with a warning.
+ * </p>
+ *
+ * @since   7.3
+ */
+public class JmsReplyDispatcher {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private static final long POLL_INTERVAL = 1000;
+
+	private long unclaimedReplyRetention = AppConstants.getInstance().getLong("jms.replyDispatcher.unclaimedReplyRetention", 60000);
+
+	private final MessagingSource messagingSource;
+	private final JMSFacade facade;
+	private final Destination replyQueue;
+	private final int consumerCount;
+
+	private final ConcurrentMap<String,PendingReply> pendingReplies = new ConcurrentHashMap<String,PendingReply>();
+	private final ConcurrentMap<String,UnclaimedReply> unclaimedReplies = new ConcurrentHashMap<String,UnclaimedReply>();
+	private final List<Thread> consumerThreads = new ArrayList<Thread>();
+	private final AtomicLong discardedReplyCount = new AtomicLong();
+	private volatile boolean running;
+	private volatile long nextPurge;
+
+	/**
+	 * A request that waits for its reply.
+	 */
+	public static class PendingReply {
+		private final String correlationId;
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private volatile Message reply;
+		private volatile boolean closed;
+
+		private PendingReply(String correlationId) {
+			this.correlationId = correlationId;
+		}
+
+		private void complete(Message reply) {
+			this.reply = reply;
+			latch.countDown();
+		}
+
+		private void cancel() {
+			closed = true;
+			latch.countDown();
+		}
+
+		/**
+		 * Waits for the reply.
+		 * @param timeout maximum time to wait in ms, 0 to wait without timeout.
+		 * @return the reply, or <code>null</code> when no reply was received within the timeout.
+		 */
+		public Message waitForReply(long timeout) throws InterruptedException, JmsException {
+			if (timeout>0) {
+				latch.await(timeout, TimeUnit.MILLISECONDS);
+			} else {
+				latch.await();
+			}
+			if (closed) {
+				throw new JmsException("reply dispatcher was closed while waiting for reply with correlationId ["+correlationId+"]");
+			}
+			return reply;
+		}
+
+		public String getCorrelationId() {
+			return correlationId;
+		}
+	}
+
+	private static class UnclaimedReply {
+		private final Message message;
+		private final long received = System.currentTimeMillis();
+
+		private UnclaimedReply(Message message) {
+			this.message = message;
+		}
+	}
+
+	public JmsReplyDispatcher(MessagingSource messagingSource, JMSFacade facade, Destination replyQueue, int consumerCount) {
+		this.messagingSource = messagingSource;
+		this.facade = facade;
+		this.replyQueue = replyQueue;
+		this.consumerCount = consumerCount<1 ? 1 : consumerCount;
+	}
+
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		for (int i=0; i<consumerCount; i++) {
+			Thread thread = new Thread(new Consumer(), "JmsReplyDispatcher["+replyQueue+"]-"+i);
+			thread.setDaemon(true);
+			thread.start();
+			consumerThreads.add(thread);
+		}
+		log.info(getLogPrefix()+"started ["+consumerCount+"] reply consumers");
+	}
+
+	/**
+	 * Stops the consumers and releases their sessions. Threads that are still waiting for a reply receive an exception.
+	 */
+	public synchronized void close() {
+		running = false;
+		for (Thread thread:consumerThreads) {
+			try {
+				thread.join(2*POLL_INTERVAL);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		consumerThreads.clear();
+		for (Iterator<PendingReply> it=pendingReplies.values().iterator(); it.hasNext();) {
+			it.next().cancel();
+			it.remove();
+		}
+		unclaimedReplies.clear();
+		log.info(getLogPrefix()+"closed, discarded ["+discardedReplyCount.get()+"] unclaimed replies");
+	}
+
+	/**
+	 * Registers a request that waits for a reply with the specified correlationId. Register before the request is sent
+	 * when the correlationId is known in advance. The caller must call {@link #unregister(PendingReply)} when it stops waiting.
+	 */
+	public PendingReply register(String correlationId) throws JmsException {
+		if (!running) {
+			throw new JmsException(getLogPrefix()+"reply dispatcher is closed");
+		}
+		PendingReply pendingReply = new PendingReply(correlationId);
+		if (pendingReplies.putIfAbsent(correlationId, pendingReply)!=null) {
+			throw new JmsException(getLogPrefix()+"already waiting for a reply with correlationId ["+correlationId+"]");
+		}
+		UnclaimedReply unclaimedReply = unclaimedReplies.remove(correlationId);
+		if (unclaimedReply!=null) {
+			if (log.isDebugEnabled()) log.debug(getLogPrefix()+"reply with correlationId ["+correlationId+"] arrived before it was waited for");
+			pendingReplies.remove(correlationId, pendingReply);
+			pendingReply.complete(unclaimedReply.message);
+		}
+		return pendingReply;
+	}
+
+	public void unregister(PendingReply pendingReply) {
+		pendingReplies.remove(pendingReply.getCorrelationId(), pendingReply);
+	}
+
+	protected void dispatch(Message message) throws JMSException {
+		String correlationId = message.getJMSCorrelationID();
+		if (correlationId==null) {
+			discardedReplyCount.incrementAndGet();
+			log.warn(getLogPrefix()+"discarding reply msgId ["+message.getJMSMessageID()+"] without correlationId");
+			return;
+		}
+		PendingReply pendingReply = pendingReplies.remove(correlationId);
+		if (pendingReply!=null) {
+			pendingReply.complete(message);
+			return;
+		}
+		// keep the reply, and check again to cover a request that registered in the meantime
+		UnclaimedReply unclaimedReply = new UnclaimedReply(message);
+		unclaimedReplies.put(correlationId, unclaimedReply);
+		pendingReply = pendingReplies.get(correlationId);
+		if (pendingReply!=null && unclaimedReplies.remove(correlationId, unclaimedReply)) {
+			pendingReplies.remove(correlationId, pendingReply);
+			pendingReply.complete(message);
+		}
+	}
+
+	protected void purgeUnclaimedReplies() {
+		long now = System.currentTimeMillis();
+		if (now<nextPurge) {
+			return;
+		}
+		nextPurge = now+POLL_INTERVAL;
+		for (Map.Entry<String,UnclaimedReply> entry:unclaimedReplies.entrySet()) {
+			UnclaimedReply unclaimedReply = entry.getValue();
+			if (now-unclaimedReply.received>unclaimedReplyRetention && unclaimedReplies.remove(entry.getKey(), unclaimedReply)) {
+				discardedReplyCount.incrementAndGet();
+				log.warn(getLogPrefix()+"discarding reply with correlationId ["+entry.getKey()+"], nobody waited for it within ["+unclaimedReplyRetention+"] ms");
+			}
+		}
+	}
+
+	private class Consumer implements Runnable {
+
+		@Override
+		public void run() {
+			Session session = null;
+			MessageConsumer consumer = null;
+			try {
+				while (running) {
+					try {
+						if (consumer==null) {
+							session = messagingSource.createSession(false, Session.AUTO_ACKNOWLEDGE);
+							consumer = facade.getMessageConsumer(session, replyQueue, null);
+						}
+						Message message = consumer.receive(POLL_INTERVAL);
+						if (message!=null) {
+							dispatch(message);
+						}
+						purgeUnclaimedReplies();
+					} catch (Exception e) {
+						if (!running) {
+							break;
+						}
+						log.warn(getLogPrefix()+"exception receiving replies, reconnecting consumer", e);
+						closeConsumer(consumer);
+						consumer = null;
+						messagingSource.releaseSession(session);
+						session = null;
+						try {
+							Thread.sleep(POLL_INTERVAL);
+						} catch (InterruptedException ie) {
+							Thread.currentThread().interrupt();
+							break;
+						}
+					}
+				}
+			} finally {
+				closeConsumer(consumer);
+				messagingSource.releaseSession(session);
+			}
+		}
+
+		private void closeConsumer(MessageConsumer consumer) {
+			if (consumer!=null) {
+				try {
+					consumer.close();
+				} catch (JMSException e) {
+					log.warn(getLogPrefix()+"exception closing reply consumer", e);
+				}
+			}
+		}
+	}
+
+	protected String getLogPrefix() {
+		return "JmsReplyDispatcher ["+replyQueue+"] ";
+	}
+
+	public int getPendingReplyCount() {
+		return pendingReplies.size();
+	}
+
+	public long getDiscardedReplyCount() {
+		return discardedReplyCount.get();
+	}
+
+	public void setUnclaimedReplyRetention(long unclaimedReplyRetention) {
+		this.unclaimedReplyRetention = unclaimedReplyRetention;
+	}
+	public long getUnclaimedReplyRetention() {
+		return unclaimedReplyRetention;
+	}
+}
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2018 Nationale-Nederlanden
+   Copyright 2013, 2018, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -77,6 +77,8 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters, IPost
 	private String soapAction=null;
 	private String soapHeaderParam="soapHeader";
 	private String linkMethod="MESSAGEID";
+	private boolean sharedReplyConsumer=false;
+	private int sharedReplyConsumerCount=1;
 	
 	protected ParameterList paramList = null;
 	private SoapWrapper soapWrapper = null;
@@ -98,6 +100,10 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters, IPost
 			paramList.configure();
 		}
 		super.configure();
+		if (isSharedReplyConsumer() && (!isSynchronous() || StringUtils.isEmpty(getReplyTo()))) {
+			ConfigurationWarnings.getInstance().add(log, getLogPrefix()+"sharedReplyConsumer is only used when synchronous=true and replyToName is set");
+			setSharedReplyConsumer(false);
+		}
 		if (isSoap()) {
 			//ConfigurationWarnings configWarnings = ConfigurationWarnings.getInstance();
 			//String msg = getLogPrefix()+"the use of attribute soap=true has been deprecated. Please change to SoapWrapperPipe";
@@ -172,6 +178,8 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters, IPost
 			message = soapWrapper.putInEnvelope(message, getEncodingStyleURI(),getServiceNamespaceURI(),soapHeader);
 			if (log.isDebugEnabled()) log.debug(getLogPrefix()+"correlationId ["+correlationID+"] soap message ["+message+"]");
 		}
+		JmsReplyDispatcher replyDispatcher = null;
+		JmsReplyDispatcher.PendingReply pendingReply = null;
 		try {
 			s = createSession();
 			mp = getMessageProducer(s, getDestination(prc));
@@ -208,6 +216,14 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters, IPost
 				if (log.isDebugEnabled()) log.debug("replyTo set to queue [" + replyQueue.toString() + "]");
 			}
 
+			if (isSynchronous() && isSharedReplyConsumer()) {
+				replyDispatcher = getMessagingSource().getReplyDispatcher(this, replyToName, replyQueue, getSharedReplyConsumerCount());
+				if (!"MESSAGEID".equalsIgnoreCase(getLinkMethod())) {
+					// register before sending, to be sure that the reply is not missed
+					pendingReply = replyDispatcher.register(getReplyCorrelationId(correlationID, msg));
+				}
+			}
+
 			// send message	
 			send(mp, msg);
 			if (log.isDebugEnabled()) {
@@ -228,31 +244,25 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters, IPost
 			if (isSynchronous()) {
 				String replyCorrelationId=null;
 				if (replyToName != null) {
-					if ("CORRELATIONID".equalsIgnoreCase(getLinkMethod())) {
-						replyCorrelationId=correlationID;
-					} else if ("CORRELATIONID_FROM_MESSAGE".equalsIgnoreCase(getLinkMethod())) {
-						replyCorrelationId=msg.getJMSCorrelationID();
-					} else {
-						replyCorrelationId=msg.getJMSMessageID();
-					}
+					replyCorrelationId=getReplyCorrelationId(correlationID, msg);
 				}
 				if (log.isDebugEnabled()) log.debug("[" + getName() + "] start waiting for reply on [" + replyQueue + "] requestMsgId ["+msg.getJMSMessageID()+"] replyCorrelationId ["+replyCorrelationId+"] for ["+getReplyTimeout()+"] ms");
+				if (replyDispatcher!=null) {
+					if (pendingReply==null) {
+						pendingReply = replyDispatcher.register(replyCorrelationId);
+					}
+					// the producer and session are not required to wait for the reply
+					closeMessageProducer(mp);
+					mp = null;
+					closeSession(s);
+					s = null;
+					Message rawReplyMsg = pendingReply.waitForReply(getReplyTimeout());
+					return extractReply(rawReplyMsg, prc, replyQueue, msg, replyCorrelationId);
+				}
 				MessageConsumer mc = getMessageConsumerForCorrelationId(s,replyQueue,replyCorrelationId);
 				try {
 					Message rawReplyMsg = mc.receive(getReplyTimeout());
-					if (rawReplyMsg==null) {
-						throw new TimeOutException("did not receive reply on [" + replyQueue + "] requestMsgId ["+msg.getJMSMessageID()+"] replyCorrelationId ["+replyCorrelationId+"] within ["+getReplyTimeout()+"] ms");
-					}
-					if(getResponseHeadersList().size() > 0) {
-						Enumeration<?> propertyNames = rawReplyMsg.getPropertyNames();
-						while(propertyNames.hasMoreElements()) {
-							String jmsProperty = (String) propertyNames.nextElement();
-							if(getResponseHeadersList().contains(jmsProperty)) {
-								prc.getSession().put(jmsProperty, rawReplyMsg.getObjectProperty(jmsProperty));
-							}
-						}
-					}
-					return getStringFromRawMessage(rawReplyMsg, prc!=null?prc.getSession():null, isSoap(), getReplySoapHeaderSessionKey(),soapWrapper);
+					return extractReply(rawReplyMsg, prc, replyQueue, msg, replyCorrelationId);
 				} finally {
 					if (mc != null) { 
 						try { 
@@ -276,15 +286,53 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters, IPost
 			throw new SenderException(e);
 		} catch (JmsException e) {
 			throw new SenderException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SenderException(getLogPrefix()+"interrupted while waiting for reply", e);
 		} finally {
-			if (mp != null) { 
-				try { 
-					mp.close(); 
-				} catch (JMSException e) { 
-					log.warn("JmsSender [" + getName() + "] got exception closing message producer",e); 
+			if (pendingReply != null) {
+				replyDispatcher.unregister(pendingReply);
+			}
+			closeMessageProducer(mp);
+			if (s != null) {
+				closeSession(s);
+			}
+		}
+	}
+
+	private String getReplyCorrelationId(String correlationID, Message msg) throws JMSException {
+		if ("CORRELATIONID".equalsIgnoreCase(getLinkMethod())) {
+			return correlationID;
+		}
+		if ("CORRELATIONID_FROM_MESSAGE".equalsIgnoreCase(getLinkMethod())) {
+			return msg.getJMSCorrelationID();
+		}
+		return msg.getJMSMessageID();
+	}
+
+	private String extractReply(Message rawReplyMsg, ParameterResolutionContext prc, Destination replyQueue, Message msg, String replyCorrelationId) throws JMSException, DomBuilderException, TransformerException, IOException, TimeOutException {
+		if (rawReplyMsg==null) {
+			throw new TimeOutException("did not receive reply on [" + replyQueue + "] requestMsgId ["+msg.getJMSMessageID()+"] replyCorrelationId ["+replyCorrelationId+"] within ["+getReplyTimeout()+"] ms");
+		}
+		if(getResponseHeadersList().size() > 0) {
+			Enumeration<?> propertyNames = rawReplyMsg.getPropertyNames();
+			while(propertyNames.hasMoreElements()) {
+				String jmsProperty = (String) propertyNames.nextElement();
+				if(getResponseHeadersList().contains(jmsProperty)) {
+					prc.getSession().put(jmsProperty, rawReplyMsg.getObjectProperty(jmsProperty));
 				}
 			}
-			closeSession(s);
+		}
+		return getStringFromRawMessage(rawReplyMsg, prc!=null?prc.getSession():null, isSoap(), getReplySoapHeaderSessionKey(),soapWrapper);
+	}
+
+	private void closeMessageProducer(MessageProducer mp) {
+		if (mp != null) { 
+			try { 
+				mp.close(); 
+			} catch (JMSException e) { 
+				log.warn("JmsSender [" + getName() + "] got exception closing message producer",e); 
+			}
 		}
 	}
 
@@ -454,6 +502,22 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters, IPost
 		return linkMethod;
 	}
 
+	@IbisDoc({"(only used when synchronous='true' and replytoname is set) when set <code>true</code>, replies are received by long-lived consumers that are shared by all requests on the same reply queue, instead of by a consumer with a correlationid selector per request. the reply queue must only receive replies for this instance. replies that arrive after the replytimeout are discarded", "false"})
+	public void setSharedReplyConsumer(boolean sharedReplyConsumer) {
+		this.sharedReplyConsumer = sharedReplyConsumer;
+	}
+	public boolean isSharedReplyConsumer() {
+		return sharedReplyConsumer;
+	}
+
+	@IbisDoc({"number of shared consumers on the reply queue, when sharedreplyconsumer=true. the consumers are created by the first sender that uses the reply queue", "1"})
+	public void setSharedReplyConsumerCount(int sharedReplyConsumerCount) {
+		this.sharedReplyConsumerCount = sharedReplyConsumerCount;
+	}
+	public int getSharedReplyConsumerCount() {
+		return sharedReplyConsumerCount;
+	}
+
 	@IbisDoc({"a list with jms headers to add to the ipipelinesession", ""})
 	public void setResponseHeadersToSessionKeys(String responseHeaders) {
 		this.responseHeaders = responseHeaders;
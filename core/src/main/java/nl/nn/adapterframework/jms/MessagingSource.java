@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -17,9 +17,12 @@ package nl.nn.adapterframework.jms;
 
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Queue;
 import javax.jms.QueueConnection;
@@ -72,6 +75,7 @@ public class MessagingSource  {
 	private Hashtable connectionTable; // hashtable is synchronized and does not permit nulls
 
 	private Queue globalDynamicReplyQueue = null;
+	private ConcurrentMap<String,JmsReplyDispatcher> replyDispatchers = new ConcurrentHashMap<String,JmsReplyDispatcher>();
 	
 	protected MessagingSource(String id, Context context,
 			ConnectionFactory connectionFactory, Map siblingMap,
@@ -97,6 +101,7 @@ public class MessagingSource  {
 		if (--referenceCount<=0 && cleanUpOnClose()) {
 			log.debug(getLogPrefix()+"reference count ["+referenceCount+"], cleaning up global objects");
 			siblingMap.remove(getId());
+			closeReplyDispatchers();
 			try {
 				deleteDynamicQueue(globalDynamicReplyQueue);
 				if (globalConnection != null) { 
@@ -366,6 +371,32 @@ public class MessagingSource  {
 	}
 
 
+	/**
+	 * Returns the {@link JmsReplyDispatcher} for the reply queue, starting it when it does not exist yet.
+	 * The dispatcher is shared by all users of this MessagingSource, and closed when this MessagingSource is cleaned up.
+	 */
+	public JmsReplyDispatcher getReplyDispatcher(JMSFacade facade, String replyQueueName, Destination replyQueue, int consumerCount) {
+		JmsReplyDispatcher result = replyDispatchers.get(replyQueueName);
+		if (result==null) {
+			synchronized (this) {
+				result = replyDispatchers.get(replyQueueName);
+				if (result==null) {
+					result = new JmsReplyDispatcher(this, facade, replyQueue, consumerCount);
+					result.start();
+					replyDispatchers.put(replyQueueName, result);
+				}
+			}
+		}
+		return result;
+	}
+
+	private void closeReplyDispatchers() {
+		for (JmsReplyDispatcher replyDispatcher:replyDispatchers.values()) {
+			replyDispatcher.close();
+		}
+		replyDispatchers.clear();
+	}
+
 	protected String getLogPrefix() {
 		return "["+getId()+"] "; 
 	}
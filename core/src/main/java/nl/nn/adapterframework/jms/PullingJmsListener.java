@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -16,7 +16,6 @@
 package nl.nn.adapterframework.jms;
 
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
 
 import javax.jms.Destination;
@@ -33,6 +32,7 @@ import nl.nn.adapterframework.core.IPostboxListener;
 import nl.nn.adapterframework.core.ISender;
 import nl.nn.adapterframework.core.ListenerException;
 import nl.nn.adapterframework.core.PipeLineResult;
+import nl.nn.adapterframework.core.PipeLineSessionBase;
 import nl.nn.adapterframework.core.TimeOutException;
 import nl.nn.adapterframework.util.RunStateEnquirer;
 import nl.nn.adapterframework.util.RunStateEnquiring;
@@ -138,7 +138,7 @@ public class PullingJmsListener extends JmsListenerBase implements IPostboxListe
 	}
 
 	public Map openThread() throws ListenerException {
-		Map threadContext = new HashMap();
+		Map threadContext = new PipeLineSessionBase();
 	
 		try {
 			if (!isSessionsArePooled()) { 
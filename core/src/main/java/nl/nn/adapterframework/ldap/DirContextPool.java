@@ -0,0 +1,144 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.ldap;
+
+import java.util.Hashtable;
+import java.util.NoSuchElementException;
+
+import javax.naming.CommunicationException;
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+
+import nl.nn.adapterframework.util.AppConstants;
+import nl.nn.adapterframework.util.KeyedConnectionPool;
+
+/**
+ * Pool of open DirContexts, shared by the LDAP senders and pipes of this JVM.
+ * <p>
+ * DirContexts are pooled per JNDI environment, i.e. per provider URL, principal and credentials, so that the
+ * TCP connection, TLS handshake and bind of a DirContext are reused by subsequent operations. A DirContext is
+ * validated by reading the base entry without attributes before it is handed out, and DirContexts that have been idle
+ * too long are closed. The pool is configured with the following properties:
+ * <table border="1">
+ * <tr><th>property</th><th>description</th><th>default</th></tr>
+ * <tr><td>ldap.pool.maxActive</td><td>maximum number of DirContexts in use per environment</td><td>20</td></tr>
+ * <tr><td>ldap.pool.maxTotal</td><td>maximum number of DirContexts for all environments together</td><td>100</td></tr>
+ * <tr><td>ldap.pool.maxIdle</td><td>maximum number of idle DirContexts per environment</td><td>8</td></tr>
+ * <tr><td>ldap.pool.maxWait</td><td>time in ms to wait for a DirContext when maxActive is reached</td><td>30000</td></tr>
+ * <tr><td>ldap.pool.testOnBorrow</td><td>validate a DirContext before it is used</td><td>true</td></tr>
+ * <tr><td>ldap.pool.idleTimeout</td><td>time in ms after which an idle DirContext is closed</td><td>300000</td></tr>
+ * <tr><td>ldap.pool.evictionInterval</td><td>time in ms between checks for idle DirContexts</td><td>60000</td></tr>
+ * </table>
+ * </p>
+ *
+ * @since   7.3
+ */
+public class DirContextPool extends KeyedConnectionPool<Hashtable,DirContext> {
+
+	private static DirContextPool self = null;
+
+	private static final String[] NO_ATTRIBUTES = new String[0];
+
+	DirContextPool(int maxActive, int maxTotal, int maxIdle, long maxWait, boolean testOnBorrow, long idleTimeout, long evictionInterval) {
+		super(maxActive, maxTotal, maxIdle, maxWait, testOnBorrow, idleTimeout, evictionInterval);
+	}
+
+	public static synchronized DirContextPool getInstance() {
+		if (self == null) {
+			AppConstants appConstants = AppConstants.getInstance();
+			self = new DirContextPool(appConstants.getInt("ldap.pool.maxActive", 20),
+					appConstants.getInt("ldap.pool.maxTotal", 100),
+					appConstants.getInt("ldap.pool.maxIdle", 8),
+					appConstants.getLong("ldap.pool.maxWait", 30000),
+					appConstants.getBoolean("ldap.pool.testOnBorrow", true),
+					appConstants.getLong("ldap.pool.idleTimeout", 300000),
+					appConstants.getLong("ldap.pool.evictionInterval", 60000));
+		}
+		return self;
+	}
+
+	@Override
+	protected DirContext createConnection(Hashtable env) throws NamingException {
+		return new InitialDirContext(env);
+	}
+
+	@Override
+	protected boolean validateConnection(Hashtable env, DirContext dirContext) {
+		try {
+			dirContext.getAttributes("", NO_ATTRIBUTES);
+			return true;
+		} catch (NamingException e) {
+			log.info("closing invalid DirContext for " + describeKey(env) + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	@Override
+	protected void closeConnection(Hashtable env, DirContext dirContext) throws NamingException {
+		dirContext.close();
+	}
+
+	/**
+	 * Describes the environment by its provider URL and principal only, as it also contains the credentials.
+	 */
+	@Override
+	protected String describeKey(Hashtable env) {
+		return "LDAP provider URL [" + env.get(Context.PROVIDER_URL) + "] principal [" + env.get(Context.SECURITY_PRINCIPAL) + "]";
+	}
+
+	/**
+	 * Returns an open DirContext for the JNDI environment <code>env</code>, that must be returned with
+	 * {@link #returnDirContext(Hashtable, DirContext)} after use. The environment must not be changed afterwards,
+	 * as it is the key of the pooled DirContexts.
+	 */
+	public DirContext borrowDirContext(Hashtable env) throws NamingException {
+		try {
+			return borrowConnection(env);
+		} catch (NamingException e) {
+			throw e;
+		} catch (NoSuchElementException e) {
+			NamingException ne = new NamingException("no DirContext available for " + describeKey(env) + ": " + e.getMessage());
+			ne.setRootCause(e);
+			throw ne;
+		} catch (Exception e) {
+			NamingException ne = new NamingException("cannot obtain DirContext for " + describeKey(env));
+			ne.setRootCause(e);
+			throw ne;
+		}
+	}
+
+	public void returnDirContext(Hashtable env, DirContext dirContext) {
+		returnConnection(env, dirContext);
+	}
+
+	/**
+	 * Returns <code>true</code> when <code>e</code> indicates that the connection of the DirContext to the server is
+	 * lost, so that the DirContext must be invalidated instead of returned to the pool.
+	 */
+	public static boolean isConnectionFailure(NamingException e) {
+		return e instanceof CommunicationException || e instanceof ServiceUnavailableException;
+	}
+
+	/**
+	 * Closes a DirContext obtained from {@link #borrowDirContext(Hashtable)} instead of returning it to the pool.
+	 */
+	public void invalidateDirContext(Hashtable env, DirContext dirContext) {
+		invalidateConnection(env, dirContext);
+	}
+}
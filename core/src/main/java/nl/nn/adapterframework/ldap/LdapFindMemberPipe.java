@@ -1,5 +1,5 @@
 /*
-   Copyright 2016 Nationale-Nederlanden
+   Copyright 2016, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -23,7 +23,7 @@ import javax.naming.NamingException;
 import javax.naming.directory.Attribute;
 import javax.naming.directory.DirContext;
 import javax.naming.directory.InitialDirContext;
-import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapName;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.core.IPipeLineSession;
@@ -31,6 +31,7 @@ import nl.nn.adapterframework.core.ParameterException;
 import nl.nn.adapterframework.core.PipeForward;
 import nl.nn.adapterframework.core.PipeRunException;
 import nl.nn.adapterframework.core.PipeRunResult;
+import nl.nn.adapterframework.doc.IbisDoc;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 import nl.nn.adapterframework.parameters.ParameterValueList;
 import nl.nn.adapterframework.pipes.FixedForwardPipe;
@@ -42,6 +43,10 @@ import org.apache.commons.lang.StringUtils;
 /**
  * Pipe that checks if a specified dn exists as 'member' in another specified dn
  * in LDAP.
+ * <p>
+ * A single DirContext is used to search the dn and, when recursiveSearch is set, its member groups. When usePooling
+ * is set, this DirContext is taken from the {@link DirContextPool} shared with the {@link LdapSender}s.
+ * </p>
  * 
  * @author Peter Leeuwenburgh
  */
@@ -57,6 +62,7 @@ public class LdapFindMemberPipe extends FixedForwardPipe {
 	private boolean recursiveSearch = true;
 	private String notFoundForwardName = "notFound";
 	private String exceptionForwardName = null;
+	private boolean usePooling = true;
 
 	private CredentialFactory cf;
 	protected PipeForward notFoundForward;
@@ -154,7 +160,7 @@ public class LdapFindMemberPipe extends FixedForwardPipe {
 		Hashtable env = new Hashtable();
 		env.put(Context.INITIAL_CONTEXT_FACTORY,
 				"com.sun.jndi.ldap.LdapCtxFactory");
-		String provUrl = retrieveUrl(host, port, dnSearchIn, useSsl);
+		String provUrl = retrieveUrl(host, port, null, useSsl);
 		env.put(Context.PROVIDER_URL, provUrl);
 		if (StringUtils.isNotEmpty(cf.getUsername())) {
 			env.put(Context.SECURITY_AUTHENTICATION, "simple");
@@ -164,45 +170,76 @@ public class LdapFindMemberPipe extends FixedForwardPipe {
 			env.put(Context.SECURITY_AUTHENTICATION, "none");
 		}
 		DirContext ctx = null;
+		boolean invalidate = false;
 		try {
 			try {
-				ctx = new InitialDirContext(env);
+				ctx = getDirContext(env);
 			} catch (CommunicationException e) {
 				log.info("Cannot create constructor for DirContext ("
 						+ e.getMessage()
 						+ "], will try again with dummy SocketFactory");
+				// use a copy, env might be kept as key by the DirContextPool
+				env = new Hashtable(env);
 				env.put("java.naming.ldap.factory.socket",
 						DummySSLSocketFactory.class.getName());
-				ctx = new InitialLdapContext(env, null);
-			}
-			Attribute attrs = ctx.getAttributes("").get("member");
-			if (attrs != null) {
-				boolean found = false;
-				for (int i = 0; i < attrs.size() && !found; i++) {
-					String dnFound = (String) attrs.get(i);
-					if (dnFound.equalsIgnoreCase(dnFind)) {
-						found = true;
-					} else {
-						if (recursiveSearch) {
-							found = findMember(host, port, dnFound, useSsl,
-									dnFind, recursiveSearch);
-						}
-					}
-				}
-				return found;
+				ctx = getDirContext(env);
 			}
+			return findMember(ctx, dnSearchIn, dnFind, recursiveSearch);
+		} catch (NamingException e) {
+			invalidate = DirContextPool.isConnectionFailure(e);
+			throw e;
 		} finally {
 			if (ctx != null) {
-				try {
-					ctx.close();
-				} catch (NamingException e) {
-					log.warn("Exception closing DirContext", e);
+				closeDirContext(env, ctx, invalidate);
+			}
+		}
+	}
+
+	private boolean findMember(DirContext ctx, String dnSearchIn,
+			String dnFind, boolean recursiveSearch) throws NamingException {
+		Attribute attrs = ctx.getAttributes(new LdapName(dnSearchIn),
+				new String[] { "member" }).get("member");
+		if (attrs != null) {
+			boolean found = false;
+			for (int i = 0; i < attrs.size() && !found; i++) {
+				String dnFound = (String) attrs.get(i);
+				if (dnFound.equalsIgnoreCase(dnFind)) {
+					found = true;
+				} else {
+					if (recursiveSearch) {
+						found = findMember(ctx, dnFound, dnFind,
+								recursiveSearch);
+					}
 				}
 			}
+			return found;
 		}
 		return false;
 	}
 
+	private DirContext getDirContext(Hashtable env) throws NamingException {
+		if (isUsePooling()) {
+			return DirContextPool.getInstance().borrowDirContext(env);
+		}
+		return new InitialDirContext(env);
+	}
+
+	private void closeDirContext(Hashtable env, DirContext ctx, boolean invalidate) {
+		if (isUsePooling()) {
+			if (invalidate) {
+				DirContextPool.getInstance().invalidateDirContext(env, ctx);
+			} else {
+				DirContextPool.getInstance().returnDirContext(env, ctx);
+			}
+			return;
+		}
+		try {
+			ctx.close();
+		} catch (NamingException e) {
+			log.warn("Exception closing DirContext", e);
+		}
+	}
+
 	private String retrieveUrl(String host, int port, String dnSearchIn,
 			boolean useSsl) {
 		String s = useSsl ? "ldaps://" : "ldap://";
@@ -300,4 +337,13 @@ public class LdapFindMemberPipe extends FixedForwardPipe {
 	public void setExceptionForwardName(String string) {
 		exceptionForwardName = string;
 	}
+
+	public boolean isUsePooling() {
+		return usePooling;
+	}
+
+	@IbisDoc({"specifies whether the dircontext is taken from and returned to the shared pool of open connections, see {@link DirContextPool}", "true"})
+	public void setUsePooling(boolean b) {
+		usePooling = b;
+	}
 }
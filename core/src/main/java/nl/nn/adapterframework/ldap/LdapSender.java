@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -23,6 +23,7 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.naming.Context;
 import javax.naming.NameClassPair;
@@ -37,6 +38,8 @@ import javax.naming.directory.InitialDirContext;
 import javax.naming.directory.ModificationItem;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
 
 import nl.nn.adapterframework.doc.IbisDoc;
 import org.apache.commons.digester.Digester;
@@ -52,6 +55,9 @@ import nl.nn.adapterframework.jms.JNDIBase;
 import nl.nn.adapterframework.parameters.Parameter;
 import nl.nn.adapterframework.parameters.ParameterList;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+import nl.nn.adapterframework.util.BoundedCache;
 import nl.nn.adapterframework.util.ClassUtils;
 import nl.nn.adapterframework.util.XmlBuilder;
 
@@ -230,6 +236,14 @@ import nl.nn.adapterframework.util.XmlBuilder;
  *	&lt;/entries&gt;
  * </pre></code> <br/>
  *
+ * <h2>connection pooling and caching</h2>
+ * When <code>usePooling</code> is true, DirContexts are taken from the {@link DirContextPool} that is shared by all
+ * LdapSenders, and returned to it after the operation, instead of opening and closing a DirContext for every operation.
+ * The results of the operations read, search, deepSearch, getSubContexts and getTree can be cached for
+ * <code>cacheTimeToLiveSeconds</code> seconds, keyed by the normalized entryName and the filterExpression. Updates
+ * made by other senders are not seen until the cached result has expired. The pool and cache hit counts are shown in
+ * the statistics of the sender.
+ *
  * <h2>upgrading from earlier versions (pre 4.6)</h2>
  * <ul>
  *   <li>In earlier versions, the entryName was taken from the first parameter. To upgrade, call your first parameter 'entryName'</li> 
@@ -239,7 +253,7 @@ import nl.nn.adapterframework.util.XmlBuilder;
  * @author Gerrit van Brakel
  * @author Jaco de Groot
  */
-public class LdapSender extends JNDIBase implements ISenderWithParameters {
+public class LdapSender extends JNDIBase implements ISenderWithParameters, HasStatistics {
 
 	private String FILTER = "filterExpression";
 	private String ENTRYNAME = "entryName";
@@ -289,10 +303,15 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 	private int maxEntriesReturned=0;
 	private boolean unicodePwd = false;
 	private boolean replyNotFound = false;
+	private int cacheTimeToLiveSeconds = 0;
+	private int cacheMaxEntries = 1000;
 
 	protected ParameterList paramList = null;
 	private boolean principalParameterFound = false;
-	private Hashtable jndiEnv=null;
+	private volatile Hashtable jndiEnv=null;
+	private BoundedCache<String,String> resultCache=null;
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final AtomicLong cacheMisses = new AtomicLong();
 
 	public LdapSender() {
 		super();
@@ -368,6 +387,9 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 			}
 			principalParameterFound = true;
 			setUsePooling(false);
+			if (getCacheTimeToLiveSeconds() > 0) {
+				ConfigurationWarnings.getInstance().add(log, "[" + getName() + "] results are not cached when principal is set as parameter");
+			}
 		} else {
 			DirContext dirContext=null;
 			try {
@@ -378,6 +400,21 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 				closeDirContext(dirContext);
 			}
 		}
+		if (getCacheTimeToLiveSeconds() > 0 && !principalParameterFound) {
+			if (isReadOnlyOperation()) {
+				resultCache = new BoundedCache<String,String>(getCacheMaxEntries(), getCacheTimeToLiveSeconds() * 1000L);
+			} else {
+				ConfigurationWarnings.getInstance().add(log, "[" + getName() + "] results of operation [" + getOperation() + "] are not cached");
+			}
+		}
+	}
+
+	private boolean isReadOnlyOperation() {
+		return getOperation().equals(OPERATION_READ)
+				|| getOperation().equals(OPERATION_SEARCH)
+				|| getOperation().equals(OPERATION_DEEP_SEARCH)
+				|| getOperation().equals(OPERATION_SUB_CONTEXTS)
+				|| getOperation().equals(OPERATION_GET_TREE);
 	}
 
 	public void storeLdapException(Throwable t, ParameterResolutionContext prc) {
@@ -464,6 +501,14 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 	}
 
 
+	@Override
+	public void close() {
+		if (resultCache != null) {
+			resultCache.clear();
+		}
+		super.close();
+	}
+
 	@Override
 	public boolean isSynchronous() {
 		return true;
@@ -502,10 +547,12 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 
 	private String performOperationRead(String entryName, ParameterResolutionContext prc, Map paramValueMap) throws SenderException, ParameterException {
 		DirContext dirContext = null;
+		boolean invalidate = false;
 		try{
 			dirContext = getDirContext(paramValueMap);
 			return attributesToXml(dirContext.getAttributes(entryName, getAttributesReturnedParameter())).toXML();
 		} catch(NamingException e) {
+			invalidate = DirContextPool.isConnectionFailure(e);
 			// https://wiki.servicenow.com/index.php?title=LDAP_Error_Codes:
 			//   32 LDAP_NO_SUCH_OBJECT Indicates the target object cannot be found. This code is not returned on following operations: Search operations that find the search base but cannot find any entries that match the search filter. Bind operations. 
 			// Sun:
@@ -518,7 +565,7 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 				throw new SenderException("Exception in operation [" + getOperation()+ "] entryName=["+entryName+"]", e);	
 			}
 		} finally {
-			closeDirContext(dirContext);
+			closeDirContext(dirContext, invalidate);
 		}
 	}
 
@@ -529,11 +576,13 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 			if (newEntryName != null && StringUtils.isNotEmpty(newEntryName)) {
 				if (log.isDebugEnabled()) log.debug("newEntryName=["+newEntryName+"]");
 				DirContext dirContext = null;
+				boolean invalidate = false;
 				try{
 					dirContext = getDirContext(paramValueMap);
 					dirContext.rename(entryName, newEntryName);
 					entryNameAfter = newEntryName;
 				} catch(NamingException e) {
+					invalidate = DirContextPool.isConnectionFailure(e);
 					String msg;
 					// https://wiki.servicenow.com/index.php?title=LDAP_Error_Codes:
 					//   32 LDAP_NO_SUCH_OBJECT Indicates the target object cannot be found. This code is not returned on following operations: Search operations that find the search base but cannot find any entries that match the search filter. Bind operations. 
@@ -547,7 +596,7 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 					storeLdapException(e, prc);
 					throw new SenderException(msg,e);
 				} finally {
-					closeDirContext(dirContext);
+					closeDirContext(dirContext, invalidate);
 				}
 			}
 		}
@@ -587,10 +636,12 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 					}
 					partialAttrs.put(singleValuedAttribute);
 					DirContext dirContext = null;
+					boolean invalidate = false;
 					try {
 						dirContext = getDirContext(paramValueMap);
 						dirContext.modifyAttributes(entryNameAfter,	DirContext.REPLACE_ATTRIBUTE, partialAttrs);
 					} catch(NamingException e) {
+						invalidate = DirContextPool.isConnectionFailure(e);
 						String msg;
 						// https://wiki.servicenow.com/index.php?title=LDAP_Error_Codes:
 						//   32 LDAP_NO_SUCH_OBJECT Indicates the target object cannot be found. This code is not returned on following operations: Search operations that find the search base but cannot find any entries that match the search filter. Bind operations. 
@@ -605,13 +656,14 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 						storeLdapException(e, prc);
 						throw new SenderException(msg,e);
 					} finally {
-						closeDirContext(dirContext);
+						closeDirContext(dirContext, invalidate);
 					}
 				}
 			}
 			return DEFAULT_RESULT;
 		} else {
 			DirContext dirContext = null;
+			boolean invalidate = false;
 			try {
 				dirContext = getDirContext(paramValueMap);
 				//dirContext.rename(newEntryName, oldEntryName);
@@ -619,6 +671,7 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 				dirContext.rename(entryName, entryName);
 				return "<LdapResult>Deze functionaliteit is nog niet beschikbaar - naam niet veranderd.</LdapResult>";
 			} catch (NamingException e) {
+				invalidate = DirContextPool.isConnectionFailure(e);
 				// https://wiki.servicenow.com/index.php?title=LDAP_Error_Codes:
 				//   68 LDAP_ALREADY_EXISTS Indicates that the add operation attempted to add an entry that already exists, or that the modify operation attempted to rename an entry to the name of an entry that already exists.
 				// Sun:
@@ -629,7 +682,7 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 				}
 				return DEFAULT_RESULT_CREATE_NOK;
 			} finally {
-				closeDirContext(dirContext);
+				closeDirContext(dirContext, invalidate);
 			}
 		}
 	}
@@ -667,10 +720,12 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 					}
 					partialAttrs.put(singleValuedAttribute);
 					DirContext dirContext = null;
+					boolean invalidate = false;
 					try {
 						dirContext = getDirContext(paramValueMap);
 						dirContext.modifyAttributes(entryName, DirContext.ADD_ATTRIBUTE, partialAttrs);
 					} catch(NamingException e){
+						invalidate = DirContextPool.isConnectionFailure(e);
 						// https://wiki.servicenow.com/index.php?title=LDAP_Error_Codes:
 						//   20 LDAP_TYPE_OR_VALUE_EXISTS Indicates that the attribute value specified in a modify or add operation already exists as a value for that attribute.
 						// Sun:
@@ -683,7 +738,7 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 							throw new SenderException("Exception in operation [" + getOperation()+ "] entryName ["+entryName+"]", e );
 						}
 					} finally {
-						closeDirContext(dirContext);
+						closeDirContext(dirContext, invalidate);
 					}
 				}
 			}
@@ -693,6 +748,7 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 			return DEFAULT_RESULT;
 		} else {
 			DirContext dirContext = null;
+			boolean invalidate = false;
 			try {
 				if (unicodePwd) {
 					Enumeration enumeration = attrs.getIDs();
@@ -710,6 +766,7 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 				dirContext.bind(entryName, null, attrs);
 				return DEFAULT_RESULT;
 			} catch (NamingException e) {
+				invalidate = DirContextPool.isConnectionFailure(e);
 				// if (log.isDebugEnabled()) log.debug("Exception in operation [" + getOperation()+ "] entryName ["+entryName+"]", e);
 				if (log.isDebugEnabled()) log.debug("Exception in operation [" + getOperation()+ "] entryName ["+entryName+"]: "+ e.getMessage());
 				// https://wiki.servicenow.com/index.php?title=LDAP_Error_Codes:
@@ -723,7 +780,7 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 					throw new SenderException(e);
 				}
 			} finally {
-				closeDirContext(dirContext);
+				closeDirContext(dirContext, invalidate);
 			}
 		}
 		
@@ -762,10 +819,12 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 					}
 					partialAttrs.put(singleValuedAttribute);
 					DirContext dirContext = null;
+					boolean invalidate = false;
 					try {
 						dirContext = getDirContext(paramValueMap);
 						dirContext.modifyAttributes(entryName,	DirContext.REMOVE_ATTRIBUTE, partialAttrs);
 					} catch(NamingException e) {
+						invalidate = DirContextPool.isConnectionFailure(e);
 						// https://wiki.servicenow.com/index.php?title=LDAP_Error_Codes:
 						//   16 LDAP_NO_SUCH_ATTRIBUTE Indicates that the attribute specified in the modify or compare operation does not exist in the entry.
 						//   32 LDAP_NO_SUCH_OBJECT Indicates the target object cannot be found. This code is not returned on following operations: Search operations that find the search base but cannot find any entries that match the search filter. Bind operations. 
@@ -783,7 +842,7 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 							throw new SenderException("Exception in operation [" + getOperation()+ "] entryName ["+entryName+"]", e);
 						}
 					} finally {
-						closeDirContext(dirContext);
+						closeDirContext(dirContext, invalidate);
 					}
 				}
 			}
@@ -793,11 +852,13 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 			return DEFAULT_RESULT;
 		} else {
 			DirContext dirContext = null;
+			boolean invalidate = false;
 			try {
 				dirContext = getDirContext(paramValueMap);
 				dirContext.unbind(entryName);
 				return DEFAULT_RESULT;
 			} catch (NamingException e) {
+				invalidate = DirContextPool.isConnectionFailure(e);
 				// https://wiki.servicenow.com/index.php?title=LDAP_Error_Codes:
 				//   32 LDAP_NO_SUCH_OBJECT Indicates the target object cannot be found. This code is not returned on following operations: Search operations that find the search base but cannot find any entries that match the search filter. Bind operations. 
 				// Sun:
@@ -810,7 +871,7 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 					throw new SenderException("Exception in operation [" + getOperation()+ "] entryName ["+entryName+"]", e);
 				}
 			} finally {
-				closeDirContext(dirContext);
+				closeDirContext(dirContext, invalidate);
 			}
 		}
 	}
@@ -831,10 +892,12 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 													 getAttributesReturnedParameter(), false, false);
 //		attrs = parseAttributesFromMessage(message);
 		DirContext dirContext = null;
+		boolean invalidate = false;
 		try {
 			dirContext = getDirContext(paramValueMap);
 			return searchResultsToXml( dirContext.search(entryName, filterExpression, controls) ).toXML();
 		} catch (NamingException e) {
+			invalidate = DirContextPool.isConnectionFailure(e);
 			if (isReplyNotFound() && e.getMessage().equals("Unprocessed Continuation Reference(s)")) {
 				if (log.isDebugEnabled()) log.debug("Searching object not found using filter[" + filterExpression + "]");
 				return DEFAULT_RESULT_SEARCH;
@@ -843,21 +906,23 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 				throw new SenderException("Exception searching using filter ["+filterExpression+"]", e);
 			}
 		} finally {
-			closeDirContext(dirContext);
+			closeDirContext(dirContext, invalidate);
 		}
 	}
 
 	private String performOperationGetSubContexts(String entryName, ParameterResolutionContext prc, Map paramValueMap) throws SenderException, ParameterException {
 		DirContext dirContext = null;
+		boolean invalidate = false;
 		try {
 			dirContext = getDirContext(paramValueMap);
 			String[] subs = getSubContextList(dirContext, entryName, prc);
 			return subContextsToXml(entryName, subs, dirContext).toXML();
 		} catch (NamingException e) {
+			invalidate = DirContextPool.isConnectionFailure(e);
 			storeLdapException(e, prc);
 			throw new SenderException(e);
 		} finally {
-			closeDirContext(dirContext);
+			closeDirContext(dirContext, invalidate);
 		}
 	}
 		
@@ -873,6 +938,7 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 
 	private String performOperationChallenge(String principal, ParameterResolutionContext prc, Map paramValueMap) throws SenderException, ParameterException {
 		DirContext dirContext = null;
+		boolean invalidate = false;
 		try{
 			// Use loopkupDirContext instead of getDirContext to prevent
 			// NamingException (with error code 49) being converted to
@@ -881,6 +947,7 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 			attributesToXml(dirContext.getAttributes(principal, getAttributesReturnedParameter())).toXML();
 			return DEFAULT_RESULT_CHALLENGE_OK;
 		} catch(NamingException e) {
+			invalidate = DirContextPool.isConnectionFailure(e);
 			// https://wiki.servicenow.com/index.php?title=LDAP_Error_Codes:
 			//   49 LDAP_INVALID_CREDENTIALS Indicates that during a bind operation one of the following occurred: The client passed either an incorrect DN or password, or the password is incorrect because it has expired, intruder detection has locked the account, or another similar reason. This is equivalent to AD error code 52e.
 			if(e.getMessage().startsWith("[LDAP: error code 49 - ") ) {
@@ -891,7 +958,7 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 				throw new SenderException("Exception in operation [" + getOperation()+ "] principal=["+principal+"]", e);	
 			}
 		} finally {
-			closeDirContext(dirContext);
+			closeDirContext(dirContext, invalidate);
 		}
 	}
 
@@ -904,11 +971,13 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 				DirContext.ADD_ATTRIBUTE,
 				new BasicAttribute("unicodePwd", encodeUnicodePwd(paramValueMap.get("newPassword"))));
 		DirContext dirContext = null;
+		boolean invalidate = false;
 		try{
 			dirContext = getDirContext(paramValueMap);
 			dirContext.modifyAttributes(entryName, modificationItems);
 			return DEFAULT_RESULT_CHANGE_UNICODE_PWD_OK;
 		} catch(NamingException e) {
+			invalidate = DirContextPool.isConnectionFailure(e);
 			// https://wiki.servicenow.com/index.php?title=LDAP_Error_Codes:
 			//   19 LDAP_CONSTRAINT_VIOLATION Indicates that the attribute value specified in a modify, add, or modify DN operation violates constraints placed on the attribute. The constraint can be one of size or content (string only, no binary).
 			// AD:
@@ -921,7 +990,7 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 				throw new SenderException("Exception in operation [" + getOperation()+ "] entryName ["+entryName+"]", e);
 			}
 		} finally {
-			closeDirContext(dirContext);
+			closeDirContext(dirContext, invalidate);
 		}
 	}
 
@@ -943,6 +1012,48 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 				&&  !getOperation().equals(OPERATION_CHALLENGE)) {
 			throw new SenderException("entryName must be defined through params, operation ["+ getOperation()+ "]");
 		}
+		BoundedCache<String,String> cache = resultCache;
+		if (cache == null) {
+			return performOperation(entryName, message, prc, paramValueMap);
+		}
+		String cacheKey = getCacheKey(entryName, paramValueMap);
+		String result = cache.get(cacheKey);
+		if (result != null) {
+			cacheHits.incrementAndGet();
+			if (log.isDebugEnabled()) log.debug("found result of operation [" + getOperation() + "] in cache for key [" + cacheKey + "]");
+			return result;
+		}
+		cacheMisses.incrementAndGet();
+		result = performOperation(entryName, message, prc, paramValueMap);
+		cache.put(cacheKey, result);
+		return result;
+	}
+
+	/**
+	 * Returns the key of the result in the cache: the entryName, normalized to lower case without superfluous
+	 * whitespace, and for search operations the filterExpression.
+	 */
+	protected String getCacheKey(String entryName, Map paramValueMap) {
+		String normalizedName;
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (Rdn rdn : new LdapName(entryName).getRdns()) {
+				if (sb.length() > 0) {
+					sb.insert(0, ',');
+				}
+				sb.insert(0, rdn.toString());
+			}
+			normalizedName = sb.toString().toLowerCase();
+		} catch (NamingException e) {
+			normalizedName = entryName.trim().toLowerCase();
+		}
+		if (getOperation().equals(OPERATION_SEARCH) || getOperation().equals(OPERATION_DEEP_SEARCH)) {
+			return normalizedName + "\n" + paramValueMap.get(FILTER);
+		}
+		return normalizedName;
+	}
+
+	private String performOperation(String entryName, String message, ParameterResolutionContext prc, Map paramValueMap) throws SenderException, ParameterException {
 		if (getOperation().equals(OPERATION_READ)) {
 			return performOperationRead(entryName, prc, paramValueMap);
 		} else if (getOperation().equals(OPERATION_UPDATE)) {
@@ -968,6 +1079,21 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 		}
 	}
 
+	@Override
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		if (resultCache != null) {
+			Object cacheData = hski.openGroup(data, getName(), "cache");
+			hski.handleScalar(cacheData, "hits", cacheHits.get());
+			hski.handleScalar(cacheData, "misses", cacheMisses.get());
+			hski.handleScalar(cacheData, "entries", resultCache.size());
+			hski.closeGroup(cacheData);
+		}
+		Hashtable env = jndiEnv;
+		if (isUsePooling() && env != null) {
+			DirContextPool.getInstance().iterateOverStatistics(hski, data, getName(), env);
+		}
+	}
+
 	/** 
 	 * Return xml element containing all of the subcontexts of the parent context with their attributes. 
 	 * @return tree xml.
@@ -1140,8 +1266,20 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 	/**
 	 * Retrieves the DirContext from the JNDI environment and sets the <code>providerURL</code> back to <code>ldapProviderURL</code> if specified.
 	 */
-	protected synchronized DirContext loopkupDirContext(Map paramValueMap) throws NamingException, ParameterException {
-		DirContext dirContext;
+	protected DirContext loopkupDirContext(Map paramValueMap) throws NamingException, ParameterException {
+		Hashtable env = getDirContextEnv(paramValueMap);
+		if (isUsePooling()) {
+			return DirContextPool.getInstance().borrowDirContext(env);
+		}
+		return new InitialDirContext(env);
+//		return (DirContext) dirContextTemplate.lookup(""); 	// return copy to be thread-safe
+	}
+
+	/**
+	 * Returns the JNDI environment for the DirContext. When principal is not set as parameter, the environment is
+	 * created once and reused, so it can be used as key of the {@link DirContextPool}.
+	 */
+	private synchronized Hashtable getDirContextEnv(Map paramValueMap) throws NamingException {
 		if (jndiEnv==null) {
 			Hashtable newJndiEnv = getJndiEnv();
 			//newJndiEnv.put("com.sun.jndi.ldap.trace.ber", System.err);//ldap response in log for debug purposes
@@ -1153,27 +1291,15 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 				newJndiEnv.put(Context.SECURITY_PRINCIPAL, paramValueMap.get("principal"));
 				newJndiEnv.put(Context.SECURITY_CREDENTIALS, paramValueMap.get("credentials"));
 			}
-			if (isUsePooling()) {
-				// Enable connection pooling
-				newJndiEnv.put("com.sun.jndi.ldap.connect.pool", "true");
-				//see http://java.sun.com/products/jndi/tutorial/ldap/connect/config.html 
-//				newJndiEnv.put("com.sun.jndi.ldap.connect.pool.maxsize", "20" );
-//				newJndiEnv.put("com.sun.jndi.ldap.connect.pool.prefsize", "10" );
-//				newJndiEnv.put("com.sun.jndi.ldap.connect.pool.timeout", "300000" );
-			} else {
-				// Disable connection pooling
-				newJndiEnv.put("com.sun.jndi.ldap.connect.pool", "false");
-			}
+			// Disable the connection pooling of the JDK, when usePooling is set the DirContexts are pooled by DirContextPool
+			newJndiEnv.put("com.sun.jndi.ldap.connect.pool", "false");
 			if (log.isDebugEnabled()) log.debug("created environment for LDAP provider URL [" + newJndiEnv.get("java.naming.provider.url") + "]");
-			dirContext = new InitialDirContext(newJndiEnv);
 			if (!principalParameterFound) {
 				jndiEnv = newJndiEnv;
 			}
-		} else {
-			dirContext = new InitialDirContext(jndiEnv);
+			return newJndiEnv;
 		}
-		return dirContext;
-//		return (DirContext) dirContextTemplate.lookup(""); 	// return copy to be thread-safe
+		return jndiEnv;
 	}
 
 	protected DirContext getDirContext(Map paramValueMap) throws SenderException, ParameterException {
@@ -1185,7 +1311,23 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 	}
 
 	protected void closeDirContext(DirContext dirContext) {
+		closeDirContext(dirContext, false);
+	}
+
+	/**
+	 * Closes or returns the DirContext. When <code>invalidate</code> is set, e.g. because the connection to the server
+	 * was lost, a pooled DirContext is closed instead of returned to the pool.
+	 */
+	protected void closeDirContext(DirContext dirContext, boolean invalidate) {
 		if (dirContext!=null) {
+			if (isUsePooling()) {
+				if (invalidate) {
+					DirContextPool.getInstance().invalidateDirContext(jndiEnv, dirContext);
+				} else {
+					DirContextPool.getInstance().returnDirContext(jndiEnv, dirContext);
+				}
+				return;
+			}
 			try {
 				dirContext.close();
 			} catch (NamingException e) {
@@ -1335,7 +1477,7 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 		return attributesToReturn;
 	}
 
-	@IbisDoc({"specifies whether connection pooling is used or not", "true when principal not set as parameter, false otherwise"})
+	@IbisDoc({"specifies whether dircontexts are taken from and returned to the shared pool of open connections, see {@link DirContextPool}", "true when principal not set as parameter, false otherwise"})
 	public void setUsePooling(boolean b) {
 		usePooling = b;
 	}
@@ -1343,6 +1485,22 @@ public class LdapSender extends JNDIBase implements ISenderWithParameters {
 		return usePooling;
 	}
 
+	@IbisDoc({"when set to a value larger than 0, the results of the operations read, search, deepSearch, getSubContexts and getTree are cached for this number of seconds. not used when principal is set as parameter", "0"})
+	public void setCacheTimeToLiveSeconds(int i) {
+		cacheTimeToLiveSeconds = i;
+	}
+	public int getCacheTimeToLiveSeconds() {
+		return cacheTimeToLiveSeconds;
+	}
+
+	@IbisDoc({"maximum number of results kept in the cache", "1000"})
+	public void setCacheMaxEntries(int i) {
+		cacheMaxEntries = i;
+	}
+	public int getCacheMaxEntries() {
+		return cacheMaxEntries;
+	}
+
 	@IbisDoc({"specifies the time (in ms) that is spent searching for results for operation search", "20000 ms"})
 	public void setSearchTimeout(int i) {
 		searchTimeout = i;
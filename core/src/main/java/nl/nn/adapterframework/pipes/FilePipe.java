@@ -19,6 +19,7 @@ import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.PipeRunException;
 import nl.nn.adapterframework.core.PipeRunResult;
+import nl.nn.adapterframework.stream.IStreamingPipe;
 import nl.nn.adapterframework.util.FileHandler;
 
 
@@ -37,7 +38,7 @@ import nl.nn.adapterframework.util.FileHandler;
  * @author Jaco de Groot (***@dynasol.nl)
  *
  */
-public class FilePipe extends FixedForwardPipe {
+public class FilePipe extends FixedForwardPipe implements IStreamingPipe {
 	FileHandler fileHandler;
 
 	public FilePipe() {
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2016 Nationale-Nederlanden
+   Copyright 2013, 2016, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,8 +15,9 @@
 */
 package nl.nn.adapterframework.pipes;
 
+import java.io.IOException;
+
 import nl.nn.adapterframework.doc.IbisDoc;
-import org.apache.commons.lang.StringUtils;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.core.IPipeLineSession;
@@ -28,6 +29,7 @@ import nl.nn.adapterframework.parameters.Parameter;
 import nl.nn.adapterframework.parameters.ParameterList;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 import nl.nn.adapterframework.parameters.ParameterValueList;
+import nl.nn.adapterframework.stream.Message;
 
 /**
  * Provides a base-class for a Pipe that always has the same forward.
@@ -67,8 +69,7 @@ public class FixedForwardPipe extends AbstractPipe {
 
 	public PipeRunResult doInitialPipe(Object input, IPipeLineSession session)
 			throws PipeRunException {
-		if ((input == null || StringUtils.isEmpty(input.toString()))
-				&& isSkipOnEmptyInput()) {
+		if (Message.isEmpty(input) && isSkipOnEmptyInput()) {
 			return new PipeRunResult(getForward(), input);
 		}
 		if (getIfParam() != null) {
@@ -77,7 +78,7 @@ public class FixedForwardPipe extends AbstractPipe {
 			ParameterValueList pvl = null;
 			if (getParameterList() != null) {
 				ParameterResolutionContext prc = new ParameterResolutionContext(
-						(String) input, session);
+						asString(input, session), session);
 				try {
 					pvl = prc.getValues(getParameterList());
 				} catch (ParameterException e) {
@@ -102,6 +103,14 @@ public class FixedForwardPipe extends AbstractPipe {
 		return null;
 	}
 
+	private String asString(Object input, IPipeLineSession session) throws PipeRunException {
+		try {
+			return Message.asString(input);
+		} catch (IOException e) {
+			throw new PipeRunException(this, getLogPrefix(session) + "cannot read input", e);
+		}
+	}
+
 	protected String getParameterValue(ParameterValueList pvl, String parameterName) {
 		ParameterList parameterList = getParameterList();
 		if (pvl != null && parameterList != null) {
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -35,6 +35,7 @@ import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.core.TimeOutException;
 import nl.nn.adapterframework.doc.IbisDoc;
 import nl.nn.adapterframework.util.StreamUtil;
+import nl.nn.adapterframework.util.StreamingXPathFilter;
 import nl.nn.adapterframework.util.TransformerPool;
 import nl.nn.adapterframework.util.XmlUtils;
 
@@ -47,6 +48,12 @@ import org.xml.sax.helpers.DefaultHandler;
 /**
  * Sends a message to a Sender for each child element of the input XML.
  * Input can be a String containing XML, a filename (set processFile true), an InputStream or a Reader.
+ * <p>
+ * When the elementXPathExpression is a simple location path, like <code>/root/items/item</code>,
+ * <code>//ns:item[@type='x']</code> or <code>/root/item[2]</code>, the elements are selected while the input is
+ * being parsed, and each element is sent as soon as it has been read. Other expressions are evaluated by an XSLT
+ * transformation of the complete input.
+ * </p>
  * 
  * @author Gerrit van Brakel
  * @since 4.6.1
@@ -58,6 +65,7 @@ public class ForEachChildElementPipe extends IteratingPipe {
 	private String charset=StreamUtil.DEFAULT_INPUT_STREAM_ENCODING;
 
 	private TransformerPool extractElementsTp=null;
+	private StreamingXPathFilter.Expression extractElementsExpression=null;
 	private boolean xslt2=false;
 
 
@@ -66,6 +74,12 @@ public class ForEachChildElementPipe extends IteratingPipe {
 		super.configure();
 		try {
 			if (StringUtils.isNotEmpty(getElementXPathExpression())) {
+				extractElementsExpression=StreamingXPathFilter.compile(getElementXPathExpression(), getNamespaceDefs(), isNamespaceAware());
+				if (extractElementsExpression!=null) {
+					log.debug(getLogPrefix(null)+"elements will be selected from the parsed input using xpath ["+getElementXPathExpression()+"]");
+					return;
+				}
+				log.debug(getLogPrefix(null)+"xpath ["+getElementXPathExpression()+"] cannot be evaluated while parsing, input will be transformed using XSLT");
 				extractElementsTp=TransformerPool.getInstance(makeEncapsulatingXslt("root",getElementXPathExpression()), isXslt2()?2:1);
 			}
 		} catch (TransformerConfigurationException e) {
@@ -245,12 +259,16 @@ public class ForEachChildElementPipe extends IteratingPipe {
 				}
 			}
 		} else {
-			
+			DefaultHandler contentHandler = handler;
+			if (extractElementsExpression!=null) {
+				log.debug("parsing input to obtain list of elements using xpath ["+getElementXPathExpression()+"]");
+				contentHandler = extractElementsExpression.createFilter(handler);
+			}
 			try {
 				if (reader!=null) {
-					XmlUtils.parseXml(handler,new InputSource(reader));
+					XmlUtils.parseXml(contentHandler,new InputSource(reader));
 				} else {
-					XmlUtils.parseXml(handler,(String)input);
+					XmlUtils.parseXml(contentHandler,(String)input);
 				}
 			} catch (Exception e) {
 				if (handler.getTimeOutException()!=null) {
@@ -361,7 +379,7 @@ public class ForEachChildElementPipe extends IteratingPipe {
 
 
 
-	@IbisDoc({"expression used to determine the set of elements iterated over, i.e. the set of child elements", ""})
+	@IbisDoc({"expression used to determine the set of elements iterated over, i.e. the set of child elements. location paths of child and descendant steps, with name tests and predicates on attributes or position, are evaluated while the input is parsed; prefixes are resolved using <code>namespaceDefs</code>", ""})
 	public void setElementXPathExpression(String string) {
 		elementXPathExpression = string;
 	}
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2016 Nationale-Nederlanden
+   Copyright 2013, 2016, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,11 +15,19 @@
 */
 package nl.nn.adapterframework.pipes;
 
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.Map;
-import java.util.Vector;
+import java.util.Set;
 
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
@@ -27,6 +35,7 @@ import javax.xml.transform.TransformerException;
 import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.core.IDataIterator;
 import nl.nn.adapterframework.core.IPipeLineSession;
+import nl.nn.adapterframework.core.PipeStartException;
 import nl.nn.adapterframework.core.ISender;
 import nl.nn.adapterframework.core.ISenderWithParameters;
 import nl.nn.adapterframework.core.SenderException;
@@ -37,14 +46,18 @@ import nl.nn.adapterframework.senders.ParallelSenderExecutor;
 import nl.nn.adapterframework.senders.ParallelSenders;
 import nl.nn.adapterframework.statistics.StatisticsKeeper;
 import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+import nl.nn.adapterframework.util.BloomFilter;
 import nl.nn.adapterframework.util.ClassUtils;
 import nl.nn.adapterframework.util.DomBuilderException;
+import nl.nn.adapterframework.util.FileUtils;
 import nl.nn.adapterframework.util.Guard;
+import nl.nn.adapterframework.util.Semaphore;
 import nl.nn.adapterframework.util.TransformerPool;
 import nl.nn.adapterframework.util.XmlUtils;
 
 import org.apache.commons.lang.StringUtils;
 import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 /**
  * Abstract base class to sends a message to a Sender for each item returned by a configurable iterator.
@@ -79,6 +92,8 @@ import org.springframework.core.task.TaskExecutor;
  * <tr><td>{@link #setItemNoSessionKey(String) itemNoSessionKey}</td><td>key of session variable to store number of item processed.</td><td>&nbsp;</td></tr>
  * <tr><td>{@link #setAddInputToResult(boolean) addInputToResult}</td><td>when <code>true</code> the input is added to the result in an input element</td><td>false</td></tr>
  * <tr><td>{@link #setRemoveDuplicates(boolean) removeDuplicates}</td><td>when <code>true</code> duplicate input elements are removed</td><td>false</td></tr>
+ * <tr><td>{@link #setDuplicatesBloomFilterSize(int) duplicatesBloomFilterSize}</td><td>when set &gt; 0, duplicates are detected using a Bloom filter sized for this number of items</td><td>0</td></tr>
+ * <tr><td>{@link #setResultsInTempFile(boolean) resultsInTempFile}</td><td>when <code>true</code> the results are written to a temporary file, of which the name is returned. The file is deleted when the adapter has finished processing the message</td><td>false</td></tr>
  * </table>
  * <table border="1">
  * <tr><th>nested elements</th><th>description</th></tr>
@@ -123,7 +138,9 @@ import org.springframework.core.task.TaskExecutor;
  */
 public abstract class IteratingPipe extends MessageSendingPipe {
 	private TaskExecutor taskExecutor;
+	private ThreadPoolTaskExecutor childThreadExecutor;
 	private boolean parallel = false;
+	private int maxChildThreads = 0;
 
 	private String stopConditionXPathExpression=null;
 	private boolean removeXmlDeclarationInResults=false;
@@ -136,9 +153,17 @@ public abstract class IteratingPipe extends MessageSendingPipe {
 	private String itemNoSessionKey=null;
 	private boolean addInputToResult=false;
 	private boolean removeDuplicates=false;
+	private int duplicatesBloomFilterSize=0;
+	private boolean resultsInTempFile=false;
 	
 	private boolean ignoreExceptions=false;
 
+	private static final double DUPLICATES_FALSE_POSITIVE_PROBABILITY=0.0001;
+	private static final String RESULTS_FILE_ENCODING="UTF-8";
+	private static final String RESULTS_FILE_HEADER_START="<results count=\"";
+	// room for the largest count and the closing quote, the rest is padded with spaces
+	private static final int RESULTS_FILE_COUNT_WIDTH=11;
+
 	private boolean closeIteratorOnExit=true;
 	
 	private String blockPrefix="<block>";
@@ -188,40 +213,96 @@ public abstract class IteratingPipe extends MessageSendingPipe {
 		 throw new SenderException("Could not obtain iterator and no iterateInput method provided by class ["+ClassUtils.nameOf(this)+"]");
 	}
 
+	/**
+	 * MD5 digest of an item, to detect duplicates without keeping the items themselves.
+	 */
+	private static class ItemDigest {
+		private final long high;
+		private final long low;
+
+		ItemDigest(byte[] digest) {
+			long h=0;
+			long l=0;
+			for (int i=0; i<8; i++) {
+				h = (h<<8) | (digest[i] & 0xFF);
+				l = (l<<8) | (digest[i+8] & 0xFF);
+			}
+			high=h;
+			low=l;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int)(high ^ (high>>>32));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ItemDigest)) {
+				return false;
+			}
+			ItemDigest other = (ItemDigest)obj;
+			return high==other.high && low==other.low;
+		}
+	}
+
 	protected class ItemCallback {
 		private IPipeLineSession session;
 		private String correlationID;
 		private ISender sender; 
 		private ISenderWithParameters psender=null;
-		private StringBuffer results = new StringBuffer();
+		private Writer results;
+		private File resultsFile;
 		int count=0;
-		private Vector inputItems = new Vector();
+		private Set<ItemDigest> itemDigests;
+		private BloomFilter itemBloomFilter;
 		private Guard guard;
-		List<ParallelSenderExecutor> executorList;
+		private Semaphore childThreadSemaphore;
+		private LinkedList<ParallelSenderExecutor> executorList;
+		private int resultCount=0;
 
-		public ItemCallback(IPipeLineSession session, String correlationID, ISender sender) {
+		public ItemCallback(IPipeLineSession session, String correlationID, ISender sender) throws SenderException {
 			this.session=session;
 			this.correlationID=correlationID;
 			this.sender=sender;
 			if (sender instanceof ISenderWithParameters && getParameterList()!=null) {
 				psender = (ISenderWithParameters) sender;
 			}
-			if (isParallel() && isCollectResults()) {
+			if (isRemoveDuplicates()) {
+				if (getDuplicatesBloomFilterSize()>0) {
+					itemBloomFilter = new BloomFilter(getDuplicatesBloomFilterSize(), DUPLICATES_FALSE_POSITIVE_PROBABILITY);
+				} else {
+					itemDigests = new HashSet<ItemDigest>();
+				}
+			}
+			if (isCollectResults()) {
+				if (isResultsInTempFile()) {
+					try {
+						resultsFile = FileUtils.createTempFile("results",".xml");
+						results = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(resultsFile),RESULTS_FILE_ENCODING));
+						// the number of items is not known yet, it is filled in by getResults()
+						results.write(RESULTS_FILE_HEADER_START+StringUtils.rightPad("0\"", RESULTS_FILE_COUNT_WIDTH)+">\n");
+					} catch (IOException e) {
+						throw new SenderException(getLogPrefix(session)+"cannot create file to write results to",e);
+					}
+				} else {
+					results = new StringWriter();
+				}
+			}
+			if (isParallel()) {
 				guard = new Guard();
-				executorList = new ArrayList();
+				if (getMaxChildThreads()>0) {
+					childThreadSemaphore = new Semaphore(getMaxChildThreads());
+				}
+				if (isCollectResults()) {
+					executorList = new LinkedList<ParallelSenderExecutor>();
+				}
 			}
 		}
 		public boolean handleItem(String item) throws SenderException, TimeOutException {
-			if (isParallel() && isCollectResults()) {
-				guard.addResource();
-			}
-			if (isRemoveDuplicates()) {
-				if (inputItems.indexOf(item)>=0) {
-					log.debug(getLogPrefix(session)+"duplicate item ["+item+"] will not be processed");
-					return true;
-				} else {
-					inputItems.add(item);
-				}
+			if (isRemoveDuplicates() && isDuplicate(item)) {
+				log.debug(getLogPrefix(session)+"duplicate item ["+item+"] will not be processed");
+				return true;
 			}
 			String itemResult=null;
 			count++;
@@ -251,12 +332,23 @@ public abstract class IteratingPipe extends MessageSendingPipe {
 			}
 			try {
 				if (isParallel()) {
+					if (childThreadSemaphore!=null) {
+						try {
+							childThreadSemaphore.acquire();
+						} catch (InterruptedException e) {
+							throw new SenderException(getLogPrefix(session)+"was interupted",e);
+						}
+					}
 					ParallelSenderExecutor pse= new ParallelSenderExecutor(
-							sender, correlationID, item, prc, guard, senderStatisticsKeeper);
+							sender, correlationID, item, prc, guard, childThreadSemaphore, senderStatisticsKeeper);
+					guard.addResource();
 					if (isCollectResults()) {
 						executorList.add(pse);
 					}
-					getTaskExecutor().execute(pse);
+					getChildThreadExecutor().execute(pse);
+					if (isCollectResults()) {
+						collectFinishedResults();
+					}
 				} else {
 					if (psender!=null) {
 						itemResult = psender.sendMessage(correlationID, item, prc);
@@ -287,7 +379,7 @@ public abstract class IteratingPipe extends MessageSendingPipe {
 			}
 			try {
 				if (isCollectResults() && !isParallel()) {
-					addResult(count, item, itemResult);
+					addResult(++resultCount, item, itemResult);
 				}
 				if (getStopConditionTp()!=null) {
 					String stopConditionResult = getStopConditionTp().transform(itemResult,null);
@@ -307,39 +399,111 @@ public abstract class IteratingPipe extends MessageSendingPipe {
 				throw new SenderException(getLogPrefix(session)+"cannot serialize item",e);
 			}
 		}
-		private void addResult(int count, String item, String itemResult) {
+		private boolean isDuplicate(String item) {
+			byte[] digest = BloomFilter.digest(item);
+			if (itemBloomFilter!=null) {
+				return !itemBloomFilter.put(digest);
+			}
+			return !itemDigests.add(new ItemDigest(digest));
+		}
+		private void addResult(int count, String item, String itemResult) throws SenderException {
 			if (isRemoveXmlDeclarationInResults()) {
 				if (log.isDebugEnabled()) log.debug(getLogPrefix(session)+"removing XML declaration from ["+itemResult+"]");
 				itemResult = XmlUtils.skipXmlDeclaration(itemResult);
 			} 
 			if (log.isDebugEnabled()) log.debug(getLogPrefix(session)+"partial result ["+itemResult+"]");
-			String itemInput="";
-			if (isAddInputToResult()) {
-				itemInput = "<input>"+(isRemoveXmlDeclarationInResults()?XmlUtils.skipXmlDeclaration(item):item)+"</input>";
+			try {
+				results.write("<result item=\"");
+				results.write(Integer.toString(count));
+				results.write("\">\n");
+				if (isAddInputToResult()) {
+					results.write("<input>");
+					results.write(isRemoveXmlDeclarationInResults()?XmlUtils.skipXmlDeclaration(item):item);
+					results.write("</input>");
+				}
+				results.write(String.valueOf(itemResult));
+				results.write("\n</result>\n");
+			} catch (IOException e) {
+				throw new SenderException(getLogPrefix(session)+"cannot write result of item ["+count+"]",e);
 			}
-			itemResult = "<result item=\"" + count + "\">\n"+itemInput+itemResult+"\n</result>";
-			results.append(itemResult+"\n");
 		}
-		public StringBuffer getResults() throws SenderException {
+		/**
+		 * Adds the results of the executors that have finished to the results, in the order the items were handed out,
+		 * so that executors and their replies do not need to be kept until all items have been processed.
+		 */
+		private void collectFinishedResults() throws SenderException {
+			while (!executorList.isEmpty() && executorList.getFirst().isFinished()) {
+				ParallelSenderExecutor pse = executorList.removeFirst();
+				String itemResult;
+				if (pse.getThrowable() == null) {
+					itemResult = pse.getReply().toString();
+				} else {
+					itemResult = "<exception>"+XmlUtils.encodeChars(pse.getThrowable().getMessage())+"</exception>";
+				}
+				addResult(++resultCount, pse.getRequest().toString(), itemResult);
+			}
+		}
+		/**
+		 * Returns the collected results, or the name of the file they have been written to when <code>resultsInTempFile</code> is set.
+		 * That file is deleted when the session is closed.
+		 */
+		public String getResults() throws SenderException {
 			if (isParallel()) {
 				try {
 					guard.waitForAllResources();
-					int count = 0;
-					for (ParallelSenderExecutor pse : executorList) {
-						count++;
-						String itemResult;
-						if (pse.getThrowable() == null) {
-							itemResult = pse.getReply().toString();
-						} else {
-							itemResult = "<exception>"+XmlUtils.encodeChars(pse.getThrowable().getMessage())+"</exception>";
-						}
-						addResult(count, pse.getRequest().toString(), itemResult);
-					}
+					collectFinishedResults();
 				} catch (InterruptedException e) {
 					throw new SenderException(getLogPrefix(session)+"was interupted",e);
 				}
 			}
-			return results;
+			String footer = "</results>";
+			if (resultsFile==null) {
+				String header = "<results count=\""+getCount()+"\">\n";
+				StringBuffer body = ((StringWriter)results).getBuffer();
+				return new StringBuilder(header.length()+body.length()+footer.length()).append(header).append(body).append(footer).toString();
+			}
+			try {
+				results.write(footer);
+				results.close();
+				RandomAccessFile header = new RandomAccessFile(resultsFile, "rw");
+				try {
+					header.seek(RESULTS_FILE_HEADER_START.length());
+					header.write(StringUtils.rightPad(getCount()+"\"", RESULTS_FILE_COUNT_WIDTH).getBytes(RESULTS_FILE_ENCODING));
+				} finally {
+					header.close();
+				}
+				final File file = resultsFile;
+				session.scheduleCloseOnSessionExit(new Closeable() {
+					public void close() throws IOException {
+						if (!file.delete() && file.exists()) {
+							throw new IOException("cannot delete results file ["+file.getPath()+"]");
+						}
+					}
+					public String toString() {
+						return "results file ["+file.getPath()+"]";
+					}
+				});
+				// the file is returned, so it must not be deleted by close()
+				resultsFile = null;
+				return file.getPath();
+			} catch (IOException e) {
+				throw new SenderException(getLogPrefix(session)+"cannot write results to file",e);
+			}
+		}
+		/**
+		 * Releases the resources used to collect the results.
+		 */
+		public void close() {
+			if (resultsFile!=null) {
+				try {
+					results.close();
+				} catch (IOException e) {
+					log.warn(getLogPrefix(session)+"cannot close results file ["+resultsFile.getPath()+"]", e);
+				}
+				if (!resultsFile.delete()) {
+					log.warn(getLogPrefix(session)+"cannot delete results file ["+resultsFile.getPath()+"]");
+				}
+			}
 		}
 		public int getCount() {
 			return count;
@@ -350,8 +514,8 @@ public abstract class IteratingPipe extends MessageSendingPipe {
 		// sendResult has a messageID for async senders, the result for sync senders
 		boolean keepGoing = true;
 		IDataIterator it=null;
+		ItemCallback callback = new ItemCallback(session,correlationID,sender);
 		try {
-			ItemCallback callback = new ItemCallback(session,correlationID,sender);
 			it = getIterator(input,session, correlationID,threadContext);
 			if (it==null) {
 				iterateInput(input,session,correlationID, threadContext, callback);
@@ -419,15 +583,13 @@ public abstract class IteratingPipe extends MessageSendingPipe {
 			}
 			String results = "";
 			if (isCollectResults()) {
-				StringBuffer callbackResults = callback.getResults();
-				callbackResults.insert(0, "<results count=\""+callback.getCount()+"\">\n");
-				callbackResults.append("</results>");
-				results = callbackResults.toString();
+				results = callback.getResults();
 			} else {
 				results = "<results count=\""+callback.getCount()+"\"/>";
 			}
 			return results;
 		} finally {
+			callback.close();
 			if (it!=null) {
 				try {
 					if (isCloseIteratorOnExit()) {
@@ -459,6 +621,38 @@ public abstract class IteratingPipe extends MessageSendingPipe {
 		senderStatisticsKeeper =  new StatisticsKeeper("-> "+ClassUtils.nameOf(sender));
 	}
 
+	@Override
+	public void start() throws PipeStartException {
+		super.start();
+		if (isParallel() && getMaxChildThreads()>0) {
+			childThreadExecutor = new ThreadPoolTaskExecutor();
+			childThreadExecutor.setCorePoolSize(getMaxChildThreads());
+			childThreadExecutor.setAllowCoreThreadTimeOut(true);
+			childThreadExecutor.setThreadNamePrefix(getName()+"-");
+			childThreadExecutor.initialize();
+		}
+	}
+
+	@Override
+	public void stop() {
+		if (childThreadExecutor!=null) {
+			childThreadExecutor.shutdown();
+			childThreadExecutor=null;
+		}
+		super.stop();
+	}
+
+	/**
+	 * Returns the executor to run the calls for the items on when <code>parallel</code> is set: a pool
+	 * dedicated to this pipe when <code>maxChildThreads</code> is set, otherwise the shared task executor.
+	 */
+	protected TaskExecutor getChildThreadExecutor() {
+		if (childThreadExecutor!=null) {
+			return childThreadExecutor;
+		}
+		return getTaskExecutor();
+	}
+
 	public void setTaskExecutor(TaskExecutor executor) {
 		taskExecutor = executor;
 	}
@@ -474,6 +668,14 @@ public abstract class IteratingPipe extends MessageSendingPipe {
 		return parallel;
 	}
 
+	@IbisDoc({"maximum number of calls for items that are in progress at the same time when <code>parallel</code> is set. the pipe then uses a pool of this size dedicated to the pipe, and waits for a call to finish before the next item is handed out. results are collected in order of the items as soon as they are available. use 0 for unlimited", "0"})
+	public void setMaxChildThreads(int maxChildThreads) {
+		this.maxChildThreads = maxChildThreads;
+	}
+	public int getMaxChildThreads() {
+		return maxChildThreads;
+	}
+
 	public void setStopConditionXPathExpression(String string) {
 		stopConditionXPathExpression = string;
 	}
@@ -609,7 +811,7 @@ public abstract class IteratingPipe extends MessageSendingPipe {
 		return addInputToResult;
 	}
 
-	@IbisDoc({"when <code>true</code> duplicate input elements are removed", "false"})
+	@IbisDoc({"when <code>true</code> duplicate input elements are removed. duplicates are detected by comparing a digest of each item, so the items themselves are not kept", "false"})
 	public void setRemoveDuplicates(boolean b) {
 		removeDuplicates = b;
 	}
@@ -617,6 +819,22 @@ public abstract class IteratingPipe extends MessageSendingPipe {
 		return removeDuplicates;
 	}
 
+	@IbisDoc({"when set &gt; 0 and <code>removeDuplicates</code> is set, duplicates are detected using a Bloom filter sized for this number of items, that uses a fixed amount of memory. a small fraction (1 in 10000) of unique items may then be regarded a duplicate and skipped. use 0 to detect duplicates exactly", "0"})
+	public void setDuplicatesBloomFilterSize(int duplicatesBloomFilterSize) {
+		this.duplicatesBloomFilterSize = duplicatesBloomFilterSize;
+	}
+	public int getDuplicatesBloomFilterSize() {
+		return duplicatesBloomFilterSize;
+	}
+
+	@IbisDoc({"when <code>true</code> and <code>collectResults</code> is set, the results are written to a temporary file in the upload directory instead of being collected in memory, and the name of that file is returned. the file is deleted when the adapter has finished processing the message", "false"})
+	public void setResultsInTempFile(boolean resultsInTempFile) {
+		this.resultsInTempFile = resultsInTempFile;
+	}
+	public boolean isResultsInTempFile() {
+		return resultsInTempFile;
+	}
+
 	protected void setCloseIteratorOnExit(boolean b) {
 		closeIteratorOnExit = b;
 	}
@@ -104,6 +104,11 @@ public class JsonXsltPipe extends XsltPipe {
 //		return new ParameterResolutionContext(source, session, isNamespaceAware(), isXslt2());
 	}
 	
+	@Override
+	protected boolean canStreamInput() {
+		return false;
+	}
+
 	@Override
 	protected String transform(Object input, IPipeLineSession session) throws SenderException, TransformerException {
 		String xmlResult=super.transform(input, session);
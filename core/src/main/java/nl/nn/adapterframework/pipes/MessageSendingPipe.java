@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2015, 2016, 2018 Nationale-Nederlanden
+   Copyright 2013, 2015, 2016, 2018, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -66,6 +66,7 @@ import nl.nn.adapterframework.statistics.HasStatistics;
 import nl.nn.adapterframework.statistics.StatisticsKeeper;
 import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
 import nl.nn.adapterframework.util.AppConstants;
+import nl.nn.adapterframework.util.CircuitBreaker;
 import nl.nn.adapterframework.util.ClassUtils;
 import nl.nn.adapterframework.util.LogUtil;
 import nl.nn.adapterframework.util.Misc;
@@ -96,6 +97,9 @@ import nl.nn.adapterframework.util.XmlUtils;
  * <tr><td>{@link #setMaxRetries(int) maxRetries}</td><td>the number of times a processing attempt is retried after a timeout or an exception is caught or after a incorrect reply is received (see also <code>retryXPath</code>)</td><td>0</td></tr>
  * <tr><td>{@link #setRetryMinInterval(int) retryMinInterval}</td><td>The starting number of seconds waited after an unsuccessful processing attempt before another processing attempt is made. Each next retry this interval is doubled with a upper limit of <code>retryMaxInterval</code></td><td>1</td></tr>
  * <tr><td>{@link #setRetryMaxInterval(int) retryMaxInterval}</td><td>The maximum number of seconds waited after an unsuccessful processing attempt before another processing attempt is made</td><td>600</td></tr>
+ * <tr><td>{@link #setCircuitBreakerThreshold(int) circuitBreakerThreshold}</td><td>when larger than 0, the number of consecutive timeouts or exceptions of the sender after which messages are no longer sent to it, but fail immediately, until a single probe message succeeds</td><td>0</td></tr>
+ * <tr><td>{@link #setCircuitBreakerMinOpenTime(int) circuitBreakerMinOpenTime}</td><td>the number of seconds no messages are sent after the circuit breaker opened the first time. Each next time this time is doubled with an upper limit of <code>circuitBreakerMaxOpenTime</code></td><td>10</td></tr>
+ * <tr><td>{@link #setCircuitBreakerMaxOpenTime(int) circuitBreakerMaxOpenTime}</td><td>the maximum number of seconds no messages are sent after the circuit breaker opened</td><td>600</td></tr>
  * <tr><td>{@link #setRetryXPath(String) retryXPath}</td><td>xpath expression evaluated on each technical successful reply. Retry is done if condition returns true</td><td>&nbsp;</td></tr>
  * <tr><td>{@link #setRetryNamespaceDefs(String) retryNamespaceDefs}</td><td>namespace defintions for retryXPath. Must be in the form of a comma or space separated list of <code>prefix=namespaceuri</code>-definitions</td><td>&nbsp;</td></tr>
  * <tr><td>{@link #setUseInputForExtract(boolean) useInputForExtract}</td><td>when set <code>true</code>, the input of a pipe is used to extract audit trail, correlationID and label (instead of the wrapped input)</td><td>true</td></tr>
@@ -139,6 +143,9 @@ public class MessageSendingPipe extends FixedForwardPipe implements HasSender, H
 	public static final String PIPE_TIMEOUT_MONITOR_EVENT = "Sender Timeout";
 	public static final String PIPE_CLEAR_TIMEOUT_MONITOR_EVENT = "Sender Received Result on Time";
 	public static final String PIPE_EXCEPTION_MONITOR_EVENT = "Sender Exception Caught";
+	public static final String PIPE_CIRCUIT_OPENED_MONITOR_EVENT = "Sender Circuit Breaker Opened";
+	public static final String PIPE_CIRCUIT_HALF_OPEN_MONITOR_EVENT = "Sender Circuit Breaker Half Open";
+	public static final String PIPE_CIRCUIT_CLOSED_MONITOR_EVENT = "Sender Circuit Breaker Closed";
 
 	private final static String SUCCESS_FORWARD = "success";
 	private final static String TIMEOUT_FORWARD = "timeout";
@@ -173,6 +180,10 @@ public class MessageSendingPipe extends FixedForwardPipe implements HasSender, H
 	private int maxRetries=0;
 	private int retryMinInterval=1;
 	private int retryMaxInterval=1;
+	private int circuitBreakerThreshold=0;
+	private int circuitBreakerMinOpenTime=10;
+	private int circuitBreakerMaxOpenTime=600;
+	private CircuitBreaker circuitBreaker=null;
 	private String retryXPath;
 	private String retryNamespaceDefs;
 
@@ -416,6 +427,27 @@ public class MessageSendingPipe extends FixedForwardPipe implements HasSender, H
 		registerEvent(PIPE_TIMEOUT_MONITOR_EVENT);
 		registerEvent(PIPE_CLEAR_TIMEOUT_MONITOR_EVENT);
 		registerEvent(PIPE_EXCEPTION_MONITOR_EVENT);
+		if (getCircuitBreakerThreshold()>0) {
+			registerEvent(PIPE_CIRCUIT_OPENED_MONITOR_EVENT);
+			registerEvent(PIPE_CIRCUIT_HALF_OPEN_MONITOR_EVENT);
+			registerEvent(PIPE_CIRCUIT_CLOSED_MONITOR_EVENT);
+			circuitBreaker = new CircuitBreaker(getCircuitBreakerThreshold(), getCircuitBreakerMinOpenTime()*1000L, getCircuitBreakerMaxOpenTime()*1000L);
+			circuitBreaker.setStateListener(new CircuitBreaker.StateListener() {
+				@Override
+				public void stateChanged(CircuitBreaker circuitBreaker, CircuitBreaker.State oldState, CircuitBreaker.State newState) {
+					log.info(getLogPrefix(null)+"circuit breaker of sender ["+getSender().getName()+"] changed from ["+oldState+"] to ["+newState+"]");
+					if (newState==CircuitBreaker.State.OPEN) {
+						throwEvent(PIPE_CIRCUIT_OPENED_MONITOR_EVENT);
+					} else if (newState==CircuitBreaker.State.HALF_OPEN) {
+						throwEvent(PIPE_CIRCUIT_HALF_OPEN_MONITOR_EVENT);
+					} else {
+						throwEvent(PIPE_CIRCUIT_CLOSED_MONITOR_EVENT);
+					}
+				}
+			});
+		} else {
+			circuitBreaker = null;
+		}
 	}
 
 	
@@ -486,8 +518,14 @@ public class MessageSendingPipe extends FixedForwardPipe implements HasSender, H
 					retriesLeft = 1;
 				}
 				while (retriesLeft-->=1 && !replyIsValid) {
+					if (circuitBreaker!=null && !circuitBreaker.allowRequest()) {
+						throw new SenderException(getLogPrefix(session)+"circuit breaker of sender ["+getSender().getName()+"] is open, will send messages again in ["+circuitBreaker.getRemainingOpenTime()+"] ms");
+					}
 					try {
 						sendResult = sendMessage(input, session, correlationID, getSender(), threadContext);
+						if (circuitBreaker!=null) {
+							circuitBreaker.recordSuccess();
+						}
 						if (retryTp!=null) {
 							String retry=retryTp.transform(sendResult,null);
 							if (retry.equalsIgnoreCase("true")) {
@@ -501,12 +539,18 @@ public class MessageSendingPipe extends FixedForwardPipe implements HasSender, H
 							replyIsValid = true;
 						}
 					} catch (TimeOutException toe) {
+						if (circuitBreaker!=null) {
+							circuitBreaker.recordFailure();
+						}
 						if (retriesLeft>=1) {
 							retryInterval = increaseRetryIntervalAndWait(session, retryInterval, "timeout occured, retries left [" + retriesLeft + "]");
 						} else {
 							throw toe;
 						}
 					} catch (SenderException se) {
+						if (circuitBreaker!=null) {
+							circuitBreaker.recordFailure();
+						}
 						if (retriesLeft>=1) {
 							retryInterval = increaseRetryIntervalAndWait(session, retryInterval, "exception ["+(se!=null?se.getMessage():"")+"] occured, retries left [" + retriesLeft + "]");
 						} else {
@@ -1160,6 +1204,37 @@ public class MessageSendingPipe extends FixedForwardPipe implements HasSender, H
 		retryMaxInterval = i;
 	}
 
+	public int getCircuitBreakerThreshold() {
+		return circuitBreakerThreshold;
+	}
+
+	@IbisDoc({"when larger than 0, the number of consecutive timeouts or exceptions of the sender after which messages are no longer sent to it, but fail immediately, until a single probe message succeeds", "0"})
+	public void setCircuitBreakerThreshold(int i) {
+		circuitBreakerThreshold = i;
+	}
+
+	public int getCircuitBreakerMinOpenTime() {
+		return circuitBreakerMinOpenTime;
+	}
+
+	@IbisDoc({"the number of seconds no messages are sent after the circuit breaker opened the first time. each next time this time is doubled with an upper limit of <code>circuitbreakermaxopentime</code>", "10"})
+	public void setCircuitBreakerMinOpenTime(int i) {
+		circuitBreakerMinOpenTime = i;
+	}
+
+	public int getCircuitBreakerMaxOpenTime() {
+		return circuitBreakerMaxOpenTime;
+	}
+
+	@IbisDoc({"the maximum number of seconds no messages are sent after the circuit breaker opened", "600"})
+	public void setCircuitBreakerMaxOpenTime(int i) {
+		circuitBreakerMaxOpenTime = i;
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
 	@IbisDoc({"xpath expression evaluated on each technical successful reply. retry is done if condition returns true", ""})
 	public void setRetryXPath(String string) {
 		retryXPath = string;
@@ -43,6 +43,8 @@ import nl.nn.adapterframework.http.HttpSender;
 import nl.nn.adapterframework.parameters.ParameterList;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 import nl.nn.adapterframework.soap.SoapWrapper;
+import nl.nn.adapterframework.stream.IStreamingPipe;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.Misc;
 
 /**
@@ -70,7 +72,7 @@ import nl.nn.adapterframework.util.Misc;
  * </p>
  * @author Jaco de Groot
  */
-public class StreamPipe extends FixedForwardPipe {
+public class StreamPipe extends FixedForwardPipe implements IStreamingPipe {
 	public static final String ANTIVIRUS_FAILED_FORWARD = "antiVirusFailed";
 
 	private boolean extractFirstStringPart = false;
@@ -109,6 +111,14 @@ public class StreamPipe extends FixedForwardPipe {
 	@Override
 	public PipeRunResult doPipe(Object input, IPipeLineSession session)
 			throws PipeRunException {
+		if (input instanceof Message) {
+			Message message = (Message)input;
+			try {
+				input = message.isBinary() || !message.isRepeatable() ? message.asInputStream() : message.asString();
+			} catch (IOException e) {
+				throw new PipeRunException(this, "cannot open stream", e);
+			}
+		}
 		Object result = input;
 		String inputString;
 		if (input instanceof String) {
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2016 Nationale-Nederlanden
+   Copyright 2013, 2016, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,6 +15,8 @@
 */
 package nl.nn.adapterframework.pipes;
 
+import java.io.IOException;
+
 import javax.xml.transform.TransformerException;
 
 import nl.nn.adapterframework.doc.IbisDoc;
@@ -30,6 +32,10 @@ import nl.nn.adapterframework.parameters.Parameter;
 import nl.nn.adapterframework.parameters.ParameterList;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 import nl.nn.adapterframework.senders.XsltSender;
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+import nl.nn.adapterframework.stream.IStreamingPipe;
+import nl.nn.adapterframework.stream.Message;
 
 
 /**
@@ -49,7 +55,7 @@ import nl.nn.adapterframework.senders.XsltSender;
  * @author Johan Verrips
  */
 
-public class XsltPipe extends FixedForwardPipe {
+public class XsltPipe extends FixedForwardPipe implements IStreamingPipe, HasStatistics {
 
 	private String sessionKey=null;
 	
@@ -80,6 +86,11 @@ public class XsltPipe extends FixedForwardPipe {
 		}
 	}
 	
+	@Override
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		sender.iterateOverStatistics(hski, data, action);
+	}
+
 	@Override
 	public void stop() {
 		try {
@@ -114,10 +125,30 @@ public class XsltPipe extends FixedForwardPipe {
 	 * Allow to override transformation, so JsonXslt can prefix and suffix...
 	 */
 	protected String transform(Object input, IPipeLineSession session) throws SenderException, TransformerException {
+		if (input instanceof Message) {
+			Message message = (Message)input;
+			try {
+				if (canStreamInput()) {
+					ParameterResolutionContext prc = new ParameterResolutionContext((String)null, session, isNamespaceAware());
+					return sender.sendMessage(null, message, prc).asString();
+				}
+				input = message.asString();
+			} catch (IOException e) {
+				throw new SenderException(getLogPrefix(session)+"cannot read input", e);
+			}
+		}
  	    String inputXml=getInputXml(input, session);
 		ParameterResolutionContext prc = new ParameterResolutionContext(inputXml, session, isNamespaceAware()); 
 		return sender.sendMessage(null, inputXml, prc);
 	}
+	/**
+	 * Returns <code>true</code> when a {@link Message} can be transformed without reading it into a String.
+	 * Subclasses that need the input as a String in {@link #getInputXml(Object, IPipeLineSession)} must return <code>false</code>.
+	 */
+	protected boolean canStreamInput() {
+		return sender.canStreamInput();
+	}
+
 	/**
 	 * Here the actual transforming is done. Under weblogic the transformer object becomes
 	 * corrupt when a not-well formed xml was handled. The transformer is then re-initialized
@@ -128,11 +159,15 @@ public class XsltPipe extends FixedForwardPipe {
 		if (input==null) {
 			throw new PipeRunException(this, getLogPrefix(session)+"got null input");
 		}
- 	    if (!(input instanceof String)) {
+ 	    if (!(input instanceof String) && !(input instanceof Message)) {
 	        throw new PipeRunException(this, getLogPrefix(session)+"got an invalid type as input, expected String, got " + input.getClass().getName());
 	    }
 
 	    try {
+			if (input instanceof Message && StringUtils.isNotEmpty(getSessionKey())) {
+				// the input is returned as result, so it must be readable after the transformation
+				((Message)input).preserve();
+			}
 	    	String stringResult = transform(input, session);
 		
 			if (StringUtils.isEmpty(getSessionKey())){
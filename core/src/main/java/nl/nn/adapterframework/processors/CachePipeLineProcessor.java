@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,11 +15,15 @@
 */
 package nl.nn.adapterframework.processors;
 
+import java.io.IOException;
+
+import nl.nn.adapterframework.cache.CacheAdapterBase;
 import nl.nn.adapterframework.cache.ICacheAdapter;
 import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.PipeLine;
 import nl.nn.adapterframework.core.PipeLineResult;
 import nl.nn.adapterframework.core.PipeRunException;
+import nl.nn.adapterframework.stream.Message;
 
 /**
  * PipelineProcessor that handles caching.
@@ -29,40 +33,53 @@ import nl.nn.adapterframework.core.PipeRunException;
  */
 public class CachePipeLineProcessor extends PipeLineProcessorBase {
 	
-	public PipeLineResult processPipeLine(PipeLine pipeLine, String messageId, String message, IPipeLineSession pipeLineSession, String firstPipe) throws PipeRunException {
+	public PipeLineResult processPipeLine(PipeLine pipeLine, String messageId, Message message, IPipeLineSession pipeLineSession, String firstPipe) throws PipeRunException {
 		ICacheAdapter cache=pipeLine.getCache();
 		if (cache==null) {
 			return pipeLineProcessor.processPipeLine(pipeLine, messageId, message, pipeLineSession, firstPipe);
 		}
 		
-		String key=cache.transformKey(message, pipeLineSession);
+		String input;
+		try {
+			input = message.asString();
+		} catch (IOException e) {
+			throw new PipeRunException(null, "cannot read message to determine cache key", e);
+		}
+		String key=cache.transformKey(input, pipeLineSession);
 		if (key==null) {
 			if (log.isDebugEnabled()) log.debug("cache key is null, will not use cache");
 			return pipeLineProcessor.processPipeLine(pipeLine, messageId, message, pipeLineSession, firstPipe);
 		}
 		if (log.isDebugEnabled()) log.debug("cache key ["+key+"]");
-		String result;
-		String state;
-		synchronized (cache) {
-			result = cache.getString("r"+key);
-			state = cache.getString("s"+key);
-		}
-		if (result!=null && state!=null) {
-			if (log.isDebugEnabled()) log.debug("retrieved result from cache using key ["+key+"]");
-			PipeLineResult prr=new PipeLineResult();
-			prr.setState(state);
-			prr.setResult(result);
-			return prr;
+		CacheAdapterBase.Load load=null;
+		if (cache instanceof CacheAdapterBase) {
+			load=((CacheAdapterBase)cache).startLoading(key, "r"+key);
 		}
-		if (log.isDebugEnabled()) log.debug("no cached results found using key ["+key+"]");
-		PipeLineResult prr=pipeLineProcessor.processPipeLine(pipeLine, messageId, message, pipeLineSession, firstPipe);
-		if (log.isDebugEnabled()) log.debug("caching result using key ["+key+"]");
-		String cacheValue=cache.transformValue(prr.getResult(), pipeLineSession);
-		synchronized (cache) {
-			cache.putString("r"+key, cacheValue);
+		try {
+			if (load==null) {
+				String result = cache.getString("r"+key);
+				String state = cache.getString("s"+key);
+				if (result!=null && state!=null) {
+					if (log.isDebugEnabled()) log.debug("retrieved result from cache using key ["+key+"]");
+					PipeLineResult prr=new PipeLineResult();
+					prr.setState(state);
+					prr.setResult(result);
+					return prr;
+				}
+			}
+			if (log.isDebugEnabled()) log.debug("no cached results found using key ["+key+"]");
+			PipeLineResult prr=pipeLineProcessor.processPipeLine(pipeLine, messageId, message, pipeLineSession, firstPipe);
+			if (log.isDebugEnabled()) log.debug("caching result using key ["+key+"]");
+			String cacheValue=cache.transformValue(prr.getResult(), pipeLineSession);
+			// state is stored before result, as the presence of the result signals the presence of a cached value to other threads
 			cache.putString("s"+key, prr.getState());
+			cache.putString("r"+key, cacheValue);
+			return prr;
+		} finally {
+			if (load!=null) {
+				((CacheAdapterBase)cache).finishLoading(load);
+			}
 		}
-		return prr;
 	}
 
 }
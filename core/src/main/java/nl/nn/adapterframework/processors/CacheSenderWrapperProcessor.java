@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2017 Nationale-Nederlanden
+   Copyright 2013, 2017, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,6 +15,7 @@
 */
 package nl.nn.adapterframework.processors;
 
+import nl.nn.adapterframework.cache.CacheAdapterBase;
 import nl.nn.adapterframework.cache.ICacheAdapter;
 import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.core.TimeOutException;
@@ -41,22 +42,35 @@ public class CacheSenderWrapperProcessor extends SenderWrapperProcessorBase {
 			return senderWrapperProcessor.sendMessage(senderWrapperBase, correlationID, message, prc);
 		}
 		if (log.isDebugEnabled()) log.debug("cache key ["+key+"]");
-		String result=cache.getString(key);
-		if (result==null) {
-			if (log.isDebugEnabled()) log.debug("no cached results found using key ["+key+"]");
-			result=senderWrapperProcessor.sendMessage(senderWrapperBase, correlationID, message, prc);
-			if (log.isDebugEnabled()) log.debug("caching result using key ["+key+"]");
-			String cacheValue=cache.transformValue(result, prc.getSession());
-			if (cacheValue==null) {
-				if (log.isDebugEnabled()) log.debug("transformed cache value is null, will not cache");
-				return result;
+		CacheAdapterBase.Load load=null;
+		if (cache instanceof CacheAdapterBase) {
+			load=((CacheAdapterBase)cache).startLoading(key, key);
+		}
+		try {
+			String result=null;
+			if (load==null) {
+				result=cache.getString(key);
+			}
+			if (result==null) {
+				if (log.isDebugEnabled()) log.debug("no cached results found using key ["+key+"]");
+				result=senderWrapperProcessor.sendMessage(senderWrapperBase, correlationID, message, prc);
+				if (log.isDebugEnabled()) log.debug("caching result using key ["+key+"]");
+				String cacheValue=cache.transformValue(result, prc.getSession());
+				if (cacheValue==null) {
+					if (log.isDebugEnabled()) log.debug("transformed cache value is null, will not cache");
+					return result;
+				}
+				result = cacheValue;
+				cache.putString(key, result);
+			} else {
+				if (log.isDebugEnabled()) log.debug("retrieved result from cache using key ["+key+"]");
+			}
+			return result;
+		} finally {
+			if (load!=null) {
+				((CacheAdapterBase)cache).finishLoading(load);
 			}
-			result = cacheValue;
-			cache.putString(key, result);
-		} else {
-			if (log.isDebugEnabled()) log.debug("retrieved result from cache using key ["+key+"]");
 		}
-		return result;
 	}
 
 }
@@ -35,6 +35,7 @@ import nl.nn.adapterframework.core.PipeRunException;
 import nl.nn.adapterframework.core.PipeRunResult;
 import nl.nn.adapterframework.pipes.AbstractPipe;
 import nl.nn.adapterframework.statistics.StatisticsKeeper;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.DomBuilderException;
 import nl.nn.adapterframework.util.LogUtil;
 import nl.nn.adapterframework.util.TransformerPool;
@@ -51,16 +52,14 @@ public class CorePipeLineProcessor implements PipeLineProcessor {
 		this.pipeProcessor = pipeProcessor;
 	}
 
-	public PipeLineResult processPipeLine(PipeLine pipeLine, String messageId, String message, IPipeLineSession pipeLineSession, String firstPipe) throws PipeRunException {
+	public PipeLineResult processPipeLine(PipeLine pipeLine, String messageId, Message message, IPipeLineSession pipeLineSession, String firstPipe) throws PipeRunException {
 		// Object is the object that is passed to and returned from Pipes
-		Object object = (Object) message;
+		Object object = message;
 		PipeRunResult pipeRunResult;
 		// the PipeLineResult
 		PipeLineResult pipeLineResult=new PipeLineResult();
 
-		if (object == null
-				|| (object instanceof String && StringUtils.isEmpty(object
-						.toString()))) {
+		if (Message.isEmpty(message)) {
 			if (StringUtils.isNotEmpty(pipeLine.getAdapterToRunBeforeOnEmptyInput())) {
 				log.debug("running adapterBeforeOnEmptyInput");
 				IAdapter adapter = pipeLine
@@ -81,10 +80,10 @@ public class CorePipeLineProcessor implements PipeLineProcessor {
 								+ pipeLine.getAdapterToRunBeforeOnEmptyInput()
 								+ "] ended with state [" + plr.getState() + "]");
 					}
-					message = plr.getResult();
-					log.debug("input after running adapterBeforeOnEmptyInput ["
+					message = new Message(plr.getResult());
+					if (log.isDebugEnabled()) log.debug("input after running adapterBeforeOnEmptyInput ["
 							+ message + "]");
-					object = (Object) message;
+					object = message;
 				}
 			}
 		}
@@ -116,7 +115,7 @@ public class CorePipeLineProcessor implements PipeLineProcessor {
 				Object validatedMessage = validationResult.getResult();
 				if (validatedMessage!=null) {
 					object=validatedMessage;
-					message=validatedMessage.toString();
+					message=Message.asMessage(validatedMessage);
 				}
 			}
 		}
@@ -137,20 +136,25 @@ public class CorePipeLineProcessor implements PipeLineProcessor {
 						throw new PipeRunException(pipeToRun,"forward ["+wrapForward.getName()+"], path ["+wrapForward.getPath()+"] does not correspond to a pipe");
 					}
 				} else {
-					message = wrapResult.getResult().toString();
+					message = Message.asMessage(wrapResult.getResult());
 				}
-				log.debug("input after wrapping [" + message + "]");
-				object = (Object) message;
+				if (log.isDebugEnabled()) log.debug("input after wrapping [" + message + "]");
+				object = message;
 			}
 		}
 
-		pipeLine.getRequestSizeStats().addValue(message.length());
+		long messageSize = message.size();
+		if (messageSize>=0) {
+			// the size of a streaming message is not known in advance
+			pipeLine.getRequestSizeStats().addValue(messageSize);
+		}
 
 		if (pipeLine.isStoreOriginalMessageWithoutNamespaces()) {
-			if (XmlUtils.isWellFormed(message)) {
+			String input = asString(message);
+			if (XmlUtils.isWellFormed(input)) {
 				try{
 					TransformerPool tpRemoveNamespaces = XmlUtils.getRemoveNamespacesTransformerPool(true,true);
-					String xsltResult = tpRemoveNamespaces.transform(message,null);
+					String xsltResult = tpRemoveNamespaces.transform(input,null);
 					pipeLineSession.put("originalMessageWithoutNamespaces", xsltResult);
 				} catch (IOException e) {
 					throw new PipeRunException(pipeToRun,"cannot retrieve removeNamespaces", e);
@@ -163,7 +167,7 @@ public class CorePipeLineProcessor implements PipeLineProcessor {
 				}
 			} else {
 				log.warn("original message is not well-formed");
-				pipeLineSession.put("originalMessageWithoutNamespaces", message);
+				pipeLineSession.put("originalMessageWithoutNamespaces", input);
 			}
 		}
 
@@ -217,7 +221,7 @@ public class CorePipeLineProcessor implements PipeLineProcessor {
 							log.debug("wrap succeeded");
 							object = wrapResult.getResult();
 						}
-						log.debug("PipeLineResult after wrapping [" + object.toString() + "]");
+						if (log.isDebugEnabled()) log.debug("PipeLineResult after wrapping [" + object + "]");
 					}
 
 					if (!outputWrapError) {
@@ -253,7 +257,7 @@ public class CorePipeLineProcessor implements PipeLineProcessor {
 						pipeLineResult.setState(state);
 						pipeLineResult.setExitCode(plExit.getExitCode());
 						if (object!=null && !plExit.getEmptyResult()) {
-							pipeLineResult.setResult(object.toString());
+							pipeLineResult.setResult(asString(object));
 						}
 						else {
 							pipeLineResult.setResult(null);
@@ -295,4 +299,12 @@ public class CorePipeLineProcessor implements PipeLineProcessor {
 		}
 		return pipeLineResult;
 	}
+
+	private String asString(Object object) throws PipeRunException {
+		try {
+			return Message.asString(object);
+		} catch (IOException e) {
+			throw new PipeRunException(null, "cannot read message", e);
+		}
+	}
 }
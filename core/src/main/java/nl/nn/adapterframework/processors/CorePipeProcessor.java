@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,11 +15,15 @@
 */
 package nl.nn.adapterframework.processors;
 
+import java.io.IOException;
+
 import nl.nn.adapterframework.core.IPipe;
 import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.PipeLine;
 import nl.nn.adapterframework.core.PipeRunException;
 import nl.nn.adapterframework.core.PipeRunResult;
+import nl.nn.adapterframework.stream.IStreamingPipe;
+import nl.nn.adapterframework.stream.Message;
 
 /**
  * @author Jaco de Groot
@@ -27,7 +31,22 @@ import nl.nn.adapterframework.core.PipeRunResult;
 public class CorePipeProcessor implements PipeProcessor {
 	
 	public PipeRunResult processPipe(PipeLine pipeLine, IPipe pipe, String messageId, Object message, IPipeLineSession pipeLineSession) throws PipeRunException {
+		if (message instanceof Message && !(pipe instanceof IStreamingPipe)) {
+			message = adaptMessage(pipe, (Message)message);
+		}
 		return pipe.doPipe(message, pipeLineSession);
 	}
 
+	/**
+	 * Converts a Message to the String that pipes that are not aware of streaming expect. Binary data
+	 * is decoded using the charset of the message; only {@link IStreamingPipe}s receive the raw contents.
+	 */
+	protected Object adaptMessage(IPipe pipe, Message message) throws PipeRunException {
+		try {
+			return message.asString();
+		} catch (IOException e) {
+			throw new PipeRunException(pipe, "cannot read message", e);
+		}
+	}
+
 }
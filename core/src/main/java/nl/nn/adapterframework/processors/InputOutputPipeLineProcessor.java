@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,11 +15,14 @@
 */
 package nl.nn.adapterframework.processors;
 
+import java.io.IOException;
+
 import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.PipeLine;
 import nl.nn.adapterframework.core.PipeLineResult;
 import nl.nn.adapterframework.core.PipeLineSessionBase;
 import nl.nn.adapterframework.core.PipeRunException;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.Misc;
 
 /**
@@ -28,7 +31,7 @@ import nl.nn.adapterframework.util.Misc;
 public class InputOutputPipeLineProcessor extends PipeLineProcessorBase {
 	
 	public PipeLineResult processPipeLine(PipeLine pipeLine, String messageId,
-			String message, IPipeLineSession pipeLineSession, String firstPipe
+			Message message, IPipeLineSession pipeLineSession, String firstPipe
 			) throws PipeRunException {
 		if (pipeLineSession==null) {
 			pipeLineSession= new PipeLineSessionBase();
@@ -39,11 +42,20 @@ public class InputOutputPipeLineProcessor extends PipeLineProcessorBase {
 				log.error("null value for messageId, setting to ["+messageId+"]");
 	
 		}
-		if (message == null) {
+		if (message == null || message.isNull()) {
 			throw new PipeRunException(null, "Pipeline of adapter ["+ pipeLine.getOwner().getName()+"] received null message");
 		}
 		// store message and messageId in the pipeLineSession
-		pipeLineSession.put(IPipeLineSession.originalMessageKey, message);
+		// streaming messages are not stored as originalMessage, as the first pipe consumes them
+		if (message.isRepeatable()) {
+			try {
+				pipeLineSession.put(IPipeLineSession.originalMessageKey, message.asString());
+			} catch (IOException e) {
+				throw new PipeRunException(null, "Pipeline of adapter ["+ pipeLine.getOwner().getName()+"] cannot read message", e);
+			}
+		} else if (log.isDebugEnabled()) {
+			log.debug("Pipeline of adapter ["+ pipeLine.getOwner().getName()+"] received streaming message, originalMessage is not set");
+		}
 		pipeLineSession.put(IPipeLineSession.messageIdKey, messageId);
 		return pipeLineProcessor.processPipeLine(pipeLine, messageId, message, pipeLineSession, firstPipe);
 	}
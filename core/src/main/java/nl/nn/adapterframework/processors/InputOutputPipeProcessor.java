@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2016 Nationale-Nederlanden
+   Copyright 2013, 2016, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,6 +15,7 @@
 */
 package nl.nn.adapterframework.processors;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.StringTokenizer;
 
@@ -29,6 +30,7 @@ import nl.nn.adapterframework.core.PipeLine;
 import nl.nn.adapterframework.core.PipeRunException;
 import nl.nn.adapterframework.core.PipeRunResult;
 import nl.nn.adapterframework.pipes.FixedForwardPipe;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.CompactSaxHandler;
 import nl.nn.adapterframework.util.XmlUtils;
 
@@ -62,8 +64,7 @@ public class InputOutputPipeProcessor extends PipeProcessorBase {
 				if (log.isDebugEnabled()) log.debug("Pipeline of adapter ["+owner.getName()+"] replacing input for pipe ["+pe.getName()+"] with fixed value ["+pe.getGetInputFromFixedValue()+"]");
 				message=pe.getGetInputFromFixedValue();
 			}
-			if ((message == null || StringUtils.isEmpty(message.toString()))
-					&& StringUtils.isNotEmpty(pe.getEmptyInputReplacement())) {
+			if (Message.isEmpty(message) && StringUtils.isNotEmpty(pe.getEmptyInputReplacement())) {
 				if (log.isDebugEnabled()) log.debug("Pipeline of adapter ["+owner.getName()+"] replacing empty input for pipe ["+pe.getName()+"] with fixed value ["+pe.getEmptyInputReplacement()+"]");
 				message = pe.getEmptyInputReplacement();
 			}
@@ -86,7 +87,7 @@ public class InputOutputPipeProcessor extends PipeProcessorBase {
 				if (log.isDebugEnabled()) log.debug("Pipeline of adapter ["+owner.getName()+"] restoring from compacted result for pipe ["+pe.getName()+"]");
 				Object result = pipeRunResult.getResult();
 				if (result!=null) {
-					String resultString = (String)result;
+					String resultString = asString(pipe, result);
 					pipeRunResult.setResult(restoreMovedElements(resultString, pipeLineSession));
 				}
 			}
@@ -95,7 +96,7 @@ public class InputOutputPipeProcessor extends PipeProcessorBase {
 				log.debug("Pipeline of adapter ["+owner.getName()+"] compact received message");
 				Object result = pipeRunResult.getResult();
 				if (result!=null) {
-					String resultString = (String)result;
+					String resultString = asString(pipe, result);
 					try {
 						InputStream xmlInput = IOUtils.toInputStream(resultString, "UTF-8");
 						CompactSaxHandler handler = new CompactSaxHandler();
@@ -197,4 +198,12 @@ public class InputOutputPipeProcessor extends PipeProcessorBase {
 		buffer.append(invoerChars, copyFrom, invoerChars.length - copyFrom);
 		return buffer.toString();
 	}
+
+	private String asString(IPipe pipe, Object result) throws PipeRunException {
+		try {
+			return Message.asString(result);
+		} catch (IOException e) {
+			throw new PipeRunException(pipe, "cannot read result", e);
+		}
+	}
 }
@@ -19,6 +19,7 @@ import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.PipeLine;
 import nl.nn.adapterframework.core.PipeLineResult;
 import nl.nn.adapterframework.core.PipeRunException;
+import nl.nn.adapterframework.stream.Message;
 
 /**
  * @author Jaco de Groot
@@ -26,7 +27,7 @@ import nl.nn.adapterframework.core.PipeRunException;
 public interface PipeLineProcessor {
 
 	public PipeLineResult processPipeLine(PipeLine pipeLine, String messageId,
-			String message, IPipeLineSession pipeLineSession, String firstPipe
+			Message message, IPipeLineSession pipeLineSession, String firstPipe
 			) throws PipeRunException;
 
 }
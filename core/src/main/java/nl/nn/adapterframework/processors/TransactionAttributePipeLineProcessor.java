@@ -20,6 +20,7 @@ import nl.nn.adapterframework.core.IbisTransaction;
 import nl.nn.adapterframework.core.PipeLine;
 import nl.nn.adapterframework.core.PipeLineResult;
 import nl.nn.adapterframework.core.PipeRunException;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.task.TimeoutGuard;
 import nl.nn.adapterframework.util.ClassUtils;
 
@@ -35,7 +36,7 @@ public class TransactionAttributePipeLineProcessor extends PipeLineProcessorBase
 	private PlatformTransactionManager txManager;
 
 	public PipeLineResult processPipeLine(PipeLine pipeLine, String messageId,
-			String message, IPipeLineSession pipeLineSession, String firstPipe
+			Message message, IPipeLineSession pipeLineSession, String firstPipe
 			) throws PipeRunException {
 		try {
 			//TransactionStatus txStatus = txManager.getTransaction(txDef);
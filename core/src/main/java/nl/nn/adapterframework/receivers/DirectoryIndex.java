@@ -0,0 +1,186 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.receivers;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import nl.nn.adapterframework.util.LogUtil;
+import nl.nn.adapterframework.util.WildCardFilter;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * In-memory index of the files in a directory that are waiting to be processed, ordered by modification time like
+ * {@link nl.nn.adapterframework.util.FileUtils#getFiles(String, String, String, long)}.
+ * <p>
+ * The index is kept up to date by {@link #update(String)} and {@link #remove(String)} for single files, e.g. from the
+ * events of a {@link DirectoryWatcher}, and by {@link #rescan()}, which lists the names in the directory but only reads
+ * the attributes of files that are not in the index yet. {@link #poll(long)} hands out each file to a single thread
+ * without locking; a file stays reserved until it is {@link #release(String) released}.
+ * </p>
+ *
+ * @since   7.3
+ */
+public class DirectoryIndex {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private final File directory;
+	private final FilenameFilter filter;
+
+	private final ConcurrentMap<String,IndexEntry> entries = new ConcurrentHashMap<String,IndexEntry>();
+	private final ConcurrentSkipListSet<IndexEntry> ordered = new ConcurrentSkipListSet<IndexEntry>();
+	private final Set<String> inProcess = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+
+	private static class IndexEntry implements Comparable<IndexEntry> {
+		private final String name;
+		private final long lastModified;
+
+		IndexEntry(String name, long lastModified) {
+			this.name = name;
+			this.lastModified = lastModified;
+		}
+
+		@Override
+		public int compareTo(IndexEntry other) {
+			if (lastModified!=other.lastModified) {
+				return lastModified<other.lastModified ? -1 : 1;
+			}
+			return name.compareTo(other.name);
+		}
+	}
+
+	public DirectoryIndex(File directory, String wildcard, String excludeWildcard) {
+		this.directory = directory;
+		final WildCardFilter includeFilter = StringUtils.isNotEmpty(wildcard) ? new WildCardFilter(wildcard) : null;
+		final WildCardFilter excludeFilter = StringUtils.isNotEmpty(excludeWildcard) ? new WildCardFilter(excludeWildcard) : null;
+		filter = new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return (includeFilter==null || includeFilter.accept(dir, name)) && (excludeFilter==null || !excludeFilter.accept(dir, name));
+			}
+		};
+	}
+
+	/**
+	 * Adds the file to the index, or updates its modification time.
+	 */
+	public synchronized void update(String name) {
+		if (!filter.accept(directory, name) || inProcess.contains(name)) {
+			return;
+		}
+		File file = new File(directory, name);
+		if (!file.isFile()) {
+			remove(name);
+			return;
+		}
+		IndexEntry entry = new IndexEntry(name, file.lastModified());
+		IndexEntry previous = entries.put(name, entry);
+		if (previous!=null) {
+			ordered.remove(previous);
+		}
+		ordered.add(entry);
+	}
+
+	public synchronized void remove(String name) {
+		IndexEntry previous = entries.remove(name);
+		if (previous!=null) {
+			ordered.remove(previous);
+		}
+	}
+
+	/**
+	 * Synchronizes the index with the contents of the directory, to pick up files for which no event was received.
+	 */
+	public synchronized void rescan() {
+		String[] names = directory.list(filter);
+		if (names==null) {
+			log.warn("cannot list files in directory ["+directory+"]");
+			return;
+		}
+		Set<String> present = new HashSet<String>(Arrays.asList(names));
+		for (String name:names) {
+			if (!entries.containsKey(name) && !inProcess.contains(name)) {
+				update(name);
+			}
+		}
+		for (String name:entries.keySet()) {
+			if (!present.contains(name)) {
+				remove(name);
+			}
+		}
+		if (log.isDebugEnabled()) log.debug("rescanned directory ["+directory+"], ["+entries.size()+"] files waiting, ["+inProcess.size()+"] files in process");
+	}
+
+	/**
+	 * Returns the oldest file that has not been modified for at least minStableTime ms, and reserves it for the calling thread.
+	 * @return the file, or <code>null</code> if no such file is available.
+	 */
+	public File poll(long minStableTime) {
+		long lastChangedAllowed = minStableTime>0 ? System.currentTimeMillis()-minStableTime : Long.MAX_VALUE;
+		for (IndexEntry entry:ordered) {
+			if (entry.lastModified>lastChangedAllowed) {
+				return null; // all other files have been modified more recently
+			}
+			if (!ordered.remove(entry)) {
+				continue; // taken by another thread
+			}
+			if (!inProcess.add(entry.name)) {
+				entries.remove(entry.name, entry);
+				continue;
+			}
+			if (!entries.remove(entry.name, entry)) {
+				inProcess.remove(entry.name); // replaced by a more recent entry for the same file
+				continue;
+			}
+			File file = new File(directory, entry.name);
+			if (!file.isFile()) {
+				inProcess.remove(entry.name);
+				continue;
+			}
+			if (file.lastModified()!=entry.lastModified) {
+				inProcess.remove(entry.name);
+				update(entry.name);
+				continue;
+			}
+			return file;
+		}
+		return null;
+	}
+
+	/**
+	 * Ends the reservation of a file returned by {@link #poll(long)}. When the file is still present, it will be indexed again.
+	 */
+	public void release(String name) {
+		inProcess.remove(name);
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+}
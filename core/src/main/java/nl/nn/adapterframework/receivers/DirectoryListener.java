@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
    Copyright 2015 ING
 
    Licensed under the Apache License, Version 2.0 (the "License");
@@ -49,7 +49,12 @@ import org.xml.sax.helpers.DefaultHandler;
  * according to a <code>wildcard</code> and a <code>excludeWildcard</code>.  
  * When a file is found, it is moved to an outputdirectory, so that it isn't found more then once.  
  * The name of the moved file is passed to the pipeline.  
- *
+ * <p>
+ * By default, every poll lists and sorts all files in the inputDirectory. When <code>watchInputDirectory</code> is set,
+ * the files are kept in a {@link DirectoryIndex} instead, which is maintained from the events of a {@link DirectoryWatcher}
+ * and by a full rescan every <code>rescanInterval</code> ms, to pick up files for which events were missed.
+ * Concurrent threads then take files from the index without waiting for each other.
+ * </p>
  *
  * @author  John Dekker
  */
@@ -79,6 +84,11 @@ public class DirectoryListener implements IPullingListener, INamedObject, HasPhy
 	private long waitBeforeRetry = 1000;
 
 	private long minStableTime = 1000;
+	private boolean watchInputDirectory = false;
+	private long rescanInterval = 60000;
+
+	private DirectoryIndex directoryIndex;
+	private Thread indexMaintainer;
 	
 	/**
 	 * Configure does some basic checks (outputDirectory is a directory, inputDirectory is a directory, wildcard is filled etc.);
@@ -123,6 +133,9 @@ public class DirectoryListener implements IPullingListener, INamedObject, HasPhy
 			String msg="The use of the attribute responseTime [" + getResponseTime() + "] is no longer used; Please set the attribute pollInterval on the receiver instead, which is specified in seconds instead of milliseconds";
 			ConfigurationWarnings.getInstance().add(log,msg);
 		}
+		if (isWatchInputDirectory() && (isRandom() || getFileList() != null)) {
+			throw new ConfigurationException("watchInputDirectory is not allowed for random=true or in combination with fileList");
+		}
 		if (getNumberOfAttempts()>1) {
 			String msg="The use of the attribute numberOfAttempts [" + getNumberOfAttempts() + "] is no longer used; Please set the attribute maxRetries on the receiver instead";
 			ConfigurationWarnings.getInstance().add(log,msg);
@@ -130,6 +143,13 @@ public class DirectoryListener implements IPullingListener, INamedObject, HasPhy
 	}
 
 	public void open() throws ListenerException {
+		if (isWatchInputDirectory()) {
+			directoryIndex = new DirectoryIndex(new File(getInputDirectory()), getWildcard(), getExcludeWildcard());
+			directoryIndex.rescan();
+			indexMaintainer = new Thread(new IndexMaintainer(), "DirectoryListener["+getName()+"]");
+			indexMaintainer.setDaemon(true);
+			indexMaintainer.start();
+		}
 	}
 
 	public Map openThread() throws ListenerException {
@@ -138,6 +158,61 @@ public class DirectoryListener implements IPullingListener, INamedObject, HasPhy
 
 
 	public void close() throws ListenerException {
+		if (indexMaintainer != null) {
+			indexMaintainer.interrupt();
+			try {
+				indexMaintainer.join(5000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			indexMaintainer = null;
+		}
+		directoryIndex = null;
+	}
+
+	/**
+	 * Applies the events of the directory to the index, and rescans the directory every rescanInterval ms.
+	 */
+	private class IndexMaintainer implements Runnable {
+
+		@Override
+		public void run() {
+			DirectoryIndex index = directoryIndex;
+			DirectoryWatcher watcher = null;
+			try {
+				watcher = new DirectoryWatcher(index);
+			} catch (Throwable t) {
+				log.warn("cannot watch inputDirectory [" + getInputDirectory() + "], new files are only found by rescans every [" + getRescanInterval() + "] ms", t);
+			}
+			try {
+				long nextRescan = System.currentTimeMillis() + getRescanInterval();
+				while (!Thread.currentThread().isInterrupted()) {
+					long wait = nextRescan - System.currentTimeMillis();
+					if (wait > 0) {
+						if (watcher != null) {
+							if (!watcher.processEvents(wait)) {
+								log.warn("inputDirectory [" + getInputDirectory() + "] can no longer be watched, new files are only found by rescans");
+								watcher.close();
+								watcher = null;
+							}
+						} else {
+							Thread.sleep(wait);
+						}
+					} else {
+						index.rescan();
+						nextRescan = System.currentTimeMillis() + getRescanInterval();
+					}
+				}
+			} catch (InterruptedException e) {
+				// listener is closed
+			} catch (Throwable t) {
+				log.error("exception maintaining index of inputDirectory [" + getInputDirectory() + "]", t);
+			} finally {
+				if (watcher != null) {
+					watcher.close();
+				}
+			}
+		}
 	}
 
 	public void closeThread(Map threadContext) throws ListenerException {
@@ -145,6 +220,11 @@ public class DirectoryListener implements IPullingListener, INamedObject, HasPhy
 
 
 	public void afterMessageProcessed(PipeLineResult processResult, Object rawMessage, Map context) throws ListenerException {
+		DirectoryIndex index = directoryIndex;
+		if (index != null && StringUtils.isEmpty(getOutputDirectory())) {
+			// the file was processed from the inputDirectory, it can be handed out again if it is still there
+			index.release(new File(rawMessage.toString()).getName());
+		}
 		if (isDelete() || StringUtils.isNotEmpty(getProcessedDirectory())) {
 			if (getFileList() != null) {
 				try {
@@ -231,7 +311,32 @@ public class DirectoryListener implements IPullingListener, INamedObject, HasPhy
 	 * Retrieves a single record from a file. If the file is empty or fully processed, it looks wether there
 	 * is a new file to process and returns the first record.
 	 */
-	public synchronized Object getRawMessage(Map threadContext) throws ListenerException {
+	public Object getRawMessage(Map threadContext) throws ListenerException {
+		DirectoryIndex index = directoryIndex;
+		if (index != null) {
+			File inputFile;
+			while ((inputFile = index.poll(getMinStableTime())) != null) {
+				String result = null;
+				try {
+					result = getInputFileName(inputFile, threadContext);
+				} finally {
+					// a file that is processed in the inputDirectory stays reserved until afterMessageProcessed()
+					if (result == null || StringUtils.isNotEmpty(getOutputDirectory())) {
+						index.release(inputFile.getName());
+					}
+				}
+				if (result != null) {
+					return result;
+				}
+			}
+			return null;
+		}
+		synchronized (this) {
+			return getRawMessageFromFileList(threadContext);
+		}
+	}
+
+	private Object getRawMessageFromFileList(Map threadContext) throws ListenerException {
 		if (isRandom()) {
 			File file = FileUtils.getFirstFile(getInputDirectory(), getMinStableTime());
 			if (file==null) {
@@ -417,6 +522,22 @@ public class DirectoryListener implements IPullingListener, INamedObject, HasPhy
 		return responseTime;
 	}
 
+	@IbisDoc({"when set to <code>true</code>, the inputdirectory is watched for changes, and files are taken from an index in memory instead of listing the directory for every poll. not allowed for random=true or in combination with filelist", "false"})
+	public void setWatchInputDirectory(boolean watchInputDirectory) {
+		this.watchInputDirectory = watchInputDirectory;
+	}
+	public boolean isWatchInputDirectory() {
+		return watchInputDirectory;
+	}
+
+	@IbisDoc({"interval in milliseconds of the full rescans of the inputdirectory when watchinputdirectory=true, to find files for which no event was received", "60000 [ms]"})
+	public void setRescanInterval(long rescanInterval) {
+		this.rescanInterval = rescanInterval;
+	}
+	public long getRescanInterval() {
+		return rescanInterval;
+	}
+
 	@IbisDoc({"minimal age of file in milliseconds, to avoid receiving a file while it is still being written", "1000 [ms]"})
 	public void setMinStableTime(long minStableTime) {
 		this.minStableTime = minStableTime;
@@ -0,0 +1,90 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.receivers;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import nl.nn.adapterframework.util.LogUtil;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Applies the events of a {@link WatchService} on the directory of a {@link DirectoryIndex} to the index.
+ * <p>
+ * This class requires Java 7 or higher. It is only loaded when a watcher is created, so that callers can fall back
+ * to periodic rescans on older runtimes.
+ * </p>
+ *
+ * @since   7.3
+ */
+public class DirectoryWatcher {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private final DirectoryIndex index;
+	private final WatchService watchService;
+
+	public DirectoryWatcher(DirectoryIndex index) throws IOException {
+		this.index = index;
+		watchService = FileSystems.getDefault().newWatchService();
+		index.getDirectory().toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+	}
+
+	/**
+	 * Waits at most timeout ms for events, and applies them to the index.
+	 * @return <code>false</code> when the directory can no longer be watched.
+	 */
+	public boolean processEvents(long timeout) throws InterruptedException {
+		WatchKey key;
+		try {
+			key = watchService.poll(timeout, TimeUnit.MILLISECONDS);
+		} catch (ClosedWatchServiceException e) {
+			return false;
+		}
+		if (key==null) {
+			return true;
+		}
+		for (WatchEvent<?> event:key.pollEvents()) {
+			if (event.kind()==StandardWatchEventKinds.OVERFLOW) {
+				log.info("events for directory ["+index.getDirectory()+"] have been lost, rescanning directory");
+				index.rescan();
+				continue;
+			}
+			String name = ((Path)event.context()).toString();
+			if (event.kind()==StandardWatchEventKinds.ENTRY_DELETE) {
+				index.remove(name);
+			} else {
+				index.update(name);
+			}
+		}
+		return key.reset();
+	}
+
+	public void close() {
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			log.warn("exception closing watch service for directory ["+index.getDirectory()+"]", e);
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,10 +15,10 @@
 */
 package nl.nn.adapterframework.receivers;
 
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -57,7 +57,7 @@ public class JavaListener implements IPushingListener, RequestProcessor, HasPhys
 	private boolean throwException = true;
 	private boolean httpWsdl = false;
 
-	private static Map<String, JavaListener> registeredListeners;
+	private static final Map<String, JavaListener> registeredListeners = new ConcurrentHashMap<String, JavaListener>();
 	private IMessageHandler handler;
 
 	@Override
@@ -170,16 +170,13 @@ public class JavaListener implements IPushingListener, RequestProcessor, HasPhys
 	 * Returns JavaListener registered under the given name
 	 */
 	public static JavaListener getListener(String name) {
-		return (JavaListener)getListeners().get(name);
+		return getListeners().get(name);
 	}
 
 	/**
 	 * Get all registered JavaListeners
 	 */
-	private static synchronized Map<String, JavaListener> getListeners() {
-		if (registeredListeners == null) {
-			registeredListeners = Collections.synchronizedMap(new HashMap());
-		}
+	private static Map<String, JavaListener> getListeners() {
 		return registeredListeners;
 	}
 
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,16 +15,22 @@
 */
 package nl.nn.adapterframework.receivers;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+import nl.nn.adapterframework.configuration.ConfigurationWarnings;
 import nl.nn.adapterframework.core.IPullingListener;
 import nl.nn.adapterframework.core.IThreadCountControllable;
 import nl.nn.adapterframework.core.ListenerException;
+import nl.nn.adapterframework.core.PipeLineSessionBase;
+import nl.nn.adapterframework.util.AppConstants;
 import nl.nn.adapterframework.util.Counter;
 import nl.nn.adapterframework.util.LogUtil;
 import nl.nn.adapterframework.util.RunStateEnum;
-import nl.nn.adapterframework.util.Semaphore;
 
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.log4j.Logger;
@@ -38,6 +44,26 @@ import org.springframework.transaction.support.DefaultTransactionDefinition;
 
 /**
  * Container that provides threads to exectue pulling listeners.
+ * <p>
+ * When the receiver has no message available, the container waits before polling again. This wait starts at one
+ * second and doubles after each unsuccessful poll, up to <code>pollInterval</code> seconds; it ends immediately when
+ * one of the running threads finds a message.
+ * </p>
+ * <p>
+ * When <code>numThreadsMin</code> of the receiver is set, the number of threads is scaled automatically between
+ * <code>numThreadsMin</code> and <code>numThreads</code>. Every evaluation interval (property
+ * <code>listenerContainer.autoScale.evaluationInterval</code>, default 5000 ms) the container adds a thread when
+ * all threads were busy and no poll came back empty, and removes a thread when most polls came back empty. A thread
+ * that was added is removed again when it made the average processing time grow by more than half, as the extra
+ * thread apparently only adds contention.
+ * </p>
+ * <p>
+ * When retrieving a message fails, the circuit breaker of the receiver for the listener is opened. No messages are
+ * pulled from the listener until it allows a probe, so no threads are parked while the resource is unavailable. The
+ * same holds while the circuit breaker of the receiver for the message history is open, which happens when a message
+ * is delivered or processed too many times; that circuit breaker is only closed when a message has been processed, not
+ * by a successful poll.
+ * </p>
  * 
  * @author  Tim van der Leeuw
  * @since   4.8
@@ -51,11 +77,39 @@ public class PullingListenerContainer implements IThreadCountControllable {
 	private PlatformTransactionManager txManager;
     private Counter threadsRunning = new Counter(0);
 	private Counter tasksStarted = new Counter(0);
-	private Semaphore processToken = null;	// guard against to many messages being processed at the same time
+	private ResizableSemaphore processToken = null;	// guard against to many messages being processed at the same time
     private Semaphore pollToken = null;     // guard against to many threads polling at the same time 
-	private boolean idle=false;   			// true if the last messages received was null, will cause wait loop
-    private int retryInterval=1;
+	private volatile boolean idle=false;   	// true if the last messages received was null, will cause wait loop
     private int maxThreadCount=1;
+
+	private static final long INITIAL_IDLE_WAIT=1000;
+	private final ReentrantLock idleLock = new ReentrantLock();
+	private final Condition messageAvailable = idleLock.newCondition();
+	private long idleWait=INITIAL_IDLE_WAIT;
+
+	private int minThreadCount=0;			// 0 when the number of threads is not scaled automatically
+	private int targetThreadCount=1;		// the number of process tokens, guarded by 'this'
+	private long evaluationInterval=AppConstants.getInstance().getLong("listenerContainer.autoScale.evaluationInterval", 5000);
+	private long lastEvaluation;
+	private final AtomicLong emptyPolls = new AtomicLong();
+	private final AtomicLong messagesProcessed = new AtomicLong();
+	private final AtomicLong processingTime = new AtomicLong();
+	private final AtomicLong saturatedAcquires = new AtomicLong();
+	private double previousAverageProcessingTime=-1;
+	private boolean lastChangeWasIncrease=false;
+
+	/**
+	 * Semaphore of which the number of permits can be reduced without blocking, for {@link #decreaseThreadCount()}.
+	 */
+	private static class ResizableSemaphore extends Semaphore {
+		ResizableSemaphore(int permits) {
+			super(permits);
+		}
+		@Override
+		public void reducePermits(int reduction) {
+			super.reducePermits(reduction);
+		}
+	}
  
 	/**
 	 * The thread-pool for spawning threads, injected by Spring
@@ -70,8 +124,18 @@ public class PullingListenerContainer implements IThreadCountControllable {
         if (receiver.getNumThreadsPolling()>0 && receiver.getNumThreadsPolling()<receiver.getNumThreads()) {
             pollToken = new Semaphore(receiver.getNumThreadsPolling());
         }
-		processToken = new Semaphore(receiver.getNumThreads());
 		maxThreadCount=receiver.getNumThreads();
+		targetThreadCount=maxThreadCount;
+		minThreadCount=0;
+		if (receiver.getNumThreadsMin()>0) {
+			if (receiver.getNumThreadsMin()<maxThreadCount) {
+				minThreadCount=receiver.getNumThreadsMin();
+				targetThreadCount=minThreadCount;
+			} else {
+				ConfigurationWarnings.getInstance().add(log, receiver.getLogPrefix()+"numThreadsMin ["+receiver.getNumThreadsMin()+"] is not smaller than numThreads ["+maxThreadCount+"], number of threads will not be scaled automatically");
+			}
+		}
+		processToken = new ResizableSemaphore(targetThreadCount);
         if (receiver.isTransacted()) {
 			DefaultTransactionDefinition txDef = new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
          	if (receiver.getTransactionTimeout()>0) {
@@ -104,15 +168,102 @@ public class PullingListenerContainer implements IThreadCountControllable {
 		return maxThreadCount;
 	}
 
-	public void increaseThreadCount() {
+	public synchronized void increaseThreadCount() {
 		maxThreadCount++;
-		processToken.release();
+		if (!isAutoScaling()) {
+			targetThreadCount++;
+			processToken.release();
+		}
 	}
 
-	public void decreaseThreadCount() {
+	public synchronized void decreaseThreadCount() {
 		if (maxThreadCount>1) {
 			maxThreadCount--;
-			processToken.tighten();
+			if (minThreadCount>maxThreadCount) {
+				minThreadCount=maxThreadCount;
+			}
+			if (targetThreadCount>maxThreadCount) {
+				targetThreadCount--;
+				processToken.reducePermits(1);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of threads the container currently allows, which is only smaller than {@link #getMaxThreadCount()}
+	 * when the number of threads is scaled automatically.
+	 */
+	public synchronized int getTargetThreadCount() {
+		return targetThreadCount;
+	}
+
+	public boolean isAutoScaling() {
+		return minThreadCount>0;
+	}
+
+	/**
+	 * Adjusts the number of threads to the load observed since the previous evaluation.
+	 */
+	protected synchronized void evaluateThreadCount() {
+		long now = System.currentTimeMillis();
+		if (now-lastEvaluation<evaluationInterval) {
+			return;
+		}
+		lastEvaluation=now;
+		long empty = emptyPolls.getAndSet(0);
+		long processed = messagesProcessed.getAndSet(0);
+		long duration = processingTime.getAndSet(0);
+		long saturated = saturatedAcquires.getAndSet(0);
+		double averageProcessingTime = processed>0 ? (double)duration/processed : -1;
+
+		if (lastChangeWasIncrease && previousAverageProcessingTime>0 && averageProcessingTime>previousAverageProcessingTime*1.5) {
+			if (log.isDebugEnabled()) log.debug(receiver.getLogPrefix()+"average processing time increased from ["+previousAverageProcessingTime+"] to ["+averageProcessingTime+"] ms after adding a thread, removing it again");
+			changeTargetThreadCount(-1);
+			lastChangeWasIncrease=false;
+		} else if (saturated>0 && empty==0 && processed>0 && targetThreadCount<maxThreadCount) {
+			changeTargetThreadCount(1);
+			lastChangeWasIncrease=true;
+		} else if (empty>processed && targetThreadCount>minThreadCount) {
+			changeTargetThreadCount(-1);
+			lastChangeWasIncrease=false;
+		} else {
+			lastChangeWasIncrease=false;
+		}
+		if (averageProcessingTime>=0) {
+			previousAverageProcessingTime=averageProcessingTime;
+		}
+	}
+
+	private void changeTargetThreadCount(int delta) {
+		targetThreadCount+=delta;
+		if (delta>0) {
+			processToken.release(delta);
+		} else {
+			processToken.reducePermits(-delta);
+		}
+		if (log.isDebugEnabled()) log.debug(receiver.getLogPrefix()+"changed number of threads to ["+targetThreadCount+"]");
+	}
+
+	/**
+	 * Waits until a running thread finds a message or the idle wait has passed, whichever comes first.
+	 * The idle wait doubles each time, up to the pollInterval of the receiver.
+	 */
+	void waitWhileIdle() throws InterruptedException {
+		long maxIdleWait = receiver.getPollInterval()*1000L;
+		idleLock.lock();
+		try {
+			long wait = Math.min(idleWait, maxIdleWait);
+			if (log.isDebugEnabled() && wait>600000) log.debug(receiver.getLogPrefix()+"is idle, sleeping for ["+wait/1000+"] seconds");
+			long remaining = TimeUnit.MILLISECONDS.toNanos(wait);
+			while (isIdle() && remaining>0 && receiver.isInRunState(RunStateEnum.STARTED)) {
+				long slice = Math.min(remaining, TimeUnit.SECONDS.toNanos(1));
+				remaining -= slice - messageAvailable.awaitNanos(slice);
+			}
+			if (isIdle()) {
+				idleWait = Math.min(wait*2, maxIdleWait);
+			}
+		} finally {
+			idleLock.unlock();
 		}
 	}
 
@@ -128,16 +279,20 @@ public class PullingListenerContainer implements IThreadCountControllable {
 			log.debug(receiver.getLogPrefix()+"started ControllerTask");
 			try {
 				while (receiver.isInRunState(RunStateEnum.STARTED) && !Thread.currentThread().isInterrupted()) {
-					processToken.acquire();
+					if (isAutoScaling()) {
+						evaluateThreadCount();
+					}
+					if (!processToken.tryAcquire()) {
+						saturatedAcquires.incrementAndGet();
+						processToken.acquire();
+					}
 					if (pollToken != null) {
 						pollToken.acquire();
 					}
 					if (isIdle() && receiver.getPollInterval()>0) {
-						if (log.isDebugEnabled() && receiver.getPollInterval()>600)log.debug(receiver.getLogPrefix()+"is idle, sleeping for ["+receiver.getPollInterval()+"] seconds");
-						for (int i=0; i<receiver.getPollInterval() && receiver.isInRunState(RunStateEnum.STARTED); i++) {
-							Thread.sleep(1000);
-						}
+						waitWhileIdle();
 					}
+					receiver.waitWhileCircuitOpen();
 					taskExecutor.execute(new ListenTask());
 				}
 			} catch (InterruptedException e) {
@@ -166,7 +321,7 @@ public class PullingListenerContainer implements IThreadCountControllable {
 					listener = (IPullingListener) receiver.getListener();
 					threadContext = listener.openThread();
 					if (threadContext == null) {
-						threadContext = new HashMap();
+						threadContext = new PipeLineSessionBase();
 					}
 					long startProcessingTimestamp;
 					Object rawMessage = null;
@@ -177,14 +332,17 @@ public class PullingListenerContainer implements IThreadCountControllable {
 								txStatus = txManager.getTransaction(txNew);
 							}
 							rawMessage = listener.getRawMessage(threadContext);
-							resetRetryInterval();
+							receiver.resetRetryInterval();
 							setIdle(rawMessage==null);
+							if (rawMessage==null) {
+								emptyPolls.incrementAndGet();
+							}
 						} catch (Exception e) {
 							if (txStatus!=null) {
 								txManager.rollback(txStatus);
 							}
 							if (receiver.isOnErrorContinue()) {
-								increaseRetryIntervalAndWait(e);
+								receiver.increaseRetryIntervalAndWait(e, receiver.getLogPrefix()+"caught Exception retrieving message");
 							} else {
 								receiver.error("stopping receiver after exception in retrieving message", e);
 								receiver.stopRunning();
@@ -203,7 +361,12 @@ public class PullingListenerContainer implements IThreadCountControllable {
 							// found a message, process it
 							startProcessingTimestamp = System.currentTimeMillis();
 							try {
-								receiver.processRawMessage(listener, rawMessage, threadContext);
+								try {
+									receiver.processRawMessage(listener, rawMessage, threadContext);
+								} finally {
+									processingTime.addAndGet(System.currentTimeMillis()-startProcessingTimestamp);
+									messagesProcessed.incrementAndGet();
+								}
 								if (txStatus != null) {
 									if (txStatus.isRollbackOnly()) {
 										receiver.warn(receiver.getLogPrefix()+"pipeline processing ended with status RollbackOnly, so rolling back transaction");
@@ -384,39 +547,6 @@ public class PullingListenerContainer implements IThreadCountControllable {
 //        }
 //    }
 
-	private void resetRetryInterval() {
-		synchronized (receiver) {
-			if (retryInterval > ReceiverBase.RCV_SUSPENSION_MESSAGE_THRESHOLD) {
-				receiver.throwEvent(ReceiverBase.RCV_SUSPENDED_MONITOR_EVENT);
-			}
-			retryInterval = 1;
-		}
-	}
-
-	private void increaseRetryIntervalAndWait(Throwable t) {
-		long currentInterval;
-		synchronized (receiver) {
-			currentInterval = retryInterval;
-			retryInterval = retryInterval * 2;
-			if (retryInterval > 3600) {
-				retryInterval = 3600;
-			}
-		}
-		receiver.error("caught Exception retrieving message, will continue retrieving messages in [" + currentInterval + "] seconds", t);
-		if (currentInterval*2 > ReceiverBase.RCV_SUSPENSION_MESSAGE_THRESHOLD) {
-			receiver.throwEvent(ReceiverBase.RCV_SUSPENDED_MONITOR_EVENT);
-		}
-		while (receiver.isInRunState(RunStateEnum.STARTED) && currentInterval-- > 0) {
-			try {
-				Thread.sleep(1000);
-			} catch (Exception e2) {
-				receiver.error("sleep interupted", e2);
-				receiver.stopRunning();
-			}
-		}
-	}
-	
-	
     public void setReceiver(ReceiverBase receiver) {
         this.receiver = receiver;
     }
@@ -438,10 +568,21 @@ public class PullingListenerContainer implements IThreadCountControllable {
 		return taskExecutor;
 	}
 
-	public synchronized void setIdle(boolean b) {
-		idle = b;
+	public void setIdle(boolean b) {
+		if (!b && idle) {
+			idleLock.lock();
+			try {
+				idle = false;
+				idleWait = INITIAL_IDLE_WAIT;
+				messageAvailable.signalAll();
+			} finally {
+				idleLock.unlock();
+			}
+		} else {
+			idle = b;
+		}
 	}
-	public synchronized boolean isIdle() {
+	public boolean isIdle() {
 		return idle;
 	}
 
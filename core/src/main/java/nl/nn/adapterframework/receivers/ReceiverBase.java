@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2015, 2016, 2018 Nationale-Nederlanden
+   Copyright 2013, 2015, 2016, 2018, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -21,10 +21,8 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.StringTokenizer;
 
 import javax.xml.parsers.SAXParser;
@@ -48,12 +46,15 @@ import org.springframework.transaction.support.TransactionSynchronizationManager
 import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.configuration.ConfigurationWarnings;
 import nl.nn.adapterframework.core.Adapter;
+import nl.nn.adapterframework.core.ChildPipeLineSession;
 import nl.nn.adapterframework.core.HasPhysicalDestination;
 import nl.nn.adapterframework.core.HasSender;
 import nl.nn.adapterframework.core.IAdapter;
 import nl.nn.adapterframework.core.IBulkDataListener;
 import nl.nn.adapterframework.core.IKnowsDeliveryCount;
 import nl.nn.adapterframework.core.IListener;
+import nl.nn.adapterframework.core.IMessageBrowsingIterator;
+import nl.nn.adapterframework.core.IMessageBrowsingIteratorItem;
 import nl.nn.adapterframework.core.IMessageHandler;
 import nl.nn.adapterframework.core.INamedObject;
 import nl.nn.adapterframework.core.IPipeLineSession;
@@ -83,6 +84,9 @@ import nl.nn.adapterframework.statistics.HasStatistics;
 import nl.nn.adapterframework.statistics.StatisticsKeeper;
 import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
 import nl.nn.adapterframework.task.TimeoutGuard;
+import nl.nn.adapterframework.util.BloomFilter;
+import nl.nn.adapterframework.util.BoundedCache;
+import nl.nn.adapterframework.util.CircuitBreaker;
 import nl.nn.adapterframework.util.ClassUtils;
 import nl.nn.adapterframework.util.CompactSaxHandler;
 import nl.nn.adapterframework.util.Counter;
@@ -174,6 +178,9 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 	public static final String RCV_RESUMED_MONITOR_EVENT = "Receiver Operation Resumed";
 	public static final String RCV_THREAD_EXIT_MONITOR_EVENT = "Receiver Thread Exited";
 	public static final String RCV_MESSAGE_TO_ERRORSTORE_EVENT = "Receiver Moved Message to ErrorStorage";
+	public static final String RCV_CIRCUIT_OPENED_MONITOR_EVENT = "Receiver Circuit Breaker Opened";
+	public static final String RCV_CIRCUIT_HALF_OPEN_MONITOR_EVENT = "Receiver Circuit Breaker Half Open";
+	public static final String RCV_CIRCUIT_CLOSED_MONITOR_EVENT = "Receiver Circuit Breaker Closed";
 
 	public static final String RCV_MESSAGE_LOG_COMMENTS = "log";
 
@@ -181,6 +188,7 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 	// Should be smaller than the transaction timeout as the delay takes place
 	// within the transaction. WebSphere default transaction timeout is 120.
 	public static final int MAX_RETRY_INTERVAL=100;
+	private static final double DUPLICATES_FALSE_POSITIVE_PROBABILITY=0.001;
 	private boolean suspensionMessagePending=false;
 
 	private boolean configurationSucceeded = false;
@@ -190,6 +198,7 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 	private int pollInterval=10;
     
 	private String returnedSessionKeys=null;
+	private String[] returnedSessionKeyList=new String[0];
 	private String hideRegex = null;
 	private String hideMethod = "all";
 	private String hiddenInputSessionKeys=null;
@@ -223,6 +232,7 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 	private int numThreads = 1;
 	// the number of threads that are activily polling for messages (concurrently, only for pulling listeners)
 	private int numThreadsPolling = 1;
+	private int numThreadsMin = 0;
    
 	private PullingListenerContainer listenerContainer;
     
@@ -262,9 +272,18 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 	private TransformerPool correlationIDTp=null;
 	private TransformerPool labelTp=null;
  
-	int retryInterval=1;
+	// failures to retrieve messages from the listener
+	private CircuitBreaker circuitBreaker = new CircuitBreaker(1, 1000, MAX_RETRY_INTERVAL*1000L);
+	// messages that are not processed because they were delivered or processed too often
+	private CircuitBreaker messageHistoryCircuitBreaker = new CircuitBreaker(1, 1000, MAX_RETRY_INTERVAL*1000L);
 	private int poisonMessageIdCacheSize = 100;
+	private int poisonMessageIdCacheMaxAge = 0;
 	private int processResultCacheSize = 100;
+	private int processResultCacheMaxAge = 0;
+	private int checkForDuplicatesBloomFilterSize = 0;
+	// filled in the background; ids of stored messages are added while it is filled, but it is only used once it is ready
+	private volatile BloomFilter messageLogBloomFilter = null;
+	private volatile boolean messageLogBloomFilterReady = false;
    
 	private PlatformTransactionManager txManager;
 
@@ -278,26 +297,12 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 	 * put in the poison-cache will not be reprocessed even if it's
 	 * offered again.
 	 */
-	private LinkedHashMap poisonMessageIdCache = new LinkedHashMap() {
+	private BoundedCache<String,String> poisonMessageIdCache = new BoundedCache<String,String>(poisonMessageIdCacheSize, 0);
 
-		@Override
-		protected boolean removeEldestEntry(Entry eldest) {
-			return size() > getPoisonMessageIdCacheSize();
-		}
-        
-	};
-
-	private LinkedHashMap<String,ProcessResultCacheItem> processResultCache = new LinkedHashMap<String,ProcessResultCacheItem>() {
-
-		@Override
-		protected boolean removeEldestEntry(Entry<String,ProcessResultCacheItem> eldest) {
-			return size() > getProcessResultCacheSize();
-		}
-        
-	};
+	private BoundedCache<String,ProcessResultCacheItem> processResultCache = new BoundedCache<String,ProcessResultCacheItem>(processResultCacheSize, 0);
 
 	private class ProcessResultCacheItem {
-		int tryCount;
+		volatile int tryCount;
 		Date receiveDate;
 		String correlationId;
 		String comments;
@@ -308,9 +313,16 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 	}
 
 	private IPipeLineSession createProcessingContext(String correlationId, Map threadContext, String messageId) {
-		IPipeLineSession pipelineSession = new PipeLineSessionBase();
-		if (threadContext != null) {
-			pipelineSession.putAll(threadContext);
+		IPipeLineSession pipelineSession;
+		if (threadContext == null) {
+			pipelineSession = new PipeLineSessionBase();
+		} else {
+			if (threadContext instanceof ChildPipeLineSession) {
+				// session of a local caller, that is meant to be used for this call only
+				pipelineSession = (ChildPipeLineSession)threadContext;
+			} else {
+				pipelineSession = new PipeLineSessionBase(threadContext);
+			}
 			if (log.isDebugEnabled()) {
 				List hiddenSessionKeys = new ArrayList();
 				if (getHiddenInputSessionKeys()!=null) {
@@ -346,13 +358,11 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 	}
 
 	private void putSessionKeysIntoThreadContext(Map threadContext, IPipeLineSession pipelineSession) {
-		if (StringUtils.isNotEmpty(getReturnedSessionKeys()) && threadContext != null) {
+		if (returnedSessionKeyList.length>0 && threadContext != null) {
 			if (log.isDebugEnabled()) {
 				log.debug(getLogPrefix()+"setting returned session keys [" + getReturnedSessionKeys() + "]");
 			}
-			StringTokenizer st = new StringTokenizer(getReturnedSessionKeys(), " ,;");
-			while (st.hasMoreTokens()) {
-				String key = st.nextToken();
+			for (String key:returnedSessionKeyList) {
 				Object value = pipelineSession.get(key);
 				if (log.isDebugEnabled()) {
 					log.debug(getLogPrefix()+"returning session key [" + key + "] value [" + value + "]");
@@ -410,6 +420,7 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 			}
 			if (getMessageLog()!=null) {
 				getMessageLog().open();
+				startFillingMessageLogBloomFilter();
 			}
 		} catch (Exception e) {
 			throw new ListenerException(e);
@@ -463,6 +474,9 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 			}
 		}
 		if (getMessageLog()!=null) {
+			// stops a fill that is still running
+			messageLogBloomFilter=null;
+			messageLogBloomFilterReady=false;
 			try {
 				getMessageLog().close();
 			} catch (Throwable t) {
@@ -473,6 +487,7 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 		runState.setRunState(RunStateEnum.STOPPED);
 		throwEvent(RCV_SHUTDOWN_MONITOR_EVENT);
 		resetRetryInterval();
+		resetMessageHistoryRetryInterval();
 		info(getLogPrefix()+"stopped");
 	}
 	 
@@ -514,6 +529,27 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 			registerEvent(RCV_SUSPENDED_MONITOR_EVENT);
 			registerEvent(RCV_RESUMED_MONITOR_EVENT);
 			registerEvent(RCV_THREAD_EXIT_MONITOR_EVENT);
+			poisonMessageIdCache = new BoundedCache<String,String>(getPoisonMessageIdCacheSize(), getPoisonMessageIdCacheMaxAge()*1000L);
+			processResultCache = new BoundedCache<String,ProcessResultCacheItem>(getProcessResultCacheSize(), getProcessResultCacheMaxAge()*1000L);
+			registerEvent(RCV_CIRCUIT_OPENED_MONITOR_EVENT);
+			registerEvent(RCV_CIRCUIT_HALF_OPEN_MONITOR_EVENT);
+			registerEvent(RCV_CIRCUIT_CLOSED_MONITOR_EVENT);
+			CircuitBreaker.StateListener circuitBreakerStateListener = new CircuitBreaker.StateListener() {
+				@Override
+				public void stateChanged(CircuitBreaker changedCircuitBreaker, CircuitBreaker.State oldState, CircuitBreaker.State newState) {
+					String kind = changedCircuitBreaker==messageHistoryCircuitBreaker ? "message history" : "listener";
+					log.info(getLogPrefix()+"circuit breaker for "+kind+" changed from ["+oldState+"] to ["+newState+"]");
+					if (newState==CircuitBreaker.State.OPEN) {
+						throwEvent(RCV_CIRCUIT_OPENED_MONITOR_EVENT);
+					} else if (newState==CircuitBreaker.State.HALF_OPEN) {
+						throwEvent(RCV_CIRCUIT_HALF_OPEN_MONITOR_EVENT);
+					} else {
+						throwEvent(RCV_CIRCUIT_CLOSED_MONITOR_EVENT);
+					}
+				}
+			};
+			circuitBreaker.setStateListener(circuitBreakerStateListener);
+			messageHistoryCircuitBreaker.setStateListener(circuitBreakerStateListener);
 			TXNEW_PROC = SpringTxManagerProxy.getTransactionDefinition(TransactionDefinition.PROPAGATION_REQUIRES_NEW,getTransactionTimeout());
             // Check if we need to use the in-process storage as
             // error-storage.
@@ -769,22 +805,16 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 	}
 
 	protected void startProcessingMessage(long waitingDuration) {
-		synchronized (threadsProcessing) {
-			int threadCount = (int) threadsProcessing.getValue();
-			
-			if (waitingDuration>=0) {
-				getIdleStatistics(threadCount).addValue(waitingDuration);
-			}
-			threadsProcessing.increase();
+		int threadCount = (int) threadsProcessing.increase()-1;
+		if (waitingDuration>=0) {
+			getIdleStatistics(threadCount).addValue(waitingDuration);
 		}
 		log.debug(getLogPrefix()+"starts processing message");
 	}
 
 	protected void finishProcessingMessage(long processingDuration) {
-		synchronized (threadsProcessing) {
-			int threadCount = (int) threadsProcessing.decrease();
-			getProcessStatistics(threadCount).addValue(processingDuration);
-		}
+		int threadCount = (int) threadsProcessing.decrease();
+		getProcessStatistics(threadCount).addValue(processingDuration);
 		log.debug(getLogPrefix()+"finishes processing message");
 	}
 
@@ -900,7 +930,7 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 			tsReceived = (Date)context.get(IPipeLineSession.tsReceivedKey);
 			tsSent = (Date)context.get(IPipeLineSession.tsSentKey);
 		} else {
-			context=new HashMap();
+			context=new PipeLineSessionBase();
 		}
 		PipeLineSessionBase.setListenerParameters(context, null, correlationId, tsReceived, tsSent);
 		return processMessageInAdapter(origin, message, message, null, correlationId, context, waitingTime, false);
@@ -933,8 +963,12 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 			log.debug(getLogPrefix()+"received null message, returning directly");
 			return;
 		}		
+		if (listenerContainer==null && !manualRetry) {
+			// a pushing listener that delivers a message has recovered; pulling listeners are handled by the listenerContainer
+			resetRetryInterval();
+		}
 		if (threadContext==null) {
-			threadContext = new HashMap();
+			threadContext = new PipeLineSessionBase();
 		}
 		
 		String message = origin.getStringFromRawMessage(rawMessage, threadContext);
@@ -951,7 +985,7 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 		//TransactionStatus txStatus = txManager.getTransaction(TXNEW);
 		IbisTransaction itx = new IbisTransaction(txManager, TXNEW_PROC, "receiver [" + getName() + "]");
 		TransactionStatus txStatus = itx.getStatus();
-		Map threadContext = new HashMap();
+		Map threadContext = new PipeLineSessionBase();
 		Object msg=null;
 		try {
 			try {
@@ -1130,6 +1164,10 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 			try {
 				if (getMessageLog()!=null) {
 					getMessageLog().storeMessage(messageId, businessCorrelationId, new Date(), RCV_MESSAGE_LOG_COMMENTS, label, pipelineMessage);
+					BloomFilter bloomFilter = messageLogBloomFilter;
+					if (bloomFilter!=null) {
+						bloomFilter.put(BloomFilter.digest(getDuplicateCheckId(messageId, businessCorrelationId)));
+					}
 				}
 				log.debug(getLogPrefix()+"preparing TimeoutGuard");
 				TimeoutGuard tg = new TimeoutGuard("Receiver "+getName());
@@ -1185,6 +1223,9 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 			} finally {
 				putSessionKeysIntoThreadContext(threadContext, pipelineSession);
 			}
+			if (!messageInError) {
+				resetMessageHistoryRetryInterval();
+			}
 //			if (result==null) {
 //				responseSizeStatistics.addValue(0);
 //			} else {
@@ -1207,7 +1248,7 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 				Map afterMessageProcessedMap;
 				if (threadContext!=null) {
 					afterMessageProcessedMap=threadContext;
-					if (pipelineSession!=null) {
+					if (pipelineSession!=null && pipelineSession!=threadContext) {
 						threadContext.putAll(pipelineSession);
 					}
 				} else {
@@ -1232,35 +1273,114 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 		return result;
 	}
 
-	private synchronized void cachePoisonMessageId(String messageId) {
+	private void cachePoisonMessageId(String messageId) {
 		poisonMessageIdCache.put(messageId, messageId);
 	}
-	private synchronized boolean isMessageIdInPoisonCache(String messageId) {
+	private boolean isMessageIdInPoisonCache(String messageId) {
 		return poisonMessageIdCache.containsKey(messageId);
 	}
 
-	private synchronized void cacheProcessResult(String messageId, String correlationId, String errorMessage, Date receivedDate) {
+	private void cacheProcessResult(String messageId, String correlationId, String errorMessage, Date receivedDate) {
 		ProcessResultCacheItem cacheItem=getCachedProcessResult(messageId);
 		if (cacheItem==null) {
-			if (log.isDebugEnabled()) log.debug(getLogPrefix()+"caching first result for correlationId ["+correlationId+"]");
-			cacheItem= new ProcessResultCacheItem();
-			cacheItem.tryCount=1;
-			cacheItem.correlationId=correlationId;
-			cacheItem.receiveDate=receivedDate;
-		} else {
+			ProcessResultCacheItem newItem= new ProcessResultCacheItem();
+			newItem.tryCount=1;
+			newItem.correlationId=correlationId;
+			newItem.receiveDate=receivedDate;
+			newItem.comments=errorMessage;
+			cacheItem=processResultCache.putIfAbsent(messageId, newItem);
+			if (cacheItem==null) {
+				if (log.isDebugEnabled()) log.debug(getLogPrefix()+"caching first result for correlationId ["+correlationId+"]");
+				return;
+			}
+		}
+		synchronized (cacheItem) {
 			cacheItem.tryCount++;
-			if (log.isDebugEnabled()) log.debug(getLogPrefix()+"increased try count for correlationId ["+correlationId+"] to ["+cacheItem.tryCount+"]");
+			cacheItem.comments=errorMessage;
 		}
-		cacheItem.comments=errorMessage;
-		processResultCache.put(messageId, cacheItem);
+		if (log.isDebugEnabled()) log.debug(getLogPrefix()+"increased try count for correlationId ["+correlationId+"] to ["+cacheItem.tryCount+"]");
 	}
-	private synchronized boolean isMessageIdInProcessResultCache(String messageId) {
+	private boolean isMessageIdInProcessResultCache(String messageId) {
 		return processResultCache.containsKey(messageId);
 	}
-	private synchronized ProcessResultCacheItem getCachedProcessResult(String messageId) {
+	private ProcessResultCacheItem getCachedProcessResult(String messageId) {
 		return processResultCache.get(messageId);
 	}
 
+	/**
+	 * Returns the id that is checked for presence in the message log, depending on <code>checkForDuplicatesMethod</code>.
+	 */
+	private String getDuplicateCheckId(String messageId, String correlationId) {
+		String id = "CORRELATIONID".equalsIgnoreCase(getCheckForDuplicatesMethod()) ? correlationId : messageId;
+		return id==null ? "" : id;
+	}
+
+	/**
+	 * Starts filling the Bloom filter with the ids present in the message log in a separate thread, so that a large
+	 * message log does not delay the start of the receiver. Until the filter is ready, {@link #isDuplicateAndSkip(ITransactionalStorage, String, String)}
+	 * queries the message log for every message.
+	 */
+	private void startFillingMessageLogBloomFilter() {
+		messageLogBloomFilter = null;
+		messageLogBloomFilterReady = false;
+		if (!isCheckForDuplicates() || getCheckForDuplicatesBloomFilterSize()<=0) {
+			return;
+		}
+		final BloomFilter bloomFilter = new BloomFilter(getCheckForDuplicatesBloomFilterSize(), DUPLICATES_FALSE_POSITIVE_PROBABILITY);
+		// set before the fill starts, so that messages stored in the meantime are added too
+		messageLogBloomFilter = bloomFilter;
+		Thread filler = new Thread(new Runnable() {
+			public void run() {
+				fillMessageLogBloomFilter(bloomFilter);
+			}
+		}, "BloomFilter-"+getName());
+		filler.setDaemon(true);
+		filler.start();
+	}
+
+	/**
+	 * Fills the Bloom filter with the ids present in the message log, so that {@link #isDuplicateAndSkip(ITransactionalStorage, String, String)}
+	 * only needs to query the message log for ids that might be present. When the ids cannot be read, the filter is not used.
+	 */
+	private void fillMessageLogBloomFilter(BloomFilter bloomFilter) {
+		boolean byCorrelationId = "CORRELATIONID".equalsIgnoreCase(getCheckForDuplicatesMethod());
+		long count=0;
+		try {
+			IMessageBrowsingIterator it = getMessageLog().getIterator();
+			try {
+				while (it.hasNext()) {
+					if (messageLogBloomFilter!=bloomFilter) {
+						log.debug(getLogPrefix()+"receiver stopped, stopped filling Bloom filter");
+						return;
+					}
+					IMessageBrowsingIteratorItem item = it.next();
+					try {
+						String id = byCorrelationId ? item.getCorrelationId() : item.getOriginalId();
+						bloomFilter.put(BloomFilter.digest(id==null ? "" : id));
+						count++;
+					} finally {
+						item.release();
+					}
+				}
+			} finally {
+				it.close();
+			}
+		} catch (Exception e) {
+			warn(getLogPrefix()+"cannot read ids from messageLog ["+getMessageLog().getName()+"], will check each message in the messageLog: "+e.getMessage());
+			if (messageLogBloomFilter==bloomFilter) {
+				messageLogBloomFilter = null;
+			}
+			return;
+		}
+		if (count>getCheckForDuplicatesBloomFilterSize()) {
+			warn(getLogPrefix()+"messageLog ["+getMessageLog().getName()+"] contains ["+count+"] messages, more than checkForDuplicatesBloomFilterSize ["+getCheckForDuplicatesBloomFilterSize()+"]; the filter will skip fewer queries");
+		}
+		if (log.isDebugEnabled()) log.debug(getLogPrefix()+"filled Bloom filter with ["+count+"] ids from messageLog ["+getMessageLog().getName()+"]");
+		if (messageLogBloomFilter==bloomFilter) {
+			messageLogBloomFilterReady = true;
+		}
+	}
+
 	/*
 	 * returns true if message should not be processed
 	 */
@@ -1280,27 +1400,25 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 					if (deliveryCount>getMaxDeliveries()) {
 						warn(getLogPrefix()+"message with messageId ["+messageId+"] has already been delivered ["+deliveryCount+"] times, will not process; maxDeliveries=["+getMaxDeliveries()+"]");
 						String comments="too many deliveries";
-						increaseRetryIntervalAndWait(null,getLogPrefix()+"received message with messageId ["+messageId+"] too many times ["+deliveryCount+"]; maxDeliveries=["+getMaxDeliveries()+"]");
+						increaseMessageHistoryRetryIntervalAndWait(getLogPrefix()+"received message with messageId ["+messageId+"] too many times ["+deliveryCount+"]; maxDeliveries=["+getMaxDeliveries()+"]");
 						moveInProcessToErrorAndDoPostProcessing(messageId, correlationId, rawMessage, message, threadContext, prci, comments);
 						return true;
 					}
 				}
-				resetRetryInterval();
 				return false;
 			} else {
 				if (getMaxRetries()<0) {
-					increaseRetryIntervalAndWait(null,getLogPrefix()+"message with messageId ["+messageId+"] has already been processed ["+prci.tryCount+"] times; maxRetries=["+getMaxRetries()+"]");
+					increaseMessageHistoryRetryIntervalAndWait(getLogPrefix()+"message with messageId ["+messageId+"] has already been processed ["+prci.tryCount+"] times; maxRetries=["+getMaxRetries()+"]");
 					return false;
 				}
 				if (prci.tryCount<=getMaxRetries()) {
 					log.warn(getLogPrefix()+"message with messageId ["+messageId+"] has already been processed ["+prci.tryCount+"] times, will try again; maxRetries=["+getMaxRetries()+"]");
-					resetRetryInterval();
 					return false;
 				}
 				warn(getLogPrefix()+"message with messageId ["+messageId+"] has already been processed ["+prci.tryCount+"] times, will not try again; maxRetries=["+getMaxRetries()+"]");
 				String comments="too many retries";
 				if (prci.tryCount>getMaxRetries()+1) {
-					increaseRetryIntervalAndWait(null,getLogPrefix()+"saw message with messageId ["+messageId+"] too many times ["+prci.tryCount+"]; maxRetries=["+getMaxRetries()+"]");
+					increaseMessageHistoryRetryIntervalAndWait(getLogPrefix()+"saw message with messageId ["+messageId+"] too many times ["+prci.tryCount+"]; maxRetries=["+getMaxRetries()+"]");
 				}
 				moveInProcessToErrorAndDoPostProcessing(messageId, correlationId, rawMessage, message, threadContext, prci, comments);
 				return true;
@@ -1319,6 +1437,10 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 			ITransactionalStorage transactionStorage, String messageId,
 			String correlationId) throws ListenerException {
 		if (isCheckForDuplicates() && transactionStorage != null) {
+			BloomFilter bloomFilter = messageLogBloomFilter;
+			if (bloomFilter!=null && messageLogBloomFilterReady && transactionStorage==getMessageLog() && !bloomFilter.mightContain(BloomFilter.digest(getDuplicateCheckId(messageId, correlationId)))) {
+				return false;
+			}
 			if ("CORRELATIONID".equalsIgnoreCase(getCheckForDuplicatesMethod())) {
 				if (transactionStorage.containsCorrelationId(correlationId)) {
 					warn(getLogPrefix() + "message with correlationId ["
@@ -1371,46 +1493,100 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 		}
 	}
 
+	/**
+	 * Records that the listener delivered messages again, which closes the circuit breaker for the listener.
+	 */
 	public void resetRetryInterval() {
-		synchronized (this) {
-			if (suspensionMessagePending) {
-				suspensionMessagePending=false;
-				throwEvent(RCV_RESUMED_MONITOR_EVENT);
-			}
-			retryInterval = 1;
-		}
+		circuitBreaker.recordSuccess();
+		resetSuspensionMessage();
 	}
 
+	/**
+	 * Records a failure in the circuit breaker for the listener. For pulling listeners the {@link PullingListenerContainer}
+	 * stops pulling messages while the circuit is open, so the calling thread returns immediately. Other listeners push
+	 * messages to the receiver, so the calling thread waits until the circuit allows a new attempt.
+	 */
 	public void increaseRetryIntervalAndWait(Throwable t, String description) {
-		long currentInterval;
-		synchronized (this) {
-			currentInterval = retryInterval;
-			retryInterval = retryInterval * 2;
-			if (retryInterval > MAX_RETRY_INTERVAL) {
-				retryInterval = MAX_RETRY_INTERVAL;
-			}
+		circuitBreaker.recordFailure();
+		reportRetryInterval(circuitBreaker, t, description);
+		if (listenerContainer==null) {
+			waitWhileCircuitOpen();
+		}
+	}
+
+	/**
+	 * Records that a message has been processed, which closes the circuit breaker for the message history.
+	 * Polls that return no message, or messages that are rejected, do not close it.
+	 */
+	private void resetMessageHistoryRetryInterval() {
+		messageHistoryCircuitBreaker.recordSuccess();
+		resetSuspensionMessage();
+	}
+
+	/**
+	 * Records a message that is not processed because it was delivered or processed too many times. The time no messages
+	 * are received doubles with each such message, until a message has been processed again.
+	 */
+	private void increaseMessageHistoryRetryIntervalAndWait(String description) {
+		messageHistoryCircuitBreaker.recordFailure();
+		reportRetryInterval(messageHistoryCircuitBreaker, null, description);
+		if (listenerContainer==null) {
+			waitWhileCircuitOpen();
 		}
+	}
+
+	private void reportRetryInterval(CircuitBreaker trippedCircuitBreaker, Throwable t, String description) {
+		long currentInterval = (trippedCircuitBreaker.getRemainingOpenTime()+999)/1000;
 		if (currentInterval>1) {
 			error(description+", will continue retrieving messages in [" + currentInterval + "] seconds", t);
 		} else {
 			log.warn(getLogPrefix()+"will continue retrieving messages in [" + currentInterval + "] seconds", t);
 		}
 		if (currentInterval*2 > RCV_SUSPENSION_MESSAGE_THRESHOLD) {
-			if (!suspensionMessagePending) {
-				suspensionMessagePending=true;
-				throwEvent(RCV_SUSPENDED_MONITOR_EVENT);
+			synchronized (this) {
+				if (!suspensionMessagePending) {
+					suspensionMessagePending=true;
+					throwEvent(RCV_SUSPENDED_MONITOR_EVENT);
+				}
+			}
+		}
+	}
+
+	private void resetSuspensionMessage() {
+		if (suspensionMessagePending && circuitBreaker.getState()==CircuitBreaker.State.CLOSED && messageHistoryCircuitBreaker.getState()==CircuitBreaker.State.CLOSED) {
+			synchronized (this) {
+				if (suspensionMessagePending) {
+					suspensionMessagePending=false;
+					throwEvent(RCV_RESUMED_MONITOR_EVENT);
+				}
 			}
 		}
-		while (isInRunState(RunStateEnum.STARTED) && currentInterval-- > 0) {
+	}
+
+	/**
+	 * Waits, in steps of at most one second, until both circuit breakers allow a new attempt or the receiver is stopped.
+	 */
+	public void waitWhileCircuitOpen() {
+		// the circuit breaker for the listener is only asked when the other is closed, as that may use up its single probe
+		while (isInRunState(RunStateEnum.STARTED) && (messageHistoryCircuitBreaker.isOpen() || !circuitBreaker.allowRequest())) {
 			try {
-				Thread.sleep(1000);
-			} catch (Exception e2) {
-				error("sleep interupted", e2);
+				long remaining = Math.max(messageHistoryCircuitBreaker.getRemainingOpenTime(), circuitBreaker.getRemainingOpenTime());
+				Thread.sleep(Math.max(1, Math.min(1000, remaining)));
+			} catch (InterruptedException e) {
+				error("sleep interupted", e);
 				stopRunning();
+				Thread.currentThread().interrupt();
 			}
 		}
 	}
-	
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	public CircuitBreaker getMessageHistoryCircuitBreaker() {
+		return messageHistoryCircuitBreaker;
+	}
 
 	@Override
 	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
@@ -1879,6 +2055,15 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 		numThreadsPolling = i;
 	}
 
+	public int getNumThreadsMin() {
+		return numThreadsMin;
+	}
+
+	@IbisDoc({"when set to a value smaller than <code>numthreads</code>, the number of threads is scaled automatically between <code>numthreadsmin</code> and <code>numthreads</code>, depending on the number of messages available and their processing time (only for pulling listeners)", "0"})
+	public void setNumThreadsMin(int i) {
+		numThreadsMin = i;
+	}
+
 	public int getMaxDeliveries() {
 		return maxDeliveries;
 	}
@@ -1908,6 +2093,14 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 	@IbisDoc({"comma separated list of keys of session variables that should be returned to caller, for correct results as well as for erronous results. (only for listeners that support it, like javalistener)", ""})
 	public void setReturnedSessionKeys(String string) {
 		returnedSessionKeys = string;
+		List<String> keys = new ArrayList<String>();
+		if (string!=null) {
+			StringTokenizer st = new StringTokenizer(string, " ,;");
+			while (st.hasMoreTokens()) {
+				keys.add(st.nextToken());
+			}
+		}
+		returnedSessionKeyList = keys.toArray(new String[keys.size()]);
 	}
 	public String getReturnedSessionKeys() {
 		return returnedSessionKeys;
@@ -1992,12 +2185,28 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 		this.poisonMessageIdCacheSize = poisonMessageIdCacheSize;
 	}
 
+	public int getPoisonMessageIdCacheMaxAge() {
+		return poisonMessageIdCacheMaxAge;
+	}
+	@IbisDoc({"the maximum number of seconds the id of a poison message is remembered, '0' means until it is pushed out by newer ids", "0"})
+	public void setPoisonMessageIdCacheMaxAge(int poisonMessageIdCacheMaxAge) {
+		this.poisonMessageIdCacheMaxAge = poisonMessageIdCacheMaxAge;
+	}
+
 	public int getProcessResultCacheSize() {
 		return processResultCacheSize;
 	}
 	public void setProcessResultCacheSize(int processResultCacheSize) {
 		this.processResultCacheSize = processResultCacheSize;
 	}
+
+	public int getProcessResultCacheMaxAge() {
+		return processResultCacheMaxAge;
+	}
+	@IbisDoc({"the maximum number of seconds the processing result of a message is remembered for retry handling, '0' means until it is pushed out by newer results", "0"})
+	public void setProcessResultCacheMaxAge(int processResultCacheMaxAge) {
+		this.processResultCacheMaxAge = processResultCacheMaxAge;
+	}
 	
 	@IbisDoc({"the number of seconds waited after an unsuccesful poll attempt before another poll attempt is made. (only for polling listeners, not for e.g. ifsa, jms, webservice or javalisteners)", "10"})
 	public void setPollInterval(int i) {
@@ -2023,6 +2232,14 @@ public class ReceiverBase implements IReceiver, IReceiverStatistics, IMessageHan
 		return checkForDuplicatesMethod;
 	}
 
+	@IbisDoc({"(only used when <code>checkforduplicates=true</code>) when set &gt; 0, the ids in the message log are kept in a bloom filter sized for this number of ids, filled in the background when the receiver is started. once it is filled, the message log is only queried for ids that might be present. only use this when no other receivers or cluster nodes write to the same message log", "0"})
+	public void setCheckForDuplicatesBloomFilterSize(int size) {
+		checkForDuplicatesBloomFilterSize = size;
+	}
+	public int getCheckForDuplicatesBloomFilterSize() {
+		return checkForDuplicatesBloomFilterSize;
+	}
+
 	@IbisDoc({"timeout (in seconds) of transaction started to receive and process a message.", "<code>0</code> (use system default)</code>"})
 	public void setTransactionTimeout(int i) {
 		transactionTimeout = i;
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2018 Nationale-Nederlanden
+   Copyright 2013, 2018, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,11 +15,11 @@
 */
 package nl.nn.adapterframework.receivers;
 
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.ws.Endpoint;
 import nl.nn.adapterframework.core.ListenerException;
@@ -44,19 +44,16 @@ import org.apache.log4j.Logger;
 public class ServiceDispatcher  {
 	protected Logger log = LogUtil.getLogger(this);
 
-	private Map<String, ServiceClient> registeredListeners = new HashMap<String, ServiceClient>();
-	private static ServiceDispatcher self = null;
+	private Map<String, ServiceClient> registeredListeners = new ConcurrentHashMap<String, ServiceClient>();
+	private static final ServiceDispatcher self = new ServiceDispatcher();
 	private Endpoint namespaceRouter = null;
 
 	/**
 	 * Use this method to get hold of the <code>ServiceDispatcher</code>
 	 * @return an instance of this class
 	 */
-	public static synchronized ServiceDispatcher getInstance() {
-		if (self == null) {
-			self = new ServiceDispatcher();
-		}
-		return (self);
+	public static ServiceDispatcher getInstance() {
+		return self;
 	}
 
 	/**
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2016-2018 Nationale-Nederlanden
+   Copyright 2013, 2016-2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,14 +15,13 @@
 */
 package nl.nn.adapterframework.senders;
 
-import java.util.HashMap;
-
 import nl.nn.adapterframework.doc.IbisDoc;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
 
 import nl.nn.adapterframework.configuration.Configuration;
 import nl.nn.adapterframework.configuration.ConfigurationException;
+import nl.nn.adapterframework.core.ChildPipeLineSession;
 import nl.nn.adapterframework.core.HasPhysicalDestination;
 import nl.nn.adapterframework.core.ListenerException;
 import nl.nn.adapterframework.core.ParameterException;
@@ -33,6 +32,9 @@ import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 import nl.nn.adapterframework.pipes.IsolatedServiceCaller;
 import nl.nn.adapterframework.receivers.JavaListener;
 import nl.nn.adapterframework.receivers.ServiceDispatcher;
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeper;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
 import nl.nn.adapterframework.util.Misc;
 
 /**
@@ -41,7 +43,10 @@ import nl.nn.adapterframework.util.Misc;
  * An IbisLocalSender makes a call to a Receiver with either a {@link nl.nn.adapterframework.http.WebServiceListener WebServiceListener}
  * or a {@link JavaListener JavaListener}.
  *
- * Any parameters are copied to the PipeLineSession of the service called.
+ * Any parameters are copied to the PipeLineSession of the service called. The called adapter uses the session
+ * created by this sender as its PipeLineSession, so it is not copied again when the call starts and ends.
+ * The JavaListener to call is looked up once, and again only when it has been closed, for instance when its
+ * configuration has been reloaded.
  * 
  * <h3>Configuration of the Adapter to be called</h3>
  * A call to another Adapter in the same IBIS instance is preferably made using the combination
@@ -78,7 +83,7 @@ import nl.nn.adapterframework.util.Misc;
  * @author Gerrit van Brakel
  * @since  4.2
  */
-public class IbisLocalSender extends SenderWithParametersBase implements HasPhysicalDestination, ConfigurationAware {
+public class IbisLocalSender extends SenderWithParametersBase implements HasPhysicalDestination, ConfigurationAware, HasStatistics {
 	
 	private Configuration configuration;
 	private String serviceName;
@@ -91,6 +96,8 @@ public class IbisLocalSender extends SenderWithParametersBase implements HasPhys
 	private String returnedSessionKeys=null;
 	private IsolatedServiceCaller isolatedServiceCaller;
 	private boolean throwJavaListenerNotFoundException = true;
+	private volatile JavaListener resolvedListener;
+	private StatisticsKeeper callStatistics;
 
 	@Override
 	public void configure() throws ConfigurationException {
@@ -108,6 +115,7 @@ public class IbisLocalSender extends SenderWithParametersBase implements HasPhys
 						|| StringUtils.isNotEmpty(getJavaListenerSessionKey()))) {
 			throw new ConfigurationException(getLogPrefix()+"serviceName and javaListener cannot be specified both");
 		}
+		callStatistics = new StatisticsKeeper("call "+getPhysicalDestinationName());
 	}
 
 	@Override
@@ -122,6 +130,9 @@ public class IbisLocalSender extends SenderWithParametersBase implements HasPhys
 				JavaListener listener= JavaListener.getListener(getJavaListener());
 				if (listener!=null) {
 					listenerOpened=listener.isOpen();
+					if (listenerOpened) {
+						resolvedListener=listener;
+					}
 				}
 				if (!listenerOpened && !configuration.isUnloadInProgressOrDone()) {
 					if (loops != -1) {
@@ -149,20 +160,52 @@ public class IbisLocalSender extends SenderWithParametersBase implements HasPhys
 		}
 	}
 
+	@Override
+	public void close() throws SenderException {
+		resolvedListener=null;
+		super.close();
+	}
+
+	/**
+	 * Returns the JavaListener with the given name. The listener configured in the <code>javaListener</code> attribute
+	 * is kept, as long as it is open.
+	 */
+	protected JavaListener findListener(String javaListener) {
+		boolean configuredListener = javaListener!=null && javaListener.equals(getJavaListener());
+		if (configuredListener) {
+			JavaListener listener = resolvedListener;
+			if (listener!=null && listener.isOpen()) {
+				return listener;
+			}
+		}
+		JavaListener listener = JavaListener.getListener(javaListener);
+		if (configuredListener && listener!=null && listener.isOpen()) {
+			resolvedListener = listener;
+		}
+		return listener;
+	}
+
 	@Override
 	public String sendMessage(String correlationID, String message, ParameterResolutionContext prc) throws SenderException, TimeOutException {
+		long startTime = System.currentTimeMillis();
+		try {
+			return sendMessageToService(correlationID, message, prc);
+		} finally {
+			if (callStatistics!=null) {
+				callStatistics.addValue(System.currentTimeMillis()-startTime);
+			}
+		}
+	}
+
+	private String sendMessageToService(String correlationID, String message, ParameterResolutionContext prc) throws SenderException, TimeOutException {
 		String result = null;
-		HashMap<String,Object> context = null;
+		ChildPipeLineSession context = new ChildPipeLineSession();
 		if (paramList!=null) {
 			try {
-				context = (HashMap) prc.getValueMap(paramList);
+				context.putAll(prc.getValueMap(paramList));
 			} catch (ParameterException e) {
 				throw new SenderException(getLogPrefix()+"exception evaluating parameters",e);
 			}
-		} else {
-			if (StringUtils.isNotEmpty(getReturnedSessionKeys())) {
-				context = new HashMap();
-			}
 		}
 		if (StringUtils.isNotEmpty(getServiceName())) {
 			try {
@@ -200,7 +243,7 @@ public class IbisLocalSender extends SenderWithParametersBase implements HasPhys
 				javaListener = getJavaListener();
 			}
 			try {
-				JavaListener listener= JavaListener.getListener(javaListener);
+				JavaListener listener= findListener(javaListener);
 				if (listener==null) {
 					String msg = "could not find JavaListener ["+javaListener+"]";
 					if (isThrowJavaListenerNotFoundException()) {
@@ -240,6 +283,14 @@ public class IbisLocalSender extends SenderWithParametersBase implements HasPhys
 	}
 
 
+	@Override
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		if (callStatistics!=null) {
+			hski.handleStatisticsKeeper(data, callStatistics);
+			callStatistics.performAction(action);
+		}
+	}
+
 	@Override
 	public void setConfiguration(Configuration configuration) {
 		this.configuration = configuration;
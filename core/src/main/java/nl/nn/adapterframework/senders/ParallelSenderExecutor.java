@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2016 Nationale-Nederlanden
+   Copyright 2013, 2016, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -22,6 +22,7 @@ import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 import nl.nn.adapterframework.statistics.StatisticsKeeper;
 import nl.nn.adapterframework.util.Guard;
 import nl.nn.adapterframework.util.LogUtil;
+import nl.nn.adapterframework.util.Semaphore;
 
 import org.apache.log4j.Logger;
 
@@ -31,16 +32,28 @@ public class ParallelSenderExecutor extends RequestReplyExecutor {
 	private ParameterResolutionContext prc;
 	private Guard guard;
 	private StatisticsKeeper sk;
+	private Semaphore semaphore;
+	private volatile boolean finished=false;
 
 	public ParallelSenderExecutor(ISender sender, String correlationID,
 			String message, ParameterResolutionContext prc, Guard guard,
 			StatisticsKeeper sk) {
+		this(sender, correlationID, message, prc, guard, null, sk);
+	}
+
+	/**
+	 * @param semaphore when not null, released when the sender has finished, to allow the next item to be handed out.
+	 */
+	public ParallelSenderExecutor(ISender sender, String correlationID,
+			String message, ParameterResolutionContext prc, Guard guard,
+			Semaphore semaphore, StatisticsKeeper sk) {
 		super();
 		this.sender=sender;
 		this.correlationID=correlationID;
 		request=message;
 		this.prc=prc;
 		this.guard=guard;
+		this.semaphore=semaphore;
 		this.sk=sk;
 	}
 
@@ -60,8 +73,21 @@ public class ParallelSenderExecutor extends RequestReplyExecutor {
 			long t2 = System.currentTimeMillis();
 			sk.addValue(t2-t1);
 		} finally {
-			guard.releaseResource();
+			finished=true;
+			if (semaphore!=null) {
+				semaphore.release();
+			}
+			if (guard!=null) {
+				guard.releaseResource();
+			}
 		}
 	}
 
+	/**
+	 * Returns <code>true</code> when the sender has returned, and the reply or throwable is available.
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2017-2018 Nationale-Nederlanden
+   Copyright 2013, 2017-2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -49,6 +49,7 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 public class ParallelSenders extends SenderSeries {
 
 	private int maxConcurrentThreads = 0;
+	private TaskExecutor executor;
 
 	@Override
 	public void configure() throws ConfigurationException {
@@ -67,7 +68,7 @@ public class ParallelSenders extends SenderSeries {
 	public String doSendMessage(String correlationID, String message, ParameterResolutionContext prc) throws SenderException, TimeOutException {
 		Guard guard = new Guard();
 		Map<ISender, ParallelSenderExecutor> executorMap = new HashMap<ISender, ParallelSenderExecutor>();
-		TaskExecutor executor = createTaskExecutor();
+		TaskExecutor executor = getTaskExecutor();
 
 		for (Iterator<ISender> it = getSenderIterator(); it.hasNext();) {
 			ISender sender = it.next();
@@ -131,13 +132,50 @@ public class ParallelSenders extends SenderSeries {
 		} 
 	}
 
+	@Override
+	public void close() throws SenderException {
+		try {
+			super.close();
+		} finally {
+			synchronized (this) {
+				if (executor instanceof ThreadPoolTaskExecutor) {
+					((ThreadPoolTaskExecutor)executor).shutdown();
+				}
+				executor = null;
+			}
+		}
+	}
+
+	/**
+	 * Returns the executor of this ParallelSenders, that is created on first use and shut down when the sender is closed.
+	 */
+	protected synchronized TaskExecutor getTaskExecutor() {
+		if (executor==null) {
+			executor = createTaskExecutor();
+		}
+		return executor;
+	}
+
+	/**
+	 * Creates a thread pool dedicated to this ParallelSenders, so that concurrent messages do not
+	 * reconfigure a shared pool, and senders of one adapter cannot starve those of another.
+	 * The pool has <code>maxConcurrentThreads</code> threads, or one thread per sender when not set.
+	 * Idle threads are released after the keep alive time of the pool.
+	 */
 	protected TaskExecutor createTaskExecutor() {
 		ThreadPoolTaskExecutor executor = (ThreadPoolTaskExecutor) getConfiguration().getIbisManager().getIbisContext().getBean("concurrentTaskExecutor");
-		executor.setCorePoolSize(getMaxConcurrentThreads());
+		int poolSize = getMaxConcurrentThreads();
+		if (poolSize<1) {
+			for (Iterator<ISender> it = getSenderIterator(); it.hasNext(); it.next()) {
+				poolSize++;
+			}
+		}
+		executor.setCorePoolSize(Math.max(poolSize, 1));
+		executor.getThreadPoolExecutor().allowCoreThreadTimeOut(true);
 		return executor;
 	}
 
-	@IbisDoc({"sets and upper limit to the amount of concurrent threads that can be run simultaneously. use 0 to disable.", "0"})
+	@IbisDoc({"sets and upper limit to the amount of concurrent threads that can be run simultaneously. use 0 to use one thread per sender.", "0"})
 	public void setMaxConcurrentThreads(int maxThreads) {
 		if(maxThreads < 1)
 			maxThreads = 0;
@@ -114,6 +114,7 @@ public class SenderSeries extends SenderWrapperBase {
 				((HasStatistics)sender).iterateOverStatistics(hski,data,action);
 			}
 		}
+		iterateOverCacheStatistics(hski,data,action);
 		//hski.closeGroup(senderData);
 	}
 
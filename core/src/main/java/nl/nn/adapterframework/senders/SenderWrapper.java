@@ -23,6 +23,8 @@ import nl.nn.adapterframework.core.TimeOutException;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 import nl.nn.adapterframework.statistics.HasStatistics;
 import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+import nl.nn.adapterframework.stream.IStreamingSender;
+import nl.nn.adapterframework.stream.Message;
 
 /**
  * Wrapper for senders, that allows to get input from a session variable, and to store output in a session variable.
@@ -75,11 +77,20 @@ public class SenderWrapper extends SenderWrapperBase {
 		return result;
 	}
 
+	@Override
+	public Message doSendMessage(String correlationID, Message message, ParameterResolutionContext prc) throws SenderException, TimeOutException {
+		if (sender instanceof IStreamingSender) {
+			return ((IStreamingSender)sender).sendMessage(correlationID,message,prc);
+		}
+		return super.doSendMessage(correlationID, message, prc);
+	}
+
 	@Override
 	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
 		if (getSender() instanceof HasStatistics) {
 			((HasStatistics)getSender()).iterateOverStatistics(hski,data,action);
 		}
+		iterateOverCacheStatistics(hski,data,action);
 	}
 
 	@Override
@@ -15,6 +15,8 @@
 */
 package nl.nn.adapterframework.senders;
 
+import java.io.IOException;
+
 import nl.nn.adapterframework.doc.IbisDoc;
 import org.apache.commons.lang.StringUtils;
 
@@ -29,6 +31,9 @@ import nl.nn.adapterframework.core.TimeOutException;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 import nl.nn.adapterframework.processors.SenderWrapperProcessor;
 import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+import nl.nn.adapterframework.stream.IStreamingSender;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.ClassUtils;
 
 /**
@@ -42,7 +47,7 @@ import nl.nn.adapterframework.util.ClassUtils;
  * @author  Gerrit van Brakel
  * @since   4.9
  */
-public abstract class SenderWrapperBase extends SenderWithParametersBase implements HasStatistics, ICacheEnabled, ConfigurationAware {
+public abstract class SenderWrapperBase extends SenderWithParametersBase implements HasStatistics, ICacheEnabled, ConfigurationAware, IStreamingSender {
 
 	private String getInputFromSessionKey; 
 	private String getInputFromFixedValue=null;
@@ -97,6 +102,43 @@ public abstract class SenderWrapperBase extends SenderWithParametersBase impleme
 		return doSendMessage(correlationID, message, prc);
 	}
 
+	/**
+	 * Sends a {@link Message}. When no caching and no input or output redirection is configured, the message is
+	 * handed to {@link #doSendMessage(String, Message, ParameterResolutionContext)} without being read into memory.
+	 * Otherwise it is processed as a String by the regular SenderWrapperProcessor chain.
+	 */
+	@Override
+	public Message sendMessage(String correlationID, Message message, ParameterResolutionContext prc) throws SenderException, TimeOutException {
+		if (!canStreamMessage()) {
+			return new Message(sendMessage(correlationID, asString(message), prc));
+		}
+		return doSendMessage(correlationID, message, prc);
+	}
+
+	/**
+	 * Sends a {@link Message} to the wrapped sender(s). Subclasses that can pass a Message on without
+	 * reading it should override this method; by default the message is read into a String.
+	 */
+	public Message doSendMessage(String correlationID, Message message, ParameterResolutionContext prc) throws SenderException, TimeOutException {
+		return new Message(doSendMessage(correlationID, asString(message), prc));
+	}
+
+	protected boolean canStreamMessage() {
+		return cache==null 
+				&& StringUtils.isEmpty(getGetInputFromSessionKey()) 
+				&& StringUtils.isEmpty(getGetInputFromFixedValue()) 
+				&& StringUtils.isEmpty(getStoreResultInSessionKey()) 
+				&& !isPreserveInput();
+	}
+
+	protected String asString(Message message) throws SenderException {
+		try {
+			return message.asString();
+		} catch (IOException e) {
+			throw new SenderException(getLogPrefix()+"cannot read message", e);
+		}
+	}
+
 	@Override
 	public String getLogPrefix() {
 		return ClassUtils.nameOf(this)+" ["+getName()+"] ";
@@ -111,6 +153,12 @@ public abstract class SenderWrapperBase extends SenderWithParametersBase impleme
 		return cache;
 	}
 
+	protected void iterateOverCacheStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		if (cache instanceof HasStatistics) {
+			((HasStatistics)cache).iterateOverStatistics(hski, data, action);
+		}
+	}
+
 	
 	@Override
 	public abstract boolean isSynchronous() ;
@@ -104,7 +104,7 @@ public class ShadowSender extends ParallelSenders {
 	public String doSendMessage(String correlationID, String message, ParameterResolutionContext prc) throws SenderException, TimeOutException {
 		Guard guard = new Guard();
 		Map<ISender, ParallelSenderExecutor> executorMap = new HashMap<ISender, ParallelSenderExecutor>();
-		TaskExecutor executor = createTaskExecutor();
+		TaskExecutor executor = getTaskExecutor();
 
 		// Create a new ParameterResolutionContext to be thread safe, see
 		// documentation on constructor of ParameterResolutionContext
@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2016 Nationale-Nederlanden
+   Copyright 2013, 2016, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -31,6 +31,10 @@ import nl.nn.adapterframework.core.SenderWithParametersBase;
 import nl.nn.adapterframework.parameters.Parameter;
 import nl.nn.adapterframework.parameters.ParameterList;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+import nl.nn.adapterframework.stream.IStreamingSender;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.DomBuilderException;
 import nl.nn.adapterframework.util.TransformerPool;
 import nl.nn.adapterframework.util.XmlUtils;
@@ -46,7 +50,7 @@ import nl.nn.adapterframework.util.XmlUtils;
  * @author  Gerrit van Brakel
  * @since   4.9
  */
-public class XsltSender extends SenderWithParametersBase {
+public class XsltSender extends SenderWithParametersBase implements IStreamingSender, HasStatistics {
 
 	private String xpathExpression=null;
 	private String namespaceDefs = null; 
@@ -119,6 +123,13 @@ public class XsltSender extends SenderWithParametersBase {
 		}
 	}
 
+	@Override
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		if (transformerPool!=null) {
+			transformerPool.iterateOverStatistics(hski, data, getName());
+		}
+	}
+
 	@Override
 	public void close() throws SenderException {
 		super.close();
@@ -169,15 +180,7 @@ public class XsltSender extends SenderWithParametersBase {
 //				log.debug(getLogPrefix()+" prc.inputsource ["+prc.getInputSource()+"]");
 //			}
 			
-			stringResult = transformerPool.transform(inputMsg, parametervalues); 
-
-			if (isSkipEmptyTags()) {
-				log.debug(getLogPrefix()+ " skipping empty tags from result [" + stringResult + "]");
-				//URL xsltSource = ClassUtils.getResourceURL( this, skipEmptyTags_xslt);
-				//Transformer transformer = XmlUtils.createTransformer(xsltSource);
-				//stringResult = XmlUtils.transformXml(transformer, stringResult);
-				stringResult = transformerPoolSkipEmptyTags.transform(XmlUtils.stringToSourceForSingleUse(stringResult, isNamespaceAware()), null); 
-			}
+			stringResult = transform(inputMsg, parametervalues);
 //			if (log.isDebugEnabled()) {
 //				log.debug(getLogPrefix()+" transformed input ["+message+"] to ["+stringResult+"]");
 //			}
@@ -189,6 +192,48 @@ public class XsltSender extends SenderWithParametersBase {
 		return stringResult;
 	}
 
+	/**
+	 * Transforms a {@link Message} without reading it into a String first, when no parameters are
+	 * defined and namespaces need not be removed. Otherwise the message is read into memory.
+	 */
+	@Override
+	public Message sendMessage(String correlationID, Message message, ParameterResolutionContext prc) throws SenderException {
+		if (message==null || message.isNull()) {
+			throw new SenderException(getLogPrefix()+"got null input");
+		}
+		try {
+			if (!canStreamInput()) {
+				return new Message(sendMessage(correlationID, message.asString(), prc));
+			}
+			return new Message(transform(message.asSource(isNamespaceAware()), null));
+		} catch (SenderException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new SenderException(getLogPrefix()+" Exception on transforming input", e);
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> when the input does not need to be available as a String to
+	 * evaluate parameters or to remove namespaces.
+	 */
+	public boolean canStreamInput() {
+		return paramList==null && !isRemoveNamespaces();
+	}
+
+	protected String transform(Source inputMsg, Map<String,Object> parametervalues) throws TransformerException, IOException, DomBuilderException {
+		String stringResult = transformerPool.transform(inputMsg, parametervalues); 
+
+		if (isSkipEmptyTags()) {
+			log.debug(getLogPrefix()+ " skipping empty tags from result [" + stringResult + "]");
+			//URL xsltSource = ClassUtils.getResourceURL( this, skipEmptyTags_xslt);
+			//Transformer transformer = XmlUtils.createTransformer(xsltSource);
+			//stringResult = XmlUtils.transformXml(transformer, stringResult);
+			stringResult = transformerPoolSkipEmptyTags.transform(XmlUtils.stringToSourceForSingleUse(stringResult, isNamespaceAware()), null); 
+		}
+		return stringResult;
+	}
+
 	@Override
 	public boolean isSynchronous() {
 		return true;
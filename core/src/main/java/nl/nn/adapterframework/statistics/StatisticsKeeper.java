@@ -19,15 +19,22 @@ import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-import nl.nn.adapterframework.statistics.percentiles.PercentileEstimator;
-import nl.nn.adapterframework.statistics.percentiles.PercentileEstimatorRanked;
+import nl.nn.adapterframework.statistics.percentiles.LogLinearHistogram;
 import nl.nn.adapterframework.util.AppConstants;
 import nl.nn.adapterframework.util.XmlBuilder;
 import nl.nn.adapterframework.util.XmlUtils;
 
 /**
  * Keeps statistics (min, max, count etc).
+ * <p>
+ * Values are recorded in a number of stripes, selected by the id of the recording thread, that are
+ * merged when the statistics are read. This keeps threads that record values concurrently from
+ * contending for a single lock. Percentiles are estimated from a fixed size log-linear histogram
+ * per stripe. The number of stripes can be set with the property <code>Statistics.stripes</code>.
+ * </p>
  * 
  * @author Johan Verrips / Gerrit van Brakel
  */
@@ -36,15 +43,13 @@ public class StatisticsKeeper implements ItemList {
 	private static final boolean calculatePercentiles=true;
 	
 	private String name = null;
-	private long first=Long.MIN_VALUE;
-    private long last=0;
-    private Basics cumulative;
-	private Basics mark;
-    private long classBoundaries[];
-    private long classCounts[];
-    
-    
-
+	private AtomicLong first=new AtomicLong(Long.MIN_VALUE);
+	private volatile long last=0;
+	private Class basicsClass;
+	private volatile Basics mark;
+	private long classBoundaries[];
+	private int percentiles[];
+	private AtomicReferenceArray<Stripe> stripes;
  
  	public static final int NUM_STATIC_ITEMS=8;   
 	public static final int NUM_INTERVAL_ITEMS=6;   
@@ -59,7 +64,10 @@ public class StatisticsKeeper implements ItemList {
 	public static final String percentileConfigKey="Statistics.percentiles";
 	public static final String DEFAULT_P_LIST="50,90,95,98";
 
-	protected PercentileEstimator pest;	
+	public static final String stripesConfigKey="Statistics.stripes";
+	private static final int MAX_DEFAULT_STRIPES=16;
+
+	private static int stripeCount=-1;
 
 	/**
 	 * Constructor for StatisticsKeeper.
@@ -75,12 +83,8 @@ public class StatisticsKeeper implements ItemList {
 	protected StatisticsKeeper(String name, Class basicsClass, String boundaryConfigKey, String defaultBoundaryList) {
 	    super();
 	    this.name = name;
-	    try {
-			cumulative=(Basics)basicsClass.newInstance();
-			mark=(Basics)basicsClass.newInstance();
-		} catch (Exception e) {
-			throw new RuntimeException(e);
-		}
+	    this.basicsClass = basicsClass;
+		mark=newBasics();
 	    
 	    List classBoundariesBuffer = new ArrayList();
 	
@@ -90,17 +94,139 @@ public class StatisticsKeeper implements ItemList {
 	        classBoundariesBuffer.add(new Long(Long.parseLong(tok.nextToken())));
 	    }
 	    classBoundaries = new long[classBoundariesBuffer.size()];
-	    classCounts = new long[classBoundariesBuffer.size()];
 	    for (int i = 0; i < classBoundariesBuffer.size(); i++) {
 	        classBoundaries[i] = ((Long) classBoundariesBuffer.get(i)).longValue();
 	    }
 
 		if (calculatePercentiles) {
-//			pest = new PercentileEstimatorBase(percentileConfigKey,DEFAULT_P_LIST,1000);
-			pest = new PercentileEstimatorRanked(percentileConfigKey,DEFAULT_P_LIST,100);
+			List pListBuffer = new ArrayList();
+			tok = AppConstants.getInstance().getTokenizer(percentileConfigKey,DEFAULT_P_LIST);
+			while (tok.hasMoreTokens()) {
+				pListBuffer.add(new Integer(Integer.parseInt(tok.nextToken())));
+			}
+			percentiles = new int[pListBuffer.size()];
+			for (int i = 0; i < pListBuffer.size(); i++) {
+				percentiles[i] = ((Integer) pListBuffer.get(i)).intValue();
+			}
+		} else {
+			percentiles = new int[0];
 		}
+		stripes = new AtomicReferenceArray<Stripe>(getStripeCount());
 	}
-	
+
+	/**
+	 * Returns the number of stripes, a power of two, by default the number of processors rounded up, with a maximum of 16.
+	 */
+	private static synchronized int getStripeCount() {
+		if (stripeCount<0) {
+			int defaultStripes=Math.min(Runtime.getRuntime().availableProcessors(), MAX_DEFAULT_STRIPES);
+			int configured=AppConstants.getInstance().getInt(stripesConfigKey, defaultStripes);
+			int count=1;
+			while (count<configured) {
+				count<<=1;
+			}
+			stripeCount=count;
+		}
+		return stripeCount;
+	}
+
+	private Basics newBasics() {
+		try {
+			return (Basics)basicsClass.newInstance();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Part of the statistics that is only updated by a subset of the threads.
+	 */
+	private class Stripe {
+		private Basics cumulative=newBasics();
+		private Basics interval=newBasics();
+		private long classCounts[]=new long[classBoundaries.length];
+		private LogLinearHistogram histogram=calculatePercentiles ? new LogLinearHistogram() : null;
+
+		public synchronized void addValue(long value) {
+			cumulative.addValue(value);
+			interval.checkMinMax(value);
+			if (calculatePercentiles) {
+				histogram.addValue(value);
+			}
+			for (int i = 0; i < classBoundaries.length; i++) {
+				if (value < classBoundaries[i]) {
+					classCounts[i]++;
+				}
+			}
+		}
+
+		public synchronized void reset() {
+			cumulative.reset();
+			interval.reset();
+			for (int i = 0; i < classCounts.length; i++) {
+				classCounts[i]=0;
+			}
+			if (calculatePercentiles) {
+				histogram.clear();
+			}
+		}
+	}
+
+	private Stripe getStripe() {
+		int index=(int)(Thread.currentThread().getId() & (stripes.length()-1));
+		Stripe stripe=stripes.get(index);
+		if (stripe==null) {
+			stripes.compareAndSet(index, null, new Stripe());
+			stripe=stripes.get(index);
+		}
+		return stripe;
+	}
+
+	private Basics getCumulative() {
+		Basics result=newBasics();
+		for (int i=0; i<stripes.length(); i++) {
+			Stripe stripe=stripes.get(i);
+			if (stripe!=null) {
+				synchronized (stripe) {
+					result.addRecord(stripe.cumulative);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the min and max of the values recorded since the last mark.
+	 */
+	private Basics getInterval() {
+		Basics result=newBasics();
+		for (int i=0; i<stripes.length(); i++) {
+			Stripe stripe=stripes.get(i);
+			if (stripe!=null) {
+				synchronized (stripe) {
+					if (stripe.interval.getMin()<=stripe.interval.getMax()) {
+						result.checkMinMax(stripe.interval.getMin());
+						result.checkMinMax(stripe.interval.getMax());
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private LogLinearHistogram getHistogram() {
+		LogLinearHistogram result=new LogLinearHistogram();
+		for (int i=0; i<stripes.length(); i++) {
+			Stripe stripe=stripes.get(i);
+			if (stripe!=null) {
+				synchronized (stripe) {
+					result.add(stripe.histogram);
+				}
+			}
+		}
+		return result;
+	}
+
 	public String getUnits() {
 		return "ms";
 	}
@@ -113,36 +239,38 @@ public class StatisticsKeeper implements ItemList {
 			clear();
 		}
 		if (action==HasStatistics.STATISTICS_ACTION_MARK_FULL || action==HasStatistics.STATISTICS_ACTION_MARK_MAIN) {
-			mark.mark(cumulative);
+			Basics newMark=newBasics();
+			newMark.mark(getCumulative());
+			mark=newMark;
+			for (int i=0; i<stripes.length(); i++) {
+				Stripe stripe=stripes.get(i);
+				if (stripe!=null) {
+					synchronized (stripe) {
+						stripe.interval.reset();
+					}
+				}
+			}
 		}
 	}
 	
 	public void clear() {
-		cumulative.reset();
-		mark.reset();
-		first=0;
+		for (int i=0; i<stripes.length(); i++) {
+			Stripe stripe=stripes.get(i);
+			if (stripe!=null) {
+				stripe.reset();
+			}
+		}
+		mark=newBasics();
+		first.set(Long.MIN_VALUE);
 		last=0;
-		pest.clear();
 	}
 	
 	public void addValue(long value) {
-		if (first==Long.MIN_VALUE) { 
-			first=value;
+		if (first.get()==Long.MIN_VALUE) { 
+			first.compareAndSet(Long.MIN_VALUE, value);
 		}
 		last = value;
-		long curMin=cumulative.getMin();
-		long curMax=cumulative.getMax();
-		cumulative.addValue(value);
-		mark.checkMinMax(value);
-		if (calculatePercentiles) {
-			pest.addValue(value,cumulative.getCount(),curMin,curMax);
-		}
-	
-	    for (int i = 0; i < classBoundaries.length; i++) {
-	        if (value < classBoundaries[i]) {
-	            classCounts[i]++;
-	        }
-	    }
+		getStripe().addValue(value);
 	}
 	
 
@@ -151,12 +279,23 @@ public class StatisticsKeeper implements ItemList {
 		return classBoundaries;
 	}
 	public long[] getClassCounts() {
-		return classCounts;
+		long result[]=new long[classBoundaries.length];
+		for (int i=0; i<stripes.length(); i++) {
+			Stripe stripe=stripes.get(i);
+			if (stripe!=null) {
+				synchronized (stripe) {
+					for (int j=0; j<result.length; j++) {
+						result[j]+=stripe.classCounts[j];
+					}
+				}
+			}
+		}
+		return result;
 	}
 
     public int getItemCount() {
 		if (calculatePercentiles) {
-	        return NUM_STATIC_ITEMS+classBoundaries.length+pest.getNumPercentiles();
+	        return NUM_STATIC_ITEMS+classBoundaries.length+percentiles.length;
 		}
 		return NUM_STATIC_ITEMS+classBoundaries.length;
     }
@@ -166,7 +305,7 @@ public class StatisticsKeeper implements ItemList {
 	
     public String getItemName(int index) {
     	if (index<Basics.NUM_BASIC_ITEMS) {
-    		return cumulative.getItemName(index);
+    		return mark.getItemName(index);
     	}
 	    switch (index) {
 			case 6: return ITEM_NAME_FIRST;
@@ -175,7 +314,7 @@ public class StatisticsKeeper implements ItemList {
 				return "< "+classBoundaries[index-NUM_STATIC_ITEMS]+getUnits();
 		    }
 		    if (calculatePercentiles) {
-				return "p"+pest.getPercentage(index-NUM_STATIC_ITEMS-classBoundaries.length);
+				return "p"+percentiles[index-NUM_STATIC_ITEMS-classBoundaries.length];
 		    }
 			return null;
 	    }
@@ -195,7 +334,7 @@ public class StatisticsKeeper implements ItemList {
 	public int getItemIndex(String name) {
 		int top=NUM_STATIC_ITEMS+classBoundaries.length;
 		if (calculatePercentiles) {
-			top+=pest.getNumPercentiles();
+			top+=percentiles.length;
 		}
 			
 		for (int i=0; i<top; i++) {
@@ -209,7 +348,7 @@ public class StatisticsKeeper implements ItemList {
     
     public int getItemType(int index) {
 		if (index<Basics.NUM_BASIC_ITEMS) {
-			return cumulative.getItemType(index);
+			return mark.getItemType(index);
 		}
 	    switch (index) {
 			case 6: return ITEM_TYPE_TIME;
@@ -234,29 +373,34 @@ public class StatisticsKeeper implements ItemList {
 	}
     public Object getItemValue(int index) {
 		if (index<Basics.NUM_BASIC_ITEMS) {
-			return cumulative.getItemValue(index);
+			return getCumulative().getItemValue(index);
 		}
+		long count=getCount();
 	    switch (index) {
-		    case 6: if (getCount() == 0) return null; else return new Long(getFirst());
-		    case 7: if (getCount() == 0) return null; else return new Long(getLast());
-		    default : if ((getCount() == 0)) return null;
+		    case 6: if (count == 0) return null; else return new Long(getFirst());
+		    case 7: if (count == 0) return null; else return new Long(getLast());
+		    default : if ((count == 0)) return null;
 		    	if (index<0) {
 					throw new ArrayIndexOutOfBoundsException("StatisticsKeeper.getItemValue() item index negative: "+index);
 		    	}
 				if ((index-NUM_STATIC_ITEMS) < classBoundaries.length) { 
-					return new Double(new Double(classCounts[index-NUM_STATIC_ITEMS]).doubleValue()/getCount());
+					return new Double(new Double(getClassCounts()[index-NUM_STATIC_ITEMS]).doubleValue()/count);
 				}
-				if (calculatePercentiles) {
-					return new Double(pest.getPercentileEstimate(index-NUM_STATIC_ITEMS-classBoundaries.length,getCount(),getMin(),getMax()));
+				if (calculatePercentiles && (index-NUM_STATIC_ITEMS-classBoundaries.length) < percentiles.length) {
+					Basics cumulative=getCumulative();
+					double estimate=getHistogram().getValueAtPercentile(percentiles[index-NUM_STATIC_ITEMS-classBoundaries.length]);
+					return new Double(Math.max(cumulative.getMin(), Math.min(cumulative.getMax(), estimate)));
 				}
 				throw new ArrayIndexOutOfBoundsException("StatisticsKeeper.getItemValue() item index too high: "+index);
 	    }
     }
 	public Object getIntervalItemValue(int index) {
+		Basics cumulative=getCumulative();
+		Basics mark=this.mark;
 		switch (index) {
 			case 0: return new Long(cumulative.getIntervalCount(mark));
-			case 1: if (cumulative.getCount() == mark.getCount()) return null; else return new Long(mark.getMin());
-			case 2: if (cumulative.getCount() == mark.getCount()) return null; else return new Long(mark.getMax());
+			case 1: if (cumulative.getCount() == mark.getCount()) return null; else return new Long(getInterval().getMin());
+			case 2: if (cumulative.getCount() == mark.getCount()) return null; else return new Long(getInterval().getMax());
 			case 3: if (cumulative.getCount() == mark.getCount()) return null; else return new Double(cumulative.getIntervalAverage(mark));
 			case 4: return new Long(cumulative.getIntervalSum(mark));
 			case 5: return new Long(cumulative.getIntervalSumOfSquares(mark));
@@ -280,13 +424,12 @@ public class StatisticsKeeper implements ItemList {
 		items.addSubElement(item);
 		item.addAttribute("index","-1");
 		item.addAttribute("name","sumofsquares");
-		item.addAttribute("value",""+cumulative.getSumOfSquares());
+		item.addAttribute("value",""+getTotalSquare());
 
 		XmlBuilder samples = new XmlBuilder("samples");
 		result.addSubElement(samples);
-		for (int i=0;i<pest.getSampleCount(getCount(),getMin(),getMax());i++) {
-			XmlBuilder sample = pest.getSample(i,getCount(),getMin(),getMax());
-			samples.addSubElement(sample);
+		if (calculatePercentiles) {
+			getHistogram().addSamples(samples);
 		}
     	return result;
     }
@@ -306,25 +449,25 @@ public class StatisticsKeeper implements ItemList {
    
     
 	public long getCount() {
-		return cumulative.getCount();
+		return getCumulative().getCount();
 	}
 	
 	public double getAvg() {
-		return cumulative.getAverage();
+		return getCumulative().getAverage();
 	}
    
     
     public long getFirst() {
-	    return first;
+	    return first.get();
     }
 	public long getLast() {
 		return last;
 	}
     public long getMax() {
-        return cumulative.getMax();
+        return getCumulative().getMax();
     }
     public long getMin() {
-        return cumulative.getMin();
+        return getCumulative().getMin();
     }
 
 	public String getName() {
@@ -334,12 +477,12 @@ public class StatisticsKeeper implements ItemList {
     	return Math.sqrt(getVariance());
     }
     public long getTotal() {
-        return cumulative.getSum();
+        return getCumulative().getSum();
     }
     public long getTotalSquare(){
-    	return cumulative.getSumOfSquares();
+    	return getCumulative().getSumOfSquares();
     }
     public double getVariance() {
-    	return cumulative.getVariance();
+    	return getCumulative().getVariance();
     }
 }
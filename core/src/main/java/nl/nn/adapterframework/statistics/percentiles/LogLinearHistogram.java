@@ -0,0 +1,173 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.statistics.percentiles;
+
+import nl.nn.adapterframework.util.XmlBuilder;
+
+/**
+ * Histogram with log-linear buckets, in the style of HdrHistogram.
+ * <p>
+ * Values below <code>2^(subBucketBits+1)</code> are counted exactly. Larger values are counted in buckets
+ * that each cover 1/<code>2^subBucketBits</code> of a power of two, so the relative error of a percentile
+ * estimate is bounded by <code>2^-subBucketBits</code>, regardless of the number of values recorded.
+ * The bucket array is grown lazily up to the highest bucket used, and never exceeds a fixed size.
+ * </p>
+ * <p>
+ * Histograms can be merged using {@link #add(LogLinearHistogram)}, which allows recording in
+ * separate histograms per thread and combining them when the results are read.
+ * This class is not thread safe by itself.
+ * </p>
+ *
+ * @since   7.3
+ */
+public class LogLinearHistogram {
+
+	public static final int DEFAULT_SUB_BUCKET_BITS=5;
+
+	private static final int INITIAL_SIZE=64;
+
+	private final int subBucketBits;
+	private final int subBucketCount;
+	private final int linearLimit;
+	private final int maxSize;
+
+	private long counts[];
+	private long totalCount;
+
+	public LogLinearHistogram() {
+		this(DEFAULT_SUB_BUCKET_BITS);
+	}
+
+	public LogLinearHistogram(int subBucketBits) {
+		if (subBucketBits<1 || subBucketBits>16) {
+			throw new IllegalArgumentException("subBucketBits ["+subBucketBits+"] outside allowed range [1,16]");
+		}
+		this.subBucketBits=subBucketBits;
+		subBucketCount=1<<subBucketBits;
+		linearLimit=2*subBucketCount;
+		maxSize=getIndex(Long.MAX_VALUE)+1;
+		counts=new long[Math.min(INITIAL_SIZE, maxSize)];
+	}
+
+	protected int getIndex(long value) {
+		if (value<linearLimit) {
+			return value<=0 ? 0 : (int)value;
+		}
+		int exponent=63-Long.numberOfLeadingZeros(value);
+		int shift=exponent-subBucketBits;
+		int subBucket=(int)(value>>shift);
+		return linearLimit+(exponent-subBucketBits-1)*subBucketCount+(subBucket-subBucketCount);
+	}
+
+	/**
+	 * Returns the lowest value that is counted in the bucket at the specified index.
+	 */
+	protected long getLowestValue(int index) {
+		if (index<linearLimit) {
+			return index;
+		}
+		int offset=index-linearLimit;
+		int shift=offset/subBucketCount+1;
+		long subBucket=offset%subBucketCount+subBucketCount;
+		return subBucket<<shift;
+	}
+
+	/**
+	 * Returns the highest value that is counted in the bucket at the specified index.
+	 */
+	protected long getHighestValue(int index) {
+		if (index<linearLimit) {
+			return index;
+		}
+		int shift=(index-linearLimit)/subBucketCount+1;
+		return getLowestValue(index)+(1L<<shift)-1;
+	}
+
+	private void ensureCapacity(int index) {
+		if (index>=counts.length) {
+			int newSize=Math.min(Math.max(index+1, counts.length*2), maxSize);
+			long newCounts[]=new long[newSize];
+			System.arraycopy(counts, 0, newCounts, 0, counts.length);
+			counts=newCounts;
+		}
+	}
+
+	public void addValue(long value) {
+		int index=getIndex(value);
+		ensureCapacity(index);
+		counts[index]++;
+		totalCount++;
+	}
+
+	public void add(LogLinearHistogram other) {
+		if (other.subBucketBits!=subBucketBits) {
+			throw new IllegalArgumentException("cannot add histogram with subBucketBits ["+other.subBucketBits+"] to histogram with subBucketBits ["+subBucketBits+"]");
+		}
+		ensureCapacity(other.counts.length-1);
+		for (int i=0; i<other.counts.length; i++) {
+			counts[i]+=other.counts[i];
+		}
+		totalCount+=other.totalCount;
+	}
+
+	public void clear() {
+		counts=new long[Math.min(INITIAL_SIZE, maxSize)];
+		totalCount=0;
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Returns an estimate of the value below which the specified percentage of the values was recorded,
+	 * or {@link Double#NaN} if no values were recorded.
+	 */
+	public double getValueAtPercentile(double percentage) {
+		if (totalCount==0) {
+			return Double.NaN;
+		}
+		long rank=(long)Math.ceil(percentage*totalCount/100);
+		if (rank<1) {
+			rank=1;
+		}
+		long cumulativeCount=0;
+		for (int i=0; i<counts.length; i++) {
+			cumulativeCount+=counts[i];
+			if (cumulativeCount>=rank) {
+				return (getLowestValue(i)+getHighestValue(i))/2.0;
+			}
+		}
+		return getHighestValue(counts.length-1);
+	}
+
+	/**
+	 * Renders the non-empty buckets as samples, in the same format as {@link PercentileEstimator#getSample(int, long, long, long)}.
+	 */
+	public void addSamples(XmlBuilder samples) {
+		long cumulativeCount=0;
+		for (int i=0; i<counts.length; i++) {
+			if (counts[i]>0) {
+				cumulativeCount+=counts[i];
+				XmlBuilder sample = new XmlBuilder("sample");
+				sample.addAttribute("value",""+getHighestValue(i));
+				sample.addAttribute("rank",""+cumulativeCount);
+				sample.addAttribute("percentile",""+((100*cumulativeCount)-50)/totalCount);
+				samples.addSubElement(sample);
+			}
+		}
+	}
+}
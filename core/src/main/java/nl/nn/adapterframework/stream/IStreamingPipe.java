@@ -0,0 +1,32 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.stream;
+
+import nl.nn.adapterframework.core.IPipe;
+
+/**
+ * Marker interface for pipes that accept a {@link Message} as input of
+ * {@link IPipe#doPipe(Object, nl.nn.adapterframework.core.IPipeLineSession) doPipe()}.
+ * <p>
+ * Pipes that do not implement this interface never see a Message: the pipeline passes them the
+ * contents as a String, decoding binary data using the charset of the message.
+ * </p>
+ * 
+ * @since   7.3
+ */
+public interface IStreamingPipe extends IPipe {
+
+}
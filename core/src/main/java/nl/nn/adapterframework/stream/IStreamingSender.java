@@ -0,0 +1,35 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.stream;
+
+import nl.nn.adapterframework.core.ISenderWithParameters;
+import nl.nn.adapterframework.core.SenderException;
+import nl.nn.adapterframework.core.TimeOutException;
+import nl.nn.adapterframework.parameters.ParameterResolutionContext;
+
+/**
+ * Sender that can consume and produce a {@link Message} without materializing it as a String.
+ * <p>
+ * Implementations must keep supporting the String based {@link #sendMessage(String, String, ParameterResolutionContext) sendMessage()},
+ * so they can still be used by callers that are not aware of streaming.
+ * </p>
+ * 
+ * @since   7.3
+ */
+public interface IStreamingSender extends ISenderWithParameters {
+
+	public Message sendMessage(String correlationID, Message message, ParameterResolutionContext prc) throws SenderException, TimeOutException;
+}
@@ -0,0 +1,343 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.stream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+
+import javax.xml.transform.Source;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.xml.sax.InputSource;
+
+import nl.nn.adapterframework.util.ClassUtils;
+import nl.nn.adapterframework.util.DomBuilderException;
+import nl.nn.adapterframework.util.LogUtil;
+import nl.nn.adapterframework.util.Misc;
+import nl.nn.adapterframework.util.StreamUtil;
+import nl.nn.adapterframework.util.XmlUtils;
+
+/**
+ * Message payload that can be passed through the framework without being materialized as a String.
+ * <p>
+ * A Message wraps either a String, a byte array, a {@link Reader} or an {@link InputStream}.
+ * Messages backed by a String or a byte array can be read multiple times. Messages backed by a
+ * Reader or an InputStream can be read only once, unless {@link #preserve()} is called first, which
+ * buffers the contents in memory. {@link #asString()} and {@link #asByteArray()} preserve the
+ * contents implicitly, so they can safely be followed by other calls.
+ * </p>
+ * <p>
+ * {@link #toString()} never reads a Reader or InputStream, so it is safe to use in log statements. It returns
+ * the contents only for String and byte array based messages. Streaming-aware code should use {@link #asReader()},
+ * {@link #asInputStream()} or {@link #asInputSource()}, other code should use {@link #asString()}.
+ * </p>
+ *
+ * @since   7.3
+ */
+public class Message {
+	protected static Logger log = LogUtil.getLogger(Message.class);
+
+	private Object request;
+	private String charset;
+
+	private Message(Object request, String charset) {
+		this.request = request;
+		this.charset = StringUtils.isNotEmpty(charset) ? charset : StreamUtil.DEFAULT_INPUT_STREAM_ENCODING;
+	}
+
+	public Message(String request) {
+		this(request, null);
+	}
+
+	public Message(byte[] request) {
+		this(request, null);
+	}
+
+	public Message(byte[] request, String charset) {
+		this((Object)request, charset);
+	}
+
+	public Message(Reader request) {
+		this(request, null);
+	}
+
+	public Message(InputStream request) {
+		this(request, null);
+	}
+
+	/**
+	 * @param charset the character encoding used to convert the binary contents to characters.
+	 */
+	public Message(InputStream request, String charset) {
+		this((Object)request, charset);
+	}
+
+	/**
+	 * Wraps an arbitrary pipe input or result in a Message. Messages are returned as is,
+	 * Strings, byte arrays, Readers and InputStreams are wrapped, and other objects are
+	 * converted to a String using their <code>toString()</code> method.
+	 */
+	public static Message asMessage(Object object) {
+		if (object instanceof Message) {
+			return (Message)object;
+		}
+		if (object==null || object instanceof String || object instanceof byte[] || object instanceof Reader || object instanceof InputStream) {
+			return new Message(object, null);
+		}
+		return new Message(object.toString());
+	}
+
+	/**
+	 * Returns <code>true</code> when the object is <code>null</code>, an empty String or an empty Message.
+	 * Unlike <code>StringUtils.isEmpty(object.toString())</code>, this does not read a streaming Message.
+	 */
+	public static boolean isEmpty(Object object) {
+		if (object==null) {
+			return true;
+		}
+		if (object instanceof Message) {
+			try {
+				return ((Message)object).isEmpty();
+			} catch (IOException e) {
+				return false;
+			}
+		}
+		return StringUtils.isEmpty(object.toString());
+	}
+
+	/**
+	 * Returns the object wrapped by this message, without any conversion.
+	 */
+	public Object asObject() {
+		return request;
+	}
+
+	public String getCharset() {
+		return charset;
+	}
+
+	public boolean isNull() {
+		return request==null;
+	}
+
+	/**
+	 * Returns <code>true</code> when the contents are bytes rather than characters.
+	 */
+	public boolean isBinary() {
+		return request instanceof InputStream || request instanceof byte[];
+	}
+
+	/**
+	 * Returns <code>true</code> when the contents can be read more than once.
+	 */
+	public boolean isRepeatable() {
+		return request==null || request instanceof String || request instanceof byte[];
+	}
+
+	/**
+	 * Returns the number of characters (for character data) or bytes (for binary data),
+	 * or <code>-1</code> if the size cannot be determined without reading the message.
+	 */
+	public long size() {
+		if (request==null) {
+			return 0;
+		}
+		if (request instanceof String) {
+			return ((String)request).length();
+		}
+		if (request instanceof byte[]) {
+			return ((byte[])request).length;
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks whether the message has any contents. For streaming messages this peeks
+	 * at the first byte or character, without consuming it.
+	 */
+	public boolean isEmpty() throws IOException {
+		if (request==null) {
+			return true;
+		}
+		if (request instanceof String) {
+			return ((String)request).length()==0;
+		}
+		if (request instanceof byte[]) {
+			return ((byte[])request).length==0;
+		}
+		if (request instanceof Reader) {
+			Reader reader = (Reader)request;
+			if (!reader.markSupported()) {
+				reader = new BufferedReader(reader);
+				request = reader;
+			}
+			reader.mark(1);
+			try {
+				return reader.read()<0;
+			} finally {
+				reader.reset();
+			}
+		}
+		InputStream stream = (InputStream)request;
+		if (!stream.markSupported()) {
+			stream = new BufferedInputStream(stream);
+			request = stream;
+		}
+		stream.mark(1);
+		try {
+			return stream.read()<0;
+		} finally {
+			stream.reset();
+		}
+	}
+
+	/**
+	 * Reads a streaming message into memory, so that it can be read multiple times.
+	 */
+	public void preserve() throws IOException {
+		if (request instanceof Reader) {
+			if (log.isDebugEnabled()) log.debug("preserving Reader as String");
+			StringWriter writer = new StringWriter();
+			Misc.readerToWriter((Reader)request, writer);
+			request = writer.toString();
+		} else if (request instanceof InputStream) {
+			if (log.isDebugEnabled()) log.debug("preserving InputStream as byte[]");
+			request = Misc.streamToBytes((InputStream)request);
+		}
+	}
+
+	public Reader asReader() throws IOException {
+		if (request==null) {
+			return null;
+		}
+		if (request instanceof Reader) {
+			return (Reader)request;
+		}
+		if (request instanceof String) {
+			return new StringReader((String)request);
+		}
+		return new InputStreamReader(asInputStream(), charset);
+	}
+
+	public InputStream asInputStream() throws IOException {
+		if (request==null) {
+			return null;
+		}
+		if (request instanceof InputStream) {
+			return (InputStream)request;
+		}
+		if (request instanceof byte[]) {
+			return new ByteArrayInputStream((byte[])request);
+		}
+		return new ByteArrayInputStream(asString().getBytes(charset));
+	}
+
+	/**
+	 * Renders an InputSource for SAX parsing. Binary messages are passed as a byte stream,
+	 * so that the parser can honour the encoding declared in the xml declaration.
+	 */
+	public InputSource asInputSource() throws IOException {
+		if (request==null) {
+			return null;
+		}
+		if (isBinary()) {
+			return new InputSource(asInputStream());
+		}
+		return new InputSource(asReader());
+	}
+
+	/**
+	 * Renders a Source for XSLT-transformation, that can be used only once.
+	 */
+	public Source asSource(boolean namespaceAware) throws IOException, DomBuilderException {
+		if (request==null) {
+			return null;
+		}
+		return XmlUtils.inputSourceToSAXSource(asInputSource(), namespaceAware, false);
+	}
+
+	public String asString() throws IOException {
+		if (request==null) {
+			return null;
+		}
+		if (request instanceof String) {
+			return (String)request;
+		}
+		preserve();
+		if (request instanceof String) {
+			return (String)request;
+		}
+		return new String((byte[])request, charset);
+	}
+
+	public byte[] asByteArray() throws IOException {
+		if (request==null) {
+			return null;
+		}
+		if (request instanceof byte[]) {
+			return (byte[])request;
+		}
+		if (request instanceof InputStream) {
+			preserve();
+			return (byte[])request;
+		}
+		return asString().getBytes(charset);
+	}
+
+	/**
+	 * Returns the contents of a String or byte array based message, for use by code that is not aware of streaming.
+	 * Messages backed by a Reader or an InputStream are not read, as that would consume or buffer them; for those
+	 * a description of the wrapped object is returned. Use {@link #asString()} to obtain their contents.
+	 */
+	@Override
+	public String toString() {
+		if (request==null) {
+			return null;
+		}
+		if (request instanceof String) {
+			return (String)request;
+		}
+		if (request instanceof byte[]) {
+			try {
+				return new String((byte[])request, charset);
+			} catch (UnsupportedEncodingException e) {
+				log.warn("cannot convert message using charset ["+charset+"]", e);
+				return null;
+			}
+		}
+		return "Message["+ClassUtils.nameOf(request)+(isBinary() ? ", charset="+charset : "")+"]";
+	}
+
+	/**
+	 * Returns the contents of a pipe input or result as a String. Messages, byte arrays and streams are read
+	 * using {@link #asString()}, other objects are converted using their <code>toString()</code> method.
+	 */
+	public static String asString(Object object) throws IOException {
+		if (object==null) {
+			return null;
+		}
+		return asMessage(object).asString();
+	}
+}
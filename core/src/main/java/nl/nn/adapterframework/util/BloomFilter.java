@@ -0,0 +1,127 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.util;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Space efficient, probabilistic set of values. A Bloom filter uses a fixed amount of memory, determined by
+ * the expected number of values and the acceptable false positive probability. {@link #mightContain(byte[])}
+ * never returns <code>false</code> for a value that has been added, but may return <code>true</code> for
+ * a value that has not been added.
+ * <p>
+ * Values are identified by a digest of at least 16 bytes, like an MD5 digest, see {@link #digest(String)}.
+ * Adding and checking values is thread safe and does not lock.
+ * </p>
+ *
+ * @since   7.3
+ */
+public class BloomFilter {
+
+	private final AtomicLongArray bits;
+	private final long numBits;
+	private final int numHashFunctions;
+
+	public BloomFilter(long expectedInsertions, double falsePositiveProbability) {
+		if (expectedInsertions<1) {
+			throw new IllegalArgumentException("expectedInsertions ["+expectedInsertions+"] must be positive");
+		}
+		if (falsePositiveProbability<=0 || falsePositiveProbability>=1) {
+			throw new IllegalArgumentException("falsePositiveProbability ["+falsePositiveProbability+"] must be between 0 and 1");
+		}
+		long optimalNumBits = (long)Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+		int numLongs = (int)Math.min((optimalNumBits+63)/64, Integer.MAX_VALUE);
+		bits = new AtomicLongArray(numLongs);
+		numBits = numLongs*64L;
+		numHashFunctions = Math.max(1, (int)Math.round((double)numBits/expectedInsertions*Math.log(2)));
+	}
+
+	/**
+	 * Returns the MD5 digest of the UTF-8 representation of the value.
+	 */
+	public static byte[] digest(String value) {
+		try {
+			return MessageDigest.getInstance("MD5").digest(value.getBytes("UTF-8"));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static long toLong(byte[] digest, int offset) {
+		long result=0;
+		for (int i=offset; i<offset+8; i++) {
+			result = (result<<8) | (digest[i] & 0xFF);
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the value with the specified digest.
+	 * @return <code>true</code> if the value was certainly not present before.
+	 */
+	public boolean put(byte[] digest) {
+		long hash1=toLong(digest, 0);
+		long hash2=toLong(digest, 8);
+		boolean changed=false;
+		for (int i=0; i<numHashFunctions; i++) {
+			long bitIndex=((hash1+i*hash2) & Long.MAX_VALUE) % numBits;
+			int longIndex=(int)(bitIndex>>>6);
+			long mask=1L<<bitIndex;
+			long current;
+			while (((current=bits.get(longIndex)) & mask)==0) {
+				if (bits.compareAndSet(longIndex, current, current | mask)) {
+					changed=true;
+					break;
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Returns <code>false</code> if the value with the specified digest has certainly not been added.
+	 */
+	public boolean mightContain(byte[] digest) {
+		long hash1=toLong(digest, 0);
+		long hash2=toLong(digest, 8);
+		for (int i=0; i<numHashFunctions; i++) {
+			long bitIndex=((hash1+i*hash2) & Long.MAX_VALUE) % numBits;
+			if ((bits.get((int)(bitIndex>>>6)) & (1L<<bitIndex))==0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void clear() {
+		for (int i=0; i<bits.length(); i++) {
+			bits.set(i, 0);
+		}
+	}
+
+	public long getNumBits() {
+		return numBits;
+	}
+
+	public int getNumHashFunctions() {
+		return numHashFunctions;
+	}
+}
@@ -0,0 +1,154 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread safe cache that holds at most <code>maxSize</code> entries, for at most <code>maxAge</code> ms.
+ * <p>
+ * When the cache is full, the entries that were put first are removed first, like a {@link java.util.LinkedHashMap}
+ * in insertion order. Reading and writing does not lock; the bounds are enforced approximately when multiple threads
+ * write at the same time.
+ * </p>
+ *
+ * @since   7.3
+ */
+public class BoundedCache<K,V> {
+
+	private final int maxSize;
+	private final long maxAge;
+
+	private final ConcurrentMap<K,Entry<K,V>> map = new ConcurrentHashMap<K,Entry<K,V>>();
+	private final Queue<Entry<K,V>> insertionOrder = new ConcurrentLinkedQueue<Entry<K,V>>();
+	private final AtomicInteger queueSize = new AtomicInteger();
+
+	private static class Entry<K,V> {
+		private final K key;
+		private final V value;
+		private final long created;
+
+		Entry(K key, V value) {
+			this.key = key;
+			this.value = value;
+			this.created = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * @param maxSize maximum number of entries
+	 * @param maxAge maximum time in ms an entry is kept, or 0 to keep entries until the cache is full
+	 */
+	public BoundedCache(int maxSize, long maxAge) {
+		this.maxSize = Math.max(0, maxSize);
+		this.maxAge = maxAge;
+	}
+
+	public void put(K key, V value) {
+		if (maxSize==0) {
+			return;
+		}
+		Entry<K,V> entry = new Entry<K,V>(key, value);
+		map.put(key, entry);
+		insertionOrder.add(entry);
+		queueSize.incrementAndGet();
+		evict();
+	}
+
+	/**
+	 * Adds the value if the key is not present yet.
+	 * @return the value that was already present, or <code>null</code> if the value was added.
+	 */
+	public V putIfAbsent(K key, V value) {
+		if (maxSize==0) {
+			return null;
+		}
+		Entry<K,V> entry = new Entry<K,V>(key, value);
+		Entry<K,V> previous;
+		while ((previous=map.putIfAbsent(key, entry))!=null) {
+			if (!isExpired(previous, System.currentTimeMillis())) {
+				return previous.value;
+			}
+			map.remove(key, previous);
+		}
+		insertionOrder.add(entry);
+		queueSize.incrementAndGet();
+		evict();
+		return null;
+	}
+
+	public V get(K key) {
+		Entry<K,V> entry = map.get(key);
+		if (entry==null) {
+			return null;
+		}
+		if (isExpired(entry, System.currentTimeMillis())) {
+			map.remove(key, entry);
+			return null;
+		}
+		return entry.value;
+	}
+
+	public boolean containsKey(K key) {
+		return get(key)!=null;
+	}
+
+	public void remove(K key) {
+		map.remove(key);
+	}
+
+	public void clear() {
+		map.clear();
+		while (insertionOrder.poll()!=null) {
+			queueSize.decrementAndGet();
+		}
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	private boolean isExpired(Entry<K,V> entry, long now) {
+		return maxAge>0 && now-entry.created>maxAge;
+	}
+
+	/**
+	 * Removes the oldest entries while the cache is too large or they are expired. Entries in the queue of which the
+	 * key has been put again or removed are skipped; the queue is trimmed as well, so that it does not grow beyond
+	 * twice the maximum size when the same keys are put repeatedly.
+	 */
+	private void evict() {
+		long now = System.currentTimeMillis();
+		Entry<K,V> eldest;
+		while ((eldest=insertionOrder.peek())!=null) {
+			boolean current = map.get(eldest.key)==eldest;
+			if (current && map.size()<=maxSize && !isExpired(eldest, now)) {
+				break;
+			}
+			if (!current && queueSize.get()<=2*maxSize && map.size()<=maxSize) {
+				break;
+			}
+			if (insertionOrder.remove(eldest)) {
+				queueSize.decrementAndGet();
+				map.remove(eldest.key, eldest);
+			}
+		}
+	}
+}
@@ -0,0 +1,198 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.util;
+
+import java.util.Random;
+
+/**
+ * Circuit breaker that keeps callers away from a failing resource.
+ * <p>
+ * The circuit is <code>CLOSED</code> as long as less than <code>failureThreshold</code> consecutive failures have
+ * been recorded. Then it is <code>OPEN</code>: {@link #allowRequest()} returns <code>false</code> until the open time
+ * has passed. After that the circuit is <code>HALF_OPEN</code> and a single probe request is allowed; its success
+ * closes the circuit, its failure opens it again. The open time starts at <code>minOpenTime</code> and doubles with
+ * every consecutive trip, up to <code>maxOpenTime</code>, with a random jitter of up to half of it so that callers
+ * that failed at the same time do not all retry at the same time.
+ * </p>
+ *
+ * @since   7.3
+ */
+public class CircuitBreaker {
+
+	public enum State { CLOSED, OPEN, HALF_OPEN }
+
+	/**
+	 * Is notified of each change of the state of the circuit, after the change has been made.
+	 */
+	public interface StateListener {
+		void stateChanged(CircuitBreaker circuitBreaker, State oldState, State newState);
+	}
+
+	private final int failureThreshold;
+	private final long minOpenTime;
+	private final long maxOpenTime;
+	private final Random random = new Random();
+
+	private volatile State state = State.CLOSED;
+	private volatile int consecutiveFailures;
+	private int consecutiveTrips;
+	private long openTime;
+	private long openUntil;
+	private long probeStarted;
+	private volatile StateListener stateListener;
+
+	/**
+	 * @param failureThreshold number of consecutive failures that opens the circuit
+	 * @param minOpenTime time in ms the circuit stays open after the first trip
+	 * @param maxOpenTime maximum time in ms the circuit stays open
+	 */
+	public CircuitBreaker(int failureThreshold, long minOpenTime, long maxOpenTime) {
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.minOpenTime = Math.max(1, minOpenTime);
+		this.maxOpenTime = Math.max(this.minOpenTime, maxOpenTime);
+	}
+
+	/**
+	 * Returns <code>true</code> when a request may be made. In state <code>HALF_OPEN</code> only one caller gets
+	 * permission; when it does not report its result within the last open time, another probe is allowed.
+	 */
+	public boolean allowRequest() {
+		if (state==State.CLOSED) {
+			return true;
+		}
+		State oldState;
+		synchronized (this) {
+			oldState = state;
+			long now = System.currentTimeMillis();
+			switch (state) {
+				case CLOSED:
+					return true;
+				case OPEN:
+					if (now<openUntil) {
+						return false;
+					}
+					state = State.HALF_OPEN;
+					probeStarted = now;
+					break;
+				default:
+					if (now-probeStarted<openTime) {
+						return false;
+					}
+					probeStarted = now;
+					return true;
+			}
+		}
+		fireStateChanged(oldState, State.HALF_OPEN);
+		return true;
+	}
+
+	/**
+	 * Returns <code>true</code> while the circuit is open and its open time has not passed. Unlike
+	 * {@link #allowRequest()} it does not limit requests to a single probe once the circuit is half open, for circuits
+	 * whose failures and successes are not the outcome of the requests themselves.
+	 */
+	public boolean isOpen() {
+		if (state!=State.OPEN) {
+			return false;
+		}
+		synchronized (this) {
+			if (state!=State.OPEN) {
+				return false;
+			}
+			long now = System.currentTimeMillis();
+			if (now<openUntil) {
+				return true;
+			}
+			state = State.HALF_OPEN;
+			probeStarted = now;
+		}
+		fireStateChanged(State.OPEN, State.HALF_OPEN);
+		return false;
+	}
+
+	public void recordSuccess() {
+		if (state==State.CLOSED && consecutiveFailures==0) {
+			return;
+		}
+		State oldState;
+		synchronized (this) {
+			oldState = state;
+			consecutiveFailures = 0;
+			consecutiveTrips = 0;
+			state = State.CLOSED;
+		}
+		if (oldState!=State.CLOSED) {
+			fireStateChanged(oldState, State.CLOSED);
+		}
+	}
+
+	public void recordFailure() {
+		State oldState;
+		synchronized (this) {
+			oldState = state;
+			consecutiveFailures++;
+			if (state==State.OPEN || state==State.CLOSED && consecutiveFailures<failureThreshold) {
+				return;
+			}
+			long baseOpenTime = minOpenTime;
+			for (int i=0; i<consecutiveTrips && baseOpenTime<maxOpenTime; i++) {
+				baseOpenTime *= 2;
+			}
+			baseOpenTime = Math.min(baseOpenTime, maxOpenTime);
+			consecutiveTrips++;
+			openTime = baseOpenTime/2 + (long)(random.nextDouble()*(baseOpenTime-baseOpenTime/2));
+			openUntil = System.currentTimeMillis()+openTime;
+			state = State.OPEN;
+		}
+		fireStateChanged(oldState, State.OPEN);
+	}
+
+	/**
+	 * Returns the number of ms until the circuit will allow a probe request, or 0 when it is not open.
+	 */
+	public synchronized long getRemainingOpenTime() {
+		if (state!=State.OPEN) {
+			return 0;
+		}
+		return Math.max(0, openUntil-System.currentTimeMillis());
+	}
+
+	private void fireStateChanged(State oldState, State newState) {
+		StateListener listener = stateListener;
+		if (listener!=null && oldState!=newState) {
+			listener.stateChanged(this, oldState, newState);
+		}
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	/**
+	 * Returns the number of times the circuit opened since it was last closed.
+	 */
+	public synchronized int getConsecutiveTrips() {
+		return consecutiveTrips;
+	}
+
+	public void setStateListener(StateListener stateListener) {
+		this.stateListener = stateListener;
+	}
+}
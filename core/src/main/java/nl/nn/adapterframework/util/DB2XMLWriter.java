@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,15 +15,22 @@
 */
 package nl.nn.adapterframework.util;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+
 import nl.nn.adapterframework.core.SenderException;
 
 import org.apache.log4j.Logger;
+import org.jdom2.Verifier;
 
 /**
  * Transforms a java.sql.Resultset to a XML stream.
@@ -52,6 +59,11 @@ import org.apache.log4j.Logger;
 &lt;/result&gt;
 </pre></code>
  * Note: that the fieldname and columntype are always capital case!
+ * <p>
+ * The rows are written one at a time, so the complete result is never held in memory when it is written to a
+ * Writer. The layout is the same as that of {@link XmlBuilder#toXML()}.
+ * Rows can also be written as a JSON array of objects, using {@link #getJson(ResultSet, int, Writer)}.
+ * </p>
  *
  * @author Johan Verrips
  **/
@@ -68,6 +80,9 @@ public class DB2XMLWriter {
 	private String blobCharset = Misc.DEFAULT_INPUT_STREAM_ENCODING;
 	private static boolean convertFieldnamesToUppercase = AppConstants.getInstance().getBoolean("jdbc.convertFieldnamesToUppercase", false);
 
+	private static final String EOL = "\r\n"; // line separator used by XmlBuilder.toXML()
+	private static final String INDENT = "  ";
+
     public static String getFieldType (int type) {
 	    switch (type) {
 	          case Types.INTEGER : return ("INTEGER");
@@ -98,111 +113,294 @@ public class DB2XMLWriter {
    /**
     * Retrieve the Resultset as a well-formed XML string
     */
-	public synchronized String getXML(ResultSet rs) {
+	public String getXML(ResultSet rs) {
 		return getXML(rs, Integer.MAX_VALUE);
 	}
 
 	/**
 	 * Retrieve the Resultset as a well-formed XML string
 	 */
-	public synchronized String getXML(ResultSet rs, int maxlength) {
+	public String getXML(ResultSet rs, int maxlength) {
 		return getXML(rs, maxlength, true);
 	}
 
-	public synchronized String getXML(ResultSet rs, int maxlength, boolean includeFieldDefinition) {
+	public String getXML(ResultSet rs, int maxlength, boolean includeFieldDefinition) {
 		if (null == rs)
 			return "";
 
+		StringWriter writer = new StringWriter();
+		try {
+			writeXML(rs, maxlength, includeFieldDefinition, writer, true);
+		} catch (IOException e) {
+			// cannot occur when writing to a StringWriter
+			log.error("Error writing result", e);
+		} catch (SenderException e) {
+			// cannot occur, errors reading the rows are logged
+			log.error("Error writing result", e);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Writes the Resultset as a well-formed XML document to a Writer, one row at a time.
+	 * Unlike {@link #getXML(ResultSet, int, boolean)}, an error reading the rows is thrown, as the rows written before
+	 * cannot be taken back.
+	 */
+	public void getXML(ResultSet rs, int maxlength, boolean includeFieldDefinition, Writer writer) throws IOException, SenderException {
+		writeXML(rs, maxlength, includeFieldDefinition, writer, false);
+	}
+
+	/**
+	 * @param logRowErrors when <code>true</code>, an error reading the rows is logged, and the rows read before are written as a
+	 *        complete document
+	 */
+	private void writeXML(ResultSet rs, int maxlength, boolean includeFieldDefinition, Writer writer, boolean logRowErrors) throws IOException, SenderException {
 		if (maxlength < 0)
 			maxlength = Integer.MAX_VALUE;
 
-		XmlBuilder mainElement = new XmlBuilder(docname);
+		writer.write("<"+docname+">"+EOL);
 		Statement stmt=null;
 		try {
 			stmt = rs.getStatement();
 			if (stmt!=null) {
-				JdbcUtil.warningsToXml(stmt.getWarnings(),mainElement);
+				writeIndented(writer, JdbcUtil.warningsToXmlBuilder(stmt.getWarnings()), INDENT);
 			}
 		} catch (SQLException e1) {
 			log.warn("exception obtaining statement warnings", e1);
 		}
 		int rowCounter=0;
+		boolean rowsetStarted=false;
 		try {
 			ResultSetMetaData rsmeta = rs.getMetaData();
 			if (includeFieldDefinition) {
-				int nfields = rsmeta.getColumnCount();
-
-				XmlBuilder fields = new XmlBuilder("fielddefinition");
-				for (int j = 1; j <= nfields; j++) {
-					XmlBuilder field = new XmlBuilder("field");
-
-					String columnName = "" + rsmeta.getColumnName(j);
-					if(convertFieldnamesToUppercase)
-						columnName = columnName.toUpperCase();
-					field.addAttribute("name", columnName);
-
-					//Not every JDBC implementation implements these attributes!
-					try {
-						field.addAttribute("type", "" + getFieldType(rsmeta.getColumnType(j)));
-					} catch (SQLException e) {
-						log.debug("Could not determine columnType",e);
-					}
-					try {
-						field.addAttribute("columnDisplaySize", "" + rsmeta.getColumnDisplaySize(j));
-					} catch (SQLException e) {
-						log.debug("Could not determine columnDisplaySize",e);
-					}
-					try {
-						field.addAttribute("precision", "" + rsmeta.getPrecision(j));
-					} catch (SQLException e) {
-						log.warn("Could not determine precision",e);
-					} catch (NumberFormatException e2) {
-						if (log.isDebugEnabled()) log.debug("Could not determine precision: "+e2.getMessage());
-					}
-					try {
-						field.addAttribute("scale", "" + rsmeta.getScale(j));
-					} catch (SQLException e) {
-						log.debug("Could not determine scale",e);
-					}
-					try {
-						field.addAttribute("isCurrency", "" + rsmeta.isCurrency(j));
-					} catch (SQLException e) {
-						log.debug("Could not determine isCurrency",e);
-					}
-					try {
-						String columnTypeName = "" + rsmeta.getColumnTypeName(j);
-						if(convertFieldnamesToUppercase)
-							columnTypeName = columnTypeName.toUpperCase();
-						field.addAttribute("columnTypeName", columnTypeName);
-					} catch (SQLException e) {
-						log.debug("Could not determine columnTypeName",e);
-					}
-					try {
-						field.addAttribute("columnClassName", "" + rsmeta.getColumnClassName(j));
-					} catch (SQLException e) {
-						log.debug("Could not determine columnClassName",e);
-					}
-					fields.addSubElement(field);
-				}
-				mainElement.addSubElement(fields);
+				writeIndented(writer, getFieldDefinitionXml(rsmeta), INDENT);
 			}
 
 			//----------------------------------------
 			// Process result rows
 			//----------------------------------------
 
-			XmlBuilder queryresult = new XmlBuilder(recordname);
-			while (rs.next() && rowCounter < maxlength) {
-				XmlBuilder row = getRowXml(rs,rowCounter,rsmeta,getBlobCharset(),decompressBlobs,nullValue,trimSpaces,getBlobSmart);
-				queryresult.addSubElement(row);
+			writer.write(INDENT+"<"+recordname);
+			rowsetStarted=true;
+			StringBuilder row = new StringBuilder();
+			while (rowCounter < maxlength && rs.next()) {
+				row.setLength(0);
+				appendRowXml(row, rs, rowCounter, rsmeta, getBlobCharset(), decompressBlobs, nullValue, trimSpaces, getBlobSmart, INDENT+INDENT);
+				if (rowCounter==0) {
+					writer.write(">"+EOL);
+				}
+				writer.write(row.toString());
 				rowCounter++;
 			}
-			mainElement.addSubElement(queryresult);
+		} catch (IOException e) {
+			throw e;
 		} catch (Exception e) {
+			if (!logRowErrors) {
+				throw new SenderException("Error occured at row [" + rowCounter+"]", e);
+			}
 			log.error("Error occured at row [" + rowCounter+"]", e);
 		}
-		String answer = mainElement.toXML();
-		return answer;
+		if (rowsetStarted) {
+			writer.write(rowCounter==0 ? " />"+EOL : INDENT+"</"+recordname+">"+EOL);
+		}
+		writer.write("</"+docname+">"+EOL);
+		writer.flush();
+	}
+
+	/**
+	 * Writes the rows of the Resultset as a JSON array of objects to a Writer, one row at a time. Each object has a
+	 * property for each column, with the value of the column as string, or <code>null</code>.
+	 */
+	public void getJson(ResultSet rs, int maxlength, Writer writer) throws SenderException, SQLException {
+		if (maxlength < 0)
+			maxlength = Integer.MAX_VALUE;
+
+		ResultSetMetaData rsmeta = rs.getMetaData();
+		int nfields = rsmeta.getColumnCount();
+		String[] columnNames = new String[nfields+1];
+		for (int i = 1; i <= nfields; i++) {
+			columnNames[i] = getColumnName(rsmeta, i);
+		}
+		JsonGenerator generator = Json.createGenerator(writer);
+		generator.writeStartArray();
+		int rowCounter=0;
+		while (rowCounter < maxlength && rs.next()) {
+			generator.writeStartObject();
+			for (int i = 1; i <= nfields; i++) {
+				String value = getFieldValue(rs, i, rsmeta, getBlobCharset(), decompressBlobs, nullValue, trimSpaces, getBlobSmart);
+				if (rs.wasNull()) {
+					generator.writeNull(columnNames[i]);
+				} else {
+					generator.write(columnNames[i], value);
+				}
+			}
+			generator.writeEnd();
+			rowCounter++;
+		}
+		generator.writeEnd();
+		generator.flush();
+	}
+
+	private static String getColumnName(ResultSetMetaData rsmeta, int column) throws SQLException {
+		String columnName = "" + rsmeta.getColumnName(column);
+		if(convertFieldnamesToUppercase)
+			columnName = columnName.toUpperCase();
+		return columnName;
+	}
+
+	private static String getFieldValue(ResultSet rs, int column, ResultSetMetaData rsmeta, String blobCharset, boolean decompressBlobs, String nullValue, boolean trimSpaces, boolean getBlobSmart) throws SenderException, SQLException {
+		try {
+			return JdbcUtil.getValue(rs, column, rsmeta, blobCharset, decompressBlobs, nullValue, trimSpaces, getBlobSmart, false);
+		} catch (Exception e) {
+			throw new SenderException("error getting fieldvalue column ["+column+"] fieldType ["+getFieldType(rsmeta.getColumnType(column))+ "]", e);
+		}
+	}
+
+	private XmlBuilder getFieldDefinitionXml(ResultSetMetaData rsmeta) throws SQLException {
+		int nfields = rsmeta.getColumnCount();
+
+		XmlBuilder fields = new XmlBuilder("fielddefinition");
+		for (int j = 1; j <= nfields; j++) {
+			XmlBuilder field = new XmlBuilder("field");
+
+			field.addAttribute("name", getColumnName(rsmeta, j));
+
+			//Not every JDBC implementation implements these attributes!
+			try {
+				field.addAttribute("type", "" + getFieldType(rsmeta.getColumnType(j)));
+			} catch (SQLException e) {
+				log.debug("Could not determine columnType",e);
+			}
+			try {
+				field.addAttribute("columnDisplaySize", "" + rsmeta.getColumnDisplaySize(j));
+			} catch (SQLException e) {
+				log.debug("Could not determine columnDisplaySize",e);
+			}
+			try {
+				field.addAttribute("precision", "" + rsmeta.getPrecision(j));
+			} catch (SQLException e) {
+				log.warn("Could not determine precision",e);
+			} catch (NumberFormatException e2) {
+				if (log.isDebugEnabled()) log.debug("Could not determine precision: "+e2.getMessage());
+			}
+			try {
+				field.addAttribute("scale", "" + rsmeta.getScale(j));
+			} catch (SQLException e) {
+				log.debug("Could not determine scale",e);
+			}
+			try {
+				field.addAttribute("isCurrency", "" + rsmeta.isCurrency(j));
+			} catch (SQLException e) {
+				log.debug("Could not determine isCurrency",e);
+			}
+			try {
+				String columnTypeName = "" + rsmeta.getColumnTypeName(j);
+				if(convertFieldnamesToUppercase)
+					columnTypeName = columnTypeName.toUpperCase();
+				field.addAttribute("columnTypeName", columnTypeName);
+			} catch (SQLException e) {
+				log.debug("Could not determine columnTypeName",e);
+			}
+			try {
+				field.addAttribute("columnClassName", "" + rsmeta.getColumnClassName(j));
+			} catch (SQLException e) {
+				log.debug("Could not determine columnClassName",e);
+			}
+			fields.addSubElement(field);
+		}
+		return fields;
+	}
+
+	/**
+	 * Returns a single row as XML, in the same layout as {@link #getRowXml(ResultSet, int, ResultSetMetaData, String, boolean, String, boolean, boolean)},
+	 * without building an {@link XmlBuilder} tree.
+	 */
+	public static String getRowXmlString(ResultSet rs, int rowNumber, ResultSetMetaData rsmeta, String blobCharset, boolean decompressBlobs, String nullValue, boolean trimSpaces, boolean getBlobSmart) throws SenderException, SQLException {
+		StringBuilder row = new StringBuilder();
+		appendRowXml(row, rs, rowNumber, rsmeta, blobCharset, decompressBlobs, nullValue, trimSpaces, getBlobSmart, "");
+		return row.toString();
+	}
+
+	private static void appendRowXml(StringBuilder row, ResultSet rs, int rowNumber, ResultSetMetaData rsmeta, String blobCharset, boolean decompressBlobs, String nullValue, boolean trimSpaces, boolean getBlobSmart, String indent) throws SenderException, SQLException {
+		row.append(indent).append("<row number=\"").append(rowNumber).append("\">").append(EOL);
+		String fieldIndent = indent+INDENT;
+		for (int i = 1; i <= rsmeta.getColumnCount(); i++) {
+			String value = getFieldValue(rs, i, rsmeta, blobCharset, decompressBlobs, nullValue, trimSpaces, getBlobSmart);
+			boolean wasNull = rs.wasNull();
+			if (value != null && Verifier.checkCharacterData(value) != null) {
+				throw new SenderException("error getting fieldvalue column ["+i+"] fieldType ["+getFieldType(rsmeta.getColumnType(i))+ "]: "+Verifier.checkCharacterData(value));
+			}
+			row.append(fieldIndent).append("<field name=\"");
+			appendEscaped(row, getColumnName(rsmeta, i), true);
+			row.append('"');
+			if (wasNull) {
+				row.append(" null=\"true\"");
+			}
+			String text = value == null ? "" : trimXmlWhitespace(value);
+			if (text.length() == 0) {
+				row.append(" />");
+			} else {
+				row.append('>');
+				appendEscaped(row, text, false);
+				row.append("</field>");
+			}
+			row.append(EOL);
+		}
+		XmlBuilder warnings = JdbcUtil.warningsToXmlBuilder(rs.getWarnings());
+		if (warnings != null) {
+			appendIndented(row, warnings.toXML(), fieldIndent);
+		}
+		row.append(indent).append("</row>").append(EOL);
+	}
+
+	private static void writeIndented(Writer writer, XmlBuilder element, String indent) throws IOException {
+		if (element != null) {
+			StringBuilder xml = new StringBuilder();
+			appendIndented(xml, element.toXML(), indent);
+			writer.write(xml.toString());
+		}
+	}
+
+	/*
+	 * Only used for elements without text content, that have no line separators other than those between the elements.
+	 */
+	private static void appendIndented(StringBuilder target, String xml, String indent) {
+		for (String line : xml.split(EOL)) {
+			if (line.length() > 0) {
+				target.append(indent).append(line).append(EOL);
+			}
+		}
+	}
+
+	/*
+	 * Text content is trimmed like the pretty format of XmlBuilder does.
+	 */
+	private static String trimXmlWhitespace(String value) {
+		int start = 0;
+		int end = value.length();
+		while (start < end && Verifier.isXMLWhitespace(value.charAt(start))) {
+			start++;
+		}
+		while (end > start && Verifier.isXMLWhitespace(value.charAt(end-1))) {
+			end--;
+		}
+		return value.substring(start, end);
+	}
+
+	private static void appendEscaped(StringBuilder target, String value, boolean attribute) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '&': target.append("&amp;"); break;
+				case '<': target.append("&lt;"); break;
+				case '>': target.append("&gt;"); break;
+				case '\r': target.append("&#xD;"); break;
+				case '"': target.append(attribute ? "&quot;" : "\""); break;
+				case '\t': target.append(attribute ? "&#x9;" : "\t"); break;
+				case '\n': target.append(attribute ? "&#xA;" : EOL); break;
+				default: target.append(c);
+			}
+		}
 	}
 
 	public static XmlBuilder getRowXml(ResultSet rs, int rowNumber, ResultSetMetaData rsmeta, String blobCharset, boolean decompressBlobs, String nullValue, boolean trimSpaces, boolean getBlobSmart) throws SenderException, SQLException {
@@ -42,6 +42,7 @@ import nl.nn.adapterframework.parameters.ParameterList;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 import nl.nn.adapterframework.parameters.ParameterValue;
 import nl.nn.adapterframework.parameters.ParameterValueList;
+import nl.nn.adapterframework.stream.Message;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang.StringUtils;
@@ -166,7 +167,16 @@ public class FileHandler {
 	
 	public Object handle(Object input, IPipeLineSession session, ParameterList paramList) throws Exception {
 		Object output = null;
-		if (input instanceof byte[]) {
+		if (input instanceof Message) {
+			Message message = (Message)input;
+			if (message.isBinary() && !message.isRepeatable() && transformers.get(0) instanceof TransformerActionWithInputTypeStream) {
+				output = message.asInputStream();
+			} else if (message.isBinary()) {
+				output = message.asByteArray();
+			} else {
+				output = message.isNull() ? null : message.asString().getBytes(charset);
+			}
+		} else if (input instanceof byte[]) {
 			output = (byte[])input;
 		} else if (input instanceof InputStream) {
 			if (transformers.get(0) instanceof TransformerActionWithInputTypeStream) {
@@ -1,5 +1,5 @@
 /*
-   Copyright 2016, 2018 Nationale-Nederlanden
+   Copyright 2016, 2018, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -21,7 +21,7 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.List;
 
-import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 
 import nl.nn.adapterframework.configuration.Configuration;
 import nl.nn.adapterframework.configuration.ConfigurationException;
@@ -99,9 +99,7 @@ public class FlowDiagram {
 		String dotOutput = null;
 
 		try {
-			URL xsltSource = ClassUtils.getResourceURL(this, CONFIG2DOT_XSLT);
-			Transformer transformer = XmlUtils.createTransformer(xsltSource);
-			dotOutput = XmlUtils.transformXml(transformer, dotInput);
+			dotOutput = getTransformerPool(CONFIG2DOT_XSLT).transform(dotInput, null);
 		}
 		catch(Exception e) {
 			log.warn("failed to create dot file for adapter["+adapter.getName()+"]", e);
@@ -121,9 +119,7 @@ public class FlowDiagram {
 		String dotOutput = null;
 
 		try {
-			URL xsltSource = ClassUtils.getResourceURL(this, IBIS2DOT_XSLT);
-			Transformer transformer = XmlUtils.createTransformer(xsltSource);
-			dotOutput = XmlUtils.transformXml(transformer, dotInput);
+			dotOutput = getTransformerPool(IBIS2DOT_XSLT).transform(dotInput, null);
 		}
 		catch(Exception e) {
 			log.warn("failed to create dot file for configuration["+configuration.getName()+"]", e);
@@ -147,9 +143,7 @@ public class FlowDiagram {
 		String dotOutput = null;
 
 		try {
-			URL xsltSource = ClassUtils.getResourceURL(this, IBIS2DOT_XSLT);
-			Transformer transformer = XmlUtils.createTransformer(xsltSource);
-			dotOutput = XmlUtils.transformXml(transformer, dotInput);
+			dotOutput = getTransformerPool(IBIS2DOT_XSLT).transform(dotInput, null);
 		}
 		catch(Exception e) {
 			log.warn("failed to create dot file for configurations"+configurations.toString()+"", e);
@@ -159,6 +153,15 @@ public class FlowDiagram {
 		generateFlowDiagram(name, dotOutput, destFile);
 	}
 
+	private TransformerPool getTransformerPool(String xslt) throws ConfigurationException, TransformerConfigurationException, IOException {
+		URL xsltSource = ClassUtils.getResourceURL(this, xslt);
+		if (xsltSource == null) {
+			throw new ConfigurationException("cannot find resource [" + xslt + "]");
+		}
+		// cached, the stylesheet is compiled only once
+		return TransformerPool.getInstance(xsltSource, 0, true);
+	}
+
 	public File retrieveAdapterFlowFile(IAdapter iAdapter) {
 		return retrieveFlowFile(adapterFlowDir, iAdapter.getName());
 	}
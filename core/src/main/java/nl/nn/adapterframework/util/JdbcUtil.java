@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2014, 2017, 2018 Nationale-Nederlanden
+   Copyright 2013, 2014, 2017-2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -54,6 +54,7 @@ import javax.jms.TextMessage;
 import nl.nn.adapterframework.core.IMessageWrapper;
 import nl.nn.adapterframework.jdbc.JdbcException;
 import nl.nn.adapterframework.jdbc.JdbcFacade;
+import nl.nn.adapterframework.jdbc.StoredMessageEncoder;
 import nl.nn.adapterframework.jdbc.dbms.IDbmsSupport;
 import nl.nn.adapterframework.jms.JmsRealmFactory;
 import nl.nn.adapterframework.parameters.Parameter;
@@ -341,41 +342,52 @@ public class JdbcUtil {
 			byte[] buf = new byte[bl];
 			int bl1 = is.read(buf);
 
-			Inflater decompressor = new Inflater();
-			decompressor.setInput(buf);
-			ByteArrayOutputStream bos = new ByteArrayOutputStream(buf.length);
-			byte[] bufDecomp = new byte[1024];
-			boolean decompresOK = true;
-			while (!decompressor.finished()) {
+			Object result = null;
+			boolean objectOK = true;
+			if (StoredMessageEncoder.isEncoded(buf)) {
 				try {
-					int count = decompressor.inflate(bufDecomp);
-					if (count==0) {
+					result = StoredMessageEncoder.decode(buf);
+				} catch (ClassNotFoundException e) {
+					throw new JdbcException("could not decode message in column ["+column+"]", e);
+				}
+				if (result instanceof byte[]) {
+					result = new String((byte[])result, charset);
+				}
+			} else {
+				Inflater decompressor = new Inflater();
+				decompressor.setInput(buf);
+				ByteArrayOutputStream bos = new ByteArrayOutputStream(buf.length);
+				byte[] bufDecomp = new byte[1024];
+				boolean decompresOK = true;
+				while (!decompressor.finished()) {
+					try {
+						int count = decompressor.inflate(bufDecomp);
+						if (count==0) {
+							break;
+						}
+						bos.write(bufDecomp, 0, count);
+					} catch (DataFormatException e) {
+						log.debug("message in column ["+column+"] is not compressed");
+						decompresOK = false;
 						break;
 					}
-					bos.write(bufDecomp, 0, count);
-				} catch (DataFormatException e) {
-					log.debug("message in column ["+column+"] is not compressed");
-					decompresOK = false;
-					break;
 				}
-			}
-			bos.close();
-			if (decompresOK)
-				buf = bos.toByteArray(); 
+				bos.close();
+				if (decompresOK)
+					buf = bos.toByteArray(); 
 
-			Object result = null;
-			ObjectInputStream ois = null;
-			boolean objectOK = true;
-			try {
-				ByteArrayInputStream bis = new ByteArrayInputStream(buf);
-				ois = new ObjectInputStream(bis);
-				result = ois.readObject();
-			} catch (Exception e) {
-				log.debug("message in column ["+column+"] is probably not a serialized object: "+e.getClass().getName());
-				objectOK=false;
+				ObjectInputStream ois = null;
+				try {
+					ByteArrayInputStream bis = new ByteArrayInputStream(buf);
+					ois = new ObjectInputStream(bis);
+					result = ois.readObject();
+				} catch (Exception e) {
+					log.debug("message in column ["+column+"] is probably not a serialized object: "+e.getClass().getName());
+					objectOK=false;
+				}
+				if (ois!=null)
+					ois.close();
 			}
-			if (ois!=null)
-				ois.close();
 		
 			String rawMessage;
 			if (objectOK) {
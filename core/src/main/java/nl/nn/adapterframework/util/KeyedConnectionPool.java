@@ -0,0 +1,190 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.pool.BaseKeyedPoolableObjectFactory;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+import org.apache.log4j.Logger;
+
+import nl.nn.adapterframework.core.SenderException;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+
+/**
+ * Pool of connections to external systems, kept per key, e.g. per server and user. Subclasses implement how a
+ * connection is created, validated and closed.
+ * <p>
+ * Connections are checked before they are handed out when <code>testOnBorrow</code> is set, and connections that
+ * have been idle for <code>idleTimeout</code> ms are closed. When <code>maxActive</code> connections for a key are in
+ * use, a borrower waits at most <code>maxWait</code> ms for one to be returned. <code>maxTotal</code> limits the number
+ * of connections over all keys, so that many different keys cannot open an unbounded number of connections; when it
+ * is reached, idle connections of other keys are closed to make room.
+ * </p>
+ *
+ * @param <K> key of the connections that can be shared; it must not be changed while it is used by the pool
+ * @param <C> type of the pooled connections
+ *
+ * @since   7.3
+ */
+public abstract class KeyedConnectionPool<K,C> {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private final GenericKeyedObjectPool pool;
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong createCount = new AtomicLong();
+	private final AtomicLong validationFailureCount = new AtomicLong();
+
+	private class ConnectionFactory extends BaseKeyedPoolableObjectFactory {
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Object makeObject(Object key) throws Exception {
+			C connection = createConnection((K)key);
+			createCount.incrementAndGet();
+			return connection;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void destroyObject(Object key, Object obj) throws Exception {
+			closeConnection((K)key, (C)obj);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public boolean validateObject(Object key, Object obj) {
+			if (validateConnection((K)key, (C)obj)) {
+				return true;
+			}
+			validationFailureCount.incrementAndGet();
+			return false;
+		}
+	}
+
+	protected KeyedConnectionPool(int maxActive, int maxTotal, int maxIdle, long maxWait, boolean testOnBorrow, long idleTimeout, long evictionInterval) {
+		pool = new GenericKeyedObjectPool(new ConnectionFactory());
+		pool.setMaxActive(maxActive);
+		pool.setMaxTotal(maxTotal);
+		pool.setMaxIdle(maxIdle);
+		pool.setMaxWait(maxWait);
+		pool.setWhenExhaustedAction(GenericKeyedObjectPool.WHEN_EXHAUSTED_BLOCK);
+		pool.setTestOnBorrow(testOnBorrow);
+		pool.setTestWhileIdle(true);
+		pool.setMinEvictableIdleTimeMillis(idleTimeout);
+		pool.setTimeBetweenEvictionRunsMillis(evictionInterval);
+		// check all idle connections in every eviction run
+		pool.setNumTestsPerEvictionRun(-1);
+	}
+
+	protected abstract C createConnection(K key) throws Exception;
+
+	/**
+	 * Returns <code>true</code> when the connection can still be used. Called before a connection is handed out when
+	 * <code>testOnBorrow</code> is set, and for idle connections.
+	 */
+	protected abstract boolean validateConnection(K key, C connection);
+
+	protected abstract void closeConnection(K key, C connection) throws Exception;
+
+	/**
+	 * Returns the description of <code>key</code> used in log and exception messages. Subclasses whose keys contain
+	 * credentials must override this, to keep them out of the log.
+	 */
+	protected String describeKey(K key) {
+		return String.valueOf(key);
+	}
+
+	/**
+	 * Returns a connection for <code>key</code>, that must be given back with {@link #returnConnection(Object, Object)}
+	 * or {@link #invalidateConnection(Object, Object)} after use.
+	 * @throws java.util.NoSuchElementException when no connection became available within <code>maxWait</code> ms
+	 * @throws Exception when {@link #createConnection(Object)} failed
+	 */
+	@SuppressWarnings("unchecked")
+	public C borrowConnection(K key) throws Exception {
+		C connection = (C)pool.borrowObject(key);
+		borrowCount.incrementAndGet();
+		return connection;
+	}
+
+	public void returnConnection(K key, C connection) {
+		try {
+			pool.returnObject(key, connection);
+		} catch (Exception e) {
+			log.warn("Exception returning connection for [" + describeKey(key) + "] to pool", e);
+		}
+	}
+
+	/**
+	 * Closes a connection obtained from {@link #borrowConnection(Object)} instead of returning it to the pool, e.g.
+	 * after it failed.
+	 */
+	public void invalidateConnection(K key, C connection) {
+		try {
+			pool.invalidateObject(key, connection);
+		} catch (Exception e) {
+			log.warn("Exception closing connection for [" + describeKey(key) + "]", e);
+		}
+	}
+
+	public int getNumActive(K key) {
+		return pool.getNumActive(key);
+	}
+
+	public int getNumIdle(K key) {
+		return pool.getNumIdle(key);
+	}
+
+	/**
+	 * Number of connections handed out, either reused or newly created.
+	 */
+	public long getBorrowCount() {
+		return borrowCount.get();
+	}
+
+	/**
+	 * Number of connections created, i.e. the number of borrows that could not reuse a pooled connection.
+	 */
+	public long getCreateCount() {
+		return createCount.get();
+	}
+
+	public long getValidationFailureCount() {
+		return validationFailureCount.get();
+	}
+
+	/**
+	 * Adds a <code>connectionPool</code> group with the figures of the pool to the statistics of <code>name</code>, for
+	 * use in {@link nl.nn.adapterframework.statistics.HasStatistics#iterateOverStatistics(StatisticsKeeperIterationHandler, Object, int) iterateOverStatistics()}.
+	 */
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, String name, K key) throws SenderException {
+		Object poolData = hski.openGroup(data, name, "connectionPool");
+		hski.handleScalar(poolData, "active", getNumActive(key));
+		hski.handleScalar(poolData, "idle", getNumIdle(key));
+		hski.handleScalar(poolData, "borrowed (all pools)", getBorrowCount());
+		hski.handleScalar(poolData, "created (all pools)", getCreateCount());
+		hski.handleScalar(poolData, "validation failures (all pools)", getValidationFailureCount());
+		hski.closeGroup(poolData);
+	}
+
+	/**
+	 * Closes all idle connections.
+	 */
+	public void clear() {
+		pool.clear();
+	}
+}
@@ -0,0 +1,501 @@
+/*
+   Copyright 2019 Nationale-Nederlanden
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * ContentHandler that passes the elements selected by a simple XPath expression to another ContentHandler, while the
+ * document is being parsed. The selected elements are wrapped in a single root element, like the result of
+ * <code>&lt;root&gt;&lt;xsl:copy-of select="..."/&gt;&lt;/root&gt;</code> with whitespace stripped, but without
+ * building a tree of the document first.
+ * <p>
+ * The following subset of XPath is supported:
+ * <ul>
+ * <li>location paths of child (<code>/</code>) and descendant (<code>//</code>) steps, relative to the document</li>
+ * <li>name tests <code>name</code>, <code>prefix:name</code>, <code>prefix:*</code> and <code>*</code>; prefixes are
+ * resolved using namespace definitions of the form <code>prefix=namespaceuri</code></li>
+ * <li>predicates <code>[@attribute]</code>, <code>[@attribute='value']</code> and <code>[n]</code></li>
+ * </ul>
+ * {@link #compile(String, String, boolean)} returns <code>null</code> for other expressions.
+ * </p>
+ * <p>
+ * Selected elements are passed as soon as they are parsed. Memory use is proportional to the depth of the document,
+ * except for selected elements nested in other selected elements: these are kept until the outer element has ended,
+ * to pass them in document order.
+ * </p>
+ * <p>
+ * A {@link TextCollector} can be used as handler to obtain the string values of the selected elements, like the XPath
+ * transformer with outputType <code>text</code>.
+ * </p>
+ *
+ * @since   7.3
+ */
+public class StreamingXPathFilter extends DefaultHandler {
+
+	public static final String ROOT_ELEMENT = "root";
+
+	private final Step[] steps;
+	private final ContentHandler handler;
+
+	private final List<Frame> frames = new ArrayList<Frame>();
+	private Frame documentFrame;
+	private int forwardingDepth = 0;
+	private final List<EventRecorder> activeRecorders = new ArrayList<EventRecorder>();
+	private final List<EventRecorder> nestedMatches = new ArrayList<EventRecorder>();
+	private final StringBuilder pendingCharacters = new StringBuilder();
+
+	private static class Step {
+		boolean descendant;
+		String namespaceUri; // null matches any namespace
+		String localName;    // null matches any name
+		Predicate[] predicates;
+	}
+
+	private static class Predicate {
+		String attributeName; // null for a position predicate
+		String attributeValue;
+		int position;
+	}
+
+	private static class Frame {
+		BitSet matched;
+		BitSet inherited;
+		int[][] counts;
+		boolean selected;
+	}
+
+	private StreamingXPathFilter(Step[] steps, ContentHandler handler) {
+		this.steps = steps;
+		this.handler = handler;
+	}
+
+	/**
+	 * Compiled expression, that creates a filter for each document to be processed.
+	 */
+	public static class Expression {
+		private final Step[] steps;
+
+		private Expression(Step[] steps) {
+			this.steps = steps;
+		}
+
+		public StreamingXPathFilter createFilter(ContentHandler handler) {
+			return new StreamingXPathFilter(steps, handler);
+		}
+	}
+
+	/**
+	 * Compiles an XPath expression.
+	 * @param namespaceDefs comma or space separated list of <code>prefix=namespaceuri</code>-definitions, may be <code>null</code>
+	 * @param namespaceAware when <code>false</code>, names without prefix match elements in any namespace, and prefixes are not supported
+	 * @return the compiled expression, or <code>null</code> when it is not in the supported subset of XPath.
+	 */
+	public static Expression compile(String xpath, String namespaceDefs, boolean namespaceAware) {
+		Map<String,String> namespaces = new HashMap<String,String>();
+		if (namespaceDefs != null) {
+			StringTokenizer st = new StringTokenizer(namespaceDefs, ", \t\r\n\f");
+			while (st.hasMoreTokens()) {
+				String namespaceDef = st.nextToken();
+				int separatorPos = namespaceDef.indexOf('=');
+				if (separatorPos < 1) {
+					return null;
+				}
+				namespaces.put(namespaceDef.substring(0, separatorPos), namespaceDef.substring(separatorPos + 1));
+			}
+		}
+		Parser parser = new Parser(xpath.trim(), namespaces, namespaceAware);
+		Step[] steps = parser.parse();
+		return steps == null ? null : new Expression(steps);
+	}
+
+	private static class Parser {
+		private final String xpath;
+		private final Map<String,String> namespaces;
+		private final boolean namespaceAware;
+		private int pos = 0;
+
+		Parser(String xpath, Map<String,String> namespaces, boolean namespaceAware) {
+			this.xpath = xpath;
+			this.namespaces = namespaces;
+			this.namespaceAware = namespaceAware;
+		}
+
+		Step[] parse() {
+			List<Step> steps = new ArrayList<Step>();
+			if (xpath.length() == 0) {
+				return null;
+			}
+			boolean first = true;
+			while (pos < xpath.length()) {
+				boolean descendant = false;
+				if (xpath.startsWith("//", pos)) {
+					descendant = true;
+					pos += 2;
+				} else if (xpath.charAt(pos) == '/') {
+					pos++;
+				} else if (!first) {
+					return null;
+				}
+				first = false;
+				Step step = parseStep(descendant);
+				if (step == null) {
+					return null;
+				}
+				steps.add(step);
+			}
+			return steps.toArray(new Step[steps.size()]);
+		}
+
+		private Step parseStep(boolean descendant) {
+			Step step = new Step();
+			step.descendant = descendant;
+			String name = parseName(true);
+			if (name == null) {
+				return null;
+			}
+			int colon = name.indexOf(':');
+			if (colon >= 0) {
+				if (!namespaceAware) {
+					return null;
+				}
+				step.namespaceUri = namespaces.get(name.substring(0, colon));
+				if (step.namespaceUri == null) {
+					return null;
+				}
+				name = name.substring(colon + 1);
+			} else if (namespaceAware && !"*".equals(name)) {
+				step.namespaceUri = "";
+			}
+			step.localName = "*".equals(name) ? null : name;
+			List<Predicate> predicates = new ArrayList<Predicate>();
+			while (pos < xpath.length() && xpath.charAt(pos) == '[') {
+				pos++;
+				Predicate predicate = parsePredicate();
+				if (predicate == null || pos >= xpath.length() || xpath.charAt(pos) != ']') {
+					return null;
+				}
+				pos++;
+				predicates.add(predicate);
+			}
+			step.predicates = predicates.toArray(new Predicate[predicates.size()]);
+			return step;
+		}
+
+		private Predicate parsePredicate() {
+			skipSpaces();
+			Predicate predicate = new Predicate();
+			if (pos < xpath.length() && xpath.charAt(pos) == '@') {
+				pos++;
+				predicate.attributeName = parseName(false);
+				if (predicate.attributeName == null || predicate.attributeName.indexOf(':') >= 0) {
+					return null;
+				}
+				skipSpaces();
+				if (pos < xpath.length() && xpath.charAt(pos) == '=') {
+					pos++;
+					skipSpaces();
+					if (pos >= xpath.length()) {
+						return null;
+					}
+					char quote = xpath.charAt(pos);
+					int end = quote == '\'' || quote == '"' ? xpath.indexOf(quote, pos + 1) : -1;
+					if (end < 0) {
+						return null;
+					}
+					predicate.attributeValue = xpath.substring(pos + 1, end);
+					pos = end + 1;
+				}
+			} else {
+				int start = pos;
+				while (pos < xpath.length() && Character.isDigit(xpath.charAt(pos))) {
+					pos++;
+				}
+				if (pos == start) {
+					return null;
+				}
+				predicate.position = Integer.parseInt(xpath.substring(start, pos));
+				if (predicate.position < 1) {
+					return null;
+				}
+			}
+			skipSpaces();
+			return predicate;
+		}
+
+		private String parseName(boolean allowWildcard) {
+			int start = pos;
+			while (pos < xpath.length()) {
+				char c = xpath.charAt(pos);
+				if (Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' || c == ':' || (allowWildcard && c == '*')) {
+					pos++;
+				} else {
+					break;
+				}
+			}
+			String name = xpath.substring(start, pos);
+			if (name.length() == 0 || name.endsWith(":") || name.indexOf("::") >= 0) {
+				return null;
+			}
+			int star = name.indexOf('*');
+			if (star >= 0 && !(name.equals("*") || star == name.length() - 1 && name.charAt(star - 1) == ':')) {
+				return null;
+			}
+			return name;
+		}
+
+		private void skipSpaces() {
+			while (pos < xpath.length() && xpath.charAt(pos) == ' ') {
+				pos++;
+			}
+		}
+	}
+
+	private boolean matchesName(Step step, String uri, String localName) {
+		return (step.namespaceUri == null || step.namespaceUri.equals(uri == null ? "" : uri))
+				&& (step.localName == null || step.localName.equals(localName));
+	}
+
+	private boolean isSelected(String uri, String localName, Attributes attributes, Frame parent, Frame frame) {
+		int depth = frames.size() + 1;
+		for (int j = 0; j < steps.length; j++) {
+			Step step = steps[j];
+			boolean inContext;
+			if (j == 0) {
+				inContext = step.descendant || depth == 1;
+			} else if (parent == null) {
+				inContext = false;
+			} else {
+				inContext = parent.matched.get(j - 1) || step.descendant && parent.inherited.get(j - 1);
+			}
+			if (!inContext || !matchesName(step, uri, localName)) {
+				continue;
+			}
+			boolean matches = true;
+			for (int p = 0; p < step.predicates.length && matches; p++) {
+				Predicate predicate = step.predicates[p];
+				if (predicate.attributeName != null) {
+					String value = attributes.getValue("", predicate.attributeName);
+					matches = value != null && (predicate.attributeValue == null || predicate.attributeValue.equals(value));
+				} else {
+					int[][] counts = getCounts(parent);
+					matches = ++counts[j][p] == predicate.position;
+				}
+			}
+			if (matches) {
+				frame.matched.set(j);
+			}
+		}
+		return frame.matched.get(steps.length - 1);
+	}
+
+	private int[][] getCounts(Frame parent) {
+		if (parent == null) {
+			if (documentFrame == null) {
+				documentFrame = new Frame();
+			}
+			parent = documentFrame;
+		}
+		if (parent.counts == null) {
+			parent.counts = new int[steps.length][];
+			for (int j = 0; j < steps.length; j++) {
+				parent.counts[j] = new int[steps[j].predicates.length];
+			}
+		}
+		return parent.counts;
+	}
+
+	private void flushCharacters() throws SAXException {
+		if (pendingCharacters.length() == 0) {
+			return;
+		}
+		boolean whitespaceOnly = true;
+		for (int i = 0; i < pendingCharacters.length() && whitespaceOnly; i++) {
+			whitespaceOnly = Character.isWhitespace(pendingCharacters.charAt(i));
+		}
+		if (!whitespaceOnly) {
+			char[] ch = pendingCharacters.toString().toCharArray();
+			handler.characters(ch, 0, ch.length);
+			for (EventRecorder recorder : activeRecorders) {
+				recorder.characters(ch, 0, ch.length);
+			}
+		}
+		pendingCharacters.setLength(0);
+	}
+
+	@Override
+	public void startDocument() throws SAXException {
+		handler.startDocument();
+		handler.startElement("", ROOT_ELEMENT, ROOT_ELEMENT, new AttributesImpl());
+	}
+
+	@Override
+	public void endDocument() throws SAXException {
+		handler.endElement("", ROOT_ELEMENT, ROOT_ELEMENT);
+		handler.endDocument();
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+		Frame parent = frames.isEmpty() ? null : frames.get(frames.size() - 1);
+		Frame frame = new Frame();
+		frame.matched = new BitSet(steps.length);
+		if (parent == null) {
+			frame.inherited = new BitSet(steps.length);
+		} else {
+			frame.inherited = (BitSet) parent.inherited.clone();
+			frame.inherited.or(parent.matched);
+		}
+		frame.selected = isSelected(uri, localName, attributes, parent, frame);
+		frames.add(frame);
+
+		if (forwardingDepth > 0) {
+			flushCharacters();
+			handler.startElement(uri, localName, qName, attributes);
+			for (EventRecorder recorder : activeRecorders) {
+				recorder.startElement(uri, localName, qName, attributes);
+			}
+			forwardingDepth++;
+			if (frame.selected) {
+				EventRecorder recorder = new EventRecorder();
+				recorder.startElement(uri, localName, qName, attributes);
+				activeRecorders.add(recorder);
+				nestedMatches.add(recorder);
+			}
+		} else if (frame.selected) {
+			handler.startElement(uri, localName, qName, attributes);
+			forwardingDepth = 1;
+		}
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		Frame frame = frames.remove(frames.size() - 1);
+		if (forwardingDepth == 0) {
+			return;
+		}
+		flushCharacters();
+		handler.endElement(uri, localName, qName);
+		for (EventRecorder recorder : activeRecorders) {
+			recorder.endElement(uri, localName, qName);
+		}
+		if (frame.selected && forwardingDepth > 1) {
+			// elements are properly nested, so the last active recorder is the one of this element
+			activeRecorders.remove(activeRecorders.size() - 1);
+		}
+		if (--forwardingDepth == 0) {
+			for (EventRecorder recorder : nestedMatches) {
+				recorder.replay(handler);
+			}
+			nestedMatches.clear();
+		}
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if (forwardingDepth > 0) {
+			pendingCharacters.append(ch, start, length);
+		}
+	}
+
+	/**
+	 * Records the events of a selected element that is nested in another selected element, to pass it after the outer
+	 * element has ended.
+	 */
+	private static class EventRecorder {
+		private final List<Object[]> events = new ArrayList<Object[]>();
+
+		void startElement(String uri, String localName, String qName, Attributes attributes) {
+			events.add(new Object[] {uri, localName, qName, new AttributesImpl(attributes)});
+		}
+
+		void endElement(String uri, String localName, String qName) {
+			events.add(new Object[] {uri, localName, qName});
+		}
+
+		void characters(char[] ch, int start, int length) {
+			events.add(new Object[] {new String(ch, start, length)});
+		}
+
+		void replay(ContentHandler handler) throws SAXException {
+			for (Object[] event : events) {
+				if (event.length == 4) {
+					handler.startElement((String) event[0], (String) event[1], (String) event[2], (Attributes) event[3]);
+				} else if (event.length == 3) {
+					handler.endElement((String) event[0], (String) event[1], (String) event[2]);
+				} else {
+					char[] ch = ((String) event[0]).toCharArray();
+					handler.characters(ch, 0, ch.length);
+				}
+			}
+		}
+	}
+
+	/**
+	 * ContentHandler that collects the string values of the elements passed by a filter, separated by a space, like
+	 * the result of an XPath expression with outputType <code>text</code>. Whitespace-only text is ignored.
+	 */
+	public static class TextCollector extends DefaultHandler {
+		private int depth = 0;
+		private StringBuilder result;
+		private final StringBuilder value = new StringBuilder();
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			// depth 1 is the root element added by the filter, the selected elements are its children
+			if (++depth == 2) {
+				value.setLength(0);
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+			if (depth-- == 2) {
+				if (result == null) {
+					result = new StringBuilder();
+				} else {
+					result.append(' ');
+				}
+				result.append(value);
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			if (depth >= 2) {
+				value.append(ch, start, length);
+			}
+		}
+
+		/**
+		 * Returns the collected values, or an empty String when no element was selected.
+		 */
+		public String getResult() {
+			return result == null ? "" : result.toString();
+		}
+	}
+}
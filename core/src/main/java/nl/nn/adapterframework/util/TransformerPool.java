@@ -1,5 +1,5 @@
 /*
-   Copyright 2013, 2016 Nationale-Nederlanden
+   Copyright 2013, 2016, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -17,12 +17,16 @@ package nl.nn.adapterframework.util;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.lang.ref.SoftReference;
 import java.net.URL;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
@@ -35,14 +39,13 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamSource;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.commons.pool.BasePoolableObjectFactory;
-import org.apache.commons.pool.ObjectPool;
-import org.apache.commons.pool.impl.SoftReferenceObjectPool;
 import org.apache.log4j.Logger;
 import org.w3c.dom.Document;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
+import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.parameters.ParameterList;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
 
 /**
  * Pool of transformers. As of IBIS 4.2.e the Templates object is used to
@@ -50,17 +53,22 @@ import nl.nn.adapterframework.parameters.ParameterList;
  * <p>
  * When the property 'transformerPool.useCaching' equals true, transformers are
  * put in a cache and shared (for the same stylesheet) to save memory.
+ * <p>
+ * Transformers are created from the compiled Templates, which is thread safe, and are used by one thread at a time.
+ * Idle transformers are kept in a lock-free queue through soft references, so they can be reclaimed under memory pressure.
+ * The property 'transformerPool.preWarmCount' sets the number of transformers created when the pool is created.
  * 
  * @author Gerrit van Brakel
  */
 public class TransformerPool {
 	private static final boolean USE_CACHING = AppConstants.getInstance().getBoolean("transformerPool.useCaching", false);
+	private static final int PRE_WARM_COUNT = AppConstants.getInstance().getInt("transformerPool.preWarmCount", 1);
 
 	protected Logger log = LogUtil.getLogger(this);
 
 	private TransformerFactory tFactory;
 
-	private Templates templates;
+	private volatile Templates templates;
 	private URL reloadURL=null;
 	private int xsltVersion;
 
@@ -128,12 +136,11 @@ public class TransformerPool {
 	
 	private static Map<TransformerPoolKey, TransformerPool> transformerPools = new ConcurrentHashMap<TransformerPoolKey, TransformerPool>();
 	
-	private ObjectPool pool = new SoftReferenceObjectPool(new BasePoolableObjectFactory() {
-		@Override
-		public Object makeObject() throws Exception {
-			return createTransformer();
-		}
-	}); 
+	private Queue<SoftReference<Transformer>> idleTransformers = new ConcurrentLinkedQueue<SoftReference<Transformer>>();
+
+	private AtomicLong numBorrowed = new AtomicLong();
+	private AtomicLong numCreated = new AtomicLong();
+	private AtomicLong numReclaimed = new AtomicLong();
 
 //	private TransformerPool(Source source, String sysId) throws TransformerConfigurationException {
 //		this(source,sysId,false);
@@ -156,9 +163,7 @@ public class TransformerPool {
 		initTransformerPool(source, sysId);
 
 		// check if a transformer can be initiated
-		Transformer t = getTransformer();
-		
-		releaseTransformer(t);
+		preWarm(Math.max(1, PRE_WARM_COUNT));
 	}	
 
 	@Deprecated
@@ -200,15 +205,19 @@ public class TransformerPool {
 		}
 	}
 
-	private static synchronized TransformerPool retrieveInstance(String xsltString, String sysId, int xsltVersion) throws TransformerConfigurationException {
+	private static TransformerPool retrieveInstance(String xsltString, String sysId, int xsltVersion) throws TransformerConfigurationException {
 		TransformerPoolKey tpKey = new TransformerPoolKey(xsltString, null, sysId, xsltVersion);
-		if (transformerPools.containsKey(tpKey)) {
-			return transformerPools.get(tpKey);
-		} else {
-			TransformerPool transformerPool = new TransformerPool(xsltString, sysId, xsltVersion);
-			transformerPools.put(tpKey, transformerPool);
-			return transformerPool;
+		TransformerPool transformerPool = transformerPools.get(tpKey);
+		if (transformerPool==null) {
+			synchronized (transformerPools) {
+				transformerPool = transformerPools.get(tpKey);
+				if (transformerPool==null) {
+					transformerPool = new TransformerPool(xsltString, sysId, xsltVersion);
+					transformerPools.put(tpKey, transformerPool);
+				}
+			}
 		}
+		return transformerPool;
 	}
 
 	@Deprecated
@@ -231,15 +240,19 @@ public class TransformerPool {
 	}
 
 	@Deprecated
-	private static synchronized TransformerPool retrieveInstance(String xsltString, String sysId, boolean xslt2) throws TransformerConfigurationException {
+	private static TransformerPool retrieveInstance(String xsltString, String sysId, boolean xslt2) throws TransformerConfigurationException {
 		TransformerPoolKey tpKey = new TransformerPoolKey(xsltString, null, sysId, xslt2?2:1);
-		if (transformerPools.containsKey(tpKey)) {
-			return transformerPools.get(tpKey);
-		} else {
-			TransformerPool transformerPool = new TransformerPool(xsltString, sysId, xslt2);
-			transformerPools.put(tpKey, transformerPool);
-			return transformerPool;
+		TransformerPool transformerPool = transformerPools.get(tpKey);
+		if (transformerPool==null) {
+			synchronized (transformerPools) {
+				transformerPool = transformerPools.get(tpKey);
+				if (transformerPool==null) {
+					transformerPool = new TransformerPool(xsltString, sysId, xslt2);
+					transformerPools.put(tpKey, transformerPool);
+				}
+			}
 		}
+		return transformerPool;
 	}
 
 	public static TransformerPool getInstance(URL url) throws TransformerConfigurationException, IOException {
@@ -258,15 +271,19 @@ public class TransformerPool {
 		}
 	}
 
-	private static synchronized TransformerPool retrieveInstance(URL url, int xsltVersion) throws TransformerConfigurationException, IOException {
+	private static TransformerPool retrieveInstance(URL url, int xsltVersion) throws TransformerConfigurationException, IOException {
 		TransformerPoolKey tpKey = new TransformerPoolKey(null, url, null, xsltVersion);
-		if (transformerPools.containsKey(tpKey)) {
-			return transformerPools.get(tpKey);
-		} else {
-			TransformerPool transformerPool = new TransformerPool(url, xsltVersion);
-			transformerPools.put(tpKey, transformerPool);
-			return transformerPool;
+		TransformerPool transformerPool = transformerPools.get(tpKey);
+		if (transformerPool==null) {
+			synchronized (transformerPools) {
+				transformerPool = transformerPools.get(tpKey);
+				if (transformerPool==null) {
+					transformerPool = new TransformerPool(url, xsltVersion);
+					transformerPools.put(tpKey, transformerPool);
+				}
+			}
 		}
+		return transformerPool;
 	}
 
 	@Deprecated
@@ -284,15 +301,19 @@ public class TransformerPool {
 	}
 
 	@Deprecated
-	private static synchronized TransformerPool retrieveInstance(URL url, boolean xslt2) throws TransformerConfigurationException, IOException {
+	private static TransformerPool retrieveInstance(URL url, boolean xslt2) throws TransformerConfigurationException, IOException {
 		TransformerPoolKey tpKey = new TransformerPoolKey(null, url, null, xslt2?2:1);
-		if (transformerPools.containsKey(tpKey)) {
-			return transformerPools.get(tpKey);
-		} else {
-			TransformerPool transformerPool = new TransformerPool(url, xslt2);
-			transformerPools.put(tpKey, transformerPool);
-			return transformerPool;
+		TransformerPool transformerPool = transformerPools.get(tpKey);
+		if (transformerPool==null) {
+			synchronized (transformerPools) {
+				transformerPool = transformerPools.get(tpKey);
+				if (transformerPool==null) {
+					transformerPool = new TransformerPool(url, xslt2);
+					transformerPools.put(tpKey, transformerPool);
+				}
+			}
 		}
+		return transformerPool;
 	}
 
 	private void initTransformerPool(Source source, String sysId) throws TransformerConfigurationException {
@@ -306,11 +327,7 @@ public class TransformerPool {
 	private void reloadTransformerPool() throws TransformerConfigurationException, IOException {
 		if (reloadURL!=null) {
 			initTransformerPool(new StreamSource(reloadURL.openStream()),reloadURL.toString());
-			try {
-				pool.clear();
-			} catch (Exception e) {
-				throw new TransformerConfigurationException("Could not clear pool",e);
-			}
+			idleTransformers.clear();
 		}
 	}
 
@@ -375,32 +392,42 @@ public class TransformerPool {
 	}
 	
 	public void close() {
-		try {
-			pool.clear();			
-		} catch (Exception e) {
-			log.warn("exception clearing transformerPool",e);
+		idleTransformers.clear();
+	}
+
+	/**
+	 * Creates transformers up front and adds them to the pool, so that the first transformations do not pay for their creation.
+	 */
+	public void preWarm(int count) throws TransformerConfigurationException {
+		for (int i=0; i<count; i++) {
+			releaseTransformer(createTransformer());
 		}
 	}
-	
+
 	protected Transformer getTransformer() throws TransformerConfigurationException {
 		try {
 			reloadTransformerPool();
-			return (Transformer)pool.borrowObject();
-		} catch (Exception e) {
+		} catch (IOException e) {
 			throw new TransformerConfigurationException(e);
 		}
+		numBorrowed.incrementAndGet();
+		SoftReference<Transformer> ref;
+		while ((ref=idleTransformers.poll())!=null) {
+			Transformer t = ref.get();
+			if (t!=null) {
+				return t;
+			}
+			numReclaimed.incrementAndGet();
+		}
+		return createTransformer();
 	}
 	
 	protected void releaseTransformer(Transformer t) throws TransformerConfigurationException {
-		try {
-			pool.returnObject(t);
-		} catch (Exception e) {
-			throw new TransformerConfigurationException("exception returning transformer to pool", e);
-		}
+		idleTransformers.offer(new SoftReference<Transformer>(t));
 	}
 
 	protected void invalidateTransformer(Transformer t) throws Exception {
-		pool.invalidateObject(t);
+		// the transformer is not returned to the pool, nothing else needs to be done
 	}
 
 	protected void invalidateTransformerNoThrow(Transformer transformer) {
@@ -412,11 +439,12 @@ public class TransformerPool {
 		}
 	}
 
-	protected synchronized Transformer createTransformer() throws TransformerConfigurationException {
+	protected Transformer createTransformer() throws TransformerConfigurationException {
 		Transformer t = templates.newTransformer();
 		if (t==null) {
 			throw new TransformerConfigurationException("cannot instantiate transformer");
 		}
+		numCreated.incrementAndGet();
 		t.setErrorListener(new TransformerErrorListener());
 		// Set URIResolver on transformer for Xalan. Setting it on the factory
 		// doesn't work for Xalan. See
@@ -425,6 +453,40 @@ public class TransformerPool {
 		return t;
 	}
 
+	/**
+	 * Returns the number of times a transformer was taken from the pool.
+	 */
+	public long getNumBorrowed() {
+		return numBorrowed.get();
+	}
+
+	/**
+	 * Returns the number of transformers created, including those created to pre-warm the pool.
+	 */
+	public long getNumCreated() {
+		return numCreated.get();
+	}
+
+	/**
+	 * Returns the number of idle transformers that were reclaimed by the garbage collector.
+	 */
+	public long getNumReclaimed() {
+		return numReclaimed.get();
+	}
+
+	/**
+	 * Adds a <code>transformerPool</code> group with the figures of the pool to the statistics of <code>name</code>, for
+	 * use in {@link nl.nn.adapterframework.statistics.HasStatistics#iterateOverStatistics(StatisticsKeeperIterationHandler, Object, int) iterateOverStatistics()}.
+	 * Pools are shared by all users of the same stylesheet, so the figures include those of the other users.
+	 */
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, String name) throws SenderException {
+		Object poolData = hski.openGroup(data, name, "transformerPool");
+		hski.handleScalar(poolData, "borrowed", getNumBorrowed());
+		hski.handleScalar(poolData, "created", getNumCreated());
+		hski.handleScalar(poolData, "reclaimed", getNumReclaimed());
+		hski.closeGroup(poolData);
+	}
+
 	public String transform(Document d, Map parameters)	throws TransformerException, IOException {
 		return transform(new DOMSource(d),parameters);
 	}
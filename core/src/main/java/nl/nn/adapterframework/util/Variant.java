@@ -1,5 +1,5 @@
 /*
-   Copyright 2013 Nationale-Nederlanden
+   Copyright 2013, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,33 +15,61 @@
 */
 package nl.nn.adapterframework.util;
 
-import org.xml.sax.InputSource;
-
-import javax.xml.transform.Source;
+import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 
+import javax.xml.transform.Source;
+
+import org.xml.sax.InputSource;
+
+import nl.nn.adapterframework.stream.Message;
+
 /**
  * Class to handle all kinds of conversions.
+ * <p>
+ * When constructed from a {@link Message}, {@link #asReader()} and {@link #asXmlInputSource()} read the
+ * message directly, until it has been converted to a String by one of the other methods.
+ * </p>
  *
  * @author Gerrit van Brakel IOS
  */
 public class Variant {
 
 	private String data = null;
+	private Message message = null;
 	private Source dataAsXmlSource = null;
 
 	public Variant(Object obj) {
-		this(obj.toString());
+		super();
+		if (obj instanceof Message) {
+			message = (Message)obj;
+		} else {
+			data = obj.toString();
+		}
 	}
 	public Variant(String obj) {
 		super();
 		data = obj;
 	}
 	public Reader asReader() {
+		if (data==null && message!=null) {
+			try {
+				return message.asReader();
+			} catch (IOException e) {
+				throw new IllegalArgumentException("cannot read message using charset ["+message.getCharset()+"]", e);
+			}
+		}
 		return new StringReader(data);
 	}
 	public String asString() {
+		if (data==null && message!=null) {
+			try {
+				data = message.asString();
+			} catch (IOException e) {
+				throw new IllegalArgumentException("cannot read message using charset ["+message.getCharset()+"]", e);
+			}
+		}
 		return data;
 	}
 
@@ -49,7 +77,13 @@ public class Variant {
 	 * Renders an InputSource for SAX parsing
 	 */
 	public InputSource asXmlInputSource() {
-
+		if (data==null && message!=null) {
+			try {
+				return message.asInputSource();
+			} catch (IOException e) {
+				throw new IllegalArgumentException("cannot read message using charset ["+message.getCharset()+"]", e);
+			}
+		}
 		StringReader sr = new StringReader(data);
 		return new InputSource(sr);
 	}
@@ -63,10 +97,10 @@ public class Variant {
 
 	public Source asXmlSource(boolean forMultipleUse) throws DomBuilderException {
 		if (!forMultipleUse && dataAsXmlSource==null) {
-			return XmlUtils.stringToSourceForSingleUse(data);
+			return XmlUtils.stringToSourceForSingleUse(asString());
 		}
 		if (dataAsXmlSource==null) {
-			dataAsXmlSource = XmlUtils.stringToSource(data);
+			dataAsXmlSource = XmlUtils.stringToSource(asString());
 		}
 		return dataAsXmlSource;
 	}
@@ -122,10 +122,10 @@ public class XmlUtils {
 	public static final String OPEN_FROM_RESOURCE = "resource";
 	public static final String OPEN_FROM_XML = "xml";
 
-	private static Boolean namespaceAwareByDefault = null;
-	private static Boolean includeFieldDefinitionByDefault = null;
-	private static Boolean autoReload = null;
-	private static Integer buffersize=null;
+	private static volatile Boolean namespaceAwareByDefault = null;
+	private static volatile Boolean includeFieldDefinitionByDefault = null;
+	private static volatile Boolean autoReload = null;
+	private static volatile Integer buffersize=null;
 
 	private static ConcurrentHashMap<String,TransformerPool> utilityTPs = new ConcurrentHashMap<String,TransformerPool>();
 	public static final char REPLACE_NON_XML_CHAR = 0x00BF; // Inverted question mark.
@@ -180,7 +180,7 @@ public class XmlUtils {
 		if (result==null) {
 			try {
 				TransformerPool newtp=TransformerPool.getInstance(xslt, xsltVersion);
-				result=utilityTPs.put(fullKey, newtp);
+				result=utilityTPs.putIfAbsent(fullKey, newtp);
 				if (result==null) {
 					result=newtp;
 				}
@@ -430,7 +430,7 @@ public class XmlUtils {
 
 	
 
-	public static synchronized boolean isNamespaceAwareByDefault() {
+	public static boolean isNamespaceAwareByDefault() {
 		if (namespaceAwareByDefault==null) {
 			boolean aware=AppConstants.getInstance().getBoolean(NAMESPACE_AWARE_BY_DEFAULT_KEY, false);
 			namespaceAwareByDefault = new Boolean(aware);
@@ -438,7 +438,7 @@ public class XmlUtils {
 		return namespaceAwareByDefault.booleanValue();
 	}
 
-	public static synchronized boolean isIncludeFieldDefinitionByDefault() {
+	public static boolean isIncludeFieldDefinitionByDefault() {
 		if (includeFieldDefinitionByDefault==null) {
 			boolean definition=AppConstants.getInstance().getBoolean(INCLUDE_FIELD_DEFINITION_BY_DEFAULT_KEY, true);
 			includeFieldDefinitionByDefault = new Boolean(definition);
@@ -446,7 +446,7 @@ public class XmlUtils {
 		return includeFieldDefinitionByDefault.booleanValue();
 	}
 
-	public static synchronized boolean isAutoReload() {
+	public static boolean isAutoReload() {
 		if (autoReload==null) {
 			boolean reload=AppConstants.getInstance().getBoolean(AUTO_RELOAD_KEY, false);
 			autoReload = new Boolean(reload);
@@ -454,7 +454,7 @@ public class XmlUtils {
 		return autoReload.booleanValue();
 	}
 
-	public static synchronized int getBufSize() {
+	public static int getBufSize() {
 		if (buffersize==null) {
 			int size=AppConstants.getInstance().getInt(XSLT_BUFFERSIZE_KEY, XSLT_BUFFERSIZE_DEFAULT);
 			buffersize = new Integer(size);
@@ -856,6 +856,12 @@ public class XmlUtils {
 			throws DomBuilderException {
 		Variant in = new Variant(xmlString);
 		InputSource is = in.asXmlInputSource();
+		return inputSourceToSAXSource(is, namespaceAware, resolveExternalEntities);
+	}
+
+	public static SAXSource inputSourceToSAXSource(InputSource is,
+			boolean namespaceAware, boolean resolveExternalEntities)
+			throws DomBuilderException {
 		SAXParserFactory factory = getSAXParserFactory(namespaceAware);
 		try {
 			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
@@ -906,7 +912,7 @@ public class XmlUtils {
 	}
 
 
-	public static synchronized Transformer createTransformer(String xsltString) throws TransformerConfigurationException {
+	public static Transformer createTransformer(String xsltString) throws TransformerConfigurationException {
 		try {
 			return createTransformer(xsltString, detectXsltVersion(xsltString));
 		} catch (Exception e) {
@@ -914,7 +920,7 @@ public class XmlUtils {
 		}
 	}
 
-	public static synchronized Transformer createTransformer(String xsltString, int xsltVersion) throws TransformerConfigurationException {
+	public static Transformer createTransformer(String xsltString, int xsltVersion) throws TransformerConfigurationException {
 
 		StringReader sr = new StringReader(xsltString);
 
@@ -922,7 +928,7 @@ public class XmlUtils {
 		return createTransformer(stylesource, xsltVersion);
 	}
 	
-	public static synchronized Transformer createTransformer(URL url) throws TransformerConfigurationException, IOException {
+	public static Transformer createTransformer(URL url) throws TransformerConfigurationException, IOException {
 		try {
 			return createTransformer(url, detectXsltVersion(url));
 		} catch (Exception e) {
@@ -930,18 +936,18 @@ public class XmlUtils {
 		}
 	}
 
-	public static synchronized Transformer createTransformer(URL url, int xsltVersion) throws TransformerConfigurationException, IOException {
+	public static Transformer createTransformer(URL url, int xsltVersion) throws TransformerConfigurationException, IOException {
 
 		StreamSource stylesource = new StreamSource(url.openStream());
 		stylesource.setSystemId(url.toString());
 		return createTransformer(stylesource, xsltVersion);
 	}
 	
-	public static synchronized Transformer createTransformer(Source source) throws TransformerConfigurationException {
+	public static Transformer createTransformer(Source source) throws TransformerConfigurationException {
 			return createTransformer(source, 0);
 	}
 
-	public static synchronized Transformer createTransformer(Source source, int xsltVersion) throws TransformerConfigurationException {
+	public static Transformer createTransformer(Source source, int xsltVersion) throws TransformerConfigurationException {
 
 		TransformerFactory tFactory = getTransformerFactory(xsltVersion);
 		Transformer result = tFactory.newTransformer(source);
@@ -953,7 +959,7 @@ public class XmlUtils {
 		return getTransformerFactory(0);
 	}
 
-	public static synchronized TransformerFactory getTransformerFactory(int xsltVersion) {
+	public static TransformerFactory getTransformerFactory(int xsltVersion) {
 		switch (xsltVersion) {
 		case 2:
 			TransformerFactory factory = new net.sf.saxon.TransformerFactoryImpl();
@@ -969,22 +975,22 @@ public class XmlUtils {
 		}
 	}
 
-	public static synchronized DocumentBuilderFactory getDocumentBuilderFactory() {
+	public static DocumentBuilderFactory getDocumentBuilderFactory() {
 		return getDocumentBuilderFactory(isNamespaceAwareByDefault());
 	}
 
-	public static synchronized DocumentBuilderFactory getDocumentBuilderFactory(boolean namespaceAware) {
+	public static DocumentBuilderFactory getDocumentBuilderFactory(boolean namespaceAware) {
 		DocumentBuilderFactory factory;
 		factory = new org.apache.xerces.jaxp.DocumentBuilderFactoryImpl();
 		factory.setNamespaceAware(namespaceAware);
 		return factory;
 	}
 
-	public static synchronized SAXParserFactory getSAXParserFactory() {
+	public static SAXParserFactory getSAXParserFactory() {
 		return getSAXParserFactory(isNamespaceAwareByDefault());
 	}
 
-	public static synchronized SAXParserFactory getSAXParserFactory(boolean namespaceAware) {
+	public static SAXParserFactory getSAXParserFactory(boolean namespaceAware) {
 		SAXParserFactory factory = new org.apache.xerces.jaxp.SAXParserFactoryImpl();
 		factory.setNamespaceAware(namespaceAware);
 		return factory;
@@ -1988,11 +1994,11 @@ public class XmlUtils {
 		return xhtmlString;
 	}
 
-	public static synchronized XPathFactory getXPathFactory() {
+	public static XPathFactory getXPathFactory() {
 		return getXPathFactory(2);
 	}
 
-	public static synchronized XPathFactory getXPathFactory(int xsltVersion) {
+	public static XPathFactory getXPathFactory(int xsltVersion) {
 		switch (xsltVersion) {
 		case 2:
 			return new net.sf.saxon.xpath.XPathFactoryImpl();
@@ -1,5 +1,5 @@
 /*
-Copyright 2018 Integration Partners B.V.
+Copyright 2018, 2019 Integration Partners B.V.
 
 Licensed under the Apache License, Version 2.0 (the "License");
 you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@ limitations under the License.
 package nl.nn.adapterframework.webcontrol.api;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -23,6 +24,8 @@ import java.util.List;
 import java.util.Map;
 
 import javax.annotation.security.RolesAllowed;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
 import javax.servlet.ServletConfig;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -37,6 +40,7 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -120,7 +124,8 @@ public class TransactionalStorage extends Base {
 				@QueryParam("endDate") String endDateStr,
 				@QueryParam("sort") String sort,
 				@QueryParam("skip") int skipMessages,
-				@QueryParam("max") int maxMessages
+				@QueryParam("max") int maxMessages,
+				@QueryParam("startKey") String startKey
 			) throws ApiException {
 
 		initBase(servletConfig);
@@ -155,6 +160,7 @@ public class TransactionalStorage extends Base {
 		filter.setLabelMask(label);
 		filter.setStartDateMask(startDateStr);
 		filter.setEndDateMask(endDateStr);
+		filter.setStartKey(startKey);
 	
 		if("desc".equalsIgnoreCase(sort))
 			filter.setSortDescending();
@@ -356,7 +362,8 @@ public class TransactionalStorage extends Base {
 				@QueryParam("endDate") String endDateStr,
 				@QueryParam("sort") String sort,
 				@QueryParam("skip") int skipMessages,
-				@QueryParam("max") int maxMessages
+				@QueryParam("max") int maxMessages,
+				@QueryParam("startKey") String startKey
 			) throws ApiException {
 
 		initBase(servletConfig);
@@ -386,6 +393,7 @@ public class TransactionalStorage extends Base {
 		filter.setLabelMask(label);
 		filter.setStartDateMask(startDateStr);
 		filter.setEndDateMask(endDateStr);
+		filter.setStartKey(startKey);
 
 		if("desc".equalsIgnoreCase(sort))
 				filter.setSortDescending();
@@ -488,75 +496,112 @@ public class TransactionalStorage extends Base {
 		return Response.status(Response.Status.OK).type(getMediaType(msg)).entity(msg).build();
 	}
 
-	private Map<String, Object> getMessages(IMessageBrowser transactionalStorage, MessageBrowsingFilter filter) {
-		int messageCount = 0;
-		try {
-			messageCount = ((ITransactionalStorage) transactionalStorage).getMessageCount();
-		} catch (Exception e) {
-			log.warn(e);
-			messageCount = -1;
+	/**
+	 * Streams the messages that match the filter as JSON. The first page, and pages selected by skipping messages, are listed
+	 * in order of insert date. The response contains the nextKey to continue browsing with; pages with a startKey are browsed
+	 * in order of key, starting after that key.
+	 */
+	private StreamingOutput getMessages(IMessageBrowser transactionalStorage, final MessageBrowsingFilter filter) {
+		int total = -1;
+		if (transactionalStorage instanceof ITransactionalStorage) {
+			try {
+				total = ((ITransactionalStorage) transactionalStorage).getMessageCount();
+			} catch (Exception e) {
+				log.warn(e);
+			}
 		}
+		final int messageCount = total;
 
-		Map<String, Object> returnObj = new HashMap<String, Object>(3);
-		returnObj.put("totalMessages", messageCount);
-		returnObj.put("skipMessages", filter.skipMessages());
-		returnObj.put("messageCount", messageCount - filter.skipMessages());
-
-		Date startDate = null;
-		Date endDate = null;
+		final IMessageBrowsingIterator iterator;
 		try {
-			IMessageBrowsingIterator iterator = null;
-			try {
-				iterator = transactionalStorage.getIterator(startDate, endDate, filter.isSortDescending());
-	
-				int count;
-				ArrayList<Object> messages = new ArrayList<Object>();
-				for (count=0; iterator.hasNext(); ) {
-					IMessageBrowsingIteratorItem iterItem = iterator.next();
-					try {
-						if(!filter.matchAny(iterItem))
-							continue;
+			if (filter.skipMessages() > 0 || filter.getStartKey() == null) {
+				iterator = transactionalStorage.getIterator(filter.getStartDate(), filter.getEndDate(), filter.isSortDescending());
+			} else {
+				iterator = transactionalStorage.getIterator(filter.getStartKey(), filter.getStartDate(), filter.getEndDate(), filter.isSortDescending(), filter.maxMessages());
+			}
+		} catch (ListenerException e) {
+			throw new ApiException(e);
+		}
 
-						count++;
-						if (count > filter.skipMessages()) { 
-							Map<String, Object> message = new HashMap<String, Object>(3);
-	
-							message.put("id", iterItem.getId());
-							message.put("pos", count);
-							message.put("originalId", iterItem.getOriginalId());
-							message.put("correlationId", iterItem.getCorrelationId());
-							message.put("type", iterItem.getType());
-							message.put("host", iterItem.getHost());
-							message.put("insertDate", iterItem.getInsertDate());
-							message.put("expiryDate", iterItem.getExpiryDate());
-							message.put("comment", iterItem.getCommentString());
-							message.put("label", iterItem.getLabel());
-							messages.add(message);
-						}
-		
-						if (filter.maxMessages() > 0 && count >= (filter.maxMessages() + filter.skipMessages())) {
-							log.warn("stopped iterating messages after ["+count+"]: limit reached");
-							break;
+		return new StreamingOutput() {
+			public void write(OutputStream out) throws IOException {
+				JsonGenerator generator = Json.createGenerator(out);
+				try {
+					generator.writeStartObject();
+					generator.write("totalMessages", messageCount);
+					generator.write("skipMessages", filter.skipMessages());
+					generator.write("messageCount", messageCount - filter.skipMessages());
+					generator.writeStartArray("messages");
+					String lastId = null;
+					boolean limitReached = false;
+					for (int count=0; iterator.hasNext(); ) {
+						IMessageBrowsingIteratorItem iterItem = iterator.next();
+						try {
+							if(!filter.matchAny(iterItem))
+								continue;
+
+							count++;
+							if (count > filter.skipMessages()) {
+								lastId = iterItem.getId();
+								generator.writeStartObject();
+								writeValue(generator, "id", lastId);
+								generator.write("pos", count);
+								writeValue(generator, "originalId", iterItem.getOriginalId());
+								writeValue(generator, "correlationId", iterItem.getCorrelationId());
+								writeValue(generator, "type", iterItem.getType());
+								writeValue(generator, "host", iterItem.getHost());
+								writeValue(generator, "insertDate", iterItem.getInsertDate());
+								writeValue(generator, "expiryDate", iterItem.getExpiryDate());
+								writeValue(generator, "comment", iterItem.getCommentString());
+								writeValue(generator, "label", iterItem.getLabel());
+								generator.writeEnd();
+							}
+
+							if (count >= (filter.maxMessages() + filter.skipMessages())) {
+								log.warn("stopped iterating messages after ["+count+"]: limit reached");
+								limitReached = true;
+								break;
+							}
+						} finally {
+							iterItem.release();
 						}
-					} finally {
-						iterItem.release();
+					}
+					generator.writeEnd();
+					writeValue(generator, "nextKey", limitReached && filter.skipMessages() == 0 ? lastId : null);
+					generator.writeEnd();
+				} catch (ListenerException e) {
+					throw new IOException("cannot browse messages: "+e.getMessage());
+				} finally {
+					generator.close();
+					try {
+						iterator.close();
+					} catch (ListenerException e) {
+						log.warn("error closing message browser", e);
 					}
 				}
-				returnObj.put("messages", messages);
-			}
-			finally {
-				if(iterator != null)
-					iterator.close();
 			}
+		};
+	}
+
+	private void writeValue(JsonGenerator generator, String name, String value) {
+		if (value == null) {
+			generator.writeNull(name);
+		} else {
+			generator.write(name, value);
 		}
-		catch (ListenerException e) {
-			throw new ApiException(e);
-		}
+	}
 
-		return returnObj;
+	private void writeValue(JsonGenerator generator, String name, Date value) {
+		if (value == null) {
+			generator.writeNull(name);
+		} else {
+			generator.write(name, value.getTime());
+		}
 	}
 
 	public class MessageBrowsingFilter {
+		private static final int DEFAULT_MAX_MESSAGES = 100;
+
 		private String type = null;
 		private String host = null;
 		private String id = null;
@@ -570,16 +615,27 @@ public class TransactionalStorage extends Base {
 
 		private int maxMessages = 0;
 		private int skipMessages = 0;
+		private String startKey = null;
 
 		private boolean sortDescending = false;
 		private IMessageBrowser storage = null;
 		private IListener listener = null;
 
 		public MessageBrowsingFilter() {
-			this(AppConstants.getInstance().getInt("browse.messages.max", 0), 0);
+			this(0, 0);
 		}
 
+		/**
+		 * @param maxMessages maximum number of messages to list; when not set, <code>browse.messages.max</code> is used,
+		 *        so that a listing never runs through the whole storage
+		 */
 		public MessageBrowsingFilter(int maxMessages, int skipMessages) {
+			if (maxMessages <= 0) {
+				maxMessages = AppConstants.getInstance().getInt("browse.messages.max", DEFAULT_MAX_MESSAGES);
+				if (maxMessages <= 0) {
+					maxMessages = DEFAULT_MAX_MESSAGES;
+				}
+			}
 			this.maxMessages = maxMessages;
 			this.skipMessages = skipMessages;
 		}
@@ -736,6 +792,21 @@ public class TransactionalStorage extends Base {
 			return skipMessages;
 		}
 
+		public void setStartKey(String startKey) {
+			if(!StringUtils.isEmpty(startKey))
+				this.startKey = startKey;
+		}
+		public String getStartKey() {
+			return startKey;
+		}
+
+		public Date getStartDate() {
+			return startDate;
+		}
+		public Date getEndDate() {
+			return endDate;
+		}
+
 		public int maxMessages() {
 			return maxMessages;
 		}
@@ -0,0 +1,144 @@
+package nl.nn.adapterframework.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CacheAdapterBaseTest {
+
+	private class MapCache extends CacheAdapterBase {
+		private Map<Object,Object> map = new ConcurrentHashMap<Object,Object>();
+
+		public void open() {
+		}
+		public void close() {
+			map.clear();
+		}
+		protected Serializable getElement(String key) {
+			return (Serializable)map.get(key);
+		}
+		protected void putElement(String key, Serializable value) {
+			map.put(key, value);
+		}
+		protected Object getElementObject(Object key) {
+			return map.get(key);
+		}
+		protected void putElementObject(Object key, Object value) {
+			map.put(key, value);
+		}
+		protected boolean removeElement(Object key) {
+			return map.remove(key)!=null;
+		}
+	}
+
+	private MapCache cache;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = new MapCache();
+		cache.configure("test");
+		cache.open();
+	}
+
+	@Test
+	public void testKeyXPath() throws Exception {
+		MapCache keyCache = new MapCache();
+		keyCache.setKeyXPath("/ns:request/ns:id");
+		keyCache.setKeyNamespaceDefs("ns=urn:test");
+		keyCache.configure("test");
+		assertEquals("12 34", keyCache.transformKey("<request xmlns=\"urn:test\"><id>12</id><other>x</other><id>34</id></request>", null));
+		assertNull(keyCache.transformKey("<request><id>12</id></request>", null));
+	}
+
+	@Test
+	public void testHitAndMiss() {
+		CacheAdapterBase.Load load = cache.startLoading("k", "k");
+		assertNotNull(load);
+		cache.putString("k", "value");
+		cache.finishLoading(load);
+		assertNull(cache.startLoading("k", "k"));
+		assertEquals("value", cache.getString("k"));
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+	}
+
+	@Test
+	public void testConcurrentMissesAreComputedOnce() throws Exception {
+		final int numThreads = 10;
+		final AtomicInteger computations = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch finished = new CountDownLatch(numThreads);
+		for (int i=0; i<numThreads; i++) {
+			new Thread() {
+				public void run() {
+					try {
+						start.await();
+						CacheAdapterBase.Load load = cache.startLoading("k", "k");
+						if (load!=null) {
+							try {
+								computations.incrementAndGet();
+								Thread.sleep(100);
+								cache.putString("k", "value");
+							} finally {
+								cache.finishLoading(load);
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						finished.countDown();
+					}
+				}
+			}.start();
+		}
+		start.countDown();
+		finished.await();
+		assertEquals(1, computations.get());
+		assertEquals(1, cache.getMisses());
+		assertEquals(numThreads-1, cache.getHits());
+	}
+
+	@Test
+	public void testFailedComputationIsRetriedByWaiter() throws Exception {
+		CacheAdapterBase.Load load = cache.startLoading("k", "k");
+		final CacheAdapterBase.Load[] waiterLoad = new CacheAdapterBase.Load[1];
+		Thread waiter = new Thread() {
+			public void run() {
+				waiterLoad[0] = cache.startLoading("k", "k");
+			}
+		};
+		waiter.start();
+		while (cache.getCoalescedWaits()==0) {
+			Thread.sleep(5);
+		}
+		cache.finishLoading(load);
+		waiter.join();
+		assertNotNull("waiter must compute value itself when no value was stored", waiterLoad[0]);
+	}
+
+	@Test
+	public void testStaleWhileRevalidate() throws Exception {
+		cache.setRefreshAfterSeconds(1);
+		cache.putString("k", "old");
+		assertNull(cache.startLoading("k", "k"));
+		Thread.sleep(1100);
+		CacheAdapterBase.Load refresh = cache.startLoading("k", "k");
+		assertNotNull("first reader of stale value must refresh it", refresh);
+		assertNull("other readers are served the stale value", cache.startLoading("k", "k"));
+		assertEquals("old", cache.getString("k"));
+		assertEquals(1, cache.getStaleHits());
+		cache.putString("k", "new");
+		cache.finishLoading(refresh);
+		assertNull(cache.startLoading("k", "k"));
+		assertEquals("new", cache.getString("k"));
+	}
+}
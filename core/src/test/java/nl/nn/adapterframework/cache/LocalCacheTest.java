@@ -0,0 +1,107 @@
+package nl.nn.adapterframework.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class LocalCacheTest {
+
+	private LocalCache cache;
+
+	private LocalCache createCache(int maxElements) throws Exception {
+		cache = new LocalCache();
+		cache.setMaxElementsInMemory(maxElements);
+		cache.configure("test");
+		cache.open();
+		return cache;
+	}
+
+	@After
+	public void tearDown() {
+		if (cache!=null) {
+			cache.close();
+		}
+	}
+
+	@Test
+	public void testPutAndGet() throws Exception {
+		createCache(10);
+		Object value = new Object();
+		cache.putObject("k", value);
+		assertSame(value, cache.getObject("k"));
+		cache.putString("s", "value");
+		assertEquals("value", cache.getString("s"));
+		assertTrue(cache.remove("s"));
+		assertNull(cache.getString("s"));
+	}
+
+	@Test
+	public void testSizeIsBounded() throws Exception {
+		createCache(100);
+		for (int i=0; i<1000; i++) {
+			cache.putString("k"+i, "v"+i);
+			assertTrue(cache.size()<=100);
+		}
+	}
+
+	@Test
+	public void testFrequentlyUsedElementsSurviveScan() throws Exception {
+		createCache(100);
+		for (int i=0; i<50; i++) {
+			cache.putString("hot"+i, "v"+i);
+		}
+		for (int round=0; round<5; round++) {
+			for (int i=0; i<50; i++) {
+				assertNotNull(cache.getString("hot"+i));
+			}
+		}
+		for (int i=0; i<1000; i++) {
+			cache.putString("scan"+i, "v"+i);
+		}
+		int hotRetained=0;
+		for (int i=0; i<50; i++) {
+			if (cache.getString("hot"+i)!=null) {
+				hotRetained++;
+			}
+		}
+		assertTrue("only ["+hotRetained+"] of 50 frequently used elements retained", hotRetained>=45);
+	}
+
+	@Test
+	public void testWeightIsBounded() throws Exception {
+		cache = new LocalCache();
+		cache.setMaxWeight(100);
+		cache.configure("test");
+		cache.open();
+		for (int i=0; i<100; i++) {
+			cache.putString("k"+i, "0123456789");
+		}
+		assertTrue(cache.size()<=10);
+	}
+
+	@Test
+	public void testTimeToLive() throws Exception {
+		cache = new LocalCache();
+		cache.setTimeToLiveSeconds(1);
+		cache.configure("test");
+		cache.open();
+		cache.putString("k", "v");
+		assertEquals("v", cache.getString("k"));
+		Thread.sleep(1100);
+		assertNull(cache.getString("k"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testKeyXPath() throws Exception {
+		cache = new LocalCache();
+		cache.setKeyXPath("/request/id");
+		cache.configure("test");
+		assertEquals("12", cache.transformKey("<request><id>12</id><other>x</other></request>", null));
+	}
+}
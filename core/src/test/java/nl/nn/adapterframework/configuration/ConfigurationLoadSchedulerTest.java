@@ -0,0 +1,146 @@
+package nl.nn.adapterframework.configuration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import nl.nn.adapterframework.util.AppConstants;
+
+import org.junit.Test;
+
+public class ConfigurationLoadSchedulerTest {
+
+	private List<String> events = Collections.synchronizedList(new ArrayList<String>());
+	private List<String> warnings = Collections.synchronizedList(new ArrayList<String>());
+
+	private class StubLoader implements ConfigurationLoadScheduler.Loader {
+		private String name;
+		private List<String> dependencies;
+		private long duration;
+		private RuntimeException failure;
+
+		StubLoader(String name, long duration, String... dependencies) {
+			this.name = name;
+			this.duration = duration;
+			this.dependencies = Arrays.asList(dependencies);
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public List<String> getDependencies() {
+			return dependencies;
+		}
+
+		@Override
+		public void run() {
+			events.add("start " + name);
+			try {
+				Thread.sleep(duration);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			events.add("end " + name);
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	private class TestScheduler extends ConfigurationLoadScheduler {
+		TestScheduler(int threads) {
+			super(threads);
+		}
+
+		@Override
+		protected void circularDependency(Loader loader, List<String> others) {
+			warnings.add(loader.getName() + " " + others);
+		}
+	}
+
+	@Test
+	public void testIndependentConfigurationsRunInParallel() {
+		new TestScheduler(2).load(Arrays.asList(new StubLoader("A", 200), new StubLoader("B", 200)));
+		assertEquals(4, events.size());
+		assertTrue(events.toString(), events.get(0).startsWith("start") && events.get(1).startsWith("start"));
+		assertEquals(0, warnings.size());
+	}
+
+	@Test
+	public void testDependenciesAreLoadedFirst() {
+		// B depends on A, but is specified first; C has no dependencies and is not delayed by A
+		new TestScheduler(3).load(Arrays.asList(new StubLoader("B", 10, "A"), new StubLoader("A", 200), new StubLoader("C", 10)));
+		assertTrue(events.toString(), events.indexOf("end A") < events.indexOf("start B"));
+		assertTrue(events.toString(), events.indexOf("end C") < events.indexOf("end A"));
+		assertEquals(0, warnings.size());
+	}
+
+	@Test
+	public void testDependenciesOutsideLoadAreIgnored() {
+		new TestScheduler(2).load(Arrays.asList(new StubLoader("A", 10, "notLoaded"), new StubLoader("B", 10)));
+		assertEquals(4, events.size());
+		assertEquals(0, warnings.size());
+	}
+
+	@Test
+	public void testCircularDependencyIsLoadedAnyway() {
+		new TestScheduler(2).load(Arrays.asList(new StubLoader("A", 10, "B"), new StubLoader("B", 10, "A"), new StubLoader("C", 10, "A")));
+		assertEquals(Arrays.asList("A [B, C]"), warnings);
+		assertEquals(6, events.size());
+		assertEquals("start A", events.get(0));
+	}
+
+	@Test
+	public void testFirstFailureIsThrownAfterAllLoadersFinished() {
+		StubLoader a = new StubLoader("A", 10);
+		a.failure = new IllegalStateException("A failed");
+		StubLoader b = new StubLoader("B", 300);
+		b.failure = new IllegalStateException("B failed");
+		StubLoader c = new StubLoader("C", 10, "A");
+		try {
+			new TestScheduler(2).load(Arrays.asList(a, b, c));
+			fail("expected failure of A");
+		} catch (IllegalStateException e) {
+			assertSame(a.failure, e);
+		}
+		assertTrue(events.toString(), events.contains("end B"));
+		assertTrue("a failing configuration does not prevent dependent ones from loading", events.contains("end C"));
+	}
+
+	@Test
+	public void testConfigurationDependencies() {
+		AppConstants appConstants = AppConstants.getInstance();
+		appConstants.setProperty("configurations.ConfigurationLoadSchedulerTest.parentConfig", "Parent");
+		appConstants.setProperty("configurations.ConfigurationLoadSchedulerTest.dependsOn", "First, Second");
+		try {
+			IbisContext ibisContext = new IbisContext();
+			assertEquals(Arrays.asList("Parent", "First", "Second"), ibisContext.getConfigurationDependencies("ConfigurationLoadSchedulerTest"));
+			assertEquals(0, ibisContext.getConfigurationDependencies("ConfigurationLoadSchedulerTestWithoutDependencies").size());
+		} finally {
+			appConstants.remove("configurations.ConfigurationLoadSchedulerTest.parentConfig");
+			appConstants.remove("configurations.ConfigurationLoadSchedulerTest.dependsOn");
+		}
+	}
+
+	@Test
+	public void testParentConfigIsLoadedFirst() {
+		AppConstants appConstants = AppConstants.getInstance();
+		appConstants.setProperty("configurations.Child.parentConfig", "Parent");
+		try {
+			IbisContext ibisContext = new IbisContext();
+			new TestScheduler(2).load(Arrays.asList(new StubLoader("Child", 10, ibisContext.getConfigurationDependencies("Child").toArray(new String[0])), new StubLoader("Parent", 200)));
+			assertEquals(Arrays.asList("start Parent", "end Parent", "start Child", "end Child"), events);
+		} finally {
+			appConstants.remove("configurations.Child.parentConfig");
+		}
+	}
+}
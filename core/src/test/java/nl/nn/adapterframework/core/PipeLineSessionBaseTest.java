@@ -1,7 +1,22 @@
 package nl.nn.adapterframework.core;
 
 import static org.junit.Assert.assertEquals;
-
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import nl.nn.adapterframework.util.DateUtils;
+
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
@@ -126,4 +141,89 @@ public class PipeLineSessionBaseTest {
 		assertEquals(TEST_OBJECT, session.get("object1"));
 		assertEquals(TEST_OBJECT.toString(), session.get("object1", "dummy"));
 	}
+
+	@Test
+	public void testOriginalMessage() throws Exception {
+		assertNull(session.getOriginalMessage());
+		session.put(IPipeLineSession.originalMessageKey, "<test/>");
+		assertEquals("<test/>", session.getOriginalMessage());
+		session.put(IPipeLineSession.originalMessageKey, "<test/>".getBytes("UTF-8"));
+		assertEquals("<test/>", session.getOriginalMessage());
+	}
+
+	@Test
+	public void testListenerParameters() throws Exception {
+		Date tsReceived = new Date(1000000000000L);
+		Date tsSent = new Date(1000000001000L);
+		int size = session.size();
+		PipeLineSessionBase.setListenerParameters(session, "id1", "tcid1", tsReceived, tsSent);
+		assertEquals(size+4, session.size());
+		assertTrue(session.containsKey(IPipeLineSession.tsReceivedKey));
+		assertEquals(DateUtils.format(tsReceived, DateUtils.FORMAT_FULL_GENERIC), session.get(IPipeLineSession.tsReceivedKey));
+		assertEquals(DateUtils.format(tsSent, DateUtils.FORMAT_FULL_GENERIC), session.get(IPipeLineSession.tsSentKey));
+		assertEquals("tcid1", session.get(IPipeLineSession.technicalCorrelationIdKey));
+
+		Map<String,Object> plainMap = new HashMap<String,Object>();
+		PipeLineSessionBase.setListenerParameters(plainMap, "id1", "tcid1", tsReceived, null);
+		assertEquals(DateUtils.format(tsReceived, DateUtils.FORMAT_FULL_GENERIC), plainMap.get(IPipeLineSession.tsReceivedKey));
+		assertFalse(plainMap.containsKey(IPipeLineSession.tsSentKey));
+	}
+
+	@Test
+	public void testListenerParametersInMapOperations() throws Exception {
+		Date tsReceived = new Date(1000000000000L);
+		String formatted = DateUtils.format(tsReceived, DateUtils.FORMAT_FULL_GENERIC);
+		PipeLineSessionBase.setListenerParameters(session, null, "tcid1", tsReceived, null);
+
+		PipeLineSessionBase copy = new PipeLineSessionBase(session);
+		assertEquals(session.size(), copy.size());
+		assertEquals(formatted, copy.get(IPipeLineSession.tsReceivedKey));
+		assertEquals(formatted, copy.put(IPipeLineSession.tsReceivedKey, "other"));
+		assertEquals("other", copy.get(IPipeLineSession.tsReceivedKey));
+		assertEquals(formatted, session.get(IPipeLineSession.tsReceivedKey));
+
+		Map<String,Object> plainMap = new HashMap<String,Object>(session);
+		assertEquals(formatted, plainMap.get(IPipeLineSession.tsReceivedKey));
+		assertEquals(session, plainMap);
+		assertTrue(session.keySet().contains(IPipeLineSession.tsReceivedKey));
+
+		copy.remove("object1");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(out);
+		oos.writeObject(copy);
+		oos.close();
+		Map<?,?> deserialized = (Map<?,?>)new ObjectInputStream(new ByteArrayInputStream(out.toByteArray())).readObject();
+		assertEquals("other", deserialized.get(IPipeLineSession.tsReceivedKey));
+
+		assertEquals(formatted, session.remove(IPipeLineSession.tsReceivedKey));
+		assertNull(session.get(IPipeLineSession.tsReceivedKey));
+		assertFalse(session.containsKey(IPipeLineSession.tsReceivedKey));
+	}
+	private Object invokeMapMethod(String name, Class<?>[] parameterTypes, Object... args) throws Exception {
+		Method method;
+		try {
+			method = Map.class.getMethod(name, parameterTypes);
+		} catch (NoSuchMethodException e) {
+			// the default methods of Map were added in Java 8
+			Assume.assumeNoException(e);
+			return null;
+		}
+		return method.invoke(session, args);
+	}
+
+	@Test
+	public void testListenerParametersInDefaultMapMethods() throws Exception {
+		Date tsReceived = new Date(1000000000000L);
+		String formatted = DateUtils.format(tsReceived, DateUtils.FORMAT_FULL_GENERIC);
+		PipeLineSessionBase.setListenerParameters(session, null, "tcid1", tsReceived, null);
+
+		Class<?>[] keyValue = new Class<?>[] { Object.class, Object.class };
+		assertEquals(formatted, invokeMapMethod("getOrDefault", keyValue, IPipeLineSession.tsReceivedKey, "dummy"));
+		assertEquals(formatted, invokeMapMethod("putIfAbsent", keyValue, IPipeLineSession.tsReceivedKey, "other"));
+		assertEquals(formatted, invokeMapMethod("replace", keyValue, IPipeLineSession.tsReceivedKey, "other"));
+		assertEquals("other", session.get(IPipeLineSession.tsReceivedKey));
+		assertEquals(Boolean.TRUE, invokeMapMethod("remove", keyValue, IPipeLineSession.tsReceivedKey, "other"));
+		assertFalse(session.containsKey(IPipeLineSession.tsReceivedKey));
+		assertEquals("dummy", invokeMapMethod("getOrDefault", keyValue, IPipeLineSession.tsReceivedKey, "dummy"));
+	}
 }
@@ -0,0 +1,229 @@
+package nl.nn.adapterframework.ftp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.nn.adapterframework.configuration.ConfigurationException;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.Test;
+
+/**
+ * Tests the pooling of connections by {@link FtpSession}, using stub clients instead of a real ftp server.
+ */
+public class FtpSessionPoolingTest {
+
+	private class StubFtpClient extends FTPClient {
+		private boolean connected = true;
+		private boolean alive = true;
+		private List<String> directories = Collections.synchronizedList(new ArrayList<String>());
+		private CyclicBarrier barrier;
+
+		@Override
+		public boolean isConnected() {
+			return connected;
+		}
+
+		@Override
+		public boolean sendNoOp() throws IOException {
+			return alive;
+		}
+
+		@Override
+		public String printWorkingDirectory() throws IOException {
+			return "/home";
+		}
+
+		@Override
+		public boolean changeWorkingDirectory(String pathname) throws IOException {
+			directories.add(pathname);
+			return true;
+		}
+
+		@Override
+		public boolean storeFile(String remote, InputStream local) throws IOException {
+			if (barrier != null) {
+				try {
+					barrier.await(10, TimeUnit.SECONDS);
+				} catch (Exception e) {
+					throw new IOException("transfers were not executed in parallel: " + e);
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int getReplyCode() {
+			return 250;
+		}
+
+		@Override
+		public String getReplyString() {
+			return "250 OK";
+		}
+
+		@Override
+		public int quit() throws IOException {
+			return 221;
+		}
+
+		@Override
+		public void disconnect() throws IOException {
+			connected = false;
+		}
+	}
+
+	private class StubFtpSession extends FtpSession {
+		private List<StubFtpClient> clients;
+		private CyclicBarrier barrier;
+
+		StubFtpSession(String host, List<StubFtpClient> clients) throws ConfigurationException {
+			this.clients = clients;
+			setHost(host);
+			setUsername("user");
+			setPassword("password");
+			setMessageIsContent(true);
+			setUsePooling(true);
+			configure();
+		}
+
+		@Override
+		FtpConnection createConnection() throws FtpConnectException {
+			StubFtpClient client = new StubFtpClient();
+			client.barrier = barrier;
+			clients.add(client);
+			try {
+				return new FtpConnection(client);
+			} catch (IOException e) {
+				throw new FtpConnectException(e);
+			}
+		}
+	}
+
+	@Test
+	public void testConnectionIsReused() throws Exception {
+		List<StubFtpClient> clients = Collections.synchronizedList(new ArrayList<StubFtpClient>());
+		StubFtpSession session = new StubFtpSession("reuse.example.com", clients);
+		StubFtpSession otherSession = new StubFtpSession("reuse.example.com", clients);
+
+		session.put(null, null, "a", "in", "a.txt", true);
+		session.put(null, null, "b", "in", "b.txt", true);
+		otherSession.put(null, null, "c", "in", "c.txt", true);
+
+		assertEquals(1, clients.size());
+		StubFtpClient client = clients.get(0);
+		assertEquals(true, client.isConnected());
+		// only the first transfer has to change directory
+		assertEquals(Arrays.asList("/home", "in"), client.directories);
+
+		session.put(null, null, "d", "out", "d.txt", true);
+		assertEquals(1, clients.size());
+		assertEquals(Arrays.asList("/home", "in", "/home", "out"), client.directories);
+	}
+
+	@Test
+	public void testDeadConnectionIsReplaced() throws Exception {
+		List<StubFtpClient> clients = Collections.synchronizedList(new ArrayList<StubFtpClient>());
+		StubFtpSession session = new StubFtpSession("dead.example.com", clients);
+
+		session.put(null, null, "a", "", "a.txt", true);
+		clients.get(0).alive = false;
+		session.put(null, null, "b", "", "b.txt", true);
+
+		assertEquals(2, clients.size());
+		assertEquals(false, clients.get(0).isConnected());
+	}
+
+	@Test
+	public void testConcurrentTransfersUseOwnConnections() throws Exception {
+		List<StubFtpClient> clients = Collections.synchronizedList(new ArrayList<StubFtpClient>());
+		final StubFtpSession session = new StubFtpSession("parallel.example.com", clients);
+		int threads = 3;
+		// every transfer waits until all transfers are in progress
+		session.barrier = new CyclicBarrier(threads);
+		final AtomicInteger counter = new AtomicInteger();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < threads; i++) {
+				results.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return session.put(null, null, "content", "", "file" + counter.incrementAndGet() + ".txt", true);
+					}
+				}));
+			}
+			for (Future<String> result : results) {
+				result.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(threads, clients.size());
+	}
+
+	@Test
+	public void testMaxActivePerKey() throws Exception {
+		List<StubFtpClient> clients = Collections.synchronizedList(new ArrayList<StubFtpClient>());
+		StubFtpSession session = new StubFtpSession("limited.example.com", clients);
+		FtpClientPool pool = new FtpClientPool(1, 10, 1, 100, true, 60000, -1);
+		FtpClientPool.Key key = new FtpClientPool.Key(session, Arrays.<Object>asList("limited.example.com"), "limited");
+		FtpClientPool.Key otherKey = new FtpClientPool.Key(session, Arrays.<Object>asList("other.example.com"), "other");
+
+		FtpConnection connection = pool.borrowConnection(key);
+		// limits are per key
+		FtpConnection otherConnection = pool.borrowConnection(otherKey);
+		assertNotSame(connection, otherConnection);
+		try {
+			pool.borrowConnection(key);
+			fail("expected no connection to be available");
+		} catch (FtpConnectException e) {
+			// expected
+		}
+		pool.returnConnection(key, connection);
+		assertSame(connection, pool.borrowConnection(key));
+		assertEquals(1, pool.getNumActive(key));
+		assertEquals(2, pool.getCreateCount());
+	}
+
+	@Test
+	public void testMaxTotal() throws Exception {
+		List<StubFtpClient> clients = Collections.synchronizedList(new ArrayList<StubFtpClient>());
+		StubFtpSession session = new StubFtpSession("limited.example.com", clients);
+		FtpClientPool pool = new FtpClientPool(2, 2, 2, 100, true, 60000, -1);
+		FtpClientPool.Key key1 = new FtpClientPool.Key(session, Arrays.<Object>asList("one.example.com"), "one");
+		FtpClientPool.Key key2 = new FtpClientPool.Key(session, Arrays.<Object>asList("two.example.com"), "two");
+		FtpClientPool.Key key3 = new FtpClientPool.Key(session, Arrays.<Object>asList("three.example.com"), "three");
+
+		FtpConnection connection1 = pool.borrowConnection(key1);
+		pool.borrowConnection(key2);
+		try {
+			pool.borrowConnection(key3);
+			fail("expected no connection to be available");
+		} catch (FtpConnectException e) {
+			// expected
+		}
+		// an idle connection of another key is closed to make room
+		pool.returnConnection(key1, connection1);
+		pool.borrowConnection(key3);
+		assertEquals(0, pool.getNumIdle(key1));
+		assertEquals(3, pool.getCreateCount());
+	}
+}
@@ -0,0 +1,49 @@
+package nl.nn.adapterframework.http;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import nl.nn.adapterframework.statistics.StatisticsKeeper;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+public class HttpResponseHandlerTest {
+
+	private HttpResponse createResponse(int size) {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		BasicHttpEntity entity = new BasicHttpEntity();
+		entity.setContent(new ByteArrayInputStream(new byte[size]));
+		entity.setContentLength(size);
+		response.setEntity(entity);
+		return response;
+	}
+
+	@Test
+	public void testBytesReadAreCounted() throws Exception {
+		StatisticsKeeper sizeStatistics = new StatisticsKeeper("response body");
+		HttpResponseHandler handler = new HttpResponseHandler(createResponse(100), sizeStatistics);
+		InputStream content = handler.getResponse();
+		while (content.read() >= 0) {
+			// read all
+		}
+		handler.close();
+		assertEquals(1, sizeStatistics.getCount());
+		assertEquals(100, sizeStatistics.getTotal());
+	}
+
+	@Test
+	public void testBytesConsumedOnCloseAreCounted() throws Exception {
+		StatisticsKeeper sizeStatistics = new StatisticsKeeper("response body");
+		HttpResponseHandler handler = new HttpResponseHandler(createResponse(10000), sizeStatistics);
+		handler.getResponse().read(new byte[10]);
+		handler.close();
+		assertEquals(1, sizeStatistics.getCount());
+		assertEquals(10000, sizeStatistics.getTotal());
+	}
+}
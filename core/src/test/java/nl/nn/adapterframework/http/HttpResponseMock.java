@@ -22,8 +22,6 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
-import nl.nn.adapterframework.http.mime.MultipartEntity;
-
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
@@ -96,11 +94,10 @@ public class HttpResponseMock extends Mockito implements Answer<HttpResponse> {
 			response.append(header.getName() + ": " + header.getValue() + lineSeparator);
 		}
 		HttpEntity entity = request.getEntity();
-		if(entity instanceof MultipartEntity) {
-			MultipartEntity multipartEntity = (MultipartEntity) entity;
+		if(entity.getContentType() != null && entity.getContentType().getValue().startsWith("multipart/")) {
 			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			multipartEntity.writeTo(baos);
-			String contentType = multipartEntity.getContentType().getValue();
+			entity.writeTo(baos);
+			String contentType = entity.getContentType().getValue();
 			String boundary = getBoundary(contentType);
 			contentType = contentType.replaceAll(boundary, "IGNORE");
 			response.append("Content-Type: " + contentType + lineSeparator);
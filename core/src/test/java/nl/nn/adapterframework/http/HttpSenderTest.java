@@ -18,14 +18,23 @@ package nl.nn.adapterframework.http;
 import static org.junit.Assert.*;
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+
+import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.PipeLineSessionBase;
 import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.parameters.Parameter;
 import nl.nn.adapterframework.parameters.ParameterResolutionContext;
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeper;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
 import nl.nn.adapterframework.util.Misc;
 
+import org.apache.commons.codec.binary.Base64;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 public class HttpSenderTest extends BaseHttpSender<HttpSender> {
 
@@ -201,4 +210,78 @@ public class HttpSenderTest extends BaseHttpSender<HttpSender> {
 			}
 		}
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void connectionPoolStatistics() throws Throwable {
+		HttpSender sender = getSender();
+		try {
+			sender.setName("httpSender");
+			sender.setMaxConnections(5);
+			sender.setMaxConnectionsPerRoute(2);
+			sender.setIdleConnectionTimeout(60000);
+			sender.configure();
+			sender.open();
+
+			StatisticsKeeperIterationHandler handler = mock(StatisticsKeeperIterationHandler.class);
+			Object poolData = new Object();
+			when(handler.openGroup(any(), anyString(), eq("connectionPool"))).thenReturn(poolData);
+			sender.iterateOverStatistics(handler, null, HasStatistics.STATISTICS_ACTION_FULL);
+
+			verify(handler).handleScalar(poolData, "leased", 0L);
+			verify(handler).handleScalar(poolData, "pending", 0L);
+			verify(handler).handleScalar(poolData, "leaseTimeouts", 0L);
+			verify(handler).handleStatisticsKeeper(eq(poolData), any(StatisticsKeeper.class));
+			verify(handler).closeGroup(poolData);
+		} finally {
+			sender.close();
+		}
+	}
+
+	@Test
+	public void streamRequestAndResponseThroughSessionKeys() throws Throwable {
+		HttpSender sender = getSender();
+		try {
+			IPipeLineSession pls = new PipeLineSessionBase();
+			pls.put("requestStream", new ByteArrayInputStream("<xml>streamed</xml>".getBytes("UTF-8")));
+			ParameterResolutionContext prc = new ParameterResolutionContext("ignored", pls);
+
+			sender.setName("httpSender");
+			sender.setMethodType("POST");
+			sender.setStreamRequestFromSessionKey("requestStream");
+			sender.setStoreResultAsStreamInSessionKey("responseStream");
+			sender.setBase64(true);
+
+			sender.configure();
+			sender.open();
+
+			assertEquals("", sender.sendMessage(null, "ignored", prc));
+			InputStream responseStream = (InputStream) pls.get("responseStream");
+			String response = new String(Base64.decodeBase64(Misc.streamToBytes(responseStream)), "UTF-8");
+			assertTrue(response, response.endsWith("<xml>streamed</xml>"));
+			assertFalse(response, response.contains("ignored"));
+
+			StatisticsKeeperIterationHandler handler = mock(StatisticsKeeperIterationHandler.class);
+			Object transferData = new Object();
+			when(handler.openGroup(any(), anyString(), eq("transfer"))).thenReturn(transferData);
+			sender.iterateOverStatistics(handler, null, HasStatistics.STATISTICS_ACTION_FULL);
+
+			ArgumentCaptor<StatisticsKeeper> keepers = ArgumentCaptor.forClass(StatisticsKeeper.class);
+			verify(handler, times(2)).handleStatisticsKeeper(eq(transferData), keepers.capture());
+			List<StatisticsKeeper> transferStatistics = keepers.getAllValues();
+			StatisticsKeeper responseSize = transferStatistics.get(1);
+			assertEquals("response body", responseSize.getName());
+			assertEquals(1, responseSize.getCount());
+			assertEquals(response.length(), responseSize.getTotal());
+		} finally {
+			sender.close();
+		}
+	}
+
+	@Test(expected=ConfigurationException.class)
+	public void streamRequestRequiresPostOrPut() throws Throwable {
+		HttpSender sender = getSender();
+		sender.setMethodType("GET");
+		sender.setStreamRequestFromFileNameSessionKey("fileName");
+		sender.configure();
+	}
+}
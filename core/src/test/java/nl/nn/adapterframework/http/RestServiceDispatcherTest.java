@@ -0,0 +1,99 @@
+package nl.nn.adapterframework.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import nl.nn.adapterframework.configuration.ConfigurationException;
+import nl.nn.adapterframework.receivers.ServiceClient;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class RestServiceDispatcherTest {
+
+	private RestServiceDispatcher dispatcher;
+
+	@Before
+	public void setUp() {
+		dispatcher = new RestServiceDispatcher();
+	}
+
+	private ServiceClient register(String uriPattern, String method) throws ConfigurationException {
+		ServiceClient listener = Mockito.mock(ServiceClient.class);
+		dispatcher.registerServiceClient(listener, uriPattern, method, null, null, false);
+		return listener;
+	}
+
+	@Test
+	public void testLegacyPrefixMatching() throws Exception {
+		register("customers", "GET");
+		register("/", "GET");
+		assertEquals("/customers", dispatcher.findMatchingPattern("/customers"));
+		assertEquals("/customers", dispatcher.findMatchingPattern("/customers/"));
+		assertEquals("/customers", dispatcher.findMatchingPattern("/customers/123"));
+		assertEquals("/", dispatcher.findMatchingPattern("/"));
+		assertNull(dispatcher.findMatchingPattern("/orders"));
+		assertNull(dispatcher.findMatchingPattern(null));
+	}
+
+	@Test
+	public void testPathTemplates() throws Exception {
+		register("customers", "GET");
+		register("customers/{id}/orders", "GET");
+		register("customers/{id}/orders/{orderId}", "GET");
+		register("customers/new/orders", "GET");
+
+		Map<String,Object> pathVariables = new HashMap<String,Object>();
+		RestDispatchConfig config = new RestRoutingTree(Arrays.asList(
+				new RestDispatchConfig("/customers/{id}/orders/{orderId}"))).match("/customers/12/orders/34", pathVariables);
+		assertEquals("/customers/{id}/orders/{orderId}", config.getUriPattern());
+		assertEquals("12", pathVariables.get("id"));
+		assertEquals("34", pathVariables.get("orderId"));
+
+		assertEquals("/customers/{id}/orders", dispatcher.findMatchingPattern("/customers/12/orders"));
+		assertEquals("/customers/{id}/orders/{orderId}", dispatcher.findMatchingPattern("/customers/12/orders/34"));
+		assertEquals("/customers/new/orders", dispatcher.findMatchingPattern("/customers/new/orders"));
+		// falls back to the longest matching prefix
+		assertEquals("/customers", dispatcher.findMatchingPattern("/customers/12/invoices"));
+	}
+
+	@Test
+	public void testLiteralBacktracking() throws Exception {
+		register("a/b/c", "GET");
+		register("a/{x}/d", "GET");
+		assertEquals("/a/{x}/d", dispatcher.findMatchingPattern("/a/b/d"));
+		assertEquals("/a/b/c", dispatcher.findMatchingPattern("/a/b/c/e"));
+		assertNull(dispatcher.findMatchingPattern("/a/b"));
+	}
+
+	@Test
+	public void testMethods() throws Exception {
+		ServiceClient get = register("items/{id}", "GET");
+		ServiceClient any = register("items/{id}", null);
+		assertSame(get, dispatcher.getMethodConfig("/items/{id}", "GET").getListener());
+		assertSame(any, dispatcher.getMethodConfig("/items/{id}", "POST").getListener());
+		assertEquals(2, dispatcher.getAvailableMethods("/items/{id}").size());
+		assertNull(dispatcher.getMethodConfig("/unknown", "GET"));
+	}
+
+	@Test(expected=ConfigurationException.class)
+	public void testDuplicateRegistration() throws Exception {
+		register("items", "GET");
+		register("/items", "GET");
+	}
+
+	@Test
+	public void testUnregister() throws Exception {
+		register("items/{id}", "GET");
+		assertEquals("/items/{id}", dispatcher.findMatchingPattern("/items/1"));
+		dispatcher.unregisterServiceClient("items/{id}");
+		assertNull(dispatcher.findMatchingPattern("/items/1"));
+		assertEquals(0, dispatcher.getUriPatterns().size());
+	}
+}
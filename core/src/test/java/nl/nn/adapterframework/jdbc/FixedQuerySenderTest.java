@@ -0,0 +1,90 @@
+package nl.nn.adapterframework.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import nl.nn.adapterframework.core.IPipeLineSession;
+import nl.nn.adapterframework.core.PipeLineSessionBase;
+import nl.nn.adapterframework.jdbc.dbms.H2DbmsSupport;
+import nl.nn.adapterframework.parameters.ParameterResolutionContext;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FixedQuerySenderTest {
+
+	private static int databaseNr=0;
+
+	private BasicDataSource dataSource;
+	private Map<String,Object> dataSources;
+	private FixedQuerySender sender;
+
+	@Before
+	public void setUp() throws Exception {
+		dataSource = new BasicDataSource();
+		dataSource.setDriverClassName("org.h2.Driver");
+		dataSource.setUrl("jdbc:h2:mem:querysender"+(databaseNr++));
+		dataSources = new HashMap<String,Object>();
+		dataSources.put("testDatasource", dataSource);
+		Connection conn = dataSource.getConnection();
+		try {
+			Statement stmt = conn.createStatement();
+			stmt.execute("CREATE TABLE messages (id INT PRIMARY KEY, message VARCHAR(100))");
+			for (int i=1; i<=3; i++) {
+				stmt.execute("INSERT INTO messages VALUES ("+i+", 'message "+i+"')");
+			}
+			stmt.close();
+		} finally {
+			conn.close();
+		}
+		sender = new FixedQuerySender();
+		sender.setName("testSender");
+		sender.setDatasourceName("testDatasource");
+		sender.setProxiedDataSources(dataSources);
+		sender.setDbmsSupport(new H2DbmsSupport());
+		sender.setQueryType("select");
+		sender.setQuery("SELECT id, message FROM messages ORDER BY id");
+		sender.setIncludeFieldDefinition(false);
+		sender.setFetchSize(2);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		sender.close();
+		dataSource.close();
+	}
+
+	private String sendMessage(IPipeLineSession session) throws Exception {
+		sender.configure();
+		sender.open();
+		return sender.sendMessage("cid", "", new ParameterResolutionContext("", session));
+	}
+
+	@Test
+	public void testJsonResult() throws Exception {
+		sender.setOutputFormat("json");
+		sender.setMaxRows(2);
+		assertEquals("[{\"ID\":\"1\",\"MESSAGE\":\"message 1\"},{\"ID\":\"2\",\"MESSAGE\":\"message 2\"}]", sendMessage(new PipeLineSessionBase()));
+	}
+
+	@Test
+	public void testStreamResultToSessionKey() throws Exception {
+		String expected = sendMessage(new PipeLineSessionBase());
+		assertTrue(expected, expected.contains("<row number=\"2\">"));
+
+		StringWriter writer = new StringWriter();
+		IPipeLineSession session = new PipeLineSessionBase();
+		session.put("out", writer);
+		sender.setStreamResultToSessionKey("out");
+		assertEquals("", sendMessage(session));
+		assertEquals(expected, writer.toString());
+	}
+}
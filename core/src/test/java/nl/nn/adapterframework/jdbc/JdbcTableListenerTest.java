@@ -0,0 +1,216 @@
+package nl.nn.adapterframework.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import nl.nn.adapterframework.core.IMessageWrapper;
+import nl.nn.adapterframework.core.PipeLineResult;
+import nl.nn.adapterframework.core.PipeLineSessionBase;
+import nl.nn.adapterframework.jdbc.dbms.H2DbmsSupport;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JdbcTableListenerTest {
+
+	private static int databaseNr=0;
+
+	private BasicDataSource dataSource;
+	private Map<String,Object> dataSources;
+
+	@Before
+	public void setUp() throws Exception {
+		dataSource = new BasicDataSource();
+		dataSource.setDriverClassName("org.h2.Driver");
+		dataSource.setUrl("jdbc:h2:mem:listener"+(databaseNr++));
+		dataSources = new HashMap<String,Object>();
+		dataSources.put("testDatasource", dataSource);
+		Connection conn = dataSource.getConnection();
+		try {
+			Statement stmt = conn.createStatement();
+			stmt.execute("CREATE TABLE messages (id VARCHAR(10) PRIMARY KEY, status CHAR(1), message VARCHAR(100), changed TIMESTAMP)");
+			for (int i=0; i<25; i++) {
+				stmt.execute("INSERT INTO messages VALUES ('"+i+"', 'A', 'message "+i+"', CURRENT_TIMESTAMP)");
+			}
+			stmt.close();
+		} finally {
+			conn.close();
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		dataSource.close();
+	}
+
+	private JdbcTableListener createListener(int claimBatchSize) throws Exception {
+		JdbcTableListener listener = newListener(claimBatchSize);
+		listener.configure();
+		listener.open();
+		return listener;
+	}
+
+	private JdbcTableListener newListener(int claimBatchSize) {
+		JdbcTableListener listener = new JdbcTableListener();
+		listener.setName("testListener");
+		listener.setDatasourceName("testDatasource");
+		listener.setProxiedDataSources(dataSources);
+		listener.setDbmsSupport(new H2DbmsSupport());
+		listener.setTableName("messages");
+		listener.setKeyField("id");
+		listener.setMessageField("message");
+		listener.setStatusField("status");
+		listener.setStatusValueAvailable("A");
+		listener.setStatusValueInProcess("I");
+		listener.setStatusValueProcessed("P");
+		listener.setStatusValueError("E");
+		listener.setOrderField("id");
+		listener.setClaimBatchSize(claimBatchSize);
+		return listener;
+	}
+
+	private void execute(String statement) throws Exception {
+		Connection conn = dataSource.getConnection();
+		try {
+			Statement stmt = conn.createStatement();
+			stmt.execute(statement);
+			stmt.close();
+		} finally {
+			conn.close();
+		}
+	}
+
+	private int countStatus(String status) throws Exception {
+		Connection conn = dataSource.getConnection();
+		try {
+			Statement stmt = conn.createStatement();
+			ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM messages WHERE status='"+status+"'");
+			rs.next();
+			int result = rs.getInt(1);
+			stmt.close();
+			return result;
+		} finally {
+			conn.close();
+		}
+	}
+
+	private PipeLineResult createResult(String state) {
+		PipeLineResult result = new PipeLineResult();
+		result.setState(state);
+		return result;
+	}
+
+	@Test
+	public void testClaimInBatches() throws Exception {
+		JdbcTableListener listener = createListener(10);
+		try {
+			Map<String,Object> threadContext = new PipeLineSessionBase();
+			for (int i=0; i<12; i++) {
+				Object rawMessage = listener.getRawMessage(threadContext);
+				assertEquals("message "+((IMessageWrapper)rawMessage).getId(), listener.getStringFromRawMessage(rawMessage, threadContext));
+				listener.afterMessageProcessed(createResult(i==0 ? "error" : "success"), rawMessage, new PipeLineSessionBase());
+				if (i==0) {
+					// the status is updated as soon as the message is processed
+					assertEquals(9, countStatus("I"));
+					assertEquals(1, countStatus("E"));
+				}
+			}
+			assertEquals(20, countStatus("I")+countStatus("P")+countStatus("E"));
+		} finally {
+			listener.close();
+		}
+		assertEquals(1, countStatus("E"));
+		assertEquals(11, countStatus("P"));
+		assertEquals(13, countStatus("A"));
+		assertEquals(0, countStatus("I"));
+	}
+
+	@Test
+	public void testConcurrentReceivers() throws Exception {
+		final JdbcTableListener listener = createListener(4);
+		final Set<String> keys = Collections.synchronizedSet(new HashSet<String>());
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		List<Thread> threads = new ArrayList<Thread>();
+		try {
+			for (int t=0; t<5; t++) {
+				Thread thread = new Thread() {
+					@Override
+					public void run() {
+						try {
+							Map<String,Object> threadContext = new PipeLineSessionBase();
+							Object rawMessage;
+							while ((rawMessage=listener.getRawMessage(threadContext))!=null) {
+								assertTrue(keys.add(((IMessageWrapper)rawMessage).getId()));
+								listener.afterMessageProcessed(createResult("success"), rawMessage, new PipeLineSessionBase());
+							}
+						} catch (Throwable e) {
+							errors.add(e);
+						}
+					}
+				};
+				thread.start();
+				threads.add(thread);
+			}
+			for (Thread thread:threads) {
+				thread.join(30000);
+			}
+			assertEquals(errors.toString(), 0, errors.size());
+			assertNull(listener.getRawMessage(new PipeLineSessionBase()));
+		} finally {
+			listener.close();
+		}
+		assertEquals(25, keys.size());
+		assertEquals(25, countStatus("P"));
+	}
+
+	@Test
+	public void testWithoutClaiming() throws Exception {
+		JdbcTableListener listener = createListener(0);
+		try {
+			Map<String,Object> threadContext = new PipeLineSessionBase();
+			Object rawMessage = listener.getRawMessage(threadContext);
+			listener.afterMessageProcessed(createResult("success"), rawMessage, new PipeLineSessionBase());
+			assertEquals(1, countStatus("P"));
+			assertEquals(24, countStatus("A"));
+		} finally {
+			listener.close();
+		}
+	}
+
+	@Test
+	public void testResetStaleInProcessOnOpen() throws Exception {
+		// rows claimed by an instance that stopped unexpectedly, and rows that are claimed just now
+		execute("UPDATE messages SET status='I', changed=DATEADD('HOUR', -1, CURRENT_TIMESTAMP) WHERE id IN ('0','1','2')");
+		execute("UPDATE messages SET status='I' WHERE id IN ('3','4')");
+		JdbcTableListener listener = newListener(10);
+		listener.setTimestampField("changed");
+		listener.setInProcessTimeout(600);
+		listener.configure();
+		listener.open();
+		try {
+			assertEquals(2, countStatus("I"));
+			assertEquals(23, countStatus("A"));
+			Object rawMessage = listener.getRawMessage(new PipeLineSessionBase());
+			assertEquals("0", ((IMessageWrapper)rawMessage).getId());
+			listener.afterMessageProcessed(createResult("success"), rawMessage, new PipeLineSessionBase());
+		} finally {
+			listener.close();
+		}
+		assertEquals(1, countStatus("P"));
+		assertEquals(2, countStatus("I"));
+	}
+}
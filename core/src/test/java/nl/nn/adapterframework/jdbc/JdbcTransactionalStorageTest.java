@@ -0,0 +1,260 @@
+package nl.nn.adapterframework.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.nn.adapterframework.core.IMessageBrowsingIterator;
+import nl.nn.adapterframework.core.IMessageBrowsingIteratorItem;
+
+public class JdbcTransactionalStorageTest {
+
+	private static int databaseNr=0;
+
+	private BasicDataSource dataSource;
+	private Map<String,Object> dataSources;
+
+	@Before
+	public void setUp() throws Exception {
+		dataSource = new BasicDataSource();
+		dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+		dataSource.setUrl("jdbc:hsqldb:mem:storage"+(databaseNr++));
+		dataSources = new HashMap<String,Object>();
+		dataSources.put("testDatasource", dataSource);
+		Connection conn = dataSource.getConnection();
+		try {
+			conn.createStatement().execute("CREATE TABLE ibisstore (messageKey INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, type CHAR(1), slotId VARCHAR(100), host VARCHAR(100), "+
+					"messageId VARCHAR(100), correlationId VARCHAR(256), messageDate TIMESTAMP, comments VARCHAR(1000), message BLOB, expiryDate TIMESTAMP, label VARCHAR(1000))");
+		} finally {
+			conn.close();
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Connection conn = dataSource.getConnection();
+		try {
+			conn.createStatement().execute("SHUTDOWN");
+		} finally {
+			conn.close();
+		}
+		dataSource.close();
+	}
+
+	private JdbcTransactionalStorage createStorage(String type) throws Exception {
+		JdbcTransactionalStorage storage = new JdbcTransactionalStorage();
+		storage.setName("testStorage");
+		storage.setDatasourceName("testDatasource");
+		storage.setProxiedDataSources(dataSources);
+		storage.setSlotId("testSlot");
+		storage.setType(type);
+		return storage;
+	}
+
+	private List<String> browse(JdbcTransactionalStorage storage, String startKey, boolean descending, int pageSize) throws Exception {
+		List<String> result = new ArrayList<String>();
+		IMessageBrowsingIterator iterator = storage.getIterator(startKey, null, null, descending, pageSize);
+		try {
+			while (iterator.hasNext()) {
+				IMessageBrowsingIteratorItem item = iterator.next();
+				try {
+					result.add(item.getOriginalId());
+				} finally {
+					item.release();
+				}
+			}
+		} finally {
+			iterator.close();
+		}
+		return result;
+	}
+
+	private int countRows() throws Exception {
+		Connection conn = dataSource.getConnection();
+		try {
+			ResultSet rs = conn.createStatement().executeQuery("SELECT COUNT(*) FROM ibisstore");
+			rs.next();
+			return rs.getInt(1);
+		} finally {
+			conn.close();
+		}
+	}
+
+	private void waitForRows(int expected, long timeout) throws Exception {
+		long end = System.currentTimeMillis()+timeout;
+		while (countRows()<expected && System.currentTimeMillis()<end) {
+			Thread.sleep(10);
+		}
+	}
+
+	private String keyOf(JdbcTransactionalStorage storage, int position) throws Exception {
+		IMessageBrowsingIterator iterator = storage.getIterator(null, null, null, false, 0);
+		try {
+			for (int i=0; i<position; i++) {
+				iterator.next().release();
+			}
+			return iterator.next().getId();
+		} finally {
+			iterator.close();
+		}
+	}
+
+	@Test
+	public void testKeysetPagination() throws Exception {
+		JdbcTransactionalStorage storage = createStorage(JdbcTransactionalStorage.TYPE_ERRORSTORAGE);
+		storage.configure();
+		storage.open();
+		try {
+			for (int i=0; i<25; i++) {
+				storage.storeMessage("msg"+i, "cid"+i, new Date(), "comment", null, "message "+i);
+			}
+			List<String> all = browse(storage, null, false, 10);
+			assertEquals(25, all.size());
+			for (int i=0; i<25; i++) {
+				assertEquals("msg"+i, all.get(i));
+			}
+
+			List<String> fromKey = browse(storage, keyOf(storage, 11), false, 4);
+			assertEquals(13, fromKey.size());
+			assertEquals("msg12", fromKey.get(0));
+			assertEquals("msg24", fromKey.get(12));
+
+			List<String> descending = browse(storage, keyOf(storage, 5), true, 2);
+			assertEquals(5, descending.size());
+			assertEquals("msg4", descending.get(0));
+			assertEquals("msg0", descending.get(4));
+
+			assertEquals(25, storage.getMessageCount());
+		} finally {
+			storage.close();
+		}
+	}
+
+	@Test
+	public void testCompactEncoding() throws Exception {
+		JdbcTransactionalStorage storage = createStorage(JdbcTransactionalStorage.TYPE_ERRORSTORAGE);
+		storage.setCompactEncoding(true);
+		storage.setCompressionLevel(1);
+		storage.configure();
+		storage.open();
+		try {
+			assertNotNull(storage.storeMessage("msg", "cid", new Date(), "comment", null, "<message>contents</message>"));
+			assertEquals("<message>contents</message>", storage.browseMessage(keyOf(storage, 0)));
+		} finally {
+			storage.close();
+		}
+	}
+
+	@Test
+	public void testBatchedMessageLog() throws Exception {
+		JdbcTransactionalStorage storage = createStorage(JdbcTransactionalStorage.TYPE_MESSAGELOG_PIPE);
+		storage.setBatchSize(10);
+		storage.setBatchFlushInterval(20);
+		storage.configure();
+		storage.open();
+		try {
+			for (int i=0; i<35; i++) {
+				assertNull(storage.storeMessage("msg"+i, "cid"+i, new Date(), "comment", null, "message "+i));
+			}
+		} finally {
+			storage.close();
+		}
+		JdbcTransactionalStorage reader = createStorage(JdbcTransactionalStorage.TYPE_MESSAGELOG_PIPE);
+		reader.configure();
+		reader.open();
+		try {
+			List<String> all = browse(reader, null, false, 100);
+			assertEquals(35, all.size());
+			assertFalse(all.contains(null));
+			assertEquals("message 34", reader.browseMessage(keyOf(reader, 34)));
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testBatchIsWrittenWhenFull() throws Exception {
+		JdbcTransactionalStorage storage = createStorage(JdbcTransactionalStorage.TYPE_MESSAGELOG_PIPE);
+		storage.setBatchSize(5);
+		storage.setBatchFlushInterval(60000);
+		storage.configure();
+		storage.open();
+		try {
+			for (int i=0; i<7; i++) {
+				assertNull(storage.storeMessage("msg"+i, "cid"+i, new Date(), "comment", null, "message "+i));
+			}
+			// the first batch is full, the remaining two messages wait for the flush interval
+			waitForRows(5, 10000);
+			Thread.sleep(100);
+			assertEquals(5, countRows());
+		} finally {
+			storage.close();
+		}
+		assertEquals(7, countRows());
+	}
+
+	@Test
+	public void testBatchIsWrittenAfterFlushInterval() throws Exception {
+		JdbcTransactionalStorage storage = createStorage(JdbcTransactionalStorage.TYPE_MESSAGELOG_PIPE);
+		storage.setBatchSize(100);
+		storage.setBatchFlushInterval(50);
+		storage.configure();
+		storage.open();
+		try {
+			for (int i=0; i<3; i++) {
+				assertNull(storage.storeMessage("msg"+i, "cid"+i, new Date(), "comment", null, "message "+i));
+			}
+			waitForRows(3, 10000);
+			assertEquals(3, countRows());
+		} finally {
+			storage.close();
+		}
+	}
+
+	@Test
+	public void testCloseWritesQueuedMessages() throws Exception {
+		JdbcTransactionalStorage storage = createStorage(JdbcTransactionalStorage.TYPE_MESSAGELOG_PIPE);
+		storage.setBatchSize(100);
+		storage.setBatchFlushInterval(60000);
+		storage.configure();
+		storage.open();
+		for (int i=0; i<3; i++) {
+			assertNull(storage.storeMessage("msg"+i, "cid"+i, new Date(), "comment", null, "message "+i));
+		}
+		assertEquals(0, countRows());
+		long start = System.currentTimeMillis();
+		storage.close();
+		assertTrue("close waited for the flush interval", System.currentTimeMillis()-start<10000);
+		assertEquals(3, countRows());
+	}
+
+	@Test
+	public void testNoBatchingForReceiverMessageLog() throws Exception {
+		JdbcTransactionalStorage storage = createStorage(JdbcTransactionalStorage.TYPE_MESSAGELOG_RECEIVER);
+		storage.setBatchSize(10);
+		storage.configure();
+		assertEquals(0, storage.getBatchSize());
+		storage.open();
+		try {
+			assertNotNull(storage.storeMessage("msg", "cid", new Date(), "comment", null, "message"));
+			assertTrue(storage.containsMessageId("msg"));
+		} finally {
+			storage.close();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package nl.nn.adapterframework.jdbc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.Test;
+
+public class StoredMessageEncoderTest {
+
+	private String createMessage() {
+		StringBuilder message = new StringBuilder("<message>");
+		for (int i=0; i<100; i++) {
+			message.append("<line nr=\"").append(i).append("\">tekst met € en ë</line>");
+		}
+		return message.append("</message>").toString();
+	}
+
+	@Test
+	public void testStringUncompressed() throws Exception {
+		String message = createMessage();
+		byte[] data = StoredMessageEncoder.encode(message, 0);
+		assertTrue(StoredMessageEncoder.isEncoded(data));
+		assertEquals(message, StoredMessageEncoder.decode(data));
+	}
+
+	@Test
+	public void testStringCompressed() throws Exception {
+		String message = createMessage();
+		byte[] data = StoredMessageEncoder.encode(message, Deflater.BEST_SPEED);
+		assertTrue(StoredMessageEncoder.isEncoded(data));
+		assertTrue(data.length < message.length());
+		assertEquals(message, StoredMessageEncoder.decode(data));
+	}
+
+	@Test
+	public void testEmptyString() throws Exception {
+		byte[] data = StoredMessageEncoder.encode("", Deflater.DEFAULT_COMPRESSION);
+		assertEquals("", StoredMessageEncoder.decode(data));
+	}
+
+	@Test
+	public void testBytes() throws Exception {
+		byte[] message = { 0, 1, 2, (byte)0xAC, (byte)0xED, 127, -1 };
+		assertArrayEquals(message, (byte[])StoredMessageEncoder.decode(StoredMessageEncoder.encode(message, 0)));
+		assertArrayEquals(message, (byte[])StoredMessageEncoder.decode(StoredMessageEncoder.encode(message, 6)));
+	}
+
+	@Test
+	public void testSerializableObject() throws Exception {
+		ArrayList<String> message = new ArrayList<String>();
+		message.add("a");
+		message.add("b");
+		assertEquals(message, StoredMessageEncoder.decode(StoredMessageEncoder.encode(message, Deflater.BEST_SPEED)));
+	}
+
+	@Test
+	public void testLegacyFormatsNotRecognized() throws Exception {
+		String message = createMessage();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(out);
+		oos.writeObject(message);
+		oos.close();
+		assertFalse(StoredMessageEncoder.isEncoded(out.toByteArray()));
+
+		out = new ByteArrayOutputStream();
+		oos = new ObjectOutputStream(new DeflaterOutputStream(out));
+		oos.writeObject(message);
+		oos.close();
+		assertFalse(StoredMessageEncoder.isEncoded(out.toByteArray()));
+
+		assertFalse(StoredMessageEncoder.isEncoded(message.getBytes("UTF-8")));
+		assertFalse(StoredMessageEncoder.isEncoded(null));
+		assertFalse(StoredMessageEncoder.isEncoded(new byte[0]));
+	}
+}
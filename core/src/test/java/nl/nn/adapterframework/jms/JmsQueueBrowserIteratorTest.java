@@ -0,0 +1,81 @@
+package nl.nn.adapterframework.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Queue;
+import javax.jms.QueueBrowser;
+import javax.jms.Session;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class JmsQueueBrowserIteratorTest {
+
+	private List<Message> queue = new ArrayList<Message>();
+	private JMSFacade facade;
+
+	private Message createMessage(String id) throws JMSException {
+		Message message = mock(Message.class);
+		when(message.getJMSMessageID()).thenReturn(id);
+		return message;
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		for (String id : Arrays.asList("ID:1", "ID:2", "ID:3", "ID:4", "ID:5")) {
+			queue.add(createMessage(id));
+		}
+		Session session = mock(Session.class);
+		when(session.createBrowser(any(Queue.class))).thenAnswer(new Answer<QueueBrowser>() {
+			@Override
+			public QueueBrowser answer(InvocationOnMock invocation) throws Throwable {
+				QueueBrowser browser = mock(QueueBrowser.class);
+				when(browser.getEnumeration()).thenReturn(Collections.enumeration(new ArrayList<Message>(queue)));
+				return browser;
+			}
+		});
+		facade = mock(JMSFacade.class);
+		when(facade.createSession()).thenReturn(session);
+	}
+
+	private List<String> browse(String startKey, int pageSize) throws Exception {
+		JmsQueueBrowserIterator iterator = new JmsQueueBrowserIterator(facade, mock(Queue.class), null, startKey, pageSize);
+		List<String> ids = new ArrayList<String>();
+		try {
+			while (iterator.hasNext()) {
+				ids.add(iterator.next().getId());
+			}
+		} finally {
+			iterator.close();
+		}
+		return ids;
+	}
+
+	@Test
+	public void testPages() throws Exception {
+		assertEquals(Arrays.asList("ID:1", "ID:2"), browse(null, 2));
+		assertEquals(Arrays.asList("ID:3", "ID:4"), browse("ID:2", 2));
+		assertEquals(Arrays.asList("ID:5"), browse("ID:4", 2));
+		assertEquals(0, browse("ID:5", 2).size());
+	}
+
+	@Test
+	public void testStartKeyConsumed() throws Exception {
+		assertEquals(Arrays.asList("ID:1", "ID:2"), browse(null, 2));
+		// the last message of the previous page is consumed before the next page is browsed
+		queue.remove(1);
+		assertEquals(Arrays.asList("ID:1", "ID:3"), browse("ID:2", 2));
+	}
+}
@@ -0,0 +1,186 @@
+package nl.nn.adapterframework.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class JmsReplyDispatcherTest {
+
+	private BlockingQueue<Message> replyQueue = new LinkedBlockingQueue<Message>();
+	private JmsReplyDispatcher dispatcher;
+
+	private class QueueConsumer implements MessageConsumer {
+		@Override
+		public Message receive(long timeout) throws JMSException {
+			try {
+				return replyQueue.poll(timeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				return null;
+			}
+		}
+		@Override
+		public Message receive() throws JMSException {
+			return receive(Long.MAX_VALUE);
+		}
+		@Override
+		public Message receiveNoWait() throws JMSException {
+			return replyQueue.poll();
+		}
+		@Override
+		public String getMessageSelector() throws JMSException {
+			return null;
+		}
+		@Override
+		public MessageListener getMessageListener() throws JMSException {
+			return null;
+		}
+		@Override
+		public void setMessageListener(MessageListener listener) throws JMSException {
+		}
+		@Override
+		public void close() throws JMSException {
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		MessagingSource messagingSource = mock(MessagingSource.class);
+		when(messagingSource.createSession(anyBoolean(), anyInt())).thenReturn(mock(Session.class));
+		JMSFacade facade = mock(JMSFacade.class);
+		when(facade.getMessageConsumer(any(Session.class), any(Destination.class), isNull(String.class))).thenAnswer(new Answer<MessageConsumer>() {
+			@Override
+			public MessageConsumer answer(InvocationOnMock invocation) {
+				return new QueueConsumer();
+			}
+		});
+		dispatcher = new JmsReplyDispatcher(messagingSource, facade, mock(Destination.class), 2);
+		dispatcher.start();
+	}
+
+	@After
+	public void tearDown() {
+		dispatcher.close();
+	}
+
+	private Message createReply(String correlationId) throws JMSException {
+		Message message = mock(Message.class);
+		when(message.getJMSCorrelationID()).thenReturn(correlationId);
+		return message;
+	}
+
+	@Test
+	public void testConcurrentRequests() throws Exception {
+		final int requests = 100;
+		final List<Message> replies = new ArrayList<Message>();
+		final List<JmsReplyDispatcher.PendingReply> pendingReplies = new ArrayList<JmsReplyDispatcher.PendingReply>();
+		for (int i=0; i<requests; i++) {
+			replies.add(createReply("cid"+i));
+			pendingReplies.add(dispatcher.register("cid"+i));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(requests);
+		try {
+			List<Future<Message>> results = new ArrayList<Future<Message>>();
+			for (final JmsReplyDispatcher.PendingReply pendingReply:pendingReplies) {
+				results.add(executor.submit(new Callable<Message>() {
+					@Override
+					public Message call() throws Exception {
+						try {
+							return pendingReply.waitForReply(10000);
+						} finally {
+							dispatcher.unregister(pendingReply);
+						}
+					}
+				}));
+			}
+			List<Message> shuffled = new ArrayList<Message>(replies);
+			Collections.shuffle(shuffled);
+			replyQueue.addAll(shuffled);
+			for (int i=0; i<requests; i++) {
+				assertSame(replies.get(i), results.get(i).get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(0, dispatcher.getPendingReplyCount());
+	}
+
+	@Test
+	public void testReplyBeforeRegistration() throws Exception {
+		Message reply = createReply("early");
+		replyQueue.add(reply);
+		while (!replyQueue.isEmpty()) {
+			Thread.sleep(10);
+		}
+		Thread.sleep(50);
+		JmsReplyDispatcher.PendingReply pendingReply = dispatcher.register("early");
+		assertSame(reply, pendingReply.waitForReply(1000));
+	}
+
+	@Test
+	public void testTimeoutAndLateReply() throws Exception {
+		dispatcher.setUnclaimedReplyRetention(0);
+		JmsReplyDispatcher.PendingReply pendingReply = dispatcher.register("late");
+		assertNull(pendingReply.waitForReply(50));
+		dispatcher.unregister(pendingReply);
+		replyQueue.add(createReply("late"));
+		long timeout = System.currentTimeMillis()+10000;
+		while (dispatcher.getDiscardedReplyCount()==0 && System.currentTimeMillis()<timeout) {
+			Thread.sleep(50);
+		}
+		assertEquals(1, dispatcher.getDiscardedReplyCount());
+	}
+
+	@Test
+	public void testDuplicateRegistration() throws Exception {
+		dispatcher.register("cid");
+		try {
+			dispatcher.register("cid");
+			fail("expected exception for duplicate correlationId");
+		} catch (JmsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCloseWakesWaitingRequests() throws Exception {
+		JmsReplyDispatcher.PendingReply pendingReply = dispatcher.register("cid");
+		dispatcher.close();
+		try {
+			pendingReply.waitForReply(10000);
+			fail("expected exception after close");
+		} catch (JmsException e) {
+			// expected
+		}
+	}
+}
@@ -1,14 +1,30 @@
 package nl.nn.adapterframework.ldap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.URL;
+import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.CommunicationException;
+import javax.naming.Context;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.spi.InitialContextFactory;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
+import nl.nn.adapterframework.core.IPipeLineSession;
+import nl.nn.adapterframework.core.PipeLineSessionBase;
 import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.parameters.Parameter;
+import nl.nn.adapterframework.parameters.ParameterResolutionContext;
 import nl.nn.adapterframework.util.ClassUtils;
 import nl.nn.adapterframework.util.Misc;
 
@@ -28,6 +44,8 @@ import com.unboundid.ldap.listener.InMemoryDirectoryServer;
 import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
 import com.unboundid.ldap.sdk.LDAPConnection;
 import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
 
 /**
  * @author Peter Leeuwenburgh
@@ -172,6 +190,136 @@ public class LdapSenderTest {
 		compareXML("Ldap/expected/delete.xml", getTree());
 	}
 
+	private LdapSender createReadSender(LDAPConnection connection) {
+		LdapSender ldapSender = new LdapSender();
+		ldapSender.setLdapProviderURL("ldap://"
+				+ connection.getConnectedAddress() + ":"
+				+ connection.getConnectedPort());
+		ldapSender.setOperation("read");
+		ldapSender.setAttributesToReturn("mail");
+		Parameter parameter = new Parameter();
+		parameter.setName("entryName");
+		parameter.setSessionKey("entryName");
+		ldapSender.addParameter(parameter);
+		return ldapSender;
+	}
+
+	private String read(LdapSender ldapSender, String entryName) throws SenderException {
+		IPipeLineSession session = new PipeLineSessionBase();
+		session.put("entryName", entryName);
+		return ldapSender.sendMessage("dummy", "dummy", new ParameterResolutionContext("dummy", session));
+	}
+
+	@Test
+	public void reusePooledDirContext() throws Exception {
+		LDAPConnection connection = inMemoryDirectoryServer.getConnection();
+		LdapSender ldapSender = createReadSender(connection);
+		try {
+			ldapSender.configure();
+			ldapSender.open();
+			long created = DirContextPool.getInstance().getCreateCount();
+			String entryName = "cn=LEA Administrator,ou=groups,ou=development," + baseDNs;
+			String result = read(ldapSender, entryName);
+			assertTrue(result, result.contains("leaadministrator@ibissource.org"));
+			assertEquals(result, read(ldapSender, entryName));
+			assertEquals(created, DirContextPool.getInstance().getCreateCount());
+		} finally {
+			ldapSender.close();
+			connection.close();
+		}
+	}
+
+	@Test
+	public void readFromCache() throws Exception {
+		LDAPConnection connection = inMemoryDirectoryServer.getConnection();
+		LdapSender ldapSender = createReadSender(connection);
+		try {
+			ldapSender.setCacheTimeToLiveSeconds(60);
+			ldapSender.configure();
+			ldapSender.open();
+			String result = read(ldapSender, "cn=LEA Administrator,ou=groups,ou=development," + baseDNs);
+			assertTrue(result, result.contains("leaadministrator@ibissource.org"));
+			connection.modify("cn=LEA Administrator,ou=groups,ou=development," + baseDNs,
+					new Modification(ModificationType.REPLACE, "mail", "changed@ibissource.org"));
+			assertEquals(result, read(ldapSender, "CN=LEA Administrator, OU=groups,ou=development," + baseDNs));
+
+			LdapSender uncachedSender = createReadSender(connection);
+			uncachedSender.configure();
+			String uncachedResult = read(uncachedSender, "cn=LEA Administrator,ou=groups,ou=development," + baseDNs);
+			assertTrue(uncachedResult, uncachedResult.contains("changed@ibissource.org"));
+		} finally {
+			ldapSender.close();
+			connection.close();
+		}
+	}
+
+	/**
+	 * Creates DirContexts that pass the validation of the pool, but of which all other reads fail with a
+	 * CommunicationException, like a DirContext of which the connection is closed by the server.
+	 */
+	public static class LostConnectionContextFactory implements InitialContextFactory {
+		static final AtomicInteger created = new AtomicInteger();
+		static final AtomicInteger closed = new AtomicInteger();
+
+		@Override
+		public Context getInitialContext(Hashtable<?,?> environment) {
+			created.incrementAndGet();
+			return (Context)Proxy.newProxyInstance(DirContext.class.getClassLoader(), new Class[] { DirContext.class }, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					if ("close".equals(method.getName())) {
+						closed.incrementAndGet();
+					} else if ("getAttributes".equals(method.getName())) {
+						if ("".equals(args[0])) {
+							return new BasicAttributes();
+						}
+						throw new CommunicationException("connection closed");
+					}
+					return null;
+				}
+			});
+		}
+	}
+
+	@Test
+	public void invalidatePooledDirContextAfterConnectionFailure() throws Exception {
+		LdapSender ldapSender = new LdapSender();
+		ldapSender.setInitialContextFactoryName(LostConnectionContextFactory.class.getName());
+		ldapSender.setLdapProviderURL("ldap://lost.example.com:" + System.nanoTime());
+		ldapSender.setOperation("read");
+		Parameter parameter = new Parameter();
+		parameter.setName("entryName");
+		parameter.setSessionKey("entryName");
+		ldapSender.addParameter(parameter);
+		ldapSender.configure();
+		int created = LostConnectionContextFactory.created.get();
+		int closed = LostConnectionContextFactory.closed.get();
+		for (int i = 0; i < 2; i++) {
+			try {
+				read(ldapSender, "cn=lost," + baseDNs);
+				fail("expected CommunicationException");
+			} catch (SenderException e) {
+				assertTrue(e.getMessage(), e.getCause().getCause() instanceof CommunicationException);
+			}
+			// the first read uses the DirContext opened by configure(). The failed DirContext is closed instead of
+			// returned to the pool, so the second read has to open a new one
+			assertEquals(closed + i + 1, LostConnectionContextFactory.closed.get());
+			assertEquals(created + i, LostConnectionContextFactory.created.get());
+		}
+	}
+
+	@Test
+	public void poolKeyDescriptionHidesCredentials() throws Exception {
+		Hashtable<String,String> env = new Hashtable<String,String>();
+		env.put(Context.PROVIDER_URL, "ldap://ldap.example.com:389");
+		env.put(Context.SECURITY_PRINCIPAL, "cn=admin");
+		env.put(Context.SECURITY_CREDENTIALS, "secret");
+		String description = DirContextPool.getInstance().describeKey(env);
+		assertTrue(description, description.contains("ldap://ldap.example.com:389"));
+		assertTrue(description, description.contains("cn=admin"));
+		assertFalse(description, description.contains("secret"));
+	}
+
 	@After
 	public void stopLdapServer() {
 		if (inMemoryDirectoryServer != null) {
@@ -0,0 +1,191 @@
+package nl.nn.adapterframework.pipes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import nl.nn.adapterframework.core.IPipeLineSession;
+import nl.nn.adapterframework.core.PipeForward;
+import nl.nn.adapterframework.core.PipeLineSessionBase;
+import nl.nn.adapterframework.core.PipeRunResult;
+import nl.nn.adapterframework.core.SenderException;
+import nl.nn.adapterframework.core.TimeOutException;
+import nl.nn.adapterframework.parameters.ParameterResolutionContext;
+import nl.nn.adapterframework.senders.EchoSender;
+import nl.nn.adapterframework.util.Misc;
+
+public class ForEachChildElementPipeTest extends PipeTestBase<ForEachChildElementPipe> {
+
+	private IPipeLineSession session = new PipeLineSessionBase();
+
+	private class ConcurrencyCountingSender extends EchoSender {
+		AtomicInteger inProgress = new AtomicInteger();
+		AtomicInteger maxInProgress = new AtomicInteger();
+
+		@Override
+		public String sendMessage(String correlationID, String message, ParameterResolutionContext prc) throws SenderException, TimeOutException {
+			int current = inProgress.incrementAndGet();
+			synchronized (maxInProgress) {
+				if (current > maxInProgress.get()) {
+					maxInProgress.set(current);
+				}
+			}
+			try {
+				Thread.sleep((message.hashCode() & 7) + 1);
+			} catch (InterruptedException e) {
+				throw new SenderException(e);
+			} finally {
+				inProgress.decrementAndGet();
+			}
+			return message;
+		}
+	}
+
+	private ConcurrencyCountingSender sender;
+
+	@Override
+	public ForEachChildElementPipe createPipe() {
+		ForEachChildElementPipe pipe = new ForEachChildElementPipe();
+		sender = new ConcurrencyCountingSender();
+		pipe.setSender(sender);
+		pipe.setRemoveXmlDeclarationInResults(true);
+		return pipe;
+	}
+
+	private String getInput(int numItems) {
+		StringBuilder input = new StringBuilder("<items>");
+		for (int i=1; i<=numItems; i++) {
+			input.append("<item>").append(i).append("</item>");
+		}
+		return input.append("</items>").toString();
+	}
+
+	private String getExpected(int numItems) {
+		StringBuilder expected = new StringBuilder("<results count=\""+numItems+"\">\n");
+		for (int i=1; i<=numItems; i++) {
+			expected.append("<result item=\""+i+"\">\n<item>"+i+"</item>\n</result>\n");
+		}
+		return expected.append("</results>").toString();
+	}
+
+	@Test
+	public void testSequential() throws Exception {
+		configurePipe();
+		pipe.start();
+		PipeRunResult prr = pipe.doPipe(getInput(5), session);
+		assertEquals(getExpected(5), prr.getResult().toString());
+		pipe.stop();
+	}
+
+	@Test
+	public void testParallelBounded() throws Exception {
+		pipe.setParallel(true);
+		pipe.setMaxChildThreads(3);
+		configurePipe();
+		pipe.start();
+		PipeRunResult prr = pipe.doPipe(getInput(50), session);
+		assertEquals(getExpected(50), prr.getResult().toString());
+		assertTrue("max in progress ["+sender.maxInProgress.get()+"] exceeds maxChildThreads", sender.maxInProgress.get()<=3);
+		pipe.stop();
+	}
+
+	@Test
+	public void testRemoveDuplicates() throws Exception {
+		pipe.setRemoveDuplicates(true);
+		configurePipe();
+		pipe.start();
+		PipeRunResult prr = pipe.doPipe("<items><item>1</item><item>2</item><item>1</item><item>3</item><item>2</item></items>", session);
+		assertEquals(getExpected(3), prr.getResult().toString());
+		pipe.stop();
+	}
+
+	@Test
+	public void testRemoveDuplicatesBloomFilter() throws Exception {
+		pipe.setRemoveDuplicates(true);
+		pipe.setDuplicatesBloomFilterSize(1000);
+		configurePipe();
+		pipe.start();
+		PipeRunResult prr = pipe.doPipe("<items><item>1</item><item>2</item><item>1</item><item>3</item><item>2</item></items>", session);
+		assertEquals(getExpected(3), prr.getResult().toString());
+		pipe.stop();
+	}
+
+	@Test
+	public void testResultsInTempFile() throws Exception {
+		pipe.setResultsInTempFile(true);
+		pipe.setItemNoSessionKey("itemNo");
+		configurePipe();
+		pipe.start();
+		PipeRunResult prr = pipe.doPipe(getInput(20), session);
+		File resultsFile = new File(prr.getResult().toString());
+		try {
+			// the count is filled in after the items are processed, in room padded with spaces
+			String results = Misc.fileToString(resultsFile.getPath(), "\n", false).trim();
+			assertEquals(getExpected(20), results.replaceFirst("\" +>", "\">"));
+			assertEquals("20", session.get("itemNo"));
+			session.closeScheduledResources();
+			assertFalse(resultsFile.exists());
+		} finally {
+			resultsFile.delete();
+		}
+		pipe.stop();
+	}
+
+	private String doPipe(ForEachChildElementPipe pipe, String input) throws Exception {
+		pipe.configure();
+		pipe.start();
+		try {
+			return pipe.doPipe(input, session).getResult().toString();
+		} finally {
+			pipe.stop();
+		}
+	}
+
+	@Test
+	public void testElementXPathWithAttributePredicate() throws Exception {
+		pipe.setElementXPathExpression("/root/items/item[@type='x']");
+		String input = "<root>\n\t<items>\n\t\t<item type=\"x\">1</item>\n\t\t<item type=\"y\">skip</item>\n\t\t<item type=\"x\">2</item>\n\t</items>\n\t<item type=\"x\">skip</item>\n</root>";
+		assertEquals(getExpected(2).replace("<item>", "<item type=\"x\">"), doPipe(pipe, input));
+	}
+
+	@Test
+	public void testElementXPathWithPosition() throws Exception {
+		pipe.setElementXPathExpression("/items/item[2]");
+		assertEquals("<results count=\"1\">\n<result item=\"1\">\n<item>2</item>\n</result>\n</results>", doPipe(pipe, getInput(4)));
+	}
+
+	@Test
+	public void testElementXPathWithNamespacePrefix() throws Exception {
+		pipe.setNamespaceAware(true);
+		pipe.setNamespaceDefs("b=urn:b");
+		pipe.setElementXPathExpression("//b:item");
+		String input = "<items xmlns=\"urn:a\" xmlns:x=\"urn:b\"><x:item>1</x:item><item>skip</item><group><x:item>2</x:item></group></items>";
+		assertEquals(getExpected(2), doPipe(pipe, input));
+	}
+
+	@Test
+	public void testElementXPathNestedMatchesInDocumentOrder() throws Exception {
+		String input = "<items><item>1<item>2<item>3</item></item></item><other><item>4</item></other></items>";
+		pipe.setElementXPathExpression("//item");
+		String streamed = doPipe(pipe, input);
+
+		ForEachChildElementPipe transformingPipe = createPipe();
+		transformingPipe.registerForward(new PipeForward("success",null));
+		transformingPipe.setElementXPathExpression("//item[true()]");
+		assertEquals(doPipe(transformingPipe, input), streamed);
+		assertTrue(streamed, streamed.startsWith("<results count=\"4\">"));
+	}
+
+	@Test
+	public void testElementXPathStopsParsingOnStopCondition() throws Exception {
+		pipe.setElementXPathExpression("/items/item");
+		pipe.setStopConditionXPathExpression("/item='2'");
+		// the input is not well-formed after the second item, parsing must have stopped before it is reached
+		assertEquals("<results count=\"2\">\n<result item=\"1\">\n<item>1</item>\n</result>\n<result item=\"2\">\n<item>2</item>\n</result>\n</results>", doPipe(pipe, "<items><item>1</item><item>2</item><item>3</bad></items>"));
+	}
+}
@@ -0,0 +1,77 @@
+package nl.nn.adapterframework.pipes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import nl.nn.adapterframework.configuration.ConfigurationException;
+import nl.nn.adapterframework.core.PipeLineSessionBase;
+import nl.nn.adapterframework.core.PipeRunException;
+import nl.nn.adapterframework.core.SenderException;
+import nl.nn.adapterframework.core.TimeOutException;
+import nl.nn.adapterframework.parameters.ParameterResolutionContext;
+import nl.nn.adapterframework.senders.EchoSender;
+import nl.nn.adapterframework.util.CircuitBreaker;
+
+import org.junit.Test;
+
+public class MessageSendingPipeTest extends PipeTestBase<MessageSendingPipe> {
+
+	private FailingSender sender;
+
+	private static class FailingSender extends EchoSender {
+		private int calls=0;
+		private boolean failing=true;
+
+		@Override
+		public String sendMessage(String correlationID, String message, ParameterResolutionContext prc) throws SenderException, TimeOutException {
+			calls++;
+			if (failing) {
+				throw new SenderException("resource unavailable");
+			}
+			return message;
+		}
+	}
+
+	@Override
+	public MessageSendingPipe createPipe() {
+		MessageSendingPipe messageSendingPipe = new MessageSendingPipe();
+		sender = new FailingSender();
+		sender.setName("failing sender");
+		messageSendingPipe.setSender(sender);
+		return messageSendingPipe;
+	}
+
+	private void sendExpectingFailure() {
+		try {
+			pipe.doPipe("message", new PipeLineSessionBase());
+			fail("expected PipeRunException");
+		} catch (PipeRunException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCircuitBreakerStopsSending() throws ConfigurationException {
+		pipe.setCircuitBreakerThreshold(2);
+		configurePipe();
+		sendExpectingFailure();
+		sendExpectingFailure();
+		assertEquals(2, sender.calls);
+		CircuitBreaker circuitBreaker = pipe.getCircuitBreaker();
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+		sendExpectingFailure();
+		assertEquals("no message is sent while the circuit is open", 2, sender.calls);
+		assertTrue(circuitBreaker.getRemainingOpenTime()>0);
+	}
+
+	@Test
+	public void testCircuitBreakerDisabledByDefault() throws ConfigurationException {
+		configurePipe();
+		for (int i=0; i<5; i++) {
+			sendExpectingFailure();
+		}
+		assertEquals(5, sender.calls);
+	}
+}
@@ -0,0 +1,55 @@
+package nl.nn.adapterframework.processors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+
+import nl.nn.adapterframework.core.IPipe;
+import nl.nn.adapterframework.core.IPipeLineSession;
+import nl.nn.adapterframework.core.PipeLineSessionBase;
+import nl.nn.adapterframework.core.PipeRunResult;
+import nl.nn.adapterframework.stream.IStreamingPipe;
+import nl.nn.adapterframework.stream.Message;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class CorePipeProcessorTest {
+
+	private CorePipeProcessor processor = new CorePipeProcessor();
+
+	private <P extends IPipe> P echoPipe(Class<P> clazz) throws Exception {
+		P pipe = mock(clazz);
+		when(pipe.doPipe(any(), any(IPipeLineSession.class))).thenAnswer(new Answer<PipeRunResult>() {
+			@Override
+			public PipeRunResult answer(InvocationOnMock invocation) throws Throwable {
+				return new PipeRunResult(null, invocation.getArguments()[0]);
+			}
+		});
+		return pipe;
+	}
+
+	private Object process(IPipe pipe, Object message) throws Exception {
+		return processor.processPipe(null, pipe, "id", message, new PipeLineSessionBase()).getResult();
+	}
+
+	@Test
+	public void testBinaryMessageIsDecodedForPipe() throws Exception {
+		IPipe pipe = echoPipe(IPipe.class);
+		byte[] contents = "<café/>".getBytes("ISO-8859-1");
+		assertEquals("<café/>", process(pipe, new Message(contents, "ISO-8859-1")));
+		assertEquals("<café/>", process(pipe, new Message(new ByteArrayInputStream(contents), "ISO-8859-1")));
+	}
+
+	@Test
+	public void testStreamingPipeReceivesMessage() throws Exception {
+		IPipe pipe = echoPipe(IStreamingPipe.class);
+		Message message = new Message(new ByteArrayInputStream(new byte[] { 1, 2, 3 }), null);
+		assertSame(message, process(pipe, message));
+	}
+}
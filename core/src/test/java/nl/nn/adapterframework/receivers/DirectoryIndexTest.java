@@ -0,0 +1,128 @@
+package nl.nn.adapterframework.receivers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DirectoryIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File directory;
+	private long baseTime;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = folder.newFolder("in");
+		baseTime = System.currentTimeMillis()-100000;
+	}
+
+	private File createFile(String name, long lastModified) throws Exception {
+		File file = new File(directory, name);
+		FileWriter writer = new FileWriter(file);
+		writer.write(name);
+		writer.close();
+		file.setLastModified(lastModified);
+		return file;
+	}
+
+	@Test
+	public void testOrderAndFilter() throws Exception {
+		createFile("c.txt", baseTime+1000);
+		createFile("a.txt", baseTime+3000);
+		createFile("b.txt", baseTime+2000);
+		createFile("skip.txt", baseTime);
+		createFile("d.xml", baseTime);
+		DirectoryIndex index = new DirectoryIndex(directory, "*.txt", "skip*");
+		index.rescan();
+		assertEquals(3, index.size());
+		assertEquals("c.txt", index.poll(1000).getName());
+		assertEquals("b.txt", index.poll(1000).getName());
+		assertEquals("a.txt", index.poll(1000).getName());
+		assertNull(index.poll(1000));
+	}
+
+	@Test
+	public void testStability() throws Exception {
+		createFile("old.txt", baseTime);
+		File recent = createFile("recent.txt", System.currentTimeMillis());
+		DirectoryIndex index = new DirectoryIndex(directory, "*", null);
+		index.rescan();
+		assertEquals("old.txt", index.poll(10000).getName());
+		assertNull(index.poll(10000));
+
+		recent.setLastModified(baseTime);
+		assertNull(index.poll(10000));
+		index.update("recent.txt");
+		assertEquals("recent.txt", index.poll(10000).getName());
+	}
+
+	@Test
+	public void testReservation() throws Exception {
+		createFile("a.txt", baseTime);
+		DirectoryIndex index = new DirectoryIndex(directory, "*.txt", null);
+		index.rescan();
+		File file = index.poll(0);
+		assertNotNull(file);
+		index.rescan();
+		index.update("a.txt");
+		assertNull(index.poll(0));
+
+		index.release("a.txt");
+		index.rescan();
+		assertEquals("a.txt", index.poll(0).getName());
+
+		index.release("a.txt");
+		assertTrue(file.delete());
+		index.rescan();
+		assertEquals(0, index.size());
+	}
+
+	@Test
+	public void testConcurrentPolling() throws Exception {
+		final int fileCount = 500;
+		for (int i=0; i<fileCount; i++) {
+			createFile("file"+i+".txt", baseTime+i*1000);
+		}
+		final DirectoryIndex index = new DirectoryIndex(directory, "*.txt", null);
+		index.rescan();
+		final Set<String> names = Collections.synchronizedSet(new HashSet<String>());
+		final List<String> duplicates = Collections.synchronizedList(new ArrayList<String>());
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t=0; t<8; t++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					File file;
+					while ((file=index.poll(0))!=null) {
+						if (!names.add(file.getName())) {
+							duplicates.add(file.getName());
+						}
+					}
+				}
+			};
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread:threads) {
+			thread.join(30000);
+		}
+		assertEquals(0, duplicates.size());
+		assertEquals(fileCount, names.size());
+	}
+}
@@ -0,0 +1,93 @@
+package nl.nn.adapterframework.receivers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DirectoryListenerTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File inputDirectory;
+	private File outputDirectory;
+
+	@Before
+	public void setUp() throws Exception {
+		inputDirectory = folder.newFolder("in");
+		outputDirectory = folder.newFolder("out");
+	}
+
+	private void createFile(String name) throws Exception {
+		FileWriter writer = new FileWriter(new File(inputDirectory, name));
+		writer.write(name);
+		writer.close();
+	}
+
+	private DirectoryListener createListener(boolean watch) throws Exception {
+		DirectoryListener listener = new DirectoryListener();
+		listener.setName("testListener");
+		listener.setInputDirectory(inputDirectory.getPath());
+		listener.setOutputDirectory(outputDirectory.getPath());
+		listener.setWildcard("*.txt");
+		listener.setMinStableTime(0);
+		listener.setWatchInputDirectory(watch);
+		listener.setRescanInterval(200);
+		listener.configure();
+		return listener;
+	}
+
+	private Object waitForMessage(DirectoryListener listener, Map<String,Object> threadContext) throws Exception {
+		long timeout = System.currentTimeMillis()+10000;
+		Object rawMessage;
+		while ((rawMessage=listener.getRawMessage(threadContext))==null && System.currentTimeMillis()<timeout) {
+			Thread.sleep(50);
+		}
+		return rawMessage;
+	}
+
+	@Test
+	public void testWatchInputDirectory() throws Exception {
+		createFile("existing.txt");
+		DirectoryListener listener = createListener(true);
+		listener.open();
+		try {
+			Map<String,Object> threadContext = new HashMap<String,Object>();
+			Object rawMessage = waitForMessage(listener, threadContext);
+			assertNotNull(rawMessage);
+			assertTrue(rawMessage.toString().startsWith(outputDirectory.getCanonicalPath()));
+			assertFalse(new File(inputDirectory, "existing.txt").exists());
+
+			createFile("new.txt");
+			createFile("ignored.xml");
+			rawMessage = waitForMessage(listener, threadContext);
+			assertNotNull(rawMessage);
+			assertTrue(new File(rawMessage.toString()).exists());
+			assertFalse(new File(inputDirectory, "new.txt").exists());
+			assertEquals(null, listener.getRawMessage(threadContext));
+		} finally {
+			listener.close();
+		}
+	}
+
+	@Test(expected=nl.nn.adapterframework.configuration.ConfigurationException.class)
+	public void testWatchNotAllowedWithFileList() throws Exception {
+		DirectoryListener listener = new DirectoryListener();
+		listener.setInputDirectory(inputDirectory.getPath());
+		listener.setWildcard("*.txt");
+		listener.setFileList(10);
+		listener.setWatchInputDirectory(true);
+		listener.configure();
+	}
+}
@@ -0,0 +1,145 @@
+package nl.nn.adapterframework.receivers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicLong;
+
+import nl.nn.adapterframework.util.RunStateEnum;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PullingListenerContainerTest {
+
+	private GenericReceiver receiver;
+	private PullingListenerContainer container;
+
+	@Before
+	public void setUp() throws Exception {
+		receiver = new GenericReceiver();
+		receiver.setName("receiver");
+		receiver.setNumThreads(3);
+		receiver.setNumThreadsMin(1);
+		receiver.setPollInterval(1);
+		Constructor<PullingListenerContainer> constructor = PullingListenerContainer.class.getDeclaredConstructor();
+		constructor.setAccessible(true);
+		container = constructor.newInstance();
+		container.setReceiver(receiver);
+		container.configure();
+		// evaluate at every call
+		setField("evaluationInterval", 0L);
+	}
+
+	@Test
+	public void testAutoScaleConfiguration() {
+		assertTrue(container.isAutoScaling());
+		assertEquals(3, container.getMaxThreadCount());
+		assertEquals(1, container.getTargetThreadCount());
+	}
+
+	@Test
+	public void testScaleUpWhileSaturated() throws Exception {
+		evaluate(0, 10, 1000, 1);
+		assertEquals(2, container.getTargetThreadCount());
+		evaluate(0, 10, 1000, 1);
+		assertEquals(3, container.getTargetThreadCount());
+		evaluate(0, 10, 1000, 1);
+		assertEquals("number of threads is limited by numThreads", 3, container.getTargetThreadCount());
+	}
+
+	@Test
+	public void testNoScaleUpWhenPollsComeBackEmpty() throws Exception {
+		evaluate(1, 10, 1000, 1);
+		assertEquals(1, container.getTargetThreadCount());
+	}
+
+	@Test
+	public void testRollbackWhenProcessingTimeGrows() throws Exception {
+		evaluate(0, 10, 1000, 1);
+		assertEquals(2, container.getTargetThreadCount());
+		// average processing time goes from 100 to 200 ms, more than 1.5 times as long
+		evaluate(0, 10, 2000, 1);
+		assertEquals(1, container.getTargetThreadCount());
+
+		// a moderate increase is accepted
+		evaluate(0, 10, 2000, 1);
+		assertEquals(2, container.getTargetThreadCount());
+		evaluate(0, 10, 2800, 1);
+		assertEquals(3, container.getTargetThreadCount());
+	}
+
+	@Test
+	public void testScaleDownWhenIdle() throws Exception {
+		evaluate(0, 10, 1000, 1);
+		evaluate(0, 10, 1000, 1);
+		assertEquals(3, container.getTargetThreadCount());
+		evaluate(5, 1, 100, 0);
+		assertEquals(2, container.getTargetThreadCount());
+		evaluate(5, 0, 0, 0);
+		assertEquals(1, container.getTargetThreadCount());
+		evaluate(5, 0, 0, 0);
+		assertEquals("number of threads is limited by numThreadsMin", 1, container.getTargetThreadCount());
+	}
+
+	@Test
+	public void testIdleWaitIsCappedByPollInterval() throws Exception {
+		receiver.setRunState(RunStateEnum.STARTED);
+		container.setIdle(true);
+		setField("idleWait", 8000L);
+
+		long start = System.currentTimeMillis();
+		container.waitWhileIdle();
+		long duration = System.currentTimeMillis()-start;
+		assertTrue("waited ["+duration+"] ms", duration>=900 && duration<4000);
+		assertEquals("idle wait does not grow beyond pollInterval", 1000L, getField("idleWait"));
+
+		// a thread that finds a message ends the wait and resets it
+		setField("idleWait", 8000L);
+		Thread messageFound = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+				container.setIdle(false);
+			}
+		};
+		receiver.setPollInterval(10);
+		start = System.currentTimeMillis();
+		messageFound.start();
+		container.waitWhileIdle();
+		duration = System.currentTimeMillis()-start;
+		messageFound.join();
+		assertTrue("waited ["+duration+"] ms", duration<4000);
+		assertEquals(1000L, getField("idleWait"));
+	}
+
+	private void evaluate(long emptyPolls, long messagesProcessed, long processingTime, long saturatedAcquires) throws Exception {
+		counter("emptyPolls").set(emptyPolls);
+		counter("messagesProcessed").set(messagesProcessed);
+		counter("processingTime").set(processingTime);
+		counter("saturatedAcquires").set(saturatedAcquires);
+		container.evaluateThreadCount();
+	}
+
+	private AtomicLong counter(String name) throws Exception {
+		return (AtomicLong)getField(name);
+	}
+
+	private Object getField(String name) throws Exception {
+		Field field = PullingListenerContainer.class.getDeclaredField(name);
+		field.setAccessible(true);
+		return field.get(container);
+	}
+
+	private void setField(String name, Object value) throws Exception {
+		Field field = PullingListenerContainer.class.getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(container, value);
+	}
+}
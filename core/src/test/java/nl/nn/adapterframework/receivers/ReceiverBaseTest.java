@@ -0,0 +1,125 @@
+package nl.nn.adapterframework.receivers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import nl.nn.adapterframework.configuration.ConfigurationException;
+import nl.nn.adapterframework.core.IKnowsDeliveryCount;
+import nl.nn.adapterframework.core.IMessageHandler;
+import nl.nn.adapterframework.core.IPushingListener;
+import nl.nn.adapterframework.core.IbisExceptionListener;
+import nl.nn.adapterframework.core.ListenerException;
+import nl.nn.adapterframework.core.PipeLineResult;
+import nl.nn.adapterframework.core.PipeLineSessionBase;
+import nl.nn.adapterframework.util.CircuitBreaker;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReceiverBaseTest {
+
+	private StubListener listener;
+	private GenericReceiver receiver;
+
+	private static class StubListener implements IPushingListener, IKnowsDeliveryCount {
+		private String name;
+		private int deliveryCount=1;
+		private int messagesProcessed=0;
+
+		@Override
+		public int getDeliveryCount(Object rawMessage) {
+			return deliveryCount;
+		}
+
+		@Override
+		public String getIdFromRawMessage(Object rawMessage, Map<String, Object> context) throws ListenerException {
+			context.put("id", rawMessage);
+			return (String)rawMessage;
+		}
+
+		@Override
+		public String getStringFromRawMessage(Object rawMessage, Map<String, Object> context) throws ListenerException {
+			return "<message/>";
+		}
+
+		@Override
+		public void afterMessageProcessed(PipeLineResult processResult, Object rawMessage, Map<String, Object> context) throws ListenerException {
+			messagesProcessed++;
+		}
+
+		@Override
+		public void configure() throws ConfigurationException {
+		}
+		@Override
+		public void open() throws ListenerException {
+		}
+		@Override
+		public void close() throws ListenerException {
+		}
+		@Override
+		public void setHandler(IMessageHandler handler) {
+		}
+		@Override
+		public void setExceptionListener(IbisExceptionListener listener) {
+		}
+		@Override
+		public String getName() {
+			return name;
+		}
+		@Override
+		public void setName(String name) {
+			this.name = name;
+		}
+	}
+
+	@Before
+	public void setUp() throws ConfigurationException {
+		listener = new StubListener();
+		receiver = new GenericReceiver();
+		receiver.setName("receiver");
+		receiver.setListener(listener);
+		receiver.setMaxDeliveries(2);
+		receiver.configure();
+	}
+
+	@Test
+	public void testBackOffGrowsWithRepeatedPoisonMessages() throws Exception {
+		CircuitBreaker messageHistoryCircuitBreaker = receiver.getMessageHistoryCircuitBreaker();
+		listener.deliveryCount = 10;
+		long[] maxima = {1000, 2000, 4000};
+		for (int i=0; i<maxima.length; i++) {
+			receiver.processRawMessage(listener, "poison"+i, new PipeLineSessionBase());
+			assertEquals("poison message is handed back to the listener", i+1, listener.messagesProcessed);
+			assertEquals(i+1, messageHistoryCircuitBreaker.getConsecutiveTrips());
+			long remaining = messageHistoryCircuitBreaker.getRemainingOpenTime();
+			assertTrue("remaining open time ["+remaining+"] for maximum ["+maxima[i]+"]", remaining>maxima[i]/2-100 && remaining<=maxima[i]);
+
+			// polls that succeed, whether or not they return a message, do not reset the back-off
+			receiver.resetRetryInterval();
+			assertEquals(CircuitBreaker.State.OPEN, messageHistoryCircuitBreaker.getState());
+			assertTrue(messageHistoryCircuitBreaker.isOpen());
+			expireOpenTime(messageHistoryCircuitBreaker);
+			assertFalse(messageHistoryCircuitBreaker.isOpen());
+		}
+		assertEquals("listener failures are accounted separately", CircuitBreaker.State.CLOSED, receiver.getCircuitBreaker().getState());
+	}
+
+	@Test
+	public void testListenerFailuresDoNotAffectMessageHistory() throws Exception {
+		receiver.increaseRetryIntervalAndWait(new ListenerException("connection lost"), "caught Exception retrieving message");
+		assertEquals(CircuitBreaker.State.OPEN, receiver.getCircuitBreaker().getState());
+		assertEquals(CircuitBreaker.State.CLOSED, receiver.getMessageHistoryCircuitBreaker().getState());
+		receiver.resetRetryInterval();
+		assertEquals(CircuitBreaker.State.CLOSED, receiver.getCircuitBreaker().getState());
+	}
+
+	private void expireOpenTime(CircuitBreaker circuitBreaker) throws Exception {
+		Field openUntil = CircuitBreaker.class.getDeclaredField("openUntil");
+		openUntil.setAccessible(true);
+		openUntil.setLong(circuitBreaker, 0);
+	}
+}
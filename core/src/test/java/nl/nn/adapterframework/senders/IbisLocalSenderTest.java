@@ -0,0 +1,98 @@
+package nl.nn.adapterframework.senders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import nl.nn.adapterframework.core.ChildPipeLineSession;
+import nl.nn.adapterframework.core.IListener;
+import nl.nn.adapterframework.core.IMessageHandler;
+import nl.nn.adapterframework.core.IPipeLineSession;
+import nl.nn.adapterframework.core.PipeLineSessionBase;
+import nl.nn.adapterframework.parameters.Parameter;
+import nl.nn.adapterframework.parameters.ParameterResolutionContext;
+import nl.nn.adapterframework.receivers.JavaListener;
+
+public class IbisLocalSenderTest extends SenderTestBase<IbisLocalSender> {
+
+	private JavaListener listener;
+
+	@Override
+	public IbisLocalSender createSender() {
+		IbisLocalSender sender = new IbisLocalSender();
+		sender.setName("localSender");
+		sender.setJavaListener("testListener");
+		sender.setCheckDependency(false);
+		return sender;
+	}
+
+	@After
+	public void closeListener() throws Exception {
+		if (listener != null) {
+			listener.close();
+		}
+	}
+
+	private JavaListener openListener(final String reply) throws Exception {
+		IMessageHandler handler = mock(IMessageHandler.class);
+		doAnswer(new Answer<String>() {
+			@Override
+			public String answer(InvocationOnMock invocation) throws Throwable {
+				Map<String,Object> context = (Map<String,Object>) invocation.getArguments()[3];
+				assertTrue("context is a ["+context.getClass().getName()+"]", context instanceof ChildPipeLineSession);
+				context.put("returned", "value of "+context.get("param"));
+				context.put("notReturned", "x");
+				return reply;
+			}
+		}).when(handler).processRequest(any(IListener.class), anyString(), anyString(), ArgumentMatchers.<String,Object>anyMap());
+		JavaListener javaListener = new JavaListener();
+		javaListener.setName("testListener");
+		javaListener.setHandler(handler);
+		javaListener.configure();
+		javaListener.open();
+		return javaListener;
+	}
+
+	@Test
+	public void callJavaListenerWithChildSession() throws Exception {
+		listener = openListener("reply");
+		Parameter param = new Parameter();
+		param.setName("param");
+		param.setValue("parameter");
+		sender.addParameter(param);
+		sender.setReturnedSessionKeys("returned");
+		sender.configure();
+		sender.open();
+
+		IPipeLineSession session = new PipeLineSessionBase();
+		ParameterResolutionContext prc = new ParameterResolutionContext("input", session);
+		assertEquals("reply", sender.sendMessage("cid", "input", prc));
+		assertEquals("value of parameter", session.get("returned"));
+		assertTrue(!session.containsKey("notReturned"));
+	}
+
+	@Test
+	public void findsReopenedListener() throws Exception {
+		listener = openListener("first");
+		sender.configure();
+		sender.open();
+		ParameterResolutionContext prc = new ParameterResolutionContext("input", new PipeLineSessionBase());
+		assertEquals("first", sender.sendMessage("cid", "input", prc));
+
+		listener.close();
+		listener = openListener("second");
+		assertEquals("second", sender.sendMessage("cid", "input", prc));
+		assertEquals(listener, sender.findListener("testListener"));
+	}
+}
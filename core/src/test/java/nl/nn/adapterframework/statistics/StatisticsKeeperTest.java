@@ -0,0 +1,74 @@
+package nl.nn.adapterframework.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class StatisticsKeeperTest {
+
+	@Test
+	public void testBasics() {
+		StatisticsKeeper sk = new StatisticsKeeper("test");
+		for (int i=1; i<=100; i++) {
+			sk.addValue(i);
+		}
+		assertEquals(100, sk.getCount());
+		assertEquals(1, sk.getMin());
+		assertEquals(100, sk.getMax());
+		assertEquals(5050, sk.getTotal());
+		assertEquals(1, sk.getFirst());
+		assertEquals(100, sk.getLast());
+		assertEquals(50.5, sk.getAvg(), 0.0001);
+		assertEquals(0.99, ((Double)sk.getItemValue(sk.getItemIndex("< 100ms"))).doubleValue(), 0.0001);
+		assertEquals(50.0, ((Double)sk.getItemValue(sk.getItemIndex("p50"))).doubleValue(), 1.0);
+		assertEquals(95.0, ((Double)sk.getItemValue(sk.getItemIndex("p95"))).doubleValue(), 1.0);
+	}
+
+	@Test
+	public void testMarkAndClear() {
+		StatisticsKeeper sk = new StatisticsKeeper("test");
+		sk.addValue(10);
+		sk.addValue(20);
+		sk.performAction(HasStatistics.STATISTICS_ACTION_MARK_FULL);
+		assertEquals(new Long(0), sk.getIntervalItemValue(0));
+		assertNull(sk.getIntervalItemValue(1));
+		sk.addValue(5);
+		sk.addValue(15);
+		assertEquals(new Long(2), sk.getIntervalItemValue(0));
+		assertEquals(new Long(5), sk.getIntervalItemValue(1));
+		assertEquals(new Long(15), sk.getIntervalItemValue(2));
+		assertEquals(new Long(20), sk.getIntervalItemValue(4));
+		sk.performAction(HasStatistics.STATISTICS_ACTION_RESET);
+		assertEquals(0, sk.getCount());
+		assertNull(sk.getItemValue(sk.getItemIndex("p50")));
+		sk.addValue(7);
+		assertEquals(7, sk.getFirst());
+	}
+
+	@Test
+	public void testConcurrentRecording() throws Exception {
+		final StatisticsKeeper sk = new StatisticsKeeper("test");
+		final int threadCount = 8;
+		final int valuesPerThread = 10000;
+		Thread[] threads = new Thread[threadCount];
+		for (int t=0; t<threadCount; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i=1; i<=valuesPerThread; i++) {
+						sk.addValue(i);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (int t=0; t<threadCount; t++) {
+			threads[t].join();
+		}
+		assertEquals(threadCount*valuesPerThread, sk.getCount());
+		assertEquals(threadCount*(long)valuesPerThread*(valuesPerThread+1)/2, sk.getTotal());
+		assertEquals(threadCount*99, sk.getClassCounts()[0]);
+		assertEquals(valuesPerThread, sk.getMax());
+	}
+}
@@ -0,0 +1,59 @@
+package nl.nn.adapterframework.statistics.percentiles;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LogLinearHistogramTest {
+
+	@Test
+	public void testBucketBoundaries() {
+		LogLinearHistogram histogram = new LogLinearHistogram();
+		long previousHighest = -1;
+		for (int i=0; i<histogram.getIndex(Long.MAX_VALUE)+1; i++) {
+			long lowest = histogram.getLowestValue(i);
+			long highest = histogram.getHighestValue(i);
+			assertEquals("bucket "+i+" must start after previous bucket", previousHighest+1, lowest);
+			assertEquals(i, histogram.getIndex(lowest));
+			assertEquals(i, histogram.getIndex(highest));
+			previousHighest = highest;
+		}
+		assertEquals(Long.MAX_VALUE, previousHighest);
+	}
+
+	@Test
+	public void testExactBelowLinearLimit() {
+		LogLinearHistogram histogram = new LogLinearHistogram();
+		for (int i=1; i<=50; i++) {
+			histogram.addValue(i);
+		}
+		assertEquals(50, histogram.getTotalCount());
+		assertEquals(25.0, histogram.getValueAtPercentile(50), 0.0);
+		assertEquals(45.0, histogram.getValueAtPercentile(90), 0.0);
+	}
+
+	@Test
+	public void testRelativeError() {
+		LogLinearHistogram histogram = new LogLinearHistogram();
+		for (int i=1; i<=100000; i++) {
+			histogram.addValue(i);
+		}
+		double p95 = histogram.getValueAtPercentile(95);
+		assertTrue("p95 ["+p95+"] too far from 95000", Math.abs(p95-95000)/95000 < 1.0/32);
+	}
+
+	@Test
+	public void testAdd() {
+		LogLinearHistogram histogram1 = new LogLinearHistogram();
+		LogLinearHistogram histogram2 = new LogLinearHistogram();
+		for (int i=1; i<=50; i++) {
+			histogram1.addValue(i);
+			histogram2.addValue(i+50);
+		}
+		histogram2.addValue(1000000);
+		histogram1.add(histogram2);
+		assertEquals(101, histogram1.getTotalCount());
+		assertEquals(51.0, histogram1.getValueAtPercentile(50), 1.0);
+	}
+}
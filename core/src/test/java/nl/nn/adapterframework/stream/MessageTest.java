@@ -0,0 +1,93 @@
+package nl.nn.adapterframework.stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import nl.nn.adapterframework.util.Misc;
+
+public class MessageTest {
+
+	private String testString = "<root><sub>abcé</sub></root>";
+
+	@Test
+	public void testString() throws IOException {
+		Message message = new Message(testString);
+		assertTrue(message.isRepeatable());
+		assertFalse(message.isBinary());
+		assertEquals(testString.length(), message.size());
+		assertEquals(testString, message.asString());
+		assertEquals(testString, Misc.readerToString(message.asReader(), null, false));
+		assertEquals(testString, message.toString());
+	}
+
+	@Test
+	public void testReaderIsPreservedByAsString() throws IOException {
+		Message message = new Message(new StringReader(testString));
+		assertFalse(message.isRepeatable());
+		assertEquals(-1, message.size());
+		assertFalse(message.isEmpty());
+		assertEquals(testString, message.asString());
+		assertTrue(message.isRepeatable());
+		assertEquals(testString, message.asString());
+	}
+
+	@Test
+	public void testInputStream() throws IOException {
+		byte[] bytes = testString.getBytes("UTF-8");
+		Message message = new Message(new ByteArrayInputStream(bytes), "UTF-8");
+		assertTrue(message.isBinary());
+		assertFalse(message.isEmpty());
+		assertArrayEquals(bytes, message.asByteArray());
+		assertEquals(testString, message.asString());
+	}
+
+	@Test
+	public void testToStringDoesNotReadStreams() throws IOException {
+		Message message = new Message(new StringReader(testString));
+		assertEquals("Message[StringReader]", message.toString());
+		assertFalse(message.isRepeatable());
+		assertEquals(testString, message.asString());
+
+		Message binary = new Message(new ByteArrayInputStream(testString.getBytes("UTF-8")), "UTF-8");
+		assertEquals("Message[ByteArrayInputStream, charset=UTF-8]", binary.toString());
+		assertFalse(binary.isRepeatable());
+		assertEquals(testString, binary.asString());
+
+		assertEquals(testString, new Message(testString.getBytes("UTF-8"), "UTF-8").toString());
+	}
+
+	@Test
+	public void testStaticAsString() throws IOException {
+		assertEquals(testString, Message.asString(new Message(new StringReader(testString))));
+		assertEquals("12", Message.asString(new Integer(12)));
+		assertNull(Message.asString(null));
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		assertTrue(new Message((String)null).isEmpty());
+		assertTrue(new Message("").isEmpty());
+		assertTrue(new Message(new ByteArrayInputStream(new byte[0])).isEmpty());
+		assertTrue(Message.isEmpty(null));
+		assertTrue(Message.isEmpty(""));
+		assertFalse(Message.isEmpty(new Message(new StringReader("a"))));
+	}
+
+	@Test
+	public void testAsMessage() throws IOException {
+		Message message = new Message(testString);
+		assertSame(message, Message.asMessage(message));
+		assertEquals("12", Message.asMessage(new Integer(12)).asString());
+		assertNull(Message.asMessage(null).asString());
+	}
+}
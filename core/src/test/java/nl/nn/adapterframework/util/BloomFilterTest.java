@@ -0,0 +1,44 @@
+package nl.nn.adapterframework.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BloomFilterTest {
+
+	@Test
+	public void testNoFalseNegatives() {
+		BloomFilter filter = new BloomFilter(1000, 0.01);
+		for (int i=0; i<1000; i++) {
+			filter.put(BloomFilter.digest("item"+i));
+		}
+		for (int i=0; i<1000; i++) {
+			assertTrue(filter.mightContain(BloomFilter.digest("item"+i)));
+			assertFalse(filter.put(BloomFilter.digest("item"+i)));
+		}
+	}
+
+	@Test
+	public void testFalsePositiveRate() {
+		BloomFilter filter = new BloomFilter(10000, 0.01);
+		for (int i=0; i<10000; i++) {
+			filter.put(BloomFilter.digest("item"+i));
+		}
+		int falsePositives = 0;
+		for (int i=0; i<10000; i++) {
+			if (filter.mightContain(BloomFilter.digest("other"+i))) {
+				falsePositives++;
+			}
+		}
+		assertTrue("too many false positives ["+falsePositives+"]", falsePositives < 300);
+	}
+
+	@Test
+	public void testClear() {
+		BloomFilter filter = new BloomFilter(100, 0.01);
+		filter.put(BloomFilter.digest("a"));
+		filter.clear();
+		assertFalse(filter.mightContain(BloomFilter.digest("a")));
+	}
+}
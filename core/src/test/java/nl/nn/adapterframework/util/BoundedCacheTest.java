@@ -0,0 +1,81 @@
+package nl.nn.adapterframework.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BoundedCacheTest {
+
+	@Test
+	public void testEvictsEldest() {
+		BoundedCache<String,String> cache = new BoundedCache<String,String>(3, 0);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		cache.put("c", "3");
+		cache.put("d", "4");
+		assertEquals(3, cache.size());
+		assertFalse(cache.containsKey("a"));
+		assertEquals("4", cache.get("d"));
+	}
+
+	@Test
+	public void testRepeatedPutsKeepEntries() {
+		BoundedCache<String,String> cache = new BoundedCache<String,String>(2, 0);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		for (int i=0; i<100; i++) {
+			cache.put("a", "1."+i);
+		}
+		assertEquals(2, cache.size());
+		assertEquals("1.99", cache.get("a"));
+		assertEquals("2", cache.get("b"));
+	}
+
+	@Test
+	public void testPutIfAbsent() {
+		BoundedCache<String,String> cache = new BoundedCache<String,String>(10, 0);
+		assertNull(cache.putIfAbsent("a", "1"));
+		assertEquals("1", cache.putIfAbsent("a", "2"));
+		assertEquals("1", cache.get("a"));
+	}
+
+	@Test
+	public void testMaxAge() throws Exception {
+		BoundedCache<String,String> cache = new BoundedCache<String,String>(10, 20);
+		cache.put("a", "1");
+		assertTrue(cache.containsKey("a"));
+		Thread.sleep(40);
+		assertNull(cache.get("a"));
+		assertNull(cache.putIfAbsent("a", "2"));
+		assertEquals("2", cache.get("a"));
+	}
+
+	@Test
+	public void testConcurrentPuts() throws Exception {
+		final BoundedCache<Integer,Integer> cache = new BoundedCache<Integer,Integer>(100, 0);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t=0; t<8; t++) {
+			final int offset = t*10000;
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					for (int i=0; i<10000; i++) {
+						cache.put(offset+i, i);
+					}
+				}
+			};
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread:threads) {
+			thread.join(30000);
+		}
+		assertTrue("size ["+cache.size()+"]", cache.size()<=100);
+	}
+}
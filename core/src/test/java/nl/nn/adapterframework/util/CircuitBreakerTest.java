@@ -0,0 +1,102 @@
+package nl.nn.adapterframework.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+	private static class RecordingListener implements CircuitBreaker.StateListener {
+		private List<CircuitBreaker.State> states = new ArrayList<CircuitBreaker.State>();
+
+		@Override
+		public void stateChanged(CircuitBreaker circuitBreaker, CircuitBreaker.State oldState, CircuitBreaker.State newState) {
+			states.add(newState);
+		}
+	}
+
+	@Test
+	public void testOpensAfterThreshold() {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(3, 10000, 20000);
+		circuitBreaker.recordFailure();
+		circuitBreaker.recordFailure();
+		assertTrue(circuitBreaker.allowRequest());
+		circuitBreaker.recordSuccess();
+		circuitBreaker.recordFailure();
+		circuitBreaker.recordFailure();
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+		circuitBreaker.recordFailure();
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+		assertFalse(circuitBreaker.allowRequest());
+		long remaining = circuitBreaker.getRemainingOpenTime();
+		assertTrue("remaining open time ["+remaining+"]", remaining>4000 && remaining<=10000);
+	}
+
+	@Test
+	public void testHalfOpenProbe() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		CircuitBreaker circuitBreaker = new CircuitBreaker(1, 20, 20);
+		circuitBreaker.setStateListener(listener);
+		circuitBreaker.recordFailure();
+		assertFalse(circuitBreaker.allowRequest());
+		Thread.sleep(30);
+		assertTrue(circuitBreaker.allowRequest());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+		assertFalse("only a single probe is allowed", circuitBreaker.allowRequest());
+
+		circuitBreaker.recordFailure();
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+		Thread.sleep(30);
+		assertTrue(circuitBreaker.allowRequest());
+		circuitBreaker.recordSuccess();
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+		assertTrue(circuitBreaker.allowRequest());
+
+		assertEquals(5, listener.states.size());
+		assertEquals(CircuitBreaker.State.OPEN, listener.states.get(0));
+		assertEquals(CircuitBreaker.State.HALF_OPEN, listener.states.get(1));
+		assertEquals(CircuitBreaker.State.OPEN, listener.states.get(2));
+		assertEquals(CircuitBreaker.State.HALF_OPEN, listener.states.get(3));
+		assertEquals(CircuitBreaker.State.CLOSED, listener.states.get(4));
+	}
+
+	@Test
+	public void testOpenTimeGrowsWithJitter() throws Exception {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(1, 1000, 4000);
+		long[] maxima = {1000, 2000, 4000, 4000};
+		for (long maximum:maxima) {
+			circuitBreaker.recordFailure();
+			long remaining = circuitBreaker.getRemainingOpenTime();
+			assertTrue("remaining open time ["+remaining+"] for maximum ["+maximum+"]", remaining>maximum/2-100 && remaining<=maximum);
+			// force a probe, that fails again
+			forceHalfOpen(circuitBreaker);
+		}
+	}
+
+	@Test
+	public void testIsOpenDoesNotLimitProbes() throws Exception {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(1, 20, 20);
+		circuitBreaker.recordFailure();
+		assertTrue(circuitBreaker.isOpen());
+		Thread.sleep(30);
+		assertFalse(circuitBreaker.isOpen());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+		assertFalse(circuitBreaker.isOpen());
+		circuitBreaker.recordFailure();
+		assertEquals(2, circuitBreaker.getConsecutiveTrips());
+		assertTrue(circuitBreaker.isOpen());
+	}
+
+	private void forceHalfOpen(CircuitBreaker circuitBreaker) throws Exception {
+		Field openUntil = CircuitBreaker.class.getDeclaredField("openUntil");
+		openUntil.setAccessible(true);
+		openUntil.setLong(circuitBreaker, 0);
+		assertTrue(circuitBreaker.allowRequest());
+	}
+}
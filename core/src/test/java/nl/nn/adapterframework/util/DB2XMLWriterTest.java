@@ -0,0 +1,146 @@
+package nl.nn.adapterframework.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import nl.nn.adapterframework.core.SenderException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DB2XMLWriterTest {
+	private static final String H2_CONNECTION_STRING = "jdbc:h2:mem:db2xmlwriter";
+
+	private Connection connection;
+
+	@Before
+	public void startDatabase() throws SQLException {
+		connection = DriverManager.getConnection(H2_CONNECTION_STRING);
+		connection.createStatement().execute("CREATE TABLE TEMP(TKEY INT PRIMARY KEY, TVARCHAR VARCHAR(100))");
+		String[] values = { "a & b <c>", "  padded  ", "", "line1\nline2\r\nline3", "quote \" tab\tend", null, "   " };
+		PreparedStatement statement = connection.prepareStatement("INSERT INTO TEMP (TKEY, TVARCHAR) VALUES (?, ?)");
+		for (int i = 0; i < values.length; i++) {
+			statement.setInt(1, i + 1);
+			statement.setString(2, values[i]);
+			statement.execute();
+		}
+		statement.close();
+	}
+
+	@After
+	public void closeDatabase() throws SQLException {
+		if (connection != null) {
+			connection.createStatement().execute("DROP ALL OBJECTS");
+			connection.close();
+		}
+	}
+
+	private ResultSet query() throws SQLException {
+		return connection.createStatement().executeQuery("SELECT TKEY, TVARCHAR FROM TEMP ORDER BY TKEY");
+	}
+
+	private String getXmlAsTree(ResultSet rs, int maxlength) throws Exception {
+		XmlBuilder result = new XmlBuilder("result");
+		XmlBuilder rowset = new XmlBuilder("rowset");
+		ResultSetMetaData rsmeta = rs.getMetaData();
+		int rowCounter = 0;
+		while (rowCounter < maxlength && rs.next()) {
+			rowset.addSubElement(DB2XMLWriter.getRowXml(rs, rowCounter++, rsmeta, Misc.DEFAULT_INPUT_STREAM_ENCODING, false, "", false, false));
+		}
+		result.addSubElement(rowset);
+		return result.toXML();
+	}
+
+	private DB2XMLWriter createWriter() {
+		DB2XMLWriter writer = new DB2XMLWriter();
+		writer.setTrimSpaces(false);
+		return writer;
+	}
+
+	@Test
+	public void testSameLayoutAsXmlBuilder() throws Exception {
+		String expected = getXmlAsTree(query(), Integer.MAX_VALUE);
+		assertEquals(expected, createWriter().getXML(query(), -1, false));
+	}
+
+	@Test
+	public void testStreamToWriterWithMaxLength() throws Exception {
+		StringWriter writer = new StringWriter();
+		createWriter().getXML(query(), 2, false, writer);
+		assertEquals(getXmlAsTree(query(), 2), writer.toString());
+	}
+
+	/**
+	 * Returns a resultset that fails when the row after <code>rows</code> rows is read.
+	 */
+	private ResultSet failingQuery(final int rows) throws SQLException {
+		final ResultSet rs = query();
+		return (ResultSet)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+			private int count = 0;
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("next") && count++ == rows) {
+					throw new SQLException("connection lost");
+				}
+				try {
+					return method.invoke(rs, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		});
+	}
+
+	@Test
+	public void testRowErrorIsLoggedForString() throws Exception {
+		assertEquals(getXmlAsTree(query(), 2), createWriter().getXML(failingQuery(2), -1, false));
+	}
+
+	@Test
+	public void testRowErrorIsThrownForWriter() throws Exception {
+		try {
+			createWriter().getXML(failingQuery(2), -1, false, new StringWriter());
+			fail("expected SenderException");
+		} catch (SenderException e) {
+			assertTrue(e.getCause() instanceof SQLException);
+		}
+	}
+
+	@Test
+	public void testEmptyRowset() throws Exception {
+		ResultSet rs = connection.createStatement().executeQuery("SELECT TKEY FROM TEMP WHERE TKEY < 0");
+		assertEquals("<result>\r\n  <rowset />\r\n</result>\r\n", createWriter().getXML(rs, -1, false));
+	}
+
+	@Test
+	public void testRowXmlString() throws Exception {
+		ResultSet rs = query();
+		ResultSetMetaData rsmeta = rs.getMetaData();
+		while (rs.next()) {
+			String expected = DB2XMLWriter.getRowXml(rs, rs.getRow(), rsmeta, Misc.DEFAULT_INPUT_STREAM_ENCODING, false, "", true, false).toXML();
+			assertEquals(expected, DB2XMLWriter.getRowXmlString(rs, rs.getRow(), rsmeta, Misc.DEFAULT_INPUT_STREAM_ENCODING, false, "", true, false));
+		}
+	}
+
+	@Test
+	public void testJson() throws Exception {
+		StringWriter writer = new StringWriter();
+		createWriter().getJson(query(), 7, writer);
+		assertEquals("[{\"TKEY\":\"1\",\"TVARCHAR\":\"a & b <c>\"},{\"TKEY\":\"2\",\"TVARCHAR\":\"  padded  \"},{\"TKEY\":\"3\",\"TVARCHAR\":\"\"},"
+				+ "{\"TKEY\":\"4\",\"TVARCHAR\":\"line1\\nline2\\r\\nline3\"},{\"TKEY\":\"5\",\"TVARCHAR\":\"quote \\\" tab\\tend\"},"
+				+ "{\"TKEY\":\"6\",\"TVARCHAR\":null},{\"TKEY\":\"7\",\"TVARCHAR\":\"   \"}]", writer.toString());
+	}
+}
@@ -0,0 +1,63 @@
+package nl.nn.adapterframework.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class StreamingXPathFilterTest {
+
+	private String evaluateText(StreamingXPathFilter.Expression expression, String input) throws Exception {
+		StreamingXPathFilter.TextCollector textCollector = new StreamingXPathFilter.TextCollector();
+		XmlUtils.parseXml(expression.createFilter(textCollector), input);
+		return textCollector.getResult();
+	}
+
+	private void assertSameAsTransformer(String xPath, String input) throws Exception {
+		assertSameAsTransformer(xPath, null, input);
+	}
+
+	private void assertSameAsTransformer(String xPath, String namespaceDefs, String input) throws Exception {
+		StreamingXPathFilter.Expression expression = StreamingXPathFilter.compile(xPath, namespaceDefs, true);
+		assertNotNull(expression);
+		TransformerPool tp = XmlUtils.getXPathTransformerPool(namespaceDefs, xPath, "text", false, null);
+		assertEquals("xpath ["+xPath+"] input ["+input+"]", tp.transform(input, null, true), evaluateText(expression, input));
+	}
+
+	@Test
+	public void testCompile() {
+		assertNotNull(StreamingXPathFilter.compile("/root/sub", null, true));
+		assertNotNull(StreamingXPathFilter.compile(" /root/sub-element.x ", null, true));
+		assertNotNull(StreamingXPathFilter.compile("//sub[@type='a']", null, true));
+		assertNotNull(StreamingXPathFilter.compile("/root/sub[1]", null, true));
+		assertNotNull(StreamingXPathFilter.compile("/ns:root", "ns=urn:test", true));
+		assertNull(StreamingXPathFilter.compile("/ns:root", null, true));
+		assertNull(StreamingXPathFilter.compile("/ns:root", "ns=urn:test", false));
+		assertNull(StreamingXPathFilter.compile("/root/sub/@attr", null, true));
+		assertNull(StreamingXPathFilter.compile("/root/sub/text()", null, true));
+		assertNull(StreamingXPathFilter.compile("/root/sub[last()]", null, true));
+	}
+
+	@Test
+	public void testTextSameAsTransformer() throws Exception {
+		assertSameAsTransformer("/root/sub", "<root><sub>abc</sub></root>");
+		assertSameAsTransformer("/root/sub", "<root><other>x</other><sub>a<b>b</b> c</sub><sub>d</sub></root>");
+		assertSameAsTransformer("/root/sub", "<root>\n  <sub>\n    <x>1</x>\n    <y>2</y>\n  </sub>\n</root>");
+		assertSameAsTransformer("/root/sub", "<root><sub/><sub>x</sub></root>");
+		assertSameAsTransformer("/root/sub", "<root><a><sub>nested</sub></a></root>");
+		assertSameAsTransformer("/root/sub", "<other><sub>x</sub></other>");
+		assertSameAsTransformer("/root/sub", "<root><sub><![CDATA[<cdata>]]> &amp; text</sub></root>");
+		assertSameAsTransformer("/root", "<root xmlns=\"urn:test\"><sub>x</sub></root>");
+		assertSameAsTransformer("/root/sub", "<root xmlns:ns=\"urn:test\"><ns:sub>x</ns:sub><sub>y</sub></root>");
+		assertSameAsTransformer("/root/sub/sub", "<root><sub><sub>inner</sub></sub></root>");
+	}
+
+	@Test
+	public void testTextWithPredicatesAndNamespaces() throws Exception {
+		assertSameAsTransformer("/root/sub[@type='b']", "<root><sub type=\"a\">x</sub><sub type=\"b\">y</sub></root>");
+		assertSameAsTransformer("/root/sub[2]", "<root><sub>x</sub><sub>y</sub><sub>z</sub></root>");
+		assertSameAsTransformer("//id", "<root><a><id>1</id></a><b><id>2</id></b></root>");
+		assertSameAsTransformer("/ns:root/ns:sub", "ns=urn:test", "<root xmlns=\"urn:test\"><sub>x</sub></root>");
+	}
+}
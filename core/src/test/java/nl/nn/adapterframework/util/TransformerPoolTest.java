@@ -1,8 +1,18 @@
 package nl.nn.adapterframework.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
 
 import org.junit.Test;
 
@@ -69,4 +79,61 @@ public class TransformerPoolTest {
 		assertEquals(3, TransformerPool.getTransformerPoolsKeys().size());
 	}
 
+	@Test
+	public void reusesTransformers() throws Exception {
+		TransformerPool transformerPool = TransformerPool.getInstance(XmlUtils.createXPathEvaluatorSource("root/message"));
+		long created = transformerPool.getNumCreated();
+		for (int i=0; i<10; i++) {
+			assertEquals("hello"+i, transformerPool.transform("<root><message>hello"+i+"</message></root>", null));
+		}
+		assertEquals(created, transformerPool.getNumCreated());
+		assertEquals(10, transformerPool.getNumBorrowed());
+	}
+
+	@Test
+	public void reportsStatistics() throws Exception {
+		TransformerPool transformerPool = TransformerPool.getInstance(XmlUtils.createXPathEvaluatorSource("root/message"));
+		transformerPool.transform("<root><message>hello</message></root>", null);
+		StatisticsKeeperIterationHandler handler = mock(StatisticsKeeperIterationHandler.class);
+		Object poolData = new Object();
+		when(handler.openGroup(any(), eq("xslt"), eq("transformerPool"))).thenReturn(poolData);
+		transformerPool.iterateOverStatistics(handler, null, "xslt");
+		verify(handler).handleScalar(poolData, "borrowed", transformerPool.getNumBorrowed());
+		verify(handler).handleScalar(poolData, "created", transformerPool.getNumCreated());
+		verify(handler).handleScalar(poolData, "reclaimed", transformerPool.getNumReclaimed());
+		verify(handler).closeGroup(poolData);
+	}
+
+	@Test
+	public void concurrentTransformations() throws Exception {
+		final TransformerPool transformerPool = TransformerPool.getInstance(XmlUtils.createXPathEvaluatorSource("root/message"));
+		final int numThreads = 8;
+		final int numTransformations = 50;
+		final AtomicInteger failures = new AtomicInteger();
+		final CountDownLatch finished = new CountDownLatch(numThreads);
+		for (int i=0; i<numThreads; i++) {
+			final int thread = i;
+			new Thread() {
+				public void run() {
+					try {
+						for (int j=0; j<numTransformations; j++) {
+							String expected = thread+"-"+j;
+							if (!expected.equals(transformerPool.transform("<root><message>"+expected+"</message></root>", null))) {
+								failures.incrementAndGet();
+							}
+						}
+					} catch (Exception e) {
+						failures.incrementAndGet();
+					} finally {
+						finished.countDown();
+					}
+				}
+			}.start();
+		}
+		finished.await();
+		assertEquals(0, failures.get());
+		assertEquals(numThreads*numTransformations, transformerPool.getNumBorrowed());
+		assertTrue(transformerPool.getNumCreated()<=numThreads+1);
+	}
+
 }
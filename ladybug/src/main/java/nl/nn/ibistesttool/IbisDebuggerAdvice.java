@@ -1,5 +1,5 @@
 /*
-   Copyright 2018 Nationale-Nederlanden
+   Copyright 2018, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -34,6 +34,7 @@ import nl.nn.adapterframework.parameters.ParameterValueList;
 import nl.nn.adapterframework.pipes.IsolatedServiceExecutor;
 import nl.nn.adapterframework.senders.ParallelSenderExecutor;
 import nl.nn.adapterframework.senders.SenderWrapperBase;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.Misc;
 
 import org.apache.commons.lang.StringUtils;
@@ -51,9 +52,9 @@ public class IbisDebuggerAdvice {
 
 	public Object debugPipeLineInputOutputAbort(
 			ProceedingJoinPoint proceedingJoinPoint, PipeLine pipeLine,
-			String correlationId, String message,
+			String correlationId, Message message,
 			IPipeLineSession pipeLineSession) throws Throwable {
-		message = (String)ibisDebugger.pipeLineInput(pipeLine, correlationId, message);
+		message = Message.asMessage(ibisDebugger.pipeLineInput(pipeLine, correlationId, Message.asString(message)));
 		TreeSet keys = new TreeSet(pipeLineSession.keySet());
 		Iterator iterator = keys.iterator();
 		while (iterator.hasNext()) {
@@ -67,6 +68,7 @@ public class IbisDebuggerAdvice {
 			PipeLineSessionDebugger pipeLineSessionDebugger = new PipeLineSessionDebugger(pipeLineSession);
 			pipeLineSessionDebugger.setIbisDebugger(ibisDebugger);
 			Object[] args = proceedingJoinPoint.getArgs();
+			args[2] = message;
 			args[3] = pipeLineSessionDebugger;
 			pipeLineResult = (PipeLineResult)proceedingJoinPoint.proceed(args);
 		} catch(Throwable throwable) {
@@ -1,5 +1,5 @@
 /*
-   Copyright 2018 Nationale-Nederlanden
+   Copyright 2018, 2019 Nationale-Nederlanden
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -15,6 +15,7 @@
 */
 package nl.nn.ibistesttool;
 
+import java.io.Closeable;
 import java.security.Principal;
 import java.util.Collection;
 import java.util.Map;
@@ -70,6 +71,14 @@ public class PipeLineSessionDebugger implements IPipeLineSession {
 		return pipeLineSession.getPrincipal();
 	}
 
+	public void scheduleCloseOnSessionExit(Closeable resource) {
+		pipeLineSession.scheduleCloseOnSessionExit(resource);
+	}
+
+	public void closeScheduledResources() {
+		pipeLineSession.closeScheduledResources();
+	}
+
 	// Methods implementing Map
 
 	public void clear() {